@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.filter;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.common.filter.ExpressionType;
+import org.apache.rocketmq.common.filter.FilterAPI;
+import org.apache.rocketmq.common.message.MessageAccessor;
+import org.apache.rocketmq.common.message.MessageDecoder;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.protocol.heartbeat.SubscriptionData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures SQL92 evaluation in {@link ExpressionMessageFilter#isMatchedByCommitLog}, both with the properties
+ * already decoded by the dispatcher and with properties decoded from the stored message, next to the
+ * tag hash code check done on the consume queue.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ExpressionMessageFilterBenchmark {
+    private static final String TOPIC = "BenchmarkTopic";
+    private static final String GROUP = "BenchmarkConsumerGroup";
+    private static final String SQL = "(region = 'hangzhou' OR region = 'shanghai') AND price BETWEEN 10 AND 100 AND vip IS NOT NULL";
+
+    private ExpressionMessageFilter sqlFilter;
+    private ExpressionMessageFilter tagFilter;
+    private Map<String, String> properties;
+    private ByteBuffer storedMessage;
+    private Long tagsCode;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        ConsumerFilterManager consumerFilterManager = new ConsumerFilterManager();
+
+        SubscriptionData sqlSubscription = FilterAPI.build(TOPIC, SQL, ExpressionType.SQL92);
+        ConsumerFilterData consumerFilterData = ConsumerFilterManager.build(TOPIC, GROUP, SQL, ExpressionType.SQL92,
+            System.currentTimeMillis());
+        sqlFilter = new ExpressionMessageFilter(sqlSubscription, consumerFilterData, consumerFilterManager);
+
+        SubscriptionData tagSubscription = FilterAPI.buildSubscriptionData(TOPIC, "TagA || TagB || TagC");
+        tagFilter = new ExpressionMessageFilter(tagSubscription, null, consumerFilterManager);
+        tagsCode = (long) "TagB".hashCode();
+
+        properties = new HashMap<>();
+        properties.put("region", "shanghai");
+        properties.put("price", "42");
+        properties.put("vip", "gold");
+
+        MessageExt messageExt = new MessageExt();
+        messageExt.setTopic(TOPIC);
+        messageExt.setTags("TagB");
+        for (Map.Entry<String, String> entry : properties.entrySet()) {
+            MessageAccessor.putProperty(messageExt, entry.getKey(), entry.getValue());
+        }
+        messageExt.setBody(new byte[256]);
+        messageExt.setBornHost(new InetSocketAddress("127.0.0.1", 8123));
+        messageExt.setStoreHost(new InetSocketAddress("127.0.0.1", 10911));
+        storedMessage = ByteBuffer.wrap(MessageDecoder.encode(messageExt, false));
+    }
+
+    @Benchmark
+    public boolean sqlWithDecodedProperties() {
+        return sqlFilter.isMatchedByCommitLog(null, properties);
+    }
+
+    @Benchmark
+    public boolean sqlWithStoredMessage() {
+        storedMessage.clear();
+        return sqlFilter.isMatchedByCommitLog(storedMessage, null);
+    }
+
+    @Benchmark
+    public boolean tagByConsumeQueue() {
+        return tagFilter.isMatchedByConsumeQueue(tagsCode, null);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.common.message;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.common.UtilAll;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link MessageDecoder#decode} of a single stored message and {@link MessageDecoder#decodes}
+ * of a pull-response sized run of messages, with and without reading the body.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class MessageDecoderBenchmark {
+    private static final int MESSAGES_PER_PULL = 32;
+
+    @Param({"128", "1024", "4096"})
+    private int bodySize;
+
+    private ByteBuffer single;
+    private ByteBuffer many;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        byte[] body = new byte[bodySize];
+        new Random(bodySize).nextBytes(body);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] first = null;
+        for (int i = 0; i < MESSAGES_PER_PULL; i++) {
+            byte[] encoded = MessageDecoder.encode(buildMessageExt(body, i), false);
+            if (first == null) {
+                first = encoded;
+            }
+            out.write(encoded);
+        }
+        single = ByteBuffer.wrap(first);
+        many = ByteBuffer.wrap(out.toByteArray());
+    }
+
+    @Benchmark
+    public MessageExt decode() {
+        single.clear();
+        return MessageDecoder.decode(single);
+    }
+
+    @Benchmark
+    public MessageExt decodeWithoutBody() {
+        single.clear();
+        return MessageDecoder.decode(single, false);
+    }
+
+    @Benchmark
+    public List<MessageExt> decodes() {
+        many.clear();
+        return MessageDecoder.decodes(many);
+    }
+
+    @Benchmark
+    public List<MessageExt> decodesWithoutBody() {
+        many.clear();
+        return MessageDecoder.decodes(many, false);
+    }
+
+    private static MessageExt buildMessageExt(byte[] body, int i) {
+        MessageExt messageExt = new MessageExt();
+        messageExt.setTopic("BenchmarkTopic");
+        messageExt.setTags("TagA");
+        messageExt.setKeys("OrderID-" + i);
+        MessageAccessor.putProperty(messageExt, MessageConst.PROPERTY_UNIQ_CLIENT_MESSAGE_ID_KEYIDX,
+            "7F0000010B8C18B4AAC2" + String.format("%012X", i));
+        messageExt.setBody(body);
+        messageExt.setBodyCRC(UtilAll.crc32(body));
+        messageExt.setQueueId(i % 8);
+        messageExt.setQueueOffset(i);
+        messageExt.setCommitLogOffset(i * 1024L);
+        messageExt.setBornTimestamp(System.currentTimeMillis());
+        messageExt.setStoreTimestamp(System.currentTimeMillis());
+        messageExt.setBornHost(new InetSocketAddress("127.0.0.1", 8123));
+        messageExt.setStoreHost(new InetSocketAddress("127.0.0.1", 10911));
+        return messageExt;
+    }
+}
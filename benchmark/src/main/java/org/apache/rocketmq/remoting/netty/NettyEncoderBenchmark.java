@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.remoting.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.common.protocol.ResponseCode;
+import org.apache.rocketmq.common.protocol.header.PullMessageResponseHeader;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
+import org.apache.rocketmq.remoting.protocol.SerializeType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writes pull responses through {@link NettyEncoder}, with the messages copied from a direct buffer, as the commit
+ * log is, either into a heap body or into a pooled body buffer. Run it with {@code -prof gc} to compare the
+ * allocation rates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class NettyEncoderBenchmark {
+    @Param({"JSON", "ROCKETMQ"})
+    private SerializeType serializeType;
+
+    @Param({"1024", "32768"})
+    private int bodySize;
+
+    private EmbeddedChannel channel;
+    private ByteBuffer messages;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        channel = new EmbeddedChannel(new NettyEncoder());
+        messages = ByteBuffer.allocateDirect(bodySize);
+        while (messages.hasRemaining()) {
+            messages.put((byte) messages.position());
+        }
+        messages.flip();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public int writeHeapBody() {
+        RemotingCommand response = newResponse();
+        byte[] body = new byte[bodySize];
+        messages.duplicate().get(body);
+        response.setBody(body);
+        return write(response);
+    }
+
+    @Benchmark
+    public int writeBodyBuffer() {
+        RemotingCommand response = newResponse();
+        ByteBuf body = channel.alloc().directBuffer(bodySize);
+        body.writeBytes(messages.duplicate());
+        response.setBodyBuffer(body);
+        return write(response);
+    }
+
+    private RemotingCommand newResponse() {
+        RemotingCommand response = RemotingCommand.createResponseCommand(PullMessageResponseHeader.class);
+        PullMessageResponseHeader responseHeader = (PullMessageResponseHeader) response.readCustomHeader();
+        responseHeader.setNextBeginOffset(123456L);
+        responseHeader.setMinOffset(0L);
+        responseHeader.setMaxOffset(1234567L);
+        responseHeader.setSuggestWhichBrokerId(0L);
+        response.setCode(ResponseCode.SUCCESS);
+        response.setSerializeTypeCurrentRPC(serializeType);
+        return response;
+    }
+
+    private int write(RemotingCommand response) {
+        channel.writeOutbound(response);
+        ByteBuf frame = channel.readOutbound();
+        try {
+            return frame.readableBytes();
+        } finally {
+            frame.release();
+        }
+    }
+}
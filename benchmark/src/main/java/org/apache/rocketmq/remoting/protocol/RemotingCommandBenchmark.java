@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.remoting.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.common.protocol.RequestCode;
+import org.apache.rocketmq.common.protocol.header.SendMessageRequestHeader;
+import org.apache.rocketmq.common.protocol.header.SendMessageRequestHeaderV2;
+import org.apache.rocketmq.common.protocol.header.UpdateConsumerOffsetRequestHeader;
+import org.apache.rocketmq.remoting.CommandCustomHeader;
+import org.apache.rocketmq.remoting.exception.RemotingCommandException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures header encoding and {@link RemotingCommand#decodeCommandCustomHeader} for a header that implements
+ * {@code FastCodesHeader} and for ones that go through {@link CommandCustomHeaderCodec}. The schemas and the
+ * interned strings of {@link SerializeType#BINARY} are defined on the connection in the setup, so the steady state
+ * is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RemotingCommandBenchmark {
+    @Param({"JSON", "ROCKETMQ", "BINARY"})
+    private SerializeType serializeType;
+
+    private SendMessageRequestHeader sendHeader;
+    private SendMessageRequestHeaderV2 sendHeaderV2;
+    private UpdateConsumerOffsetRequestHeader updateOffsetHeader;
+    private BinarySerializeContext senderContext;
+    private BinarySerializeContext receiverContext;
+    private ByteBuf frameSendV2;
+    private RemotingCommand decodedSend;
+    private RemotingCommand decodedSendV2;
+    private RemotingCommand decodedUpdateOffset;
+    private ByteBuf out;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        sendHeader = new SendMessageRequestHeader();
+        sendHeader.setProducerGroup("BenchmarkProducerGroup");
+        sendHeader.setTopic("BenchmarkTopic");
+        sendHeader.setDefaultTopic("TBW102");
+        sendHeader.setDefaultTopicQueueNums(4);
+        sendHeader.setQueueId(3);
+        sendHeader.setSysFlag(0);
+        sendHeader.setBornTimestamp(System.currentTimeMillis());
+        sendHeader.setFlag(0);
+        sendHeader.setProperties("KEYS\u0001OrderID-001\u0002TAGS\u0001TagA\u0002WAIT\u0001true\u0002");
+        sendHeader.setReconsumeTimes(0);
+        sendHeader.setUnitMode(false);
+        sendHeader.setBatch(false);
+        sendHeaderV2 = SendMessageRequestHeaderV2.createSendMessageRequestHeaderV2(sendHeader);
+
+        updateOffsetHeader = new UpdateConsumerOffsetRequestHeader();
+        updateOffsetHeader.setConsumerGroup("BenchmarkConsumerGroup");
+        updateOffsetHeader.setTopic("BenchmarkTopic");
+        updateOffsetHeader.setQueueId(3);
+        updateOffsetHeader.setCommitOffset(123456789L);
+
+        senderContext = BinarySerializeContext.of(new EmbeddedChannel());
+        senderContext.setPeerSupported(true);
+        receiverContext = BinarySerializeContext.of(new EmbeddedChannel());
+
+        frameSendV2 = encodeFrame(RequestCode.SEND_MESSAGE_V2, sendHeaderV2);
+        decodedSend = roundTrip(RequestCode.SEND_MESSAGE, sendHeader);
+        decodedSendV2 = roundTrip(RequestCode.SEND_MESSAGE_V2, sendHeaderV2);
+        decodedUpdateOffset = roundTrip(RequestCode.UPDATE_CONSUMER_OFFSET, updateOffsetHeader);
+        out = PooledByteBufAllocator.DEFAULT.directBuffer(4096);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        out.release();
+        frameSendV2.release();
+    }
+
+    @Benchmark
+    public ByteBuffer encodeHeaderSendV2() {
+        return newRequest(RequestCode.SEND_MESSAGE_V2, sendHeaderV2).encodeHeader();
+    }
+
+    @Benchmark
+    public ByteBuffer encodeHeaderUpdateOffset() {
+        return newRequest(RequestCode.UPDATE_CONSUMER_OFFSET, updateOffsetHeader).encodeHeader();
+    }
+
+    @Benchmark
+    public ByteBuf fastEncodeHeaderSendV2() {
+        out.clear();
+        newRequest(RequestCode.SEND_MESSAGE_V2, sendHeaderV2).fastEncodeHeader(out, senderContext);
+        return out;
+    }
+
+    @Benchmark
+    public ByteBuf fastEncodeHeaderSend() {
+        out.clear();
+        newRequest(RequestCode.SEND_MESSAGE, sendHeader).fastEncodeHeader(out, senderContext);
+        return out;
+    }
+
+    @Benchmark
+    public ByteBuf fastEncodeHeaderUpdateOffset() {
+        out.clear();
+        newRequest(RequestCode.UPDATE_CONSUMER_OFFSET, updateOffsetHeader).fastEncodeHeader(out, senderContext);
+        return out;
+    }
+
+    @Benchmark
+    public RemotingCommand decodeSendV2() throws RemotingCommandException {
+        frameSendV2.readerIndex(4);
+        return RemotingCommand.decode(frameSendV2, receiverContext);
+    }
+
+    @Benchmark
+    public CommandCustomHeader decodeCustomHeaderSend() throws RemotingCommandException {
+        return decodedSend.decodeCommandCustomHeader(SendMessageRequestHeader.class);
+    }
+
+    @Benchmark
+    public CommandCustomHeader decodeCustomHeaderSendV2() throws RemotingCommandException {
+        return decodedSendV2.decodeCommandCustomHeader(SendMessageRequestHeaderV2.class);
+    }
+
+    @Benchmark
+    public CommandCustomHeader decodeCustomHeaderUpdateOffset() throws RemotingCommandException {
+        return decodedUpdateOffset.decodeCommandCustomHeader(UpdateConsumerOffsetRequestHeader.class);
+    }
+
+    private RemotingCommand newRequest(int code, CommandCustomHeader header) {
+        RemotingCommand request = RemotingCommand.createRequestCommand(code, header);
+        request.setSerializeTypeCurrentRPC(serializeType);
+        return request;
+    }
+
+    private RemotingCommand roundTrip(int code, CommandCustomHeader header) throws RemotingCommandException {
+        ByteBuf frame = encodeFrame(code, header);
+        try {
+            return RemotingCommand.decode(frame, receiverContext);
+        } finally {
+            frame.release();
+        }
+    }
+
+    /**
+     * @return a frame of which the schema and the interned strings are already sent on the connection, with the
+     * reader index after the total length field which is stripped by the frame decoder
+     */
+    private ByteBuf encodeFrame(int code, CommandCustomHeader header) throws RemotingCommandException {
+        ByteBuf first = Unpooled.buffer();
+        newRequest(code, header).fastEncodeHeader(first, senderContext);
+        first.readInt();
+        RemotingCommand.decode(first, receiverContext);
+        first.release();
+
+        ByteBuf frame = Unpooled.buffer();
+        newRequest(code, header).fastEncodeHeader(frame, senderContext);
+        frame.readInt();
+        return frame;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.common.message.MessageExtBatch;
+import org.apache.rocketmq.store.CommitLog.MessageExtEncoder;
+import org.apache.rocketmq.store.CommitLog.PutMessageContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Covers the in-lock part of a put: {@link MessageExtEncoder} serialization and
+ * {@code DefaultAppendMessageCallback.doAppend} copying into a commit log sized buffer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CommitLogAppendBenchmark {
+    private static final int BATCH_SIZE = 32;
+
+    @Param({"128", "1024", "4096"})
+    private int bodySize;
+
+    private String baseDir;
+    private DefaultMessageStore messageStore;
+    private AppendMessageCallback appendMessageCallback;
+    private MessageExtEncoder encoder;
+    private MessageExtBrokerInner msg;
+    private MessageExtBatch messageExtBatch;
+    private PutMessageContext putMessageContext;
+    private ByteBuffer fileBuffer;
+    private int encodedLength;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        baseDir = StoreBenchmarkUtil.createBaseDir();
+        messageStore = StoreBenchmarkUtil.createLoadedStore(StoreBenchmarkUtil.buildStoreConfig(baseDir));
+        appendMessageCallback = messageStore.getCommitLog().new DefaultAppendMessageCallback();
+        encoder = new MessageExtEncoder(messageStore.getMessageStoreConfig().getMaxMessageSize());
+
+        byte[] body = StoreBenchmarkUtil.buildBody(bodySize);
+        msg = StoreBenchmarkUtil.buildMessage(0, body);
+        messageExtBatch = StoreBenchmarkUtil.buildBatchMessage(1, body, BATCH_SIZE);
+        putMessageContext = new PutMessageContext(StoreBenchmarkUtil.TOPIC + "-0");
+
+        encoder.encode(msg);
+        encodedLength = encoder.getEncoderBuffer().remaining();
+        fileBuffer = ByteBuffer.allocateDirect(messageStore.getMessageStoreConfig().getMappedFileSizeCommitLog());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        messageStore.shutdown();
+        messageStore.destroy();
+        StoreBenchmarkUtil.deleteBaseDir(baseDir);
+    }
+
+    @Benchmark
+    public Object encode() {
+        return encoder.encode(msg);
+    }
+
+    @Benchmark
+    public ByteBuffer encodeBatch() {
+        PutMessageContext batchContext = new PutMessageContext(StoreBenchmarkUtil.TOPIC + "-1");
+        return encoder.encode(messageExtBatch, batchContext);
+    }
+
+    /**
+     * The encoded buffer is reused across invocations, so only the offset patching and the copy into
+     * the file buffer are measured here.
+     */
+    @Benchmark
+    public AppendMessageResult doAppend() {
+        if (fileBuffer.remaining() < encodedLength + 8) {
+            fileBuffer.clear();
+        }
+        msg.setEncodedBuff(encoder.getEncoderBuffer());
+        return appendMessageCallback.doAppend(0, fileBuffer, fileBuffer.remaining(), msg, putMessageContext);
+    }
+
+    @Benchmark
+    public AppendMessageResult encodeAndDoAppend() {
+        if (fileBuffer.remaining() < encodedLength + 8) {
+            fileBuffer.clear();
+        }
+        encoder.encode(msg);
+        msg.setEncodedBuff(encoder.getEncoderBuffer());
+        return appendMessageCallback.doAppend(0, fileBuffer, fileBuffer.remaining(), msg, putMessageContext);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.common.sysflag.MessageSysFlag;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@code ConsumeQueue.putMessagePositionInfo} through the dispatch wrapper used by the
+ * reput service. The queue is destroyed after every iteration so that disk usage stays bounded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ConsumeQueueBenchmark {
+    private static final int MSG_SIZE = 256;
+
+    private String baseDir;
+    private DefaultMessageStore messageStore;
+    private ConsumeQueue consumeQueue;
+    private long queueOffset;
+    private long commitLogOffset;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        baseDir = StoreBenchmarkUtil.createBaseDir();
+        messageStore = StoreBenchmarkUtil.createLoadedStore(StoreBenchmarkUtil.buildStoreConfig(baseDir));
+        consumeQueue = messageStore.findConsumeQueue(StoreBenchmarkUtil.TOPIC, 0);
+    }
+
+    @Setup(Level.Iteration)
+    public void resetQueue() {
+        consumeQueue.destroy();
+        queueOffset = 0;
+        commitLogOffset = 0;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        messageStore.shutdown();
+        messageStore.destroy();
+        StoreBenchmarkUtil.deleteBaseDir(baseDir);
+    }
+
+    @Benchmark
+    public long putMessagePositionInfo() {
+        DispatchRequest request = new DispatchRequest(StoreBenchmarkUtil.TOPIC, 0, commitLogOffset, MSG_SIZE,
+            queueOffset, System.currentTimeMillis(), queueOffset, null, null, MessageSysFlag.TRANSACTION_NOT_TYPE, 0, null);
+        consumeQueue.putMessagePositionInfoWrapper(request, false);
+        commitLogOffset += MSG_SIZE;
+        return queueOffset++;
+    }
+}
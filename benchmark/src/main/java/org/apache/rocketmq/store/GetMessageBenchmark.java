@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.store;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.broker.filter.ExpressionMessageFilter;
+import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.common.filter.FilterAPI;
+import org.apache.rocketmq.common.message.MessageDecoder;
+import org.apache.rocketmq.common.protocol.heartbeat.SubscriptionData;
+import org.apache.rocketmq.common.sysflag.MessageSysFlag;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+import org.apache.rocketmq.store.stats.BrokerStatsManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Pulls from a queue whose messages match a tag subscription at the given rate, to measure the consume queue
+ * scan and commit log reads of {@link DefaultMessageStore#getMessage}. The messages are dispatched directly
+ * before the store is started, so the reput service has nothing left to do.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class GetMessageBenchmark {
+    private static final String GROUP = "BenchmarkGroup";
+    private static final int MSG_NUM = 100000;
+    private static final int MAX_MSG_NUMS = 32;
+
+    @Param({"1", "10", "50", "100"})
+    private int matchPercent;
+
+    private String baseDir;
+    private DefaultMessageStore messageStore;
+    private MessageFilter messageFilter;
+    private long maxOffset;
+    private long offset;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        baseDir = StoreBenchmarkUtil.createBaseDir();
+        MessageStoreConfig messageStoreConfig = StoreBenchmarkUtil.buildStoreConfig(baseDir);
+        messageStoreConfig.setDiskFallRecorded(false);
+        messageStoreConfig.setHaListenPort(0);
+        messageStore = new DefaultMessageStore(messageStoreConfig,
+            new BrokerStatsManager("BenchmarkCluster", false), null, new BrokerConfig());
+        if (!messageStore.load()) {
+            throw new IllegalStateException("load message store failed, dir: " + baseDir);
+        }
+
+        byte[] body = StoreBenchmarkUtil.buildBody(256);
+        for (int i = 0; i < MSG_NUM; i++) {
+            MessageExtBrokerInner msg = StoreBenchmarkUtil.buildMessage(0, body);
+            msg.setTags(i % 100 < matchPercent ? "TagA" : "TagB");
+            msg.setTagsCode(MessageExtBrokerInner.tagsString2tagsCode(msg.getTags()));
+            msg.setPropertiesString(MessageDecoder.messageProperties2String(msg.getProperties()));
+            PutMessageResult putMessageResult = messageStore.getCommitLog().asyncPutMessage(msg).get();
+            AppendMessageResult result = putMessageResult.getAppendMessageResult();
+            messageStore.putMessagePositionInfo(new DispatchRequest(StoreBenchmarkUtil.TOPIC, 0, result.getWroteOffset(),
+                result.getWroteBytes(), msg.getTagsCode(), result.getStoreTimestamp(), result.getLogicsOffset(), null,
+                null, MessageSysFlag.TRANSACTION_NOT_TYPE, 0, null));
+        }
+        messageStore.start();
+        maxOffset = messageStore.getMaxOffsetInQueue(StoreBenchmarkUtil.TOPIC, 0);
+
+        SubscriptionData subscriptionData = FilterAPI.buildSubscriptionData(StoreBenchmarkUtil.TOPIC, "TagA");
+        messageFilter = new ExpressionMessageFilter(subscriptionData, null, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        messageStore.shutdown();
+        messageStore.destroy();
+        StoreBenchmarkUtil.deleteBaseDir(baseDir);
+    }
+
+    @Benchmark
+    public int getMessage() {
+        GetMessageResult getMessageResult = messageStore.getMessage(GROUP, StoreBenchmarkUtil.TOPIC, 0, offset,
+            MAX_MSG_NUMS, messageFilter);
+        try {
+            offset = getMessageResult.getNextBeginOffset() < maxOffset ? getMessageResult.getNextBeginOffset() : 0;
+            return getMessageResult.getMessageCount();
+        } finally {
+            getMessageResult.release();
+        }
+    }
+}
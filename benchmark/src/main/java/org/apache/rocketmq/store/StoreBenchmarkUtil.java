@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageDecoder;
+import org.apache.rocketmq.common.message.MessageExtBatch;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+
+/**
+ * Shared fixtures for the store benchmarks, kept in the store package so that package private
+ * internals such as {@link CommitLog.MessageExtEncoder} can be driven directly.
+ */
+public class StoreBenchmarkUtil {
+    public static final String TOPIC = "BenchmarkTopic";
+    public static final SocketAddress BORN_HOST = new InetSocketAddress("127.0.0.1", 8123);
+    public static final SocketAddress STORE_HOST = new InetSocketAddress("127.0.0.1", 10911);
+
+    public static String createBaseDir() {
+        String baseDir = System.getProperty("java.io.tmpdir") + File.separator + "rocketmq-benchmark"
+            + File.separator + UUID.randomUUID();
+        MappedFile.ensureDirOK(baseDir);
+        return baseDir;
+    }
+
+    public static void deleteBaseDir(String baseDir) {
+        UtilAll.deleteFile(new File(baseDir));
+    }
+
+    public static MessageStoreConfig buildStoreConfig(String baseDir) {
+        MessageStoreConfig messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setStorePathRootDir(baseDir);
+        messageStoreConfig.setStorePathCommitLog(baseDir + File.separator + "commitlog");
+        messageStoreConfig.setMappedFileSizeCommitLog(1024 * 1024 * 64);
+        messageStoreConfig.setMappedFileSizeConsumeQueue(1024 * 1024 * 6);
+        messageStoreConfig.setMaxHashSlotNum(100000);
+        messageStoreConfig.setMaxIndexNum(100000 * 4);
+        return messageStoreConfig;
+    }
+
+    /**
+     * Create and load a store without starting its background services, so that benchmarks can
+     * drive the individual components synchronously.
+     */
+    public static DefaultMessageStore createLoadedStore(MessageStoreConfig messageStoreConfig) throws Exception {
+        DefaultMessageStore messageStore = new DefaultMessageStore(messageStoreConfig, null, null, null);
+        if (!messageStore.load()) {
+            throw new IllegalStateException("load message store failed, dir: " + messageStoreConfig.getStorePathRootDir());
+        }
+        return messageStore;
+    }
+
+    public static byte[] buildBody(int bodySize) {
+        byte[] body = new byte[bodySize];
+        new Random(bodySize).nextBytes(body);
+        return body;
+    }
+
+    public static MessageExtBrokerInner buildMessage(int queueId, byte[] body) {
+        MessageExtBrokerInner msg = new MessageExtBrokerInner();
+        msg.setTopic(TOPIC);
+        msg.setTags("TagA");
+        msg.setKeys("OrderID-" + queueId);
+        msg.setBody(body);
+        msg.setQueueId(queueId);
+        msg.setSysFlag(0);
+        msg.setBornTimestamp(System.currentTimeMillis());
+        msg.setStoreTimestamp(System.currentTimeMillis());
+        msg.setBornHost(BORN_HOST);
+        msg.setStoreHost(STORE_HOST);
+        msg.setBodyCRC(UtilAll.crc32(body));
+        msg.setPropertiesString(MessageDecoder.messageProperties2String(msg.getProperties()));
+        msg.setTagsCode(MessageExtBrokerInner.tagsString2tagsCode(msg.getTags()));
+        return msg;
+    }
+
+    public static MessageExtBatch buildBatchMessage(int queueId, byte[] body, int batchSize) {
+        List<Message> messages = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            Message message = new Message(TOPIC, "TagA", "OrderID-" + i, body);
+            messages.add(message);
+        }
+        MessageExtBatch messageExtBatch = new MessageExtBatch();
+        messageExtBatch.setTopic(TOPIC);
+        messageExtBatch.setQueueId(queueId);
+        messageExtBatch.setSysFlag(0);
+        messageExtBatch.setBornTimestamp(System.currentTimeMillis());
+        messageExtBatch.setStoreTimestamp(System.currentTimeMillis());
+        messageExtBatch.setBornHost(BORN_HOST);
+        messageExtBatch.setStoreHost(STORE_HOST);
+        messageExtBatch.setBody(MessageDecoder.encodeMessages(messages));
+        return messageExtBatch;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store.index;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.store.StoreBenchmarkUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link IndexFile#putKey} and {@link IndexFile#selectPhyOffset} for hit and miss lookups.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class IndexFileBenchmark {
+    private static final int HASH_SLOT_NUM = 500000;
+    private static final int INDEX_NUM = HASH_SLOT_NUM * 4;
+    private static final int LOOKUP_KEY_NUM = 1 << 16;
+
+    @Param({"16", "64"})
+    private int keyLength;
+
+    private String baseDir;
+    private IndexFile writeFile;
+    private IndexFile readFile;
+    private String[] lookupKeys;
+    private String[] missingKeys;
+    private int fileSeq;
+    private long phyOffset;
+    private int lookupIndex;
+    private long beginTimestamp;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        baseDir = StoreBenchmarkUtil.createBaseDir();
+        lookupKeys = new String[LOOKUP_KEY_NUM];
+        missingKeys = new String[LOOKUP_KEY_NUM];
+        beginTimestamp = System.currentTimeMillis();
+
+        readFile = newIndexFile();
+        for (int i = 0; i < LOOKUP_KEY_NUM; i++) {
+            lookupKeys[i] = buildKey("hit", i);
+            missingKeys[i] = buildKey("miss", i);
+            readFile.putKey(lookupKeys[i], i * 256L, beginTimestamp + i);
+        }
+        writeFile = newIndexFile();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        readFile.destroy(0);
+        writeFile.destroy(0);
+        StoreBenchmarkUtil.deleteBaseDir(baseDir);
+    }
+
+    @Benchmark
+    public boolean putKey() throws Exception {
+        if (writeFile.isWriteFull()) {
+            writeFile.destroy(0);
+            writeFile = newIndexFile();
+        }
+        phyOffset += 256;
+        return writeFile.putKey(lookupKeys[lookupIndex++ & (LOOKUP_KEY_NUM - 1)], phyOffset, System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public List<Long> selectPhyOffsetHit() {
+        List<Long> phyOffsets = new ArrayList<>(4);
+        readFile.selectPhyOffset(phyOffsets, lookupKeys[lookupIndex++ & (LOOKUP_KEY_NUM - 1)], 4, 0, Long.MAX_VALUE);
+        return phyOffsets;
+    }
+
+    @Benchmark
+    public List<Long> selectPhyOffsetMiss() {
+        List<Long> phyOffsets = new ArrayList<>(4);
+        readFile.selectPhyOffset(phyOffsets, missingKeys[lookupIndex++ & (LOOKUP_KEY_NUM - 1)], 4, 0, Long.MAX_VALUE);
+        return phyOffsets;
+    }
+
+    private IndexFile newIndexFile() throws Exception {
+        String fileName = baseDir + File.separator + "index" + File.separator + String.format("%020d", fileSeq++);
+        return new IndexFile(fileName, HASH_SLOT_NUM, INDEX_NUM, 0, 0);
+    }
+
+    private String buildKey(String prefix, int i) {
+        StringBuilder sb = new StringBuilder(keyLength);
+        sb.append(StoreBenchmarkUtil.TOPIC).append('#').append(prefix).append(i);
+        while (sb.length() < keyLength) {
+            sb.append('0');
+        }
+        return sb.toString();
+    }
+}
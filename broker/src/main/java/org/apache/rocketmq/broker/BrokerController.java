@@ -273,6 +273,12 @@ public class BrokerController {
             this.remotingServer = new NettyRemotingServer(this.nettyServerConfig, this.clientHousekeepingService);
             NettyServerConfig fastConfig = (NettyServerConfig) this.nettyServerConfig.clone();
             fastConfig.setListenPort(nettyServerConfig.getListenPort() - 2);
+            if (this.brokerConfig.getFastServerSelectorThreads() > 0) {
+                fastConfig.setServerSelectorThreads(this.brokerConfig.getFastServerSelectorThreads());
+            }
+            if (this.brokerConfig.getFastServerWorkerThreads() > 0) {
+                fastConfig.setServerWorkerThreads(this.brokerConfig.getFastServerWorkerThreads());
+            }
             this.fastRemotingServer = new NettyRemotingServer(fastConfig, this.clientHousekeepingService);
             this.sendMessageExecutor = new BrokerFixedThreadPoolExecutor(
                 this.brokerConfig.getSendMessageThreadPoolNums(),
@@ -490,6 +496,9 @@ public class BrokerController {
             this.transactionalMessageService = new TransactionalMessageServiceImpl(new TransactionalMessageBridge(this, this.getMessageStore()));
             log.warn("Load default transaction message hook service: {}", TransactionalMessageServiceImpl.class.getSimpleName());
         }
+        if (!this.transactionalMessageService.open()) {
+            log.warn("Open transaction message service failed: {}", this.transactionalMessageService.getClass().getSimpleName());
+        }
         this.transactionalMessageCheckListener = ServiceProvider.loadClass(ServiceProvider.TRANSACTION_LISTENER_ID, AbstractTransactionalMessageCheckListener.class);
         if (null == this.transactionalMessageCheckListener) {
             this.transactionalMessageCheckListener = new DefaultTransactionalMessageCheckListener();
@@ -613,6 +622,8 @@ public class BrokerController {
          */
         this.remotingServer.registerProcessor(RequestCode.END_TRANSACTION, new EndTransactionProcessor(this), this.endTransactionExecutor);
         this.fastRemotingServer.registerProcessor(RequestCode.END_TRANSACTION, new EndTransactionProcessor(this), this.endTransactionExecutor);
+        this.remotingServer.registerProcessor(RequestCode.END_TRANSACTION_BATCH, new EndTransactionProcessor(this), this.endTransactionExecutor);
+        this.fastRemotingServer.registerProcessor(RequestCode.END_TRANSACTION_BATCH, new EndTransactionProcessor(this), this.endTransactionExecutor);
 
         /**
          * Default
@@ -836,6 +847,10 @@ public class BrokerController {
         if (this.endTransactionExecutor != null) {
             this.endTransactionExecutor.shutdown();
         }
+
+        if (this.transactionalMessageService != null) {
+            this.transactionalMessageService.close();
+        }
     }
 
     private void unregisterBrokerAll() {
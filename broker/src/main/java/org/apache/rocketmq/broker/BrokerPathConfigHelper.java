@@ -50,4 +50,8 @@ public class BrokerPathConfigHelper {
     public static String getConsumerFilterPath(final String rootDir) {
         return rootDir + File.separator + "config" + File.separator + "consumerFilter.json";
     }
+
+    public static String getTransactionOpIndexPath(final String rootDir) {
+        return rootDir + File.separator + "transaction" + File.separator + "opindex";
+    }
 }
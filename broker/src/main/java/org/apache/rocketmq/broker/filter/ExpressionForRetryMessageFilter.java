@@ -36,6 +36,16 @@ public class ExpressionForRetryMessageFilter extends ExpressionMessageFilter {
         super(subscriptionData, consumerFilterData, consumerFilterManager);
     }
 
+    @Override
+    public boolean isTagsCodeFilter() {
+        if (subscriptionData != null && !subscriptionData.isClassFilterMode()
+            && subscriptionData.getTopic().startsWith(MixAll.RETRY_GROUP_TOPIC_PREFIX)) {
+            // the real filter data is only known from the properties of the message
+            return false;
+        }
+        return super.isTagsCodeFilter();
+    }
+
     @Override
     public boolean isMatchedByCommitLog(ByteBuffer msgBuffer, Map<String, String> properties) {
         if (subscriptionData == null) {
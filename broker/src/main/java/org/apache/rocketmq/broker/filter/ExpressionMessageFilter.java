@@ -29,7 +29,9 @@ import org.apache.rocketmq.store.ConsumeQueueExt;
 import org.apache.rocketmq.store.MessageFilter;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.Set;
 
 public class ExpressionMessageFilter implements MessageFilter {
 
@@ -39,12 +41,17 @@ public class ExpressionMessageFilter implements MessageFilter {
     protected final ConsumerFilterData consumerFilterData;
     protected final ConsumerFilterManager consumerFilterManager;
     protected final boolean bloomDataValid;
+    /**
+     * Sorted tags codes of a tag subscription, null if matching all.
+     */
+    private final int[] sortedTagsCodes;
 
     public ExpressionMessageFilter(SubscriptionData subscriptionData, ConsumerFilterData consumerFilterData,
         ConsumerFilterManager consumerFilterManager) {
         this.subscriptionData = subscriptionData;
         this.consumerFilterData = consumerFilterData;
         this.consumerFilterManager = consumerFilterManager;
+        this.sortedTagsCodes = buildSortedTagsCodes(subscriptionData);
         if (consumerFilterData == null) {
             bloomDataValid = false;
             return;
@@ -114,6 +121,33 @@ public class ExpressionMessageFilter implements MessageFilter {
         return true;
     }
 
+    @Override
+    public boolean isTagsCodeFilter() {
+        return subscriptionData == null || subscriptionData.isClassFilterMode()
+            || ExpressionType.isTagType(subscriptionData.getExpressionType());
+    }
+
+    @Override
+    public boolean isMatchedByTagsCode(long tagsCode) {
+        return this.sortedTagsCodes == null || Arrays.binarySearch(this.sortedTagsCodes, (int) tagsCode) >= 0;
+    }
+
+    private static int[] buildSortedTagsCodes(SubscriptionData subscriptionData) {
+        if (subscriptionData == null || subscriptionData.isClassFilterMode()
+            || !ExpressionType.isTagType(subscriptionData.getExpressionType())
+            || SubscriptionData.SUB_ALL.equals(subscriptionData.getSubString())) {
+            return null;
+        }
+        Set<Integer> codeSet = subscriptionData.getCodeSet();
+        int[] tagsCodes = new int[codeSet.size()];
+        int i = 0;
+        for (Integer code : codeSet) {
+            tagsCodes[i++] = code;
+        }
+        Arrays.sort(tagsCodes);
+        return tagsCodes;
+    }
+
     @Override
     public boolean isMatchedByCommitLog(ByteBuffer msgBuffer, Map<String, String> properties) {
         if (subscriptionData == null) {
@@ -16,6 +16,7 @@
  */
 package org.apache.rocketmq.broker.longpolling;
 
+import java.util.Map;
 import org.apache.rocketmq.broker.BrokerController;
 import org.apache.rocketmq.common.MixAll;
 import org.apache.rocketmq.common.constant.LoggerName;
@@ -59,4 +60,14 @@ public class LmqPullRequestHoldService extends PullRequestHoldService {
             }
         }
     }
+
+    @Override
+    protected void cleanIdlePullRequest() {
+        for (Map.Entry<String, ManyPullRequest> entry : pullRequestTable.entrySet()) {
+            ManyPullRequest mpr = entry.getValue();
+            if (MixAll.isLmq(entry.getKey()) && mpr.getPullRequestList().isEmpty()) {
+                pullRequestTable.remove(entry.getKey(), mpr);
+            }
+        }
+    }
 }
@@ -16,26 +16,49 @@
  */
 package org.apache.rocketmq.broker.longpolling;
 
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import org.apache.rocketmq.broker.BrokerController;
 import org.apache.rocketmq.common.ServiceThread;
 import org.apache.rocketmq.common.SystemClock;
+import org.apache.rocketmq.common.ThreadFactoryImpl;
 import org.apache.rocketmq.common.constant.LoggerName;
 import org.apache.rocketmq.logging.InternalLogger;
 import org.apache.rocketmq.logging.InternalLoggerFactory;
 import org.apache.rocketmq.store.ConsumeQueueExt;
+import org.apache.rocketmq.store.config.BrokerRole;
 
+/**
+ * Hold the suspended pull requests by queue. They are woken up by {@link NotifyMessageArrivingListener} when a
+ * message of their queue arrives, or by a hashed wheel timer when they time out, so the idle queues cost nothing.
+ * The whole table is only scanned when the store does not notify, i.e. on slave or when long polling is disabled.
+ */
 public class PullRequestHoldService extends ServiceThread {
     private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.BROKER_LOGGER_NAME);
     protected static final String TOPIC_QUEUEID_SEPARATOR = "@";
+    private static final long TIMER_TICK_MILLIS = 50;
+    private static final long STATS_INTERVAL_MILLIS = 60 * 1000;
     protected final BrokerController brokerController;
     private final SystemClock systemClock = new SystemClock();
     protected ConcurrentMap<String/* topic@queueId */, ManyPullRequest> pullRequestTable =
         new ConcurrentHashMap<String, ManyPullRequest>(1024);
+    private final HashedWheelTimer timeoutTimer = new HashedWheelTimer(
+        new ThreadFactoryImpl("PullRequestHoldTimer_"), TIMER_TICK_MILLIS, TimeUnit.MILLISECONDS, 512);
+
+    private final AtomicLong suspendedRequestCount = new AtomicLong(0);
+    private final LongAdder wakeupTimes = new LongAdder();
+    private final LongAdder wakeupLatencyTotal = new LongAdder();
+    private final AtomicLong wakeupLatencyMax = new AtomicLong(0);
+    private long lastStatsTimestamp = System.currentTimeMillis();
 
     public PullRequestHoldService(final BrokerController brokerController) {
         this.brokerController = brokerController;
@@ -52,7 +75,16 @@ public class PullRequestHoldService extends ServiceThread {
             }
         }
 
+        this.suspendedRequestCount.incrementAndGet();
         mpr.addPullRequest(pullRequest);
+        pullRequest.setTimeout(this.timeoutTimer.newTimeout(
+            new PullRequestTimeoutTask(mpr, pullRequest), pullRequest.getTimeoutMillis(), TimeUnit.MILLISECONDS));
+
+        // the message may have arrived between the pull and the suspending, its notification found nothing to wake up
+        final long offset = this.brokerController.getMessageStore().getMaxOffsetInQueue(topic, queueId);
+        if (offset > pullRequest.getPullFromThisOffset()) {
+            this.notifyMessageArriving(topic, queueId, offset);
+        }
     }
 
     private String buildKey(final String topic, final int queueId) {
@@ -75,11 +107,17 @@ public class PullRequestHoldService extends ServiceThread {
                 }
 
                 long beginLockTimestamp = this.systemClock.now();
-                this.checkHoldRequest();
+                if (this.isMessageArrivingNotified()) {
+                    this.cleanIdlePullRequest();
+                } else {
+                    this.checkHoldRequest();
+                }
                 long costTime = this.systemClock.now() - beginLockTimestamp;
                 if (costTime > 5 * 1000) {
                     log.info("[NOTIFYME] check hold request cost {} ms.", costTime);
                 }
+
+                this.printStats();
             } catch (Throwable e) {
                 log.warn(this.getServiceName() + " service has exception. ", e);
             }
@@ -88,11 +126,44 @@ public class PullRequestHoldService extends ServiceThread {
         log.info("{} service end", this.getServiceName());
     }
 
+    @Override
+    public void shutdown(final boolean interrupt) {
+        super.shutdown(interrupt);
+        this.timeoutTimer.stop();
+    }
+
     @Override
     public String getServiceName() {
         return PullRequestHoldService.class.getSimpleName();
     }
 
+    /**
+     * Same condition as the store uses to call {@link NotifyMessageArrivingListener}.
+     */
+    protected boolean isMessageArrivingNotified() {
+        return this.brokerController.getMessageStoreConfig().getBrokerRole() != BrokerRole.SLAVE
+            && this.brokerController.getBrokerConfig().isLongPollingEnable();
+    }
+
+    /**
+     * Remove the entries of the queues nobody waits on, nothing to do by default as the queues are reused.
+     */
+    protected void cleanIdlePullRequest() {
+    }
+
+    private void printStats() {
+        long now = System.currentTimeMillis();
+        if (now - this.lastStatsTimestamp < STATS_INTERVAL_MILLIS) {
+            return;
+        }
+        this.lastStatsTimestamp = now;
+        long times = this.wakeupTimes.sumThenReset();
+        long latencyTotal = this.wakeupLatencyTotal.sumThenReset();
+        long latencyMax = this.wakeupLatencyMax.getAndSet(0);
+        log.info("[NOTIFYME] suspended pull requests: {}, woken by message arriving: {}, avg wake latency: {} ms, max wake latency: {} ms",
+            this.suspendedRequestCount.get(), times, times > 0 ? latencyTotal / times : 0, latencyMax);
+    }
+
     protected void checkHoldRequest() {
         for (String key : this.pullRequestTable.keySet()) {
             String[] kArray = key.split(TOPIC_QUEUEID_SEPARATOR);
@@ -137,23 +208,17 @@ public class PullRequestHoldService extends ServiceThread {
                         }
 
                         if (match) {
-                            try {
-                                this.brokerController.getPullMessageProcessor().executeRequestWhenWakeup(request.getClientChannel(),
-                                    request.getRequestCommand());
-                            } catch (Throwable e) {
-                                log.error("execute request when wakeup failed.", e);
+                            if (msgStoreTime > 0) {
+                                this.recordWakeupLatency(System.currentTimeMillis() - msgStoreTime);
                             }
+                            this.wakeupPullRequest(request);
                             continue;
                         }
                     }
 
-                    if (System.currentTimeMillis() >= (request.getSuspendTimestamp() + request.getTimeoutMillis())) {
-                        try {
-                            this.brokerController.getPullMessageProcessor().executeRequestWhenWakeup(request.getClientChannel(),
-                                request.getRequestCommand());
-                        } catch (Throwable e) {
-                            log.error("execute request when wakeup failed.", e);
-                        }
+                    if (request.isTimeoutExpired()
+                        || System.currentTimeMillis() >= (request.getSuspendTimestamp() + request.getTimeoutMillis())) {
+                        this.wakeupPullRequest(request);
                         continue;
                     }
 
@@ -162,8 +227,71 @@ public class PullRequestHoldService extends ServiceThread {
 
                 if (!replayList.isEmpty()) {
                     mpr.addPullRequest(replayList);
+                    // the timer may have fired while they were out of the list
+                    for (PullRequest request : replayList) {
+                        if (request.isTimeoutExpired() && mpr.removePullRequest(request)) {
+                            this.wakeupPullRequest(request);
+                        }
+                    }
                 }
             }
         }
     }
+
+    private void wakeupPullRequest(final PullRequest request) {
+        Timeout timeout = request.getTimeout();
+        if (timeout != null) {
+            timeout.cancel();
+        }
+        this.suspendedRequestCount.decrementAndGet();
+        try {
+            this.brokerController.getPullMessageProcessor().executeRequestWhenWakeup(request.getClientChannel(),
+                request.getRequestCommand());
+        } catch (Throwable e) {
+            log.error("execute request when wakeup failed.", e);
+        }
+    }
+
+    private void recordWakeupLatency(final long latency) {
+        this.wakeupTimes.increment();
+        this.wakeupLatencyTotal.add(latency);
+        long max = this.wakeupLatencyMax.get();
+        while (latency > max && !this.wakeupLatencyMax.compareAndSet(max, latency)) {
+            max = this.wakeupLatencyMax.get();
+        }
+    }
+
+    public long getSuspendedRequestCount() {
+        return suspendedRequestCount.get();
+    }
+
+    public long getWakeupTimes() {
+        return wakeupTimes.sum();
+    }
+
+    public long getWakeupLatencyTotal() {
+        return wakeupLatencyTotal.sum();
+    }
+
+    public long getWakeupLatencyMax() {
+        return wakeupLatencyMax.get();
+    }
+
+    class PullRequestTimeoutTask implements TimerTask {
+        private final ManyPullRequest manyPullRequest;
+        private final PullRequest pullRequest;
+
+        PullRequestTimeoutTask(final ManyPullRequest manyPullRequest, final PullRequest pullRequest) {
+            this.manyPullRequest = manyPullRequest;
+            this.pullRequest = pullRequest;
+        }
+
+        @Override
+        public void run(final Timeout timeout) {
+            // not in the list means it is being woken up by a message arriving
+            if (this.manyPullRequest.removePullRequest(this.pullRequest)) {
+                PullRequestHoldService.this.wakeupPullRequest(this.pullRequest);
+            }
+        }
+    }
 }
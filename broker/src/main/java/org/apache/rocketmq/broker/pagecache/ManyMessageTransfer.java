@@ -14,38 +14,63 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
+
 package org.apache.rocketmq.broker.pagecache;
 
 import io.netty.channel.FileRegion;
 import io.netty.util.AbstractReferenceCounted;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.channels.WritableByteChannel;
 import java.util.List;
 import org.apache.rocketmq.store.GetMessageResult;
-
+import org.apache.rocketmq.store.MappedFile;
+import org.apache.rocketmq.store.SelectMappedBufferResult;
+
+/**
+ * Transfers the selected mapped buffers of a {@link GetMessageResult} rather than its messages one by one, so a run
+ * of messages read from one commit log range costs one write. When the target is a socket and the buffers are backed
+ * by a mapped file, physically contiguous buffers of the same file are merged and sent by
+ * {@link FileChannel#transferTo}; the others go out by a gathering write.
+ */
 public class ManyMessageTransfer extends AbstractReferenceCounted implements FileRegion {
     private final ByteBuffer byteBufferHeader;
     private final GetMessageResult getMessageResult;
+    private final boolean transferByFileChannel;
 
     /**
      * Bytes which were transferred already.
      */
     private long transferred;
 
+    /**
+     * Bytes of the messages which were transferred already.
+     */
+    private long messageTransferred;
+
+    /**
+     * Index of the first mapped buffer not transferred completely, and the bytes of it transferred already.
+     */
+    private int bufferIndex;
+    private int bufferTransferred;
+
     public ManyMessageTransfer(ByteBuffer byteBufferHeader, GetMessageResult getMessageResult) {
+        this(byteBufferHeader, getMessageResult, true);
+    }
+
+    public ManyMessageTransfer(ByteBuffer byteBufferHeader, GetMessageResult getMessageResult,
+        boolean transferByFileChannel) {
         this.byteBufferHeader = byteBufferHeader;
         this.getMessageResult = getMessageResult;
+        this.transferByFileChannel = transferByFileChannel;
     }
 
     @Override
     public long position() {
-        int pos = byteBufferHeader.position();
-        List<ByteBuffer> messageBufferList = this.getMessageResult.getMessageBufferList();
-        for (ByteBuffer bb : messageBufferList) {
-            pos += bb.position();
-        }
-        return pos;
+        return byteBufferHeader.position() + messageTransferred;
     }
 
     @Override
@@ -66,19 +91,95 @@ public class ManyMessageTransfer extends AbstractReferenceCounted implements Fil
     @Override
     public long transferTo(WritableByteChannel target, long position) throws IOException {
         if (this.byteBufferHeader.hasRemaining()) {
-            transferred += target.write(this.byteBufferHeader);
-            return transferred;
+            long written = target.write(this.byteBufferHeader);
+            transferred += written;
+            return written;
+        }
+
+        List<SelectMappedBufferResult> messageMapedList = this.getMessageResult.getMessageMapedList();
+        if (this.bufferIndex >= messageMapedList.size()) {
+            return 0;
+        }
+
+        long written;
+        SelectMappedBufferResult first = messageMapedList.get(this.bufferIndex);
+        if (this.isFileRegion(first, target)) {
+            written = this.transferFileRegion(first.getMappedFile(), messageMapedList, target);
         } else {
-            List<ByteBuffer> messageBufferList = this.getMessageResult.getMessageBufferList();
-            for (ByteBuffer bb : messageBufferList) {
-                if (bb.hasRemaining()) {
-                    transferred += target.write(bb);
-                    return transferred;
-                }
+            written = this.transferBuffers(messageMapedList, target);
+        }
+
+        this.skip(messageMapedList, written);
+        messageTransferred += written;
+        transferred += written;
+        return written;
+    }
+
+    /**
+     * Send the buffers of the mapped file following one another from the current one with a single
+     * {@link FileChannel#transferTo}, which avoids touching the mapped memory in user space.
+     */
+    private long transferFileRegion(MappedFile mappedFile, List<SelectMappedBufferResult> messageMapedList,
+        WritableByteChannel target) throws IOException {
+        SelectMappedBufferResult first = messageMapedList.get(this.bufferIndex);
+        long count = first.getSize() - this.bufferTransferred;
+        long nextOffset = first.getStartOffset() + first.getSize();
+        for (int i = this.bufferIndex + 1; i < messageMapedList.size(); i++) {
+            SelectMappedBufferResult next = messageMapedList.get(i);
+            if (next.getMappedFile() != mappedFile || next.getStartOffset() != nextOffset) {
+                break;
             }
+            count += next.getSize();
+            nextOffset += next.getSize();
+        }
+
+        long filePosition = first.getStartOffset() - mappedFile.getFileFromOffset() + this.bufferTransferred;
+        return mappedFile.getFileChannel().transferTo(filePosition, count, target);
+    }
+
+    /**
+     * Write the buffers which could not be sent from a file channel, by one gathering write if the target allows.
+     */
+    private long transferBuffers(List<SelectMappedBufferResult> messageMapedList,
+        WritableByteChannel target) throws IOException {
+        if (!(target instanceof GatheringByteChannel)) {
+            return target.write(messageMapedList.get(this.bufferIndex).getByteBuffer());
         }
 
-        return 0;
+        int end = this.bufferIndex + 1;
+        while (end < messageMapedList.size() && !this.isFileRegion(messageMapedList.get(end), target)) {
+            end++;
+        }
+        ByteBuffer[] buffers = new ByteBuffer[end - this.bufferIndex];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = messageMapedList.get(this.bufferIndex + i).getByteBuffer();
+        }
+        return ((GatheringByteChannel) target).write(buffers);
+    }
+
+    private boolean isFileRegion(SelectMappedBufferResult result, WritableByteChannel target) {
+        MappedFile mappedFile = result.getMappedFile();
+        return this.transferByFileChannel && target instanceof SocketChannel
+            && mappedFile != null && mappedFile.getFileChannel() != null;
+    }
+
+    /**
+     * Move the cursor forward by the written bytes, the written buffers of a file region are left untouched, while
+     * the ones written directly have their positions moved by the channel already.
+     */
+    private void skip(List<SelectMappedBufferResult> messageMapedList, long written) {
+        long remaining = written;
+        while (remaining > 0 && this.bufferIndex < messageMapedList.size()) {
+            int left = messageMapedList.get(this.bufferIndex).getSize() - this.bufferTransferred;
+            if (remaining >= left) {
+                remaining -= left;
+                this.bufferIndex++;
+                this.bufferTransferred = 0;
+            } else {
+                this.bufferTransferred += (int) remaining;
+                remaining = 0;
+            }
+        }
     }
 
     @Override
@@ -29,6 +29,7 @@ import org.apache.rocketmq.broker.filter.ExpressionMessageFilter;
 import org.apache.rocketmq.common.protocol.body.ProducerTableInfo;
 import org.apache.rocketmq.common.protocol.header.GetAllProducerInfoRequestHeader;
 import org.apache.rocketmq.common.topic.TopicValidator;
+import org.apache.rocketmq.broker.transaction.queue.TransactionalMessageServiceImpl;
 import org.apache.rocketmq.broker.transaction.queue.TransactionalMessageUtil;
 import org.apache.rocketmq.common.AclConfig;
 import org.apache.rocketmq.common.MQVersion;
@@ -1477,6 +1478,13 @@ public class AdminBrokerProcessor extends AsyncNettyRequestProcessor implements
             String.valueOf(this.brokerController.getBrokerConfig().getQueryThreadPoolQueueCapacity()));
 
         runtimeInfo.put("EndTransactionQueueSize", String.valueOf(this.brokerController.getEndTransactionThreadPoolQueue().size()));
+        if (this.brokerController.getTransactionalMessageService() instanceof TransactionalMessageServiceImpl) {
+            TransactionalMessageServiceImpl transactionalMessageService =
+                (TransactionalMessageServiceImpl) this.brokerController.getTransactionalMessageService();
+            runtimeInfo.put("transactionCheckLag", String.valueOf(transactionalMessageService.getCheckLag()));
+            runtimeInfo.put("transactionPutBackTimes", String.valueOf(transactionalMessageService.getPutBackTimes()));
+            runtimeInfo.put("transactionOpIndexSkipTimes", String.valueOf(transactionalMessageService.getOpIndexSkipTimes()));
+        }
         runtimeInfo.put("EndTransactionThreadPoolQueueCapacity",
             String.valueOf(this.brokerController.getBrokerConfig().getEndTransactionPoolQueueCapacity()));
 
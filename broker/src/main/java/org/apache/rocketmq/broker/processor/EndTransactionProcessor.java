@@ -17,6 +17,10 @@
 package org.apache.rocketmq.broker.processor;
 
 import io.netty.channel.ChannelHandlerContext;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import org.apache.rocketmq.broker.BrokerController;
 import org.apache.rocketmq.broker.transaction.OperationResult;
 import org.apache.rocketmq.common.TopicFilterType;
@@ -25,7 +29,9 @@ import org.apache.rocketmq.common.message.MessageAccessor;
 import org.apache.rocketmq.common.message.MessageConst;
 import org.apache.rocketmq.common.message.MessageDecoder;
 import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.protocol.RequestCode;
 import org.apache.rocketmq.common.protocol.ResponseCode;
+import org.apache.rocketmq.common.protocol.body.EndTransactionBatchRequestBody;
 import org.apache.rocketmq.common.protocol.header.EndTransactionRequestHeader;
 import org.apache.rocketmq.common.sysflag.MessageSysFlag;
 import org.apache.rocketmq.logging.InternalLogger;
@@ -53,6 +59,10 @@ public class EndTransactionProcessor extends AsyncNettyRequestProcessor implemen
     @Override
     public RemotingCommand processRequest(ChannelHandlerContext ctx, RemotingCommand request) throws
         RemotingCommandException {
+        if (request.getCode() == RequestCode.END_TRANSACTION_BATCH) {
+            return this.processBatchRequest(request);
+        }
+
         final RemotingCommand response = RemotingCommand.createResponseCommand(null);
         final EndTransactionRequestHeader requestHeader =
             (EndTransactionRequestHeader) request.decodeCommandCustomHeader(EndTransactionRequestHeader.class);
@@ -128,12 +138,7 @@ public class EndTransactionProcessor extends AsyncNettyRequestProcessor implemen
             if (result.getResponseCode() == ResponseCode.SUCCESS) {
                 RemotingCommand res = checkPrepareMessage(result.getPrepareMessage(), requestHeader);
                 if (res.getCode() == ResponseCode.SUCCESS) {
-                    MessageExtBrokerInner msgInner = endMessageTransaction(result.getPrepareMessage());
-                    msgInner.setSysFlag(MessageSysFlag.resetTransactionValue(msgInner.getSysFlag(), requestHeader.getCommitOrRollback()));
-                    msgInner.setQueueOffset(requestHeader.getTranStateTableOffset());
-                    msgInner.setPreparedTransactionOffset(requestHeader.getCommitLogOffset());
-                    msgInner.setStoreTimestamp(result.getPrepareMessage().getStoreTimestamp());
-                    MessageAccessor.clearProperty(msgInner, MessageConst.PROPERTY_TRANSACTION_PREPARED);
+                    MessageExtBrokerInner msgInner = buildCommitMessage(result.getPrepareMessage(), requestHeader);
                     RemotingCommand sendResult = sendFinalMessage(msgInner);
                     if (sendResult.getCode() == ResponseCode.SUCCESS) {
                         this.brokerController.getTransactionalMessageService().deletePrepareMessage(result.getPrepareMessage());
@@ -157,11 +162,132 @@ public class EndTransactionProcessor extends AsyncNettyRequestProcessor implemen
         return response;
     }
 
+    /**
+     * End the transactions of a batch. The half messages are looked up in the order of commit log offset, the real
+     * messages of the commits are put together, then the op messages of all the ended ones are put in one batch for
+     * every op queue.
+     */
+    private RemotingCommand processBatchRequest(RemotingCommand request) {
+        final RemotingCommand response = RemotingCommand.createResponseCommand(null);
+        if (BrokerRole.SLAVE == brokerController.getMessageStoreConfig().getBrokerRole()) {
+            response.setCode(ResponseCode.SLAVE_NOT_AVAILABLE);
+            LOGGER.warn("Message store is slave mode, so end transaction is forbidden. ");
+            return response;
+        }
+
+        EndTransactionBatchRequestBody requestBody = request.getBody() == null ? null
+            : EndTransactionBatchRequestBody.decode(request.getBody(), EndTransactionBatchRequestBody.class);
+        if (requestBody == null || requestBody.getRequestList() == null) {
+            response.setCode(ResponseCode.SYSTEM_ERROR);
+            response.setRemark("The end transaction batch is empty");
+            return response;
+        }
+
+        List<EndTransactionRequestHeader> requestList = new ArrayList<>(requestBody.getRequestList().size());
+        for (EndTransactionRequestHeader requestHeader : requestBody.getRequestList()) {
+            try {
+                requestHeader.checkFields();
+            } catch (Exception e) {
+                LOGGER.warn("Illegal end transaction request in batch: {}", requestHeader);
+                continue;
+            }
+            if (requestHeader.getCommitLogOffset() == null || requestHeader.getTranStateTableOffset() == null
+                || requestHeader.getProducerGroup() == null) {
+                LOGGER.warn("Illegal end transaction request in batch: {}", requestHeader);
+                continue;
+            }
+            requestList.add(requestHeader);
+        }
+        requestList.sort(Comparator.comparing(EndTransactionRequestHeader::getCommitLogOffset));
+
+        List<MessageExt> endedList = new ArrayList<>(requestList.size());
+        List<MessageExt> committingList = new ArrayList<>();
+        List<CompletableFuture<PutMessageResult>> committingFutures = new ArrayList<>();
+        for (EndTransactionRequestHeader requestHeader : requestList) {
+            OperationResult result;
+            if (MessageSysFlag.TRANSACTION_COMMIT_TYPE == requestHeader.getCommitOrRollback()) {
+                result = this.brokerController.getTransactionalMessageService().commitMessage(requestHeader);
+            } else if (MessageSysFlag.TRANSACTION_ROLLBACK_TYPE == requestHeader.getCommitOrRollback()) {
+                result = this.brokerController.getTransactionalMessageService().rollbackMessage(requestHeader);
+            } else {
+                LOGGER.warn("The producer end transaction in batch, and it's pending status. RequestHeader: {}",
+                    requestHeader);
+                continue;
+            }
+            if (result.getResponseCode() != ResponseCode.SUCCESS) {
+                LOGGER.warn("End transaction in batch failed, RequestHeader: {} Remark: {}", requestHeader,
+                    result.getResponseRemark());
+                continue;
+            }
+            RemotingCommand res = checkPrepareMessage(result.getPrepareMessage(), requestHeader);
+            if (res.getCode() != ResponseCode.SUCCESS) {
+                LOGGER.warn("End transaction in batch failed, RequestHeader: {} Remark: {}", requestHeader,
+                    res.getRemark());
+                continue;
+            }
+
+            if (MessageSysFlag.TRANSACTION_COMMIT_TYPE == requestHeader.getCommitOrRollback()) {
+                MessageExtBrokerInner msgInner = buildCommitMessage(result.getPrepareMessage(), requestHeader);
+                committingList.add(result.getPrepareMessage());
+                committingFutures.add(this.brokerController.getMessageStore().asyncPutMessage(msgInner));
+            } else {
+                endedList.add(result.getPrepareMessage());
+            }
+        }
+
+        for (int i = 0; i < committingFutures.size(); i++) {
+            PutMessageResult putMessageResult;
+            try {
+                putMessageResult = committingFutures.get(i).get();
+            } catch (Exception e) {
+                LOGGER.warn("Put the committed message in batch error, msgId: {}", committingList.get(i).getMsgId(), e);
+                continue;
+            }
+            if (isPutOK(putMessageResult)) {
+                endedList.add(committingList.get(i));
+            } else {
+                LOGGER.warn("Put the committed message in batch failed, msgId: {}, result: {}",
+                    committingList.get(i).getMsgId(), putMessageResult);
+            }
+        }
+
+        this.brokerController.getTransactionalMessageService().deletePrepareMessages(endedList);
+        response.setCode(ResponseCode.SUCCESS);
+        response.setRemark(null);
+        return response;
+    }
+
     @Override
     public boolean rejectRequest() {
         return false;
     }
 
+    private MessageExtBrokerInner buildCommitMessage(MessageExt prepareMessage,
+        EndTransactionRequestHeader requestHeader) {
+        MessageExtBrokerInner msgInner = endMessageTransaction(prepareMessage);
+        msgInner.setSysFlag(MessageSysFlag.resetTransactionValue(msgInner.getSysFlag(), requestHeader.getCommitOrRollback()));
+        msgInner.setQueueOffset(requestHeader.getTranStateTableOffset());
+        msgInner.setPreparedTransactionOffset(requestHeader.getCommitLogOffset());
+        msgInner.setStoreTimestamp(prepareMessage.getStoreTimestamp());
+        MessageAccessor.clearProperty(msgInner, MessageConst.PROPERTY_TRANSACTION_PREPARED);
+        return msgInner;
+    }
+
+    private boolean isPutOK(PutMessageResult putMessageResult) {
+        if (putMessageResult == null) {
+            return false;
+        }
+        switch (putMessageResult.getPutMessageStatus()) {
+            case PUT_OK:
+            case FLUSH_DISK_TIMEOUT:
+            case FLUSH_SLAVE_TIMEOUT:
+            case SLAVE_NOT_AVAILABLE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
     private RemotingCommand checkPrepareMessage(MessageExt msgExt, EndTransactionRequestHeader requestHeader) {
         final RemotingCommand response = RemotingCommand.createResponseCommand(null);
         if (msgExt != null) {
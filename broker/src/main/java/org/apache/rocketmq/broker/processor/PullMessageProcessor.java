@@ -16,6 +16,8 @@
  */
 package org.apache.rocketmq.broker.processor;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
@@ -66,6 +68,7 @@ import org.apache.rocketmq.store.GetMessageResult;
 import org.apache.rocketmq.store.MessageExtBrokerInner;
 import org.apache.rocketmq.store.MessageFilter;
 import org.apache.rocketmq.store.PutMessageResult;
+import org.apache.rocketmq.store.SelectMappedBufferResult;
 import org.apache.rocketmq.store.config.BrokerRole;
 import org.apache.rocketmq.store.stats.BrokerStatsManager;
 
@@ -380,15 +383,16 @@ public class PullMessageProcessor extends AsyncNettyRequestProcessor implements
 
                     this.brokerController.getBrokerStatsManager().incBrokerGetNums(getMessageResult.getMessageCount());
                     if (this.brokerController.getBrokerConfig().isTransferMsgByHeap()) {
-                        final byte[] r = this.readGetMessageResult(getMessageResult, requestHeader.getConsumerGroup(), requestHeader.getTopic(), requestHeader.getQueueId());
+                        final ByteBuf r = this.readGetMessageResult(channel.alloc(), getMessageResult, requestHeader.getConsumerGroup(), requestHeader.getTopic(), requestHeader.getQueueId());
                         this.brokerController.getBrokerStatsManager().incGroupGetLatency(requestHeader.getConsumerGroup(),
                             requestHeader.getTopic(), requestHeader.getQueueId(),
                             (int) (this.brokerController.getMessageStore().now() - beginTimeMills));
-                        response.setBody(r);
+                        response.setBodyBuffer(r);
                     } else {
                         try {
                             FileRegion fileRegion =
-                                new ManyMessageTransfer(response.encodeHeader(getMessageResult.getBufferTotalSize()), getMessageResult);
+                                new ManyMessageTransfer(response.encodeHeader(getMessageResult.getBufferTotalSize()), getMessageResult,
+                                    this.brokerController.getBrokerConfig().isTransferMsgByFileChannel());
                             channel.writeAndFlush(fileRegion).addListener(new ChannelFutureListener() {
                                 @Override
                                 public void operationComplete(ChannelFuture future) throws Exception {
@@ -487,16 +491,23 @@ public class PullMessageProcessor extends AsyncNettyRequestProcessor implements
         }
     }
 
-    private byte[] readGetMessageResult(final GetMessageResult getMessageResult, final String group, final String topic,
-        final int queueId) {
-        final ByteBuffer byteBuffer = ByteBuffer.allocate(getMessageResult.getBufferTotalSize());
+    /**
+     * Copy the messages into a buffer of the allocator, which is released by the encoder once the response is written.
+     */
+    private ByteBuf readGetMessageResult(final ByteBufAllocator allocator, final GetMessageResult getMessageResult,
+        final String group, final String topic, final int queueId) {
+        final ByteBuf byteBuf = allocator.directBuffer(getMessageResult.getBufferTotalSize());
 
         long storeTimestamp = 0;
         try {
-            List<ByteBuffer> messageBufferList = getMessageResult.getMessageBufferList();
-            for (ByteBuffer bb : messageBufferList) {
+            // copy the selected ranges, each of which may hold several messages
+            for (SelectMappedBufferResult select : getMessageResult.getMessageMapedList()) {
+                byteBuf.writeBytes(select.getByteBuffer());
+            }
 
-                byteBuffer.put(bb);
+            List<ByteBuffer> messageBufferList = getMessageResult.getMessageBufferList();
+            if (!messageBufferList.isEmpty()) {
+                ByteBuffer bb = messageBufferList.get(messageBufferList.size() - 1);
                 int sysFlag = bb.getInt(MessageDecoder.SYSFLAG_POSITION);
 //                bornhost has the IPv4 ip if the MessageSysFlag.BORNHOST_V6_FLAG bit of sysFlag is 0
 //                IPv4 host = ip(4 byte) + port(4 byte); IPv6 host = ip(16 byte) + port(4 byte)
@@ -513,12 +524,15 @@ public class PullMessageProcessor extends AsyncNettyRequestProcessor implements
                     + bornhostLength; // 10 BORNHOST
                 storeTimestamp = bb.getLong(msgStoreTimePos);
             }
+        } catch (RuntimeException e) {
+            byteBuf.release();
+            throw e;
         } finally {
             getMessageResult.release();
         }
 
         this.brokerController.getBrokerStatsManager().recordDiskFallBehindTime(group, topic, queueId, this.brokerController.getMessageStore().now() - storeTimestamp);
-        return byteBuffer.array();
+        return byteBuf;
     }
 
     private void generateOffsetMovedEvent(final OffsetMovedEvent event) {
@@ -567,6 +581,8 @@ public class PullMessageProcessor extends AsyncNettyRequestProcessor implements
                                             future.channel().remoteAddress(), future.cause());
                                         log.error(request.toString());
                                         log.error(response.toString());
+                                        // e.g. the channel is closed, the body buffer never reaches the encoder
+                                        response.release();
                                     }
                                 }
                             });
@@ -574,6 +590,7 @@ public class PullMessageProcessor extends AsyncNettyRequestProcessor implements
                             log.error("processRequestWrapper process request over, but response failed", e);
                             log.error(request.toString());
                             log.error(response.toString());
+                            response.release();
                         }
                     }
                 } catch (RemotingCommandException e1) {
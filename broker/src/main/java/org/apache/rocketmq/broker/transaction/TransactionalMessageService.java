@@ -20,6 +20,7 @@ import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.common.protocol.header.EndTransactionRequestHeader;
 import org.apache.rocketmq.store.MessageExtBrokerInner;
 import org.apache.rocketmq.store.PutMessageResult;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 public interface TransactionalMessageService {
@@ -47,6 +48,20 @@ public interface TransactionalMessageService {
      */
     boolean deletePrepareMessage(MessageExt messageExt);
 
+    /**
+     * Delete prepare messages when they have been committed or rolled back, together if the service can.
+     *
+     * @param messageExts Prepare messages.
+     * @return If all of them are deleted, return true.
+     */
+    default boolean deletePrepareMessages(List<MessageExt> messageExts) {
+        boolean result = true;
+        for (MessageExt messageExt : messageExts) {
+            result &= deletePrepareMessage(messageExt);
+        }
+        return result;
+    }
+
     /**
      * Invoked to process commit prepare message.
      *
@@ -28,6 +28,7 @@ import org.apache.rocketmq.common.message.MessageClientIDSetter;
 import org.apache.rocketmq.common.message.MessageConst;
 import org.apache.rocketmq.common.message.MessageDecoder;
 import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageExtBatch;
 import org.apache.rocketmq.common.message.MessageQueue;
 import org.apache.rocketmq.common.protocol.heartbeat.SubscriptionData;
 import org.apache.rocketmq.common.sysflag.MessageSysFlag;
@@ -44,8 +45,10 @@ import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
@@ -81,6 +84,14 @@ public class TransactionalMessageBridge {
         return offset;
     }
 
+    public long fetchMinOffset(MessageQueue mq) {
+        return store.getMinOffsetInQueue(mq.getTopic(), mq.getQueueId());
+    }
+
+    public long fetchMaxOffset(MessageQueue mq) {
+        return store.getMaxOffsetInQueue(mq.getTopic(), mq.getQueueId());
+    }
+
     public Set<MessageQueue> fetchMessageQueues(String topic) {
         Set<MessageQueue> mqSet = new HashSet<>();
         TopicConfig topicConfig = selectTopicConfig(topic);
@@ -221,6 +232,52 @@ public class TransactionalMessageBridge {
         return true;
     }
 
+    /**
+     * Put the op messages of many half messages, in one batch append for every op queue.
+     *
+     * @return true if all of them are put
+     */
+    public boolean putOpMessages(List<MessageExt> messageExts, String opType) {
+        if (!TransactionalMessageUtil.REMOVETAG.equals(opType)) {
+            return true;
+        }
+
+        Map<Integer /* queueId */, List<Message>> opMessageTable = new HashMap<>();
+        for (MessageExt messageExt : messageExts) {
+            Message message = new Message(TransactionalMessageUtil.buildOpTopic(), TransactionalMessageUtil.REMOVETAG,
+                String.valueOf(messageExt.getQueueOffset()).getBytes(TransactionalMessageUtil.charset));
+            MessageClientIDSetter.setUniqID(message);
+            List<Message> messages = opMessageTable.get(messageExt.getQueueId());
+            if (messages == null) {
+                messages = new ArrayList<>();
+                opMessageTable.put(messageExt.getQueueId(), messages);
+            }
+            messages.add(message);
+        }
+
+        List<CompletableFuture<PutMessageResult>> futures = new ArrayList<>(opMessageTable.size());
+        for (Map.Entry<Integer, List<Message>> entry : opMessageTable.entrySet()) {
+            futures.add(store.asyncPutMessages(makeOpMessageBatch(entry.getValue(), entry.getKey())));
+        }
+
+        boolean result = true;
+        for (CompletableFuture<PutMessageResult> future : futures) {
+            PutMessageResult putMessageResult;
+            try {
+                putMessageResult = future.get();
+            } catch (Exception e) {
+                LOGGER.error("Put op message batch error", e);
+                result = false;
+                continue;
+            }
+            if (putMessageResult == null || putMessageResult.getPutMessageStatus() != PutMessageStatus.PUT_OK) {
+                LOGGER.error("Put op message batch failed, result: {}", putMessageResult);
+                result = false;
+            }
+        }
+        return result;
+    }
+
     public PutMessageResult putMessageReturnResult(MessageExtBrokerInner messageInner) {
         LOGGER.debug("[BUG-TO-FIX] Thread:{} msgID:{}", Thread.currentThread().getName(), messageInner.getMsgId());
         return store.putMessage(messageInner);
@@ -290,6 +347,19 @@ public class TransactionalMessageBridge {
         return msgInner;
     }
 
+    private MessageExtBatch makeOpMessageBatch(List<Message> messages, int queueId) {
+        MessageExtBatch messageExtBatch = new MessageExtBatch();
+        messageExtBatch.setTopic(TransactionalMessageUtil.buildOpTopic());
+        messageExtBatch.setQueueId(queueId);
+        messageExtBatch.setBody(MessageDecoder.encodeMessages(messages));
+        messageExtBatch.setSysFlag(0);
+        messageExtBatch.setBornTimestamp(System.currentTimeMillis());
+        messageExtBatch.setBornHost(this.storeHost);
+        messageExtBatch.setStoreHost(this.storeHost);
+        messageExtBatch.setWaitStoreMsgOK(false);
+        return messageExtBatch;
+    }
+
     private TopicConfig selectTopicConfig(String topic) {
         TopicConfig topicConfig = brokerController.getTopicConfigManager().selectTopicConfig(topic);
         if (topicConfig == null) {
@@ -16,6 +16,8 @@
  */
 package org.apache.rocketmq.broker.transaction.queue;
 
+import org.apache.rocketmq.broker.BrokerController;
+import org.apache.rocketmq.broker.BrokerPathConfigHelper;
 import org.apache.rocketmq.broker.transaction.AbstractTransactionalMessageCheckListener;
 import org.apache.rocketmq.broker.transaction.OperationResult;
 import org.apache.rocketmq.broker.transaction.TransactionalMessageService;
@@ -42,6 +44,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 public class TransactionalMessageServiceImpl implements TransactionalMessageService {
     private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.TRANSACTION_LOGGER_NAME);
@@ -60,6 +63,15 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
 
     private ConcurrentHashMap<MessageQueue, MessageQueue> opQueueMap = new ConcurrentHashMap<>();
 
+    private TransactionalOpIndex opIndex;
+
+    private final ConcurrentHashMap<Integer /* queueId */, Long /* half messages not checked yet */> checkLagTable =
+        new ConcurrentHashMap<>();
+
+    private final LongAdder putBackTimes = new LongAdder();
+
+    private final LongAdder opIndexSkipTimes = new LongAdder();
+
     @Override
     public CompletableFuture<PutMessageResult> asyncPrepareMessage(MessageExtBrokerInner messageInner) {
         return transactionalMessageBridge.asyncPutHalfMessage(messageInner);
@@ -101,6 +113,7 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
         PutMessageResult putMessageResult = putBackToHalfQueueReturnResult(msgExt);
         if (putMessageResult != null
             && putMessageResult.getPutMessageStatus() == PutMessageStatus.PUT_OK) {
+            putBackTimes.increment();
             msgExt.setQueueOffset(
                 putMessageResult.getAppendMessageResult().getLogicsOffset());
             msgExt.setCommitLogOffset(
@@ -167,6 +180,10 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
                         log.debug("Half offset {} has been committed/rolled back", i);
                         Long removedOpOffset = removeMap.remove(i);
                         doneOpOffset.add(removedOpOffset);
+                    } else if (isResolved(messageQueue.getQueueId(), i)) {
+                        // its op message is taken as done once the half offset passes it
+                        log.debug("Half offset {} has been committed/rolled back by op index", i);
+                        opIndexSkipTimes.increment();
                     } else {
                         GetResult getResult = getHalfMsg(messageQueue, i);
                         MessageExt msgExt = getResult.getMsg();
@@ -245,11 +262,20 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
                 if (newOpOffset != opOffset) {
                     transactionalMessageBridge.updateConsumeOffset(opQueue, newOpOffset);
                 }
+                checkLagTable.put(messageQueue.getQueueId(),
+                    Math.max(0, transactionalMessageBridge.fetchMaxOffset(messageQueue) - newOffset));
+                if (opIndex != null) {
+                    opIndex.deleteExpiredSegment(messageQueue.getQueueId(),
+                        transactionalMessageBridge.fetchMinOffset(messageQueue));
+                }
             }
         } catch (Throwable e) {
             log.error("Check error", e);
         }
 
+        if (opIndex != null) {
+            opIndex.flush();
+        }
     }
 
     private long getImmunityTime(String checkImmunityTimeStr, long transactionTimeout) {
@@ -301,6 +327,9 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
             log.debug("Topic: {} tags: {}, OpOffset: {}, HalfOffset: {}", opMessageExt.getTopic(),
                 opMessageExt.getTags(), opMessageExt.getQueueOffset(), queueOffset);
             if (TransactionalMessageUtil.REMOVETAG.equals(opMessageExt.getTags())) {
+                if (opIndex != null) {
+                    opIndex.mark(opQueue.getQueueId(), queueOffset);
+                }
                 if (queueOffset < miniOffset) {
                     doneOpOffset.add(opMessageExt.getQueueOffset());
                 } else {
@@ -337,6 +366,9 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
                     long tmpOpOffset = removeMap.remove(prepareQueueOffset);
                     doneOpOffset.add(tmpOpOffset);
                     return true;
+                } else if (isResolved(msgExt.getQueueId(), prepareQueueOffset)) {
+                    opIndexSkipTimes.increment();
+                    return true;
                 } else {
                     return putImmunityMsgBackToHalfQueue(msgExt);
                 }
@@ -363,6 +395,7 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
 
     private boolean putImmunityMsgBackToHalfQueue(MessageExt messageExt) {
         MessageExtBrokerInner msgInner = transactionalMessageBridge.renewImmunityHalfMessageInner(messageExt);
+        putBackTimes.increment();
         return transactionalMessageBridge.putMessage(msgInner);
     }
 
@@ -467,6 +500,7 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
     public boolean deletePrepareMessage(MessageExt msgExt) {
         if (this.transactionalMessageBridge.putOpMessage(msgExt, TransactionalMessageUtil.REMOVETAG)) {
             log.debug("Transaction op message write successfully. messageId={}, queueId={} msgExt:{}", msgExt.getMsgId(), msgExt.getQueueId(), msgExt);
+            markOpIndex(msgExt);
             return true;
         } else {
             log.error("Transaction op message write failed. messageId is {}, queueId is {}", msgExt.getMsgId(), msgExt.getQueueId());
@@ -474,6 +508,34 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
         }
     }
 
+    @Override
+    public boolean deletePrepareMessages(List<MessageExt> msgExts) {
+        if (msgExts.isEmpty()) {
+            return true;
+        }
+        if (this.transactionalMessageBridge.putOpMessages(msgExts, TransactionalMessageUtil.REMOVETAG)) {
+            log.debug("Transaction op messages write successfully. size={}", msgExts.size());
+            for (MessageExt msgExt : msgExts) {
+                markOpIndex(msgExt);
+            }
+            return true;
+        } else {
+            log.error("Transaction op messages write failed. size={}", msgExts.size());
+            return false;
+        }
+    }
+
+    private void markOpIndex(MessageExt msgExt) {
+        if (this.opIndex != null) {
+            this.opIndex.mark(msgExt.getQueueId(), msgExt.getQueueOffset());
+            // the copies put back for immunity point to the prepared one
+            String prepareQueueOffsetStr = msgExt.getUserProperty(MessageConst.PROPERTY_TRANSACTION_PREPARED_QUEUE_OFFSET);
+            if (prepareQueueOffsetStr != null) {
+                this.opIndex.mark(msgExt.getQueueId(), getLong(prepareQueueOffsetStr));
+            }
+        }
+    }
+
     @Override
     public OperationResult commitMessage(EndTransactionRequestHeader requestHeader) {
         return getHalfMessageByOffset(requestHeader.getCommitLogOffset());
@@ -484,14 +546,58 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
         return getHalfMessageByOffset(requestHeader.getCommitLogOffset());
     }
 
+    private boolean isResolved(int queueId, long halfOffset) {
+        return opIndex != null && opIndex.isResolved(queueId, halfOffset);
+    }
+
+    /**
+     * @return half messages behind the check, summed over the half queues by their last check
+     */
+    public long getCheckLag() {
+        long lag = 0;
+        for (Long queueLag : checkLagTable.values()) {
+            lag += queueLag;
+        }
+        return lag;
+    }
+
+    /**
+     * @return half messages put back to the half queue, to be checked again later
+     */
+    public long getPutBackTimes() {
+        return putBackTimes.sum();
+    }
+
+    /**
+     * @return half messages skipped by the op index
+     */
+    public long getOpIndexSkipTimes() {
+        return opIndexSkipTimes.sum();
+    }
+
     @Override
     public boolean open() {
+        BrokerController brokerController = transactionalMessageBridge.getBrokerController();
+        // without the broker, e.g. a bridge built for tests, the check goes on without the op index
+        if (brokerController == null || brokerController.getBrokerConfig() == null
+            || !brokerController.getBrokerConfig().isTransactionOpIndexEnable()) {
+            return true;
+        }
+        TransactionalOpIndex index = new TransactionalOpIndex(BrokerPathConfigHelper.getTransactionOpIndexPath(
+            brokerController.getMessageStoreConfig().getStorePathRootDir()));
+        if (!index.load()) {
+            return false;
+        }
+        this.opIndex = index;
         return true;
     }
 
     @Override
     public void close() {
-
+        // the segments stay mapped, the processors of end transaction may still mark them
+        if (opIndex != null) {
+            opIndex.flush();
+        }
     }
 
 }
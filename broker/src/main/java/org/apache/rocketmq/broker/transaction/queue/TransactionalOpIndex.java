@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.transaction.queue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.logging.InternalLogger;
+import org.apache.rocketmq.logging.InternalLoggerFactory;
+import org.apache.rocketmq.store.MappedFile;
+
+/**
+ * Bitmap of the half message offsets already committed or rolled back, one file for every {@link #SEGMENT_SIZE}
+ * offsets of a half queue, named by the first offset. The check skips the resolved half messages by it, without
+ * pulling more op messages or putting them back to the half queue.
+ * <p/>
+ * It is only a hint, the op messages are still the truth. A bit lost in a crash makes the check fall back to them.
+ */
+public class TransactionalOpIndex {
+    private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.TRANSACTION_LOGGER_NAME);
+
+    public static final int SEGMENT_SIZE = 64 * 1024;
+    private static final int SEGMENT_FILE_SIZE = SEGMENT_SIZE / 8;
+
+    private final String storePath;
+    private final ConcurrentMap<Integer /* queueId */, ConcurrentSkipListMap<Long /* first offset */, MappedFile>>
+        segmentTable = new ConcurrentHashMap<>();
+
+    public TransactionalOpIndex(final String storePath) {
+        this.storePath = storePath;
+    }
+
+    public boolean load() {
+        File dir = new File(this.storePath);
+        File[] queueDirs = dir.listFiles();
+        if (queueDirs == null) {
+            return true;
+        }
+
+        try {
+            for (File queueDir : queueDirs) {
+                int queueId;
+                try {
+                    queueId = Integer.parseInt(queueDir.getName());
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                File[] files = queueDir.listFiles();
+                if (files == null) {
+                    continue;
+                }
+                for (File file : files) {
+                    if (file.length() != SEGMENT_FILE_SIZE) {
+                        log.warn("transaction op index file {} length not matched, ignore it", file.getPath());
+                        continue;
+                    }
+                    MappedFile mappedFile = new MappedFile(file.getPath(), SEGMENT_FILE_SIZE);
+                    this.getSegments(queueId).put(Long.parseLong(file.getName()), mappedFile);
+                }
+            }
+        } catch (Exception e) {
+            log.error("load transaction op index exception", e);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Mark the half message of the offset committed or rolled back.
+     */
+    public void mark(final int queueId, final long halfOffset) {
+        if (halfOffset < 0) {
+            return;
+        }
+        MappedFile mappedFile = this.getOrCreateSegment(queueId, halfOffset - halfOffset % SEGMENT_SIZE);
+        if (mappedFile == null) {
+            return;
+        }
+
+        ByteBuffer byteBuffer = mappedFile.getMappedByteBuffer();
+        int index = (int) (halfOffset % SEGMENT_SIZE >>> 6) * 8;
+        long mask = 1L << halfOffset;
+        // the check thread only reads, the processors of end transaction mark concurrently
+        synchronized (mappedFile) {
+            long value = byteBuffer.getLong(index);
+            if ((value & mask) == 0) {
+                byteBuffer.putLong(index, value | mask);
+            }
+        }
+    }
+
+    public boolean isResolved(final int queueId, final long halfOffset) {
+        if (halfOffset < 0) {
+            return false;
+        }
+        ConcurrentSkipListMap<Long, MappedFile> segments = this.segmentTable.get(queueId);
+        if (segments == null) {
+            return false;
+        }
+        MappedFile mappedFile = segments.get(halfOffset - halfOffset % SEGMENT_SIZE);
+        if (mappedFile == null) {
+            return false;
+        }
+        int index = (int) (halfOffset % SEGMENT_SIZE >>> 6) * 8;
+        return (mappedFile.getMappedByteBuffer().getLong(index) & (1L << halfOffset)) != 0;
+    }
+
+    /**
+     * Delete the segments of which all offsets are less than {@code minHalfOffset}.
+     */
+    public int deleteExpiredSegment(final int queueId, final long minHalfOffset) {
+        ConcurrentSkipListMap<Long, MappedFile> segments = this.segmentTable.get(queueId);
+        if (segments == null) {
+            return 0;
+        }
+
+        int deleteCount = 0;
+        Iterator<Map.Entry<Long, MappedFile>> it = segments.headMap(minHalfOffset - SEGMENT_SIZE, true)
+            .entrySet().iterator();
+        while (it.hasNext()) {
+            MappedFile mappedFile = it.next().getValue();
+            it.remove();
+            mappedFile.destroy(1000 * 3);
+            deleteCount++;
+        }
+        if (deleteCount > 0) {
+            log.info("delete {} transaction op index segments of queue {} before offset {}", deleteCount, queueId,
+                minHalfOffset);
+        }
+        return deleteCount;
+    }
+
+    public void flush() {
+        for (ConcurrentSkipListMap<Long, MappedFile> segments : this.segmentTable.values()) {
+            for (MappedFile mappedFile : segments.values()) {
+                mappedFile.getMappedByteBuffer().force();
+            }
+        }
+    }
+
+    public void destroy() {
+        for (ConcurrentSkipListMap<Long, MappedFile> segments : this.segmentTable.values()) {
+            for (MappedFile mappedFile : segments.values()) {
+                mappedFile.destroy(1000 * 3);
+            }
+        }
+        this.segmentTable.clear();
+        UtilAll.deleteFile(new File(this.storePath));
+    }
+
+    private ConcurrentSkipListMap<Long, MappedFile> getSegments(final int queueId) {
+        ConcurrentSkipListMap<Long, MappedFile> segments = this.segmentTable.get(queueId);
+        if (segments == null) {
+            segments = new ConcurrentSkipListMap<>();
+            ConcurrentSkipListMap<Long, MappedFile> oldSegments = this.segmentTable.putIfAbsent(queueId, segments);
+            if (oldSegments != null) {
+                segments = oldSegments;
+            }
+        }
+        return segments;
+    }
+
+    private MappedFile getOrCreateSegment(final int queueId, final long firstOffset) {
+        ConcurrentSkipListMap<Long, MappedFile> segments = this.getSegments(queueId);
+        MappedFile mappedFile = segments.get(firstOffset);
+        if (mappedFile != null) {
+            return mappedFile;
+        }
+
+        synchronized (segments) {
+            mappedFile = segments.get(firstOffset);
+            if (mappedFile == null) {
+                String fileName = this.storePath + File.separator + queueId + File.separator
+                    + UtilAll.offset2FileName(firstOffset);
+                try {
+                    mappedFile = new MappedFile(fileName, SEGMENT_FILE_SIZE);
+                    segments.put(firstOffset, mappedFile);
+                } catch (IOException e) {
+                    log.error("create transaction op index file {} failed", fileName, e);
+                }
+            }
+        }
+        return mappedFile;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.broker.longpolling;
+
+import io.netty.channel.Channel;
+import org.apache.rocketmq.broker.BrokerController;
+import org.apache.rocketmq.broker.processor.PullMessageProcessor;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
+import org.apache.rocketmq.store.MessageFilter;
+import org.apache.rocketmq.store.MessageStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PullRequestHoldServiceTest {
+    private static final String TOPIC = "FooBar";
+    private static final int QUEUE_ID = 0;
+
+    @Mock
+    private BrokerController brokerController;
+    @Mock
+    private MessageStore messageStore;
+    @Mock
+    private PullMessageProcessor pullMessageProcessor;
+    @Mock
+    private MessageFilter messageFilter;
+    @Mock
+    private Channel channel;
+
+    private final RemotingCommand request = RemotingCommand.createRequestCommand(0, null);
+    private PullRequestHoldService pullRequestHoldService;
+
+    @Before
+    public void init() {
+        when(brokerController.getMessageStore()).thenReturn(messageStore);
+        when(brokerController.getPullMessageProcessor()).thenReturn(pullMessageProcessor);
+        when(messageStore.getMaxOffsetInQueue(TOPIC, QUEUE_ID)).thenReturn(0L);
+        pullRequestHoldService = new PullRequestHoldService(brokerController);
+    }
+
+    @After
+    public void destroy() {
+        pullRequestHoldService.shutdown();
+    }
+
+    @Test
+    public void testWakeupByTimeout() throws Exception {
+        pullRequestHoldService.suspendPullRequest(TOPIC, QUEUE_ID, createPullRequest(100));
+        assertThat(pullRequestHoldService.getSuspendedRequestCount()).isEqualTo(1);
+
+        verify(pullMessageProcessor, timeout(3000)).executeRequestWhenWakeup(channel, request);
+        assertThat(pullRequestHoldService.getSuspendedRequestCount()).isEqualTo(0);
+        assertThat(pullRequestHoldService.getWakeupTimes()).isEqualTo(0);
+    }
+
+    @Test
+    public void testWakeupByMessageArriving() throws Exception {
+        when(messageFilter.isMatchedByConsumeQueue(anyLong(), any())).thenReturn(true);
+        pullRequestHoldService.suspendPullRequest(TOPIC, QUEUE_ID, createPullRequest(30 * 1000));
+
+        pullRequestHoldService.notifyMessageArriving(TOPIC, QUEUE_ID, 1, 1L,
+            System.currentTimeMillis(), null, null);
+        verify(pullMessageProcessor, times(1)).executeRequestWhenWakeup(channel, request);
+        assertThat(pullRequestHoldService.getSuspendedRequestCount()).isEqualTo(0);
+        assertThat(pullRequestHoldService.getWakeupTimes()).isEqualTo(1);
+
+        // nothing is left for another arriving
+        pullRequestHoldService.notifyMessageArriving(TOPIC, QUEUE_ID, 2, 1L,
+            System.currentTimeMillis(), null, null);
+        verify(pullMessageProcessor, times(1)).executeRequestWhenWakeup(channel, request);
+    }
+
+    private PullRequest createPullRequest(long timeoutMillis) {
+        return new PullRequest(request, channel, timeoutMillis, System.currentTimeMillis(), 0, null, messageFilter);
+    }
+}
@@ -17,8 +17,12 @@
 
 package org.apache.rocketmq.broker.pagecache;
 
+import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import org.apache.rocketmq.store.GetMessageResult;
+import org.apache.rocketmq.store.SelectMappedBufferResult;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -61,4 +65,27 @@ public class ManyMessageTransferTest {
         manyMessageTransfer.close();
         manyMessageTransfer.deallocate();
     }
+
+    @Test
+    public void ManyMessageTransferTransferToTest() throws Exception {
+        ByteBuffer byteBuffer = ByteBuffer.allocate(4);
+        byteBuffer.putInt(4);
+        byteBuffer.flip();
+        GetMessageResult getMessageResult = new GetMessageResult();
+        byte[] first = "Hello".getBytes();
+        byte[] second = "World".getBytes();
+        getMessageResult.addMessage(new SelectMappedBufferResult(0, ByteBuffer.wrap(first), first.length, null));
+        getMessageResult.addMessage(new SelectMappedBufferResult(first.length, ByteBuffer.wrap(second), second.length, null));
+        ManyMessageTransfer manyMessageTransfer = new ManyMessageTransfer(byteBuffer, getMessageResult);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WritableByteChannel target = Channels.newChannel(out);
+        while (manyMessageTransfer.transferred() < manyMessageTransfer.count()) {
+            Assert.assertTrue(manyMessageTransfer.transferTo(target, manyMessageTransfer.transferred()) > 0);
+        }
+        Assert.assertEquals(0, manyMessageTransfer.transferTo(target, manyMessageTransfer.transferred()));
+        Assert.assertEquals(14, out.size());
+        Assert.assertEquals("HelloWorld", new String(out.toByteArray(), 4, 10));
+        Assert.assertEquals(14, manyMessageTransfer.position());
+    }
 }
@@ -17,6 +17,7 @@
 package org.apache.rocketmq.broker.processor;
 
 import io.netty.channel.ChannelHandlerContext;
+import java.util.concurrent.CompletableFuture;
 import org.apache.rocketmq.broker.BrokerController;
 import org.apache.rocketmq.broker.transaction.OperationResult;
 import org.apache.rocketmq.broker.transaction.TransactionalMessageService;
@@ -26,6 +27,7 @@ import org.apache.rocketmq.common.message.MessageConst;
 import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.common.protocol.RequestCode;
 import org.apache.rocketmq.common.protocol.ResponseCode;
+import org.apache.rocketmq.common.protocol.body.EndTransactionBatchRequestBody;
 import org.apache.rocketmq.common.protocol.header.EndTransactionRequestHeader;
 import org.apache.rocketmq.common.sysflag.MessageSysFlag;
 import org.apache.rocketmq.remoting.exception.RemotingCommandException;
@@ -48,6 +50,9 @@ import org.mockito.junit.MockitoJUnitRunner;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -119,6 +124,27 @@ public class EndTransactionProcessorTest {
         assertThat(response.getCode()).isEqualTo(ResponseCode.SUCCESS);
     }
 
+    @Test
+    public void testProcessBatchRequest() throws RemotingCommandException {
+        when(transactionMsgService.commitMessage(any(EndTransactionRequestHeader.class))).thenReturn(createResponse(ResponseCode.SUCCESS));
+        when(transactionMsgService.rollbackMessage(any(EndTransactionRequestHeader.class))).thenReturn(createResponse(ResponseCode.SUCCESS));
+        when(messageStore.asyncPutMessage(any(MessageExtBrokerInner.class))).thenReturn(CompletableFuture.completedFuture(
+            new PutMessageResult(PutMessageStatus.PUT_OK, new AppendMessageResult(AppendMessageStatus.PUT_OK))));
+
+        EndTransactionBatchRequestBody requestBody = new EndTransactionBatchRequestBody();
+        requestBody.getRequestList().add(createEndTransactionRequestHeader(MessageSysFlag.TRANSACTION_COMMIT_TYPE, false));
+        requestBody.getRequestList().add(createEndTransactionRequestHeader(MessageSysFlag.TRANSACTION_ROLLBACK_TYPE, false));
+        // the pending one is left for the check
+        requestBody.getRequestList().add(createEndTransactionRequestHeader(MessageSysFlag.TRANSACTION_NOT_TYPE, false));
+        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.END_TRANSACTION_BATCH, null);
+        request.setBody(requestBody.encode());
+
+        RemotingCommand response = endTransactionProcessor.processRequest(handlerContext, request);
+        assertThat(response.getCode()).isEqualTo(ResponseCode.SUCCESS);
+        verify(messageStore, times(1)).asyncPutMessage(any(MessageExtBrokerInner.class));
+        verify(transactionMsgService).deletePrepareMessages(argThat(list -> list.size() == 2));
+    }
+
     private MessageExt createDefaultMessageExt() {
         MessageExt messageExt = new MessageExt();
         messageExt.setMsgId("12345678");
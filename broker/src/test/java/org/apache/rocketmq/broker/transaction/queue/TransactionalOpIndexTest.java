@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.broker.transaction.queue;
+
+import java.io.File;
+import org.apache.rocketmq.common.UtilAll;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TransactionalOpIndexTest {
+    private static final String STORE_PATH = "target/unit_test_store/TransactionalOpIndexTest";
+
+    @Test
+    public void testMarkAndReload() {
+        TransactionalOpIndex opIndex = new TransactionalOpIndex(STORE_PATH);
+        assertThat(opIndex.load()).isTrue();
+        assertThat(opIndex.isResolved(0, 1)).isFalse();
+
+        opIndex.mark(0, 1);
+        opIndex.mark(0, 63);
+        opIndex.mark(0, TransactionalOpIndex.SEGMENT_SIZE + 64);
+        opIndex.mark(1, 2);
+        assertThat(opIndex.isResolved(0, 1)).isTrue();
+        assertThat(opIndex.isResolved(0, 63)).isTrue();
+        assertThat(opIndex.isResolved(0, 2)).isFalse();
+        assertThat(opIndex.isResolved(0, 65)).isFalse();
+        assertThat(opIndex.isResolved(0, TransactionalOpIndex.SEGMENT_SIZE + 64)).isTrue();
+        assertThat(opIndex.isResolved(1, 1)).isFalse();
+        assertThat(opIndex.isResolved(1, 2)).isTrue();
+        opIndex.flush();
+
+        TransactionalOpIndex loaded = new TransactionalOpIndex(STORE_PATH);
+        try {
+            assertThat(loaded.load()).isTrue();
+            assertThat(loaded.isResolved(0, 1)).isTrue();
+            assertThat(loaded.isResolved(0, TransactionalOpIndex.SEGMENT_SIZE + 64)).isTrue();
+            assertThat(loaded.isResolved(1, 2)).isTrue();
+
+            // the first segment of queue 0 is all before the min offset
+            assertThat(loaded.deleteExpiredSegment(0, TransactionalOpIndex.SEGMENT_SIZE + 1)).isEqualTo(1);
+            assertThat(loaded.isResolved(0, 1)).isFalse();
+            assertThat(loaded.isResolved(0, TransactionalOpIndex.SEGMENT_SIZE + 64)).isTrue();
+        } finally {
+            loaded.destroy();
+            opIndex.destroy();
+        }
+    }
+
+    @After
+    public void destroy() {
+        UtilAll.deleteFile(new File(STORE_PATH));
+    }
+}
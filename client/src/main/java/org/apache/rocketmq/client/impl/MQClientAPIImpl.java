@@ -73,6 +73,7 @@ import org.apache.rocketmq.common.protocol.body.ConsumeMessageDirectlyResult;
 import org.apache.rocketmq.common.protocol.body.ConsumeStatsList;
 import org.apache.rocketmq.common.protocol.body.ConsumerConnection;
 import org.apache.rocketmq.common.protocol.body.ConsumerRunningInfo;
+import org.apache.rocketmq.common.protocol.body.EndTransactionBatchRequestBody;
 import org.apache.rocketmq.common.protocol.body.GetConsumerStatusBody;
 import org.apache.rocketmq.common.protocol.body.GroupList;
 import org.apache.rocketmq.common.protocol.body.KVTable;
@@ -1076,6 +1077,17 @@ public class MQClientAPIImpl {
         this.remotingClient.invokeOneway(addr, request, timeoutMillis);
     }
 
+    public void endTransactionBatchOneway(
+        final String addr,
+        final EndTransactionBatchRequestBody requestBody,
+        final long timeoutMillis
+    ) throws RemotingException, InterruptedException {
+        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.END_TRANSACTION_BATCH, null);
+
+        request.setBody(requestBody.encode());
+        this.remotingClient.invokeOneway(addr, request, timeoutMillis);
+    }
+
     public void queryMessage(
         final String addr,
         final QueryMessageRequestHeader requestHeader,
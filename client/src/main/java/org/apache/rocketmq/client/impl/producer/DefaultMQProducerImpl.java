@@ -108,6 +108,7 @@ public class DefaultMQProducerImpl implements MQProducerInner {
     private final ExecutorService defaultAsyncSenderExecutor;
     protected BlockingQueue<Runnable> checkRequestQueue;
     protected ExecutorService checkExecutor;
+    private EndTransactionBatcher endTransactionBatcher;
     private ServiceState serviceState = ServiceState.CREATE_JUST;
     private MQClientInstance mQClientFactory;
     private ArrayList<CheckForbiddenHook> checkForbiddenHookList = new ArrayList<CheckForbiddenHook>();
@@ -163,12 +164,19 @@ public class DefaultMQProducerImpl implements MQProducerInner {
                 TimeUnit.MILLISECONDS,
                 this.checkRequestQueue);
         }
+        if (producer.isEndTransactionBatchEnable()) {
+            this.endTransactionBatcher = new EndTransactionBatcher(this, producer.getEndTransactionBatchMaxSize(),
+                producer.getEndTransactionBatchIntervalMillis());
+        }
     }
 
     public void destroyTransactionEnv() {
         if (this.checkExecutor != null) {
             this.checkExecutor.shutdown();
         }
+        if (this.endTransactionBatcher != null) {
+            this.endTransactionBatcher.shutdown();
+        }
     }
 
     public void registerSendMessageHook(final SendMessageHook hook) {
@@ -1342,6 +1350,12 @@ public class DefaultMQProducerImpl implements MQProducerInner {
         requestHeader.setTranStateTableOffset(sendResult.getQueueOffset());
         requestHeader.setMsgId(sendResult.getMsgId());
         String remark = localException != null ? ("executeLocalTransactionBranch exception: " + localException.toString()) : null;
+        // the batch carries no remark, so the ones with an exception go alone
+        if (this.endTransactionBatcher != null && remark == null
+            && requestHeader.getCommitOrRollback() != MessageSysFlag.TRANSACTION_NOT_TYPE) {
+            this.endTransactionBatcher.add(brokerAddr, requestHeader);
+            return;
+        }
         this.mQClientFactory.getMQClientAPIImpl().endTransactionOneway(brokerAddr, requestHeader, remark,
             this.defaultMQProducer.getSendMsgTimeout());
     }
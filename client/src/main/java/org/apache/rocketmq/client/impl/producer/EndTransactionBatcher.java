@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.client.impl.producer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.client.log.ClientLogger;
+import org.apache.rocketmq.common.ThreadFactoryImpl;
+import org.apache.rocketmq.common.protocol.body.EndTransactionBatchRequestBody;
+import org.apache.rocketmq.common.protocol.header.EndTransactionRequestHeader;
+import org.apache.rocketmq.logging.InternalLogger;
+
+/**
+ * Gathers the end transaction requests of a producer by broker, and sends them in one
+ * {@link org.apache.rocketmq.common.protocol.RequestCode#END_TRANSACTION_BATCH} request when {@code maxBatchSize}
+ * of them are waiting or {@code intervalMillis} elapses. Like the single request it is oneway, a lost batch is
+ * resolved by the transaction check of the broker.
+ */
+public class EndTransactionBatcher {
+    private final InternalLogger log = ClientLogger.getLog();
+
+    private final DefaultMQProducerImpl producerImpl;
+    private final int maxBatchSize;
+    private final ConcurrentMap<String /* broker addr */, LinkedBlockingQueue<EndTransactionRequestHeader>> requestTable =
+        new ConcurrentHashMap<String, LinkedBlockingQueue<EndTransactionRequestHeader>>();
+    private final ScheduledExecutorService scheduledExecutorService =
+        Executors.newSingleThreadScheduledExecutor(new ThreadFactoryImpl("EndTransactionBatchThread_"));
+
+    public EndTransactionBatcher(final DefaultMQProducerImpl producerImpl, final int maxBatchSize,
+        final long intervalMillis) {
+        this.producerImpl = producerImpl;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.scheduledExecutorService.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                EndTransactionBatcher.this.sendAll();
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void add(final String brokerAddr, final EndTransactionRequestHeader requestHeader) {
+        LinkedBlockingQueue<EndTransactionRequestHeader> queue = this.requestTable.get(brokerAddr);
+        if (queue == null) {
+            queue = new LinkedBlockingQueue<EndTransactionRequestHeader>();
+            LinkedBlockingQueue<EndTransactionRequestHeader> oldQueue = this.requestTable.putIfAbsent(brokerAddr, queue);
+            if (oldQueue != null) {
+                queue = oldQueue;
+            }
+        }
+        queue.offer(requestHeader);
+
+        if (this.scheduledExecutorService.isShutdown()) {
+            // the waiting requests may be sent on shutdown already, nothing would pick this one up
+            this.send(brokerAddr);
+            return;
+        }
+
+        if (queue.size() >= this.maxBatchSize) {
+            // sent by the single thread, so the batches never race
+            try {
+                this.scheduledExecutorService.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        EndTransactionBatcher.this.send(brokerAddr);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                this.send(brokerAddr);
+            }
+        }
+    }
+
+    /**
+     * Send the waiting requests and stop.
+     */
+    public void shutdown() {
+        this.scheduledExecutorService.shutdown();
+        try {
+            this.scheduledExecutorService.awaitTermination(3000, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            log.warn("wait end transaction batch thread interrupted", e);
+        }
+        this.sendAll();
+    }
+
+    private void sendAll() {
+        for (Map.Entry<String, LinkedBlockingQueue<EndTransactionRequestHeader>> entry : this.requestTable.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                this.send(entry.getKey());
+            }
+        }
+    }
+
+    private void send(final String brokerAddr) {
+        LinkedBlockingQueue<EndTransactionRequestHeader> queue = this.requestTable.get(brokerAddr);
+        if (queue == null) {
+            return;
+        }
+
+        List<EndTransactionRequestHeader> requestList = new ArrayList<EndTransactionRequestHeader>(this.maxBatchSize);
+        while (queue.drainTo(requestList, this.maxBatchSize) > 0) {
+            EndTransactionBatchRequestBody requestBody = new EndTransactionBatchRequestBody();
+            requestBody.setRequestList(requestList);
+            try {
+                this.producerImpl.getMqClientFactory().getMQClientAPIImpl().endTransactionBatchOneway(brokerAddr,
+                    requestBody, this.producerImpl.getDefaultMQProducer().getSendMsgTimeout());
+            } catch (Exception e) {
+                log.warn("send end transaction batch to {} failed, size: {}", brokerAddr, requestList.size(), e);
+            }
+            requestList = new ArrayList<EndTransactionRequestHeader>(this.maxBatchSize);
+        }
+    }
+}
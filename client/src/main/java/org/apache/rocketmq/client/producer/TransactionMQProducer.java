@@ -32,6 +32,22 @@ public class TransactionMQProducer extends DefaultMQProducer {
 
     private TransactionListener transactionListener;
 
+    /**
+     * Send the commits and rollbacks of many transactions in one request, which needs brokers supporting
+     * {@link org.apache.rocketmq.common.protocol.RequestCode#END_TRANSACTION_BATCH}.
+     */
+    private boolean endTransactionBatchEnable = false;
+
+    /**
+     * Max commits and rollbacks sent in one request.
+     */
+    private int endTransactionBatchMaxSize = 128;
+
+    /**
+     * Max time in milliseconds a commit or rollback waits for its batch.
+     */
+    private long endTransactionBatchIntervalMillis = 5;
+
     public TransactionMQProducer() {
     }
 
@@ -63,8 +79,9 @@ public class TransactionMQProducer extends DefaultMQProducer {
 
     @Override
     public void shutdown() {
-        super.shutdown();
+        // the waiting batch of end transaction is sent before the client stops
         this.defaultMQProducerImpl.destroyTransactionEnv();
+        super.shutdown();
     }
 
     /**
@@ -157,4 +174,28 @@ public class TransactionMQProducer extends DefaultMQProducer {
     public void setTransactionListener(TransactionListener transactionListener) {
         this.transactionListener = transactionListener;
     }
+
+    public boolean isEndTransactionBatchEnable() {
+        return endTransactionBatchEnable;
+    }
+
+    public void setEndTransactionBatchEnable(boolean endTransactionBatchEnable) {
+        this.endTransactionBatchEnable = endTransactionBatchEnable;
+    }
+
+    public int getEndTransactionBatchMaxSize() {
+        return endTransactionBatchMaxSize;
+    }
+
+    public void setEndTransactionBatchMaxSize(int endTransactionBatchMaxSize) {
+        this.endTransactionBatchMaxSize = endTransactionBatchMaxSize;
+    }
+
+    public long getEndTransactionBatchIntervalMillis() {
+        return endTransactionBatchIntervalMillis;
+    }
+
+    public void setEndTransactionBatchIntervalMillis(long endTransactionBatchIntervalMillis) {
+        this.endTransactionBatchIntervalMillis = endTransactionBatchIntervalMillis;
+    }
 }
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.client.impl.producer;
+
+import java.util.List;
+import org.apache.rocketmq.client.impl.MQClientAPIImpl;
+import org.apache.rocketmq.client.impl.factory.MQClientInstance;
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.apache.rocketmq.common.protocol.body.EndTransactionBatchRequestBody;
+import org.apache.rocketmq.common.protocol.header.EndTransactionRequestHeader;
+import org.apache.rocketmq.common.sysflag.MessageSysFlag;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class EndTransactionBatcherTest {
+    private static final String BROKER_A = "127.0.0.1:10911";
+    private static final String BROKER_B = "127.0.0.1:10921";
+
+    @Mock
+    private DefaultMQProducerImpl producerImpl;
+    @Mock
+    private MQClientInstance mQClientFactory;
+    @Mock
+    private MQClientAPIImpl mQClientAPIImpl;
+
+    private EndTransactionBatcher batcher;
+
+    @Before
+    public void init() {
+        when(producerImpl.getMqClientFactory()).thenReturn(mQClientFactory);
+        when(producerImpl.getDefaultMQProducer()).thenReturn(new DefaultMQProducer("EndTransactionBatchGroup"));
+        when(mQClientFactory.getMQClientAPIImpl()).thenReturn(mQClientAPIImpl);
+    }
+
+    @After
+    public void terminate() {
+        if (batcher != null) {
+            batcher.shutdown();
+        }
+    }
+
+    @Test
+    public void testFlushOnSize() throws Exception {
+        batcher = new EndTransactionBatcher(producerImpl, 3, 60 * 1000);
+        batcher.add(BROKER_A, buildRequestHeader(0));
+        batcher.add(BROKER_A, buildRequestHeader(1));
+        Thread.sleep(100);
+        verify(mQClientAPIImpl, never()).endTransactionBatchOneway(anyString(), any(EndTransactionBatchRequestBody.class), anyLong());
+
+        batcher.add(BROKER_A, buildRequestHeader(2));
+        ArgumentCaptor<EndTransactionBatchRequestBody> bodyCaptor = ArgumentCaptor.forClass(EndTransactionBatchRequestBody.class);
+        verify(mQClientAPIImpl, timeout(3000)).endTransactionBatchOneway(eq(BROKER_A), bodyCaptor.capture(), anyLong());
+        assertThat(bodyCaptor.getValue().getRequestList()).extracting("tranStateTableOffset").containsExactly(0L, 1L, 2L);
+    }
+
+    @Test
+    public void testFlushOnInterval() throws Exception {
+        batcher = new EndTransactionBatcher(producerImpl, 100, 100);
+        batcher.add(BROKER_A, buildRequestHeader(0));
+        batcher.add(BROKER_A, buildRequestHeader(1));
+
+        ArgumentCaptor<EndTransactionBatchRequestBody> bodyCaptor = ArgumentCaptor.forClass(EndTransactionBatchRequestBody.class);
+        verify(mQClientAPIImpl, timeout(3000)).endTransactionBatchOneway(eq(BROKER_A), bodyCaptor.capture(), anyLong());
+        assertThat(bodyCaptor.getValue().getRequestList()).hasSize(2);
+    }
+
+    @Test
+    public void testBatchByBroker() throws Exception {
+        batcher = new EndTransactionBatcher(producerImpl, 2, 60 * 1000);
+        batcher.add(BROKER_A, buildRequestHeader(0));
+        batcher.add(BROKER_B, buildRequestHeader(1));
+        batcher.add(BROKER_A, buildRequestHeader(2));
+        batcher.add(BROKER_B, buildRequestHeader(3));
+
+        ArgumentCaptor<EndTransactionBatchRequestBody> bodyCaptor = ArgumentCaptor.forClass(EndTransactionBatchRequestBody.class);
+        verify(mQClientAPIImpl, timeout(3000)).endTransactionBatchOneway(eq(BROKER_A), bodyCaptor.capture(), anyLong());
+        assertThat(bodyCaptor.getValue().getRequestList()).extracting("tranStateTableOffset").containsExactly(0L, 2L);
+        verify(mQClientAPIImpl, timeout(3000)).endTransactionBatchOneway(eq(BROKER_B), bodyCaptor.capture(), anyLong());
+        assertThat(bodyCaptor.getValue().getRequestList()).extracting("tranStateTableOffset").containsExactly(1L, 3L);
+    }
+
+    @Test
+    public void testAddAfterShutdown() throws Exception {
+        batcher = new EndTransactionBatcher(producerImpl, 100, 60 * 1000);
+        batcher.shutdown();
+        batcher.add(BROKER_A, buildRequestHeader(0));
+
+        ArgumentCaptor<EndTransactionBatchRequestBody> bodyCaptor = ArgumentCaptor.forClass(EndTransactionBatchRequestBody.class);
+        verify(mQClientAPIImpl, times(1)).endTransactionBatchOneway(eq(BROKER_A), bodyCaptor.capture(), anyLong());
+        List<EndTransactionRequestHeader> requestList = bodyCaptor.getValue().getRequestList();
+        assertThat(requestList).hasSize(1);
+        assertThat(requestList.get(0).getTranStateTableOffset()).isEqualTo(0L);
+    }
+
+    private static EndTransactionRequestHeader buildRequestHeader(long offset) {
+        EndTransactionRequestHeader requestHeader = new EndTransactionRequestHeader();
+        requestHeader.setProducerGroup("EndTransactionBatchGroup");
+        requestHeader.setTranStateTableOffset(offset);
+        requestHeader.setCommitLogOffset(offset);
+        requestHeader.setCommitOrRollback(MessageSysFlag.TRANSACTION_COMMIT_TYPE);
+        requestHeader.setFromTransactionCheck(false);
+        requestHeader.setMsgId(String.valueOf(offset));
+        return requestHeader;
+    }
+}
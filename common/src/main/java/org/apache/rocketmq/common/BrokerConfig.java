@@ -70,6 +70,12 @@ public class BrokerConfig {
     private int consumerManageThreadPoolNums = 32;
     private int heartbeatThreadPoolNums = Math.min(32, Runtime.getRuntime().availableProcessors());
 
+    /**
+     * Selector and codec thread numbers of the fast (VIP) port, 0 to take those of the main port.
+     */
+    private int fastServerSelectorThreads = 0;
+    private int fastServerWorkerThreads = 0;
+
     /**
      * Thread numbers for EndTransactionProcessor
      */
@@ -111,6 +117,11 @@ public class BrokerConfig {
     private int commercialBaseCount = 1;
 
     private boolean transferMsgByHeap = true;
+    /**
+     * When messages are not transferred by heap, send the contiguous commit log ranges from the file channel by
+     * sendfile, otherwise write the mapped buffers.
+     */
+    private boolean transferMsgByFileChannel = true;
     private int maxDelayTime = 40;
 
     private String regionId = MixAll.DEFAULT_TRACE_REGION_ID;
@@ -179,6 +190,11 @@ public class BrokerConfig {
     @ImportantField
     private long transactionCheckInterval = 60 * 1000;
 
+    /**
+     * Keep a bitmap of the committed/rolled back half offsets, so the check skips them without the op messages.
+     */
+    private boolean transactionOpIndexEnable = false;
+
     /**
      * Acl feature switch
      */
@@ -294,6 +310,14 @@ public class BrokerConfig {
         this.transferMsgByHeap = transferMsgByHeap;
     }
 
+    public boolean isTransferMsgByFileChannel() {
+        return transferMsgByFileChannel;
+    }
+
+    public void setTransferMsgByFileChannel(final boolean transferMsgByFileChannel) {
+        this.transferMsgByFileChannel = transferMsgByFileChannel;
+    }
+
     public String getMessageStorePlugIn() {
         return messageStorePlugIn;
     }
@@ -726,6 +750,22 @@ public class BrokerConfig {
         this.heartbeatThreadPoolNums = heartbeatThreadPoolNums;
     }
 
+    public int getFastServerSelectorThreads() {
+        return fastServerSelectorThreads;
+    }
+
+    public void setFastServerSelectorThreads(int fastServerSelectorThreads) {
+        this.fastServerSelectorThreads = fastServerSelectorThreads;
+    }
+
+    public int getFastServerWorkerThreads() {
+        return fastServerWorkerThreads;
+    }
+
+    public void setFastServerWorkerThreads(int fastServerWorkerThreads) {
+        this.fastServerWorkerThreads = fastServerWorkerThreads;
+    }
+
     public long getWaitTimeMillsInHeartbeatQueue() {
         return waitTimeMillsInHeartbeatQueue;
     }
@@ -766,6 +806,14 @@ public class BrokerConfig {
         this.transactionCheckInterval = transactionCheckInterval;
     }
 
+    public boolean isTransactionOpIndexEnable() {
+        return transactionOpIndexEnable;
+    }
+
+    public void setTransactionOpIndexEnable(boolean transactionOpIndexEnable) {
+        this.transactionOpIndexEnable = transactionOpIndexEnable;
+    }
+
     public int getEndTransactionThreadPoolNums() {
         return endTransactionThreadPoolNums;
     }
@@ -18,6 +18,7 @@
 package org.apache.rocketmq.common.protocol.header;
 
 import org.apache.rocketmq.remoting.CommandCustomHeader;
+import org.apache.rocketmq.remoting.annotation.CFIntern;
 import org.apache.rocketmq.remoting.annotation.CFNotNull;
 import org.apache.rocketmq.remoting.annotation.CFNullable;
 import org.apache.rocketmq.remoting.exception.RemotingCommandException;
@@ -26,10 +27,12 @@ public class ConsumerSendMsgBackRequestHeader implements CommandCustomHeader {
     @CFNotNull
     private Long offset;
     @CFNotNull
+    @CFIntern
     private String group;
     @CFNotNull
     private Integer delayLevel;
     private String originMsgId;
+    @CFIntern
     private String originTopic;
     @CFNullable
     private boolean unitMode = false;
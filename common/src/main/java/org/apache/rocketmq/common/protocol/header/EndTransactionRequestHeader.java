@@ -19,12 +19,14 @@ package org.apache.rocketmq.common.protocol.header;
 
 import org.apache.rocketmq.common.sysflag.MessageSysFlag;
 import org.apache.rocketmq.remoting.CommandCustomHeader;
+import org.apache.rocketmq.remoting.annotation.CFIntern;
 import org.apache.rocketmq.remoting.annotation.CFNotNull;
 import org.apache.rocketmq.remoting.annotation.CFNullable;
 import org.apache.rocketmq.remoting.exception.RemotingCommandException;
 
 public class EndTransactionRequestHeader implements CommandCustomHeader {
     @CFNotNull
+    @CFIntern
     private String producerGroup;
     @CFNotNull
     private Long tranStateTableOffset;
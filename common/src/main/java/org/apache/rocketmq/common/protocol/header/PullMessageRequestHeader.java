@@ -23,6 +23,7 @@ package org.apache.rocketmq.common.protocol.header;
 import java.util.HashMap;
 
 import org.apache.rocketmq.remoting.CommandCustomHeader;
+import org.apache.rocketmq.remoting.annotation.CFIntern;
 import org.apache.rocketmq.remoting.annotation.CFNotNull;
 import org.apache.rocketmq.remoting.annotation.CFNullable;
 import org.apache.rocketmq.remoting.exception.RemotingCommandException;
@@ -32,8 +33,10 @@ import io.netty.buffer.ByteBuf;
 
 public class PullMessageRequestHeader implements CommandCustomHeader, FastCodesHeader {
     @CFNotNull
+    @CFIntern
     private String consumerGroup;
     @CFNotNull
+    @CFIntern
     private String topic;
     @CFNotNull
     private Integer queueId;
@@ -21,13 +21,16 @@
 package org.apache.rocketmq.common.protocol.header;
 
 import org.apache.rocketmq.remoting.CommandCustomHeader;
+import org.apache.rocketmq.remoting.annotation.CFIntern;
 import org.apache.rocketmq.remoting.annotation.CFNotNull;
 import org.apache.rocketmq.remoting.exception.RemotingCommandException;
 
 public class QueryConsumerOffsetRequestHeader implements CommandCustomHeader {
     @CFNotNull
+    @CFIntern
     private String consumerGroup;
     @CFNotNull
+    @CFIntern
     private String topic;
     @CFNotNull
     private Integer queueId;
@@ -21,16 +21,20 @@
 package org.apache.rocketmq.common.protocol.header;
 
 import org.apache.rocketmq.remoting.CommandCustomHeader;
+import org.apache.rocketmq.remoting.annotation.CFIntern;
 import org.apache.rocketmq.remoting.annotation.CFNotNull;
 import org.apache.rocketmq.remoting.annotation.CFNullable;
 import org.apache.rocketmq.remoting.exception.RemotingCommandException;
 
 public class SendMessageRequestHeader implements CommandCustomHeader {
     @CFNotNull
+    @CFIntern
     private String producerGroup;
     @CFNotNull
+    @CFIntern
     private String topic;
     @CFNotNull
+    @CFIntern
     private String defaultTopic;
     @CFNotNull
     private Integer defaultTopicQueueNums;
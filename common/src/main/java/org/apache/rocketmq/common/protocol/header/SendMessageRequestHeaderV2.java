@@ -21,6 +21,7 @@ import java.util.HashMap;
 
 import org.apache.rocketmq.remoting.protocol.FastCodesHeader;
 import org.apache.rocketmq.remoting.CommandCustomHeader;
+import org.apache.rocketmq.remoting.annotation.CFIntern;
 import org.apache.rocketmq.remoting.annotation.CFNotNull;
 import org.apache.rocketmq.remoting.annotation.CFNullable;
 import org.apache.rocketmq.remoting.exception.RemotingCommandException;
@@ -32,10 +33,13 @@ import io.netty.buffer.ByteBuf;
  */
 public class SendMessageRequestHeaderV2 implements CommandCustomHeader, FastCodesHeader {
     @CFNotNull
+    @CFIntern
     private String a; // producerGroup;
     @CFNotNull
+    @CFIntern
     private String b; // topic;
     @CFNotNull
+    @CFIntern
     private String c; // defaultTopic;
     @CFNotNull
     private Integer d; // defaultTopicQueueNums;
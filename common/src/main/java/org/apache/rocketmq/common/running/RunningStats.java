@@ -22,4 +22,12 @@ public enum RunningStats {
     commitLogDiskRatio,
     consumeQueueDiskRatio,
     scheduleMessageOffset,
+    scheduleMessageDeliverTimes,
+    scheduleMessageDeliverLag,
+    indexBloomNegativeTimes,
+    indexBloomPositiveTimes,
+    indexBloomFalsePositiveTimes,
+    indexBloomFalsePositiveRate,
+    timerEnqueueLag,
+    timerDequeueLag,
 }
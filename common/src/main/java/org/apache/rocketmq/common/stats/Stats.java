@@ -31,6 +31,7 @@ public class Stats {
     public static final String BROKER_GET_NUMS = "BROKER_GET_NUMS";
     public static final String GROUP_GET_FROM_DISK_NUMS = "GROUP_GET_FROM_DISK_NUMS";
     public static final String GROUP_GET_FROM_DISK_SIZE = "GROUP_GET_FROM_DISK_SIZE";
+    public static final String GROUP_GET_FROM_CACHE_SIZE = "GROUP_GET_FROM_CACHE_SIZE";
     public static final String BROKER_GET_FROM_DISK_NUMS = "BROKER_GET_FROM_DISK_NUMS";
     public static final String BROKER_GET_FROM_DISK_SIZE = "BROKER_GET_FROM_DISK_SIZE";
     public static final String COMMERCIAL_SEND_TIMES = "COMMERCIAL_SEND_TIMES";
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.remoting.netty;
+
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how long a task waits in each event loop before it runs, which grows once the loop is saturated.
+ * {@link #probe()} submits a task to every loop of the registered groups, unless the last one is still pending, and
+ * {@link #resetAndGet()} takes the stats since the last reset.
+ */
+public class EventLoopLatencyProbe {
+    private final List<LoopStats> loopStatsList = new ArrayList<LoopStats>();
+
+    public void register(final String groupName, final EventExecutorGroup group) {
+        int index = 0;
+        for (EventExecutor executor : group) {
+            this.loopStatsList.add(new LoopStats(groupName + "_" + index++, executor));
+        }
+    }
+
+    public void probe() {
+        for (LoopStats loopStats : this.loopStatsList) {
+            loopStats.probe();
+        }
+    }
+
+    /**
+     * @return the stats of every loop, with a still pending task counted by how long it has been waiting
+     */
+    public List<LatencySnapshot> resetAndGet() {
+        List<LatencySnapshot> snapshots = new ArrayList<LatencySnapshot>(this.loopStatsList.size());
+        for (LoopStats loopStats : this.loopStatsList) {
+            snapshots.add(loopStats.resetAndGet());
+        }
+        return Collections.unmodifiableList(snapshots);
+    }
+
+    static class LoopStats implements Runnable {
+        private final String name;
+        private final EventExecutor executor;
+        private final AtomicLong count = new AtomicLong(0);
+        private final AtomicLong totalNanos = new AtomicLong(0);
+        private final AtomicLong maxNanos = new AtomicLong(0);
+        /**
+         * Submit time of the pending task, 0 if there is none.
+         */
+        private volatile long submitNanos = 0;
+
+        LoopStats(final String name, final EventExecutor executor) {
+            this.name = name;
+            this.executor = executor;
+        }
+
+        void probe() {
+            if (this.submitNanos != 0 || this.executor.isShuttingDown()) {
+                return;
+            }
+            this.submitNanos = System.nanoTime();
+            try {
+                this.executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                this.submitNanos = 0;
+            }
+        }
+
+        @Override
+        public void run() {
+            this.record(System.nanoTime() - this.submitNanos);
+            this.submitNanos = 0;
+        }
+
+        private void record(final long nanos) {
+            this.count.incrementAndGet();
+            this.totalNanos.addAndGet(nanos);
+            long max = this.maxNanos.get();
+            while (nanos > max && !this.maxNanos.compareAndSet(max, nanos)) {
+                max = this.maxNanos.get();
+            }
+        }
+
+        LatencySnapshot resetAndGet() {
+            long count = this.count.getAndSet(0);
+            long totalNanos = this.totalNanos.getAndSet(0);
+            long maxNanos = this.maxNanos.getAndSet(0);
+            long submitNanos = this.submitNanos;
+            if (submitNanos != 0) {
+                maxNanos = Math.max(maxNanos, System.nanoTime() - submitNanos);
+            }
+            long avgNanos = count > 0 ? totalNanos / count : 0;
+            return new LatencySnapshot(this.name, count, TimeUnit.NANOSECONDS.toMicros(avgNanos),
+                TimeUnit.NANOSECONDS.toMicros(maxNanos));
+        }
+    }
+
+    public static class LatencySnapshot {
+        private final String name;
+        private final long count;
+        private final long avgMicros;
+        private final long maxMicros;
+
+        LatencySnapshot(final String name, final long count, final long avgMicros, final long maxMicros) {
+            this.name = name;
+            this.count = count;
+            this.avgMicros = avgMicros;
+            this.maxMicros = maxMicros;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getAvgMicros() {
+            return avgMicros;
+        }
+
+        public long getMaxMicros() {
+            return maxMicros;
+        }
+
+        @Override
+        public String toString() {
+            return name + " [count=" + count + ", avg=" + avgMicros + "us, max=" + maxMicros + "us]";
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.remoting.netty;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import java.lang.reflect.Constructor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The io_uring transport of netty incubator, loaded by reflection so that it is used only when its jar is put on the
+ * class path and the kernel supports it, otherwise the server falls back to epoll or nio.
+ */
+final class IOUringSupport {
+    private static final String IO_URING_CLASS = "io.netty.incubator.channel.uring.IOUring";
+    private static final String EVENT_LOOP_GROUP_CLASS = "io.netty.incubator.channel.uring.IOUringEventLoopGroup";
+    private static final String SERVER_SOCKET_CHANNEL_CLASS = "io.netty.incubator.channel.uring.IOUringServerSocketChannel";
+
+    private static final Constructor<? extends EventLoopGroup> EVENT_LOOP_GROUP_CONSTRUCTOR;
+    private static final Class<? extends ServerChannel> SERVER_SOCKET_CHANNEL;
+    private static final Throwable UNAVAILABILITY_CAUSE;
+
+    static {
+        Constructor<? extends EventLoopGroup> constructor = null;
+        Class<? extends ServerChannel> serverSocketChannel = null;
+        Throwable cause = null;
+        try {
+            Class<?> ioUring = Class.forName(IO_URING_CLASS);
+            if ((Boolean) ioUring.getMethod("isAvailable").invoke(null)) {
+                constructor = Class.forName(EVENT_LOOP_GROUP_CLASS).asSubclass(EventLoopGroup.class)
+                    .getConstructor(int.class, ThreadFactory.class);
+                serverSocketChannel = Class.forName(SERVER_SOCKET_CHANNEL_CLASS).asSubclass(ServerChannel.class);
+            } else {
+                cause = (Throwable) ioUring.getMethod("unavailabilityCause").invoke(null);
+            }
+        } catch (Throwable e) {
+            cause = e;
+        }
+        EVENT_LOOP_GROUP_CONSTRUCTOR = constructor;
+        SERVER_SOCKET_CHANNEL = serverSocketChannel;
+        UNAVAILABILITY_CAUSE = cause;
+    }
+
+    private IOUringSupport() {
+    }
+
+    static boolean isAvailable() {
+        return EVENT_LOOP_GROUP_CONSTRUCTOR != null;
+    }
+
+    static Throwable unavailabilityCause() {
+        return UNAVAILABILITY_CAUSE;
+    }
+
+    static EventLoopGroup newEventLoopGroup(int nThreads, ThreadFactory threadFactory) {
+        try {
+            return EVENT_LOOP_GROUP_CONSTRUCTOR.newInstance(nThreads, threadFactory);
+        } catch (Exception e) {
+            throw new IllegalStateException("create io_uring event loop group failed", e);
+        }
+    }
+
+    static Class<? extends ServerChannel> serverSocketChannelClass() {
+        return SERVER_SOCKET_CHANNEL;
+    }
+}
@@ -17,24 +17,64 @@
 package org.apache.rocketmq.remoting.netty;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
 import io.netty.handler.codec.MessageToByteEncoder;
 import org.apache.rocketmq.remoting.common.RemotingHelper;
 import org.apache.rocketmq.remoting.common.RemotingUtil;
 import org.apache.rocketmq.logging.InternalLogger;
 import org.apache.rocketmq.logging.InternalLoggerFactory;
+import org.apache.rocketmq.remoting.protocol.BinarySerializeContext;
 import org.apache.rocketmq.remoting.protocol.RemotingCommand;
 
 @ChannelHandler.Sharable
 public class NettyEncoder extends MessageToByteEncoder<RemotingCommand> {
     private static final InternalLogger log = InternalLoggerFactory.getLogger(RemotingHelper.ROCKETMQ_REMOTING);
 
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof RemotingCommand && ((RemotingCommand) msg).getBody() == null
+            && ((RemotingCommand) msg).getBodyBuffer() != null) {
+            this.writeWithBodyBuffer(ctx, (RemotingCommand) msg, promise);
+        } else {
+            super.write(ctx, msg, promise);
+        }
+    }
+
+    /**
+     * Write the header and the body buffer as one composite frame, so the body is not copied. The body buffer is
+     * released by the frame once written, or here if the header fails to encode.
+     */
+    private void writeWithBodyBuffer(ChannelHandlerContext ctx, RemotingCommand remotingCommand,
+        ChannelPromise promise) {
+        ByteBuf body = remotingCommand.getBodyBuffer();
+        ByteBuf header = ctx.alloc().ioBuffer();
+        try {
+            remotingCommand.fastEncodeHeader(header, BinarySerializeContext.of(ctx.channel()));
+        } catch (Exception e) {
+            header.release();
+            body.release();
+            log.error("encode exception, " + RemotingHelper.parseChannelRemoteAddr(ctx.channel()), e);
+            log.error(remotingCommand.toString());
+            RemotingUtil.closeChannel(ctx.channel());
+            promise.setFailure(e);
+            return;
+        } finally {
+            // the body buffer is owned by the frame, or already released
+            remotingCommand.setBodyBuffer(null);
+        }
+        CompositeByteBuf frame = ctx.alloc().compositeDirectBuffer(2);
+        frame.addComponents(true, header, body);
+        ctx.write(frame, promise);
+    }
+
     @Override
     public void encode(ChannelHandlerContext ctx, RemotingCommand remotingCommand, ByteBuf out)
         throws Exception {
         try {
-            remotingCommand.fastEncodeHeader(out);
+            remotingCommand.fastEncodeHeader(out, BinarySerializeContext.of(ctx.channel()));
             byte[] body = remotingCommand.getBody();
             if (body != null) {
                 out.writeBytes(body);
@@ -25,12 +25,7 @@ import io.netty.handler.ssl.SslHandler;
 import java.net.SocketAddress;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map.Entry;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
@@ -70,10 +65,9 @@ public abstract class NettyRemotingAbstract {
     protected final Semaphore semaphoreAsync;
 
     /**
-     * This map caches all on-going requests.
+     * This table caches all on-going requests.
      */
-    protected final ConcurrentMap<Integer /* opaque */, ResponseFuture> responseTable =
-        new ConcurrentHashMap<Integer, ResponseFuture>(256);
+    protected final ResponseTable responseTable = new ResponseTable();
 
     /**
      * This container holds all processors per request code, aka, for each incoming request, we may look up the
@@ -204,21 +198,40 @@ public abstract class NettyRemotingAbstract {
                         final RemotingResponseCallback callback = new RemotingResponseCallback() {
                             @Override
                             public void callback(RemotingCommand response) {
-                                doAfterRpcHooks(remoteAddr, cmd, response);
+                                try {
+                                    doAfterRpcHooks(remoteAddr, cmd, response);
+                                } catch (Throwable e) {
+                                    if (response != null) {
+                                        response.release();
+                                    }
+                                    throw e;
+                                }
                                 if (!cmd.isOnewayRPC()) {
                                     if (response != null) {
                                         response.setOpaque(opaque);
                                         response.markResponseType();
                                         response.setSerializeTypeCurrentRPC(cmd.getSerializeTypeCurrentRPC());
                                         try {
-                                            ctx.writeAndFlush(response);
+                                            ChannelFuture future = ctx.writeAndFlush(response);
+                                            if (response.getBodyBuffer() != null) {
+                                                // e.g. the channel is closed, the body buffer never reaches the encoder
+                                                future.addListener(f -> {
+                                                    if (!f.isSuccess()) {
+                                                        response.release();
+                                                    }
+                                                });
+                                            }
                                         } catch (Throwable e) {
                                             log.error("process request over, but response failed", e);
                                             log.error(cmd.toString());
                                             log.error(response.toString());
+                                            response.release();
                                         }
                                     } else {
                                     }
+                                } else if (response != null) {
+                                    // never written, so the body buffer is not released by the encoder
+                                    response.release();
                                 }
                             }
                         };
@@ -383,18 +396,10 @@ public abstract class NettyRemotingAbstract {
      * </p>
      */
     public void scanResponseTable() {
-        final List<ResponseFuture> rfList = new LinkedList<ResponseFuture>();
-        Iterator<Entry<Integer, ResponseFuture>> it = this.responseTable.entrySet().iterator();
-        while (it.hasNext()) {
-            Entry<Integer, ResponseFuture> next = it.next();
-            ResponseFuture rep = next.getValue();
-
-            if ((rep.getBeginTimestamp() + rep.getTimeoutMillis() + 1000) <= System.currentTimeMillis()) {
-                rep.release();
-                it.remove();
-                rfList.add(rep);
-                log.warn("remove timeout request, " + rep);
-            }
+        final List<ResponseFuture> rfList = this.responseTable.expire(System.currentTimeMillis());
+        for (ResponseFuture rep : rfList) {
+            rep.release();
+            log.warn("remove timeout request, " + rep);
         }
 
         for (ResponseFuture rf : rfList) {
@@ -500,15 +505,19 @@ public abstract class NettyRemotingAbstract {
     private void requestFail(final int opaque) {
         ResponseFuture responseFuture = responseTable.remove(opaque);
         if (responseFuture != null) {
-            responseFuture.setSendRequestOK(false);
-            responseFuture.putResponse(null);
-            try {
-                executeInvokeCallback(responseFuture);
-            } catch (Throwable e) {
-                log.warn("execute callback in requestFail, and callback throw", e);
-            } finally {
-                responseFuture.release();
-            }
+            requestFail(responseFuture);
+        }
+    }
+
+    private void requestFail(final ResponseFuture responseFuture) {
+        responseFuture.setSendRequestOK(false);
+        responseFuture.putResponse(null);
+        try {
+            executeInvokeCallback(responseFuture);
+        } catch (Throwable e) {
+            log.warn("execute callback in requestFail, and callback throw", e);
+        } finally {
+            responseFuture.release();
         }
     }
 
@@ -517,15 +526,8 @@ public abstract class NettyRemotingAbstract {
      * @param channel the channel which is close already
      */
     protected void failFast(final Channel channel) {
-        Iterator<Entry<Integer, ResponseFuture>> it = responseTable.entrySet().iterator();
-        while (it.hasNext()) {
-            Entry<Integer, ResponseFuture> entry = it.next();
-            if (entry.getValue().getProcessChannel() == channel) {
-                Integer opaque = entry.getKey();
-                if (opaque != null) {
-                    requestFail(opaque);
-                }
-            }
+        for (ResponseFuture responseFuture : responseTable.removeByChannel(channel)) {
+            requestFail(responseFuture);
         }
     }
 
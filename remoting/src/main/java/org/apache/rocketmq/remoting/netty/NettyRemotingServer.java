@@ -27,6 +27,7 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.channel.WriteBufferWaterMark;
 import io.netty.channel.epoll.Epoll;
@@ -76,6 +77,7 @@ public class NettyRemotingServer extends NettyRemotingAbstract implements Remoti
 
     private final Timer timer = new Timer("ServerHouseKeepingService", true);
     private DefaultEventExecutorGroup defaultEventExecutorGroup;
+    private EventLoopLatencyProbe eventLoopLatencyProbe;
 
 
     private int port = 0;
@@ -115,46 +117,16 @@ public class NettyRemotingServer extends NettyRemotingAbstract implements Remoti
             }
         });
 
-        if (useEpoll()) {
-            this.eventLoopGroupBoss = new EpollEventLoopGroup(1, new ThreadFactory() {
-                private AtomicInteger threadIndex = new AtomicInteger(0);
-
-                @Override
-                public Thread newThread(Runnable r) {
-                    return new Thread(r, String.format("NettyEPOLLBoss_%d", this.threadIndex.incrementAndGet()));
-                }
-            });
-
-            this.eventLoopGroupSelector = new EpollEventLoopGroup(nettyServerConfig.getServerSelectorThreads(), new ThreadFactory() {
-                private AtomicInteger threadIndex = new AtomicInteger(0);
-                private int threadTotal = nettyServerConfig.getServerSelectorThreads();
-
-                @Override
-                public Thread newThread(Runnable r) {
-                    return new Thread(r, String.format("NettyServerEPOLLSelector_%d_%d", threadTotal, this.threadIndex.incrementAndGet()));
-                }
-            });
-        } else {
-            this.eventLoopGroupBoss = new NioEventLoopGroup(1, new ThreadFactory() {
-                private AtomicInteger threadIndex = new AtomicInteger(0);
-
-                @Override
-                public Thread newThread(Runnable r) {
-                    return new Thread(r, String.format("NettyNIOBoss_%d", this.threadIndex.incrementAndGet()));
-                }
-            });
-
-            this.eventLoopGroupSelector = new NioEventLoopGroup(nettyServerConfig.getServerSelectorThreads(), new ThreadFactory() {
-                private AtomicInteger threadIndex = new AtomicInteger(0);
-                private int threadTotal = nettyServerConfig.getServerSelectorThreads();
-
-                @Override
-                public Thread newThread(Runnable r) {
-                    return new Thread(r, String.format("NettyServerNIOSelector_%d_%d", threadTotal, this.threadIndex.incrementAndGet()));
-                }
-            });
+        if (nettyServerConfig.isUseIoUringNativeSelector() && !useIoUring()) {
+            log.warn("io_uring is not available, fall back to " + (useEpoll() ? "epoll" : "nio"),
+                IOUringSupport.unavailabilityCause());
         }
 
+        String transport = useIoUring() ? "IOURING" : useEpoll() ? "EPOLL" : "NIO";
+        this.eventLoopGroupBoss = newEventLoopGroup(1, "Netty" + transport + "Boss_%d");
+        this.eventLoopGroupSelector = newEventLoopGroup(nettyServerConfig.getServerSelectorThreads(),
+            "NettyServer" + transport + "Selector_" + nettyServerConfig.getServerSelectorThreads() + "_%d");
+
         loadSslContext();
     }
 
@@ -174,12 +146,46 @@ public class NettyRemotingServer extends NettyRemotingAbstract implements Remoti
         }
     }
 
+    private boolean useIoUring() {
+        return RemotingUtil.isLinuxPlatform()
+            && nettyServerConfig.isUseIoUringNativeSelector()
+            && IOUringSupport.isAvailable();
+    }
+
     private boolean useEpoll() {
         return RemotingUtil.isLinuxPlatform()
             && nettyServerConfig.isUseEpollNativeSelector()
             && Epoll.isAvailable();
     }
 
+    private EventLoopGroup newEventLoopGroup(int nThreads, final String threadNameFormat) {
+        ThreadFactory threadFactory = new ThreadFactory() {
+            private AtomicInteger threadIndex = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, String.format(threadNameFormat, this.threadIndex.incrementAndGet()));
+            }
+        };
+        if (useIoUring()) {
+            return IOUringSupport.newEventLoopGroup(nThreads, threadFactory);
+        } else if (useEpoll()) {
+            return new EpollEventLoopGroup(nThreads, threadFactory);
+        } else {
+            return new NioEventLoopGroup(nThreads, threadFactory);
+        }
+    }
+
+    private Class<? extends ServerChannel> serverSocketChannelClass() {
+        if (useIoUring()) {
+            return IOUringSupport.serverSocketChannelClass();
+        } else if (useEpoll()) {
+            return EpollServerSocketChannel.class;
+        } else {
+            return NioServerSocketChannel.class;
+        }
+    }
+
     @Override
     public void start() {
         this.defaultEventExecutorGroup = new DefaultEventExecutorGroup(
@@ -198,7 +204,7 @@ public class NettyRemotingServer extends NettyRemotingAbstract implements Remoti
 
         ServerBootstrap childHandler =
             this.serverBootstrap.group(this.eventLoopGroupBoss, this.eventLoopGroupSelector)
-                .channel(useEpoll() ? EpollServerSocketChannel.class : NioServerSocketChannel.class)
+                .channel(serverSocketChannelClass())
                 .option(ChannelOption.SO_BACKLOG, nettyServerConfig.getServerSocketBacklog())
                 .option(ChannelOption.SO_REUSEADDR, true)
                 .option(ChannelOption.SO_KEEPALIVE, false)
@@ -207,8 +213,12 @@ public class NettyRemotingServer extends NettyRemotingAbstract implements Remoti
                 .childHandler(new ChannelInitializer<SocketChannel>() {
                     @Override
                     public void initChannel(SocketChannel ch) throws Exception {
+                        ch.pipeline().addLast(defaultEventExecutorGroup, HANDSHAKE_HANDLER_NAME, handshakeHandler);
+                        if (useIoUring()) {
+                            // the io_uring channel writes byte buffers only
+                            ch.pipeline().addLast(defaultEventExecutorGroup, FILE_REGION_ENCODER_NAME, new FileRegionEncoder());
+                        }
                         ch.pipeline()
-                            .addLast(defaultEventExecutorGroup, HANDSHAKE_HANDLER_NAME, handshakeHandler)
                             .addLast(defaultEventExecutorGroup,
                                 encoder,
                                 new NettyDecoder(),
@@ -260,6 +270,40 @@ public class NettyRemotingServer extends NettyRemotingAbstract implements Remoti
                 }
             }
         }, 1000 * 3, 1000);
+
+        if (nettyServerConfig.isEventLoopLatencyProbeEnable()) {
+            this.startEventLoopLatencyProbe();
+        }
+    }
+
+    private void startEventLoopLatencyProbe() {
+        this.eventLoopLatencyProbe = new EventLoopLatencyProbe();
+        this.eventLoopLatencyProbe.register("NettyBoss", this.eventLoopGroupBoss);
+        this.eventLoopLatencyProbe.register("NettyServerSelector", this.eventLoopGroupSelector);
+        this.eventLoopLatencyProbe.register("NettyServerCodecThread", this.defaultEventExecutorGroup);
+
+        this.timer.scheduleAtFixedRate(new TimerTask() {
+            private int round = 0;
+
+            @Override
+            public void run() {
+                try {
+                    eventLoopLatencyProbe.probe();
+                    if (++round % 60 == 0) {
+                        log.info("Event loop latency of port {}: {}", port, eventLoopLatencyProbe.resetAndGet());
+                    }
+                } catch (Throwable e) {
+                    log.error("probe event loop latency exception", e);
+                }
+            }
+        }, 1000, 1000);
+    }
+
+    /**
+     * @return the probe of the event loops, null unless {@link NettyServerConfig#isEventLoopLatencyProbeEnable()}
+     */
+    public EventLoopLatencyProbe getEventLoopLatencyProbe() {
+        return eventLoopLatencyProbe;
     }
 
     @Override
@@ -392,8 +436,12 @@ public class NettyRemotingServer extends NettyRemotingAbstract implements Remoti
                     case ENFORCING:
                         if (null != sslContext) {
                             ctx.pipeline()
-                                .addAfter(defaultEventExecutorGroup, HANDSHAKE_HANDLER_NAME, TLS_HANDLER_NAME, sslContext.newHandler(ctx.channel().alloc()))
-                                .addAfter(defaultEventExecutorGroup, TLS_HANDLER_NAME, FILE_REGION_ENCODER_NAME, new FileRegionEncoder());
+                                .addAfter(defaultEventExecutorGroup, HANDSHAKE_HANDLER_NAME, TLS_HANDLER_NAME, sslContext.newHandler(ctx.channel().alloc()));
+                            // already added behind the handshake handler for io_uring
+                            if (ctx.pipeline().get(FILE_REGION_ENCODER_NAME) == null) {
+                                ctx.pipeline()
+                                    .addAfter(defaultEventExecutorGroup, TLS_HANDLER_NAME, FILE_REGION_ENCODER_NAME, new FileRegionEncoder());
+                            }
                             log.info("Handlers prepended to channel pipeline to establish SSL connection");
                         } else {
                             ctx.close();
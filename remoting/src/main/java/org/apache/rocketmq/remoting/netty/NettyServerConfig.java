@@ -40,6 +40,16 @@ public class NettyServerConfig implements Cloneable {
      * --host=x86_64-linux-gnu \ --build=x86_64-pc-linux-gnu \ --without-gd
      */
     private boolean useEpollNativeSelector = false;
+    /**
+     * Use the io_uring transport, which is preferred over epoll, if netty-incubator-transport-native-io_uring is on
+     * the class path and the kernel supports it.
+     */
+    private boolean useIoUringNativeSelector = false;
+    /**
+     * Probe how long tasks wait in the boss, selector and codec event loops every second, and log the stats every
+     * minute.
+     */
+    private boolean eventLoopLatencyProbeEnable = false;
 
     public int getListenPort() {
         return listenPort;
@@ -137,6 +147,22 @@ public class NettyServerConfig implements Cloneable {
         this.useEpollNativeSelector = useEpollNativeSelector;
     }
 
+    public boolean isUseIoUringNativeSelector() {
+        return useIoUringNativeSelector;
+    }
+
+    public void setUseIoUringNativeSelector(boolean useIoUringNativeSelector) {
+        this.useIoUringNativeSelector = useIoUringNativeSelector;
+    }
+
+    public boolean isEventLoopLatencyProbeEnable() {
+        return eventLoopLatencyProbeEnable;
+    }
+
+    public void setEventLoopLatencyProbeEnable(boolean eventLoopLatencyProbeEnable) {
+        this.eventLoopLatencyProbeEnable = eventLoopLatencyProbeEnable;
+    }
+
     @Override
     public Object clone() throws CloneNotSupportedException {
         return (NettyServerConfig) super.clone();
@@ -39,6 +39,14 @@ public class ResponseFuture {
     private volatile boolean sendRequestOK = true;
     private volatile Throwable cause;
 
+    /**
+     * Neighbours in the same bucket of the timing wheel of {@link ResponseTable} and the bucket, -1 if the future is
+     * not linked, guarded by its stripe.
+     */
+    private ResponseFuture prevInWheel;
+    private ResponseFuture nextInWheel;
+    private int wheelBucket = -1;
+
     public ResponseFuture(Channel channel, int opaque, long timeoutMillis, InvokeCallback invokeCallback,
         SemaphoreReleaseOnlyOnce once) {
         this.opaque = opaque;
@@ -121,6 +129,30 @@ public class ResponseFuture {
         return processChannel;
     }
 
+    ResponseFuture getPrevInWheel() {
+        return prevInWheel;
+    }
+
+    void setPrevInWheel(ResponseFuture prevInWheel) {
+        this.prevInWheel = prevInWheel;
+    }
+
+    ResponseFuture getNextInWheel() {
+        return nextInWheel;
+    }
+
+    void setNextInWheel(ResponseFuture nextInWheel) {
+        this.nextInWheel = nextInWheel;
+    }
+
+    int getWheelBucket() {
+        return wheelBucket;
+    }
+
+    void setWheelBucket(int wheelBucket) {
+        this.wheelBucket = wheelBucket;
+    }
+
     @Override
     public String toString() {
         return "ResponseFuture [responseCommand=" + responseCommand
@@ -0,0 +1,311 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.remoting.netty;
+
+import io.netty.channel.Channel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Table of the on-going requests keyed by opaque. It is split into stripes each of which is an open addressing hash
+ * table of primitive opaque, so neither the opaque is boxed nor an entry is allocated for a request. Each stripe also
+ * links its futures into a hashed timing wheel by the deadline, so {@link #expire(long)} only visits the futures of
+ * the ticks passed instead of the whole table. A future is unlinked from the wheel as soon as it is removed from the
+ * table, so a completed request is not held until its tick is visited.
+ */
+public class ResponseTable {
+    /**
+     * Extra time before a request is expired, the same as the scan of the former table.
+     */
+    public static final long EXPIRE_DELAY_MILLIS = 1000;
+
+    private static final int STRIPE_NUM = 32;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final long TICK_MILLIS = 100;
+    private static final int WHEEL_SIZE = 1024;
+
+    private final Stripe[] stripes = new Stripe[STRIPE_NUM];
+
+    public ResponseTable() {
+        long tick = System.currentTimeMillis() / TICK_MILLIS;
+        for (int i = 0; i < STRIPE_NUM; i++) {
+            this.stripes[i] = new Stripe(tick);
+        }
+    }
+
+    public ResponseFuture get(int opaque) {
+        Stripe stripe = stripeOf(opaque);
+        synchronized (stripe) {
+            return stripe.get(opaque);
+        }
+    }
+
+    /**
+     * @return the previous future of the opaque, or null if there was none
+     */
+    public ResponseFuture put(int opaque, ResponseFuture responseFuture) {
+        Stripe stripe = stripeOf(opaque);
+        synchronized (stripe) {
+            ResponseFuture old = stripe.put(opaque, responseFuture);
+            if (old != null) {
+                stripe.unschedule(old);
+            }
+            stripe.schedule(responseFuture);
+            return old;
+        }
+    }
+
+    /**
+     * @return the current future of the opaque, or null if the given one is put
+     */
+    public ResponseFuture putIfAbsent(int opaque, ResponseFuture responseFuture) {
+        Stripe stripe = stripeOf(opaque);
+        synchronized (stripe) {
+            ResponseFuture old = stripe.get(opaque);
+            if (old != null) {
+                return old;
+            }
+            stripe.put(opaque, responseFuture);
+            stripe.schedule(responseFuture);
+            return null;
+        }
+    }
+
+    public ResponseFuture remove(int opaque) {
+        Stripe stripe = stripeOf(opaque);
+        synchronized (stripe) {
+            return stripe.remove(opaque);
+        }
+    }
+
+    /**
+     * Remove the futures of the requests sent on the channel.
+     */
+    public List<ResponseFuture> removeByChannel(Channel channel) {
+        List<ResponseFuture> removed = new ArrayList<ResponseFuture>();
+        for (Stripe stripe : this.stripes) {
+            synchronized (stripe) {
+                stripe.removeByChannel(channel, removed);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Remove the futures of which the deadline, the timeout plus {@link #EXPIRE_DELAY_MILLIS}, is passed.
+     */
+    public List<ResponseFuture> expire(long now) {
+        List<ResponseFuture> expired = new ArrayList<ResponseFuture>();
+        for (Stripe stripe : this.stripes) {
+            synchronized (stripe) {
+                stripe.expire(now, expired);
+            }
+        }
+        return expired;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : this.stripes) {
+            synchronized (stripe) {
+                size += stripe.size;
+            }
+        }
+        return size;
+    }
+
+    private Stripe stripeOf(int opaque) {
+        // opaque is a sequence, so the lowest bits spread the requests over the stripes
+        return this.stripes[opaque & (STRIPE_NUM - 1)];
+    }
+
+    private static int slotOf(int opaque, int mask) {
+        int h = opaque;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h & mask;
+    }
+
+    private static long deadlineOf(ResponseFuture responseFuture) {
+        return responseFuture.getBeginTimestamp() + responseFuture.getTimeoutMillis() + EXPIRE_DELAY_MILLIS;
+    }
+
+    private static final class Stripe {
+        private int[] keys = new int[INITIAL_CAPACITY];
+        private ResponseFuture[] values = new ResponseFuture[INITIAL_CAPACITY];
+        private int size;
+
+        private final ResponseFuture[] wheel = new ResponseFuture[WHEEL_SIZE];
+        /**
+         * The tick visited last, it is visited again by the next expiring as futures may be scheduled to it later.
+         */
+        private long currentTick;
+
+        Stripe(long currentTick) {
+            this.currentTick = currentTick;
+        }
+
+        ResponseFuture get(int opaque) {
+            int mask = this.values.length - 1;
+            for (int i = slotOf(opaque, mask); this.values[i] != null; i = (i + 1) & mask) {
+                if (this.keys[i] == opaque) {
+                    return this.values[i];
+                }
+            }
+            return null;
+        }
+
+        ResponseFuture put(int opaque, ResponseFuture responseFuture) {
+            int mask = this.values.length - 1;
+            int i = slotOf(opaque, mask);
+            for (; this.values[i] != null; i = (i + 1) & mask) {
+                if (this.keys[i] == opaque) {
+                    ResponseFuture old = this.values[i];
+                    this.values[i] = responseFuture;
+                    return old;
+                }
+            }
+            this.keys[i] = opaque;
+            this.values[i] = responseFuture;
+            if (++this.size * 2 > this.values.length) {
+                resize();
+            }
+            return null;
+        }
+
+        ResponseFuture remove(int opaque) {
+            int mask = this.values.length - 1;
+            for (int i = slotOf(opaque, mask); this.values[i] != null; i = (i + 1) & mask) {
+                if (this.keys[i] == opaque) {
+                    ResponseFuture old = this.values[i];
+                    removeAt(i);
+                    unschedule(old);
+                    return old;
+                }
+            }
+            return null;
+        }
+
+        void removeByChannel(Channel channel, List<ResponseFuture> removed) {
+            int i = 0;
+            while (i < this.values.length) {
+                ResponseFuture responseFuture = this.values[i];
+                if (responseFuture != null && responseFuture.getProcessChannel() == channel) {
+                    removed.add(responseFuture);
+                    // an entry of a later slot may be shifted into this one
+                    removeAt(i);
+                    unschedule(responseFuture);
+                } else {
+                    i++;
+                }
+            }
+        }
+
+        /**
+         * Link the future to the bucket of its deadline, or of the current tick if the deadline is passed.
+         */
+        void schedule(ResponseFuture responseFuture) {
+            long tick = Math.max(deadlineOf(responseFuture) / TICK_MILLIS, this.currentTick);
+            int bucket = (int) (tick & (WHEEL_SIZE - 1));
+            ResponseFuture head = this.wheel[bucket];
+            if (head != null) {
+                head.setPrevInWheel(responseFuture);
+            }
+            responseFuture.setPrevInWheel(null);
+            responseFuture.setNextInWheel(head);
+            responseFuture.setWheelBucket(bucket);
+            this.wheel[bucket] = responseFuture;
+        }
+
+        void unschedule(ResponseFuture responseFuture) {
+            int bucket = responseFuture.getWheelBucket();
+            if (bucket < 0) {
+                return;
+            }
+            ResponseFuture prev = responseFuture.getPrevInWheel();
+            ResponseFuture next = responseFuture.getNextInWheel();
+            if (prev != null) {
+                prev.setNextInWheel(next);
+            } else {
+                this.wheel[bucket] = next;
+            }
+            if (next != null) {
+                next.setPrevInWheel(prev);
+            }
+            responseFuture.setPrevInWheel(null);
+            responseFuture.setNextInWheel(null);
+            responseFuture.setWheelBucket(-1);
+        }
+
+        void expire(long now, List<ResponseFuture> expired) {
+            long nowTick = now / TICK_MILLIS;
+            long tick = Math.max(this.currentTick, nowTick - WHEEL_SIZE + 1);
+            for (; tick <= nowTick; tick++) {
+                int bucket = (int) (tick & (WHEEL_SIZE - 1));
+                ResponseFuture responseFuture = this.wheel[bucket];
+                while (responseFuture != null) {
+                    ResponseFuture next = responseFuture.getNextInWheel();
+                    // the one due in a later round of the wheel is kept
+                    if (deadlineOf(responseFuture) <= now) {
+                        remove(responseFuture.getOpaque());
+                        expired.add(responseFuture);
+                    }
+                    responseFuture = next;
+                }
+            }
+            this.currentTick = Math.max(this.currentTick, nowTick);
+        }
+
+        /**
+         * Remove the entry by shifting back the following entries of the probe sequence, so no tombstone is needed.
+         */
+        private void removeAt(int slot) {
+            int mask = this.values.length - 1;
+            int gap = slot;
+            for (int i = (gap + 1) & mask; this.values[i] != null; i = (i + 1) & mask) {
+                int ideal = slotOf(this.keys[i], mask);
+                if (((i - ideal) & mask) >= ((i - gap) & mask)) {
+                    this.keys[gap] = this.keys[i];
+                    this.values[gap] = this.values[i];
+                    gap = i;
+                }
+            }
+            this.values[gap] = null;
+            this.size--;
+        }
+
+        private void resize() {
+            int[] oldKeys = this.keys;
+            ResponseFuture[] oldValues = this.values;
+            this.keys = new int[oldValues.length * 2];
+            this.values = new ResponseFuture[oldValues.length * 2];
+            int mask = this.values.length - 1;
+            for (int j = 0; j < oldValues.length; j++) {
+                if (oldValues[j] != null) {
+                    int i = slotOf(oldKeys[j], mask);
+                    while (this.values[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+                    this.keys[i] = oldKeys[j];
+                    this.values[i] = oldValues[j];
+                }
+            }
+        }
+    }
+}
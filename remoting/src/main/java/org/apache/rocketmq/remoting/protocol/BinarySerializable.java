@@ -0,0 +1,380 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.remoting.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.rocketmq.remoting.CommandCustomHeader;
+import org.apache.rocketmq.remoting.exception.RemotingCommandException;
+
+/**
+ * Header of {@link SerializeType#BINARY}:
+ * <pre>
+ * varint code, byte language, varint version, varint opaque, varint flag, string remark
+ * varint schema ref, 0 if there is no custom header, (id << 1) | 1 followed by the schema if it is defined inline,
+ *     else (id << 1), then the fields in the order of the schema
+ * varint ext fields count, then each as interned string key and string value
+ * </pre>
+ * A schema is the field count followed by the name and the wire type of each field. Numbers are zigzag varints,
+ * strings are a varint of the UTF-8 length plus one, 0 standing for null, and the boxed fields are led by a byte
+ * of whether they are present. See {@link #writeInternedString} for the interned strings.
+ */
+public class BinarySerializable {
+    static final byte WIRE_STRING = 1;
+    static final byte WIRE_INTERNED_STRING = 2;
+    static final byte WIRE_NUMBER = 3;
+    static final byte WIRE_BOOLEAN = 4;
+    static final byte WIRE_DOUBLE = 5;
+    static final byte WIRE_OPTIONAL = 0x40;
+
+    private static final int MAX_SCHEMA_FIELD_NUM = 1024;
+
+    public static int binaryProtocolEncode(RemotingCommand cmd, ByteBuf out, BinarySerializeContext context) {
+        int beginIndex = out.writerIndex();
+        writeVarInt(out, cmd.getCode());
+        out.writeByte(cmd.getLanguage().getCode());
+        writeVarInt(out, cmd.getVersion());
+        writeVarInt(out, cmd.getOpaque());
+        writeVarInt(out, cmd.getFlag());
+        writeString(out, cmd.getRemark());
+
+        CommandCustomHeader customHeader = cmd.readCustomHeader();
+        CommandCustomHeaderCodec codec = null;
+        if (customHeader != null) {
+            codec = CommandCustomHeaderCodec.of(customHeader.getClass());
+            codec.encode(customHeader, out, context);
+        } else {
+            writeVarInt(out, 0);
+        }
+
+        // the fields written by the codec are skipped, e.g. put to the ext fields by an rpc hook
+        int count = 0;
+        HashMap<String, String> map = cmd.getExtFields();
+        if (map != null) {
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                if (isExtFieldWritten(entry, codec, customHeader)) {
+                    count++;
+                }
+            }
+        }
+        writeVarInt(out, count);
+        if (count > 0) {
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                if (isExtFieldWritten(entry, codec, customHeader)) {
+                    writeInternedString(out, entry.getKey(), context);
+                    writeString(out, entry.getValue());
+                }
+            }
+        }
+        return out.writerIndex() - beginIndex;
+    }
+
+    private static boolean isExtFieldWritten(Map.Entry<String, String> entry, CommandCustomHeaderCodec codec,
+        CommandCustomHeader customHeader) {
+        return entry.getKey() != null && entry.getValue() != null
+            && (codec == null || !codec.isFieldWritten(customHeader, entry.getKey()));
+    }
+
+    public static RemotingCommand binaryProtocolDecode(ByteBuf headerBuffer, int headerLen,
+        BinarySerializeContext context) throws RemotingCommandException {
+        if (context == null) {
+            throw new RemotingCommandException("Binary protocol decoding failed, no context of the connection");
+        }
+
+        int endIndex = headerBuffer.readerIndex() + headerLen;
+        try {
+            RemotingCommand cmd = new RemotingCommand();
+            cmd.setCode(readVarInt(headerBuffer));
+            cmd.setLanguage(LanguageCode.valueOf(headerBuffer.readByte()));
+            cmd.setVersion(readVarInt(headerBuffer));
+            cmd.setOpaque(readVarInt(headerBuffer));
+            cmd.setFlag(readVarInt(headerBuffer));
+            cmd.setRemark(readString(headerBuffer));
+
+            int schemaRef = readVarInt(headerBuffer);
+            if (schemaRef != 0) {
+                int schemaId = schemaRef >>> 1;
+                Schema schema;
+                if ((schemaRef & 1) == 1) {
+                    schema = readSchema(headerBuffer);
+                    if (schemaId != 0) {
+                        context.defineInSchema(schemaId, schema);
+                    }
+                } else {
+                    schema = context.getInSchema(schemaId);
+                }
+                cmd.setBinaryHeaderFields(readFields(headerBuffer, schema, context));
+            }
+
+            int extFieldsCount = readVarInt(headerBuffer);
+            if (extFieldsCount > 0) {
+                HashMap<String, String> map = new HashMap<String, String>(extFieldsCount * 2);
+                for (int i = 0; i < extFieldsCount; i++) {
+                    map.put(readInternedString(headerBuffer, context), readString(headerBuffer));
+                }
+                cmd.setExtFields(map);
+            }
+
+            if (headerBuffer.readerIndex() != endIndex) {
+                throw new RemotingCommandException("Binary protocol decoding failed, header length: " + headerLen
+                    + ", but read: " + (headerBuffer.readerIndex() + headerLen - endIndex));
+            }
+            return cmd;
+        } catch (IndexOutOfBoundsException e) {
+            throw new RemotingCommandException("Binary protocol decoding failed, header length: " + headerLen, e);
+        }
+    }
+
+    private static Schema readSchema(ByteBuf in) throws RemotingCommandException {
+        int fieldNum = readVarInt(in);
+        if (fieldNum < 0 || fieldNum > MAX_SCHEMA_FIELD_NUM) {
+            throw new RemotingCommandException("Binary protocol decoding failed, schema field num: " + fieldNum);
+        }
+        String[] names = new String[fieldNum];
+        byte[] wireTypes = new byte[fieldNum];
+        for (int i = 0; i < fieldNum; i++) {
+            names[i] = readString(in);
+            wireTypes[i] = in.readByte();
+        }
+        return new Schema(names, wireTypes);
+    }
+
+    private static HeaderFields readFields(ByteBuf in, Schema schema, BinarySerializeContext context)
+        throws RemotingCommandException {
+        int fieldNum = schema.names.length;
+        HeaderFields fields = new HeaderFields(schema);
+        for (int i = 0; i < fieldNum; i++) {
+            byte wireType = schema.wireTypes[i];
+            if ((wireType & WIRE_OPTIONAL) != 0 && in.readByte() == 0) {
+                continue;
+            }
+            switch (wireType & ~WIRE_OPTIONAL) {
+                case WIRE_STRING:
+                    fields.strings[i] = readString(in);
+                    fields.present[i] = fields.strings[i] != null;
+                    break;
+                case WIRE_INTERNED_STRING:
+                    fields.strings[i] = readInternedString(in, context);
+                    fields.present[i] = fields.strings[i] != null;
+                    break;
+                case WIRE_NUMBER:
+                    fields.numbers[i] = readVarLong(in);
+                    fields.present[i] = true;
+                    break;
+                case WIRE_BOOLEAN:
+                    fields.numbers[i] = in.readByte();
+                    fields.present[i] = true;
+                    break;
+                case WIRE_DOUBLE:
+                    fields.numbers[i] = in.readLong();
+                    fields.present[i] = true;
+                    break;
+                default:
+                    throw new RemotingCommandException("Binary protocol decoding failed, unknown wire type: " + wireType);
+            }
+        }
+        return fields;
+    }
+
+    public static void writeVarInt(ByteBuf out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    public static int readVarInt(ByteBuf in) throws RemotingCommandException {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.readByte();
+            result |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw new RemotingCommandException("Binary protocol decoding failed, malformed varint");
+    }
+
+    /**
+     * Write a zigzag encoded varint, so small negative numbers are short as well.
+     */
+    public static void writeVarLong(ByteBuf out, long value) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            out.writeByte((int) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        out.writeByte((int) zigzag);
+    }
+
+    public static long readVarLong(ByteBuf in) throws RemotingCommandException {
+        long zigzag = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            zigzag |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw new RemotingCommandException("Binary protocol decoding failed, malformed varint");
+    }
+
+    public static void writeString(ByteBuf out, String str) {
+        if (str == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        writeVarInt(out, ByteBufUtil.utf8Bytes(str) + 1);
+        out.writeCharSequence(str, StandardCharsets.UTF_8);
+    }
+
+    public static String readString(ByteBuf in) throws RemotingCommandException {
+        int len = readVarInt(in) - 1;
+        return len < 0 ? null : readUtf8(in, len);
+    }
+
+    /**
+     * Write a string by the id interned on the connection. The varint leading the string is 0 for null, or has the
+     * lowest 2 bits of 1 for a reference of the id, 2 for a literal which is interned with the next id and 0 for a
+     * literal which is not interned.
+     */
+    public static void writeInternedString(ByteBuf out, String str, BinarySerializeContext context) {
+        if (str == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        int id = context.getOutStringId(str);
+        if (id > 0) {
+            writeVarInt(out, id << 2 | 1);
+            return;
+        }
+        int tag = context.defineOutString(str) > 0 ? 2 : 0;
+        writeVarInt(out, (ByteBufUtil.utf8Bytes(str) + 1) << 2 | tag);
+        out.writeCharSequence(str, StandardCharsets.UTF_8);
+    }
+
+    public static String readInternedString(ByteBuf in, BinarySerializeContext context)
+        throws RemotingCommandException {
+        int value = readVarInt(in);
+        if (value == 0) {
+            return null;
+        }
+        int tag = value & 3;
+        if (tag == 1) {
+            return context.getInString(value >>> 2);
+        }
+        String str = readUtf8(in, (value >>> 2) - 1);
+        if (tag == 2) {
+            context.defineInString(str);
+        }
+        return str;
+    }
+
+    private static String readUtf8(ByteBuf in, int len) throws RemotingCommandException {
+        if (len < 0 || len > in.readableBytes()) {
+            throw new RemotingCommandException("Binary protocol decoding failed, string length: " + len);
+        }
+        return in.readCharSequence(len, StandardCharsets.UTF_8).toString();
+    }
+
+    /**
+     * Names and wire types of the fields of a custom header class, as defined by the sender.
+     */
+    static class Schema {
+        final String[] names;
+        final byte[] wireTypes;
+
+        private volatile Mapping mapping;
+
+        Schema(String[] names, byte[] wireTypes) {
+            this.names = names;
+            this.wireTypes = wireTypes;
+        }
+
+        Mapping getMapping() {
+            return mapping;
+        }
+
+        void setMapping(Mapping mapping) {
+            this.mapping = mapping;
+        }
+    }
+
+    /**
+     * Index in the schema of each field of the codec of the receiver, -1 if the schema does not have the field.
+     */
+    static class Mapping {
+        final CommandCustomHeaderCodec codec;
+        final int[] indexes;
+
+        Mapping(CommandCustomHeaderCodec codec, int[] indexes) {
+            this.codec = codec;
+            this.indexes = indexes;
+        }
+    }
+
+    /**
+     * Custom header fields decoded by a schema, the numbers, booleans and bits of doubles are kept in {@link #numbers}
+     * and the strings in {@link #strings}.
+     */
+    static class HeaderFields {
+        final Schema schema;
+        final long[] numbers;
+        final String[] strings;
+        final boolean[] present;
+
+        HeaderFields(Schema schema) {
+            int fieldNum = schema.names.length;
+            this.schema = schema;
+            this.numbers = new long[fieldNum];
+            this.strings = new String[fieldNum];
+            this.present = new boolean[fieldNum];
+        }
+
+        /**
+         * @return the value in the form of the ext fields, null if it is not present
+         */
+        String getString(int index) {
+            if (!this.present[index]) {
+                return null;
+            }
+            switch (this.schema.wireTypes[index] & ~WIRE_OPTIONAL) {
+                case WIRE_NUMBER:
+                    return String.valueOf(this.numbers[index]);
+                case WIRE_BOOLEAN:
+                    return String.valueOf(this.numbers[index] != 0);
+                case WIRE_DOUBLE:
+                    return String.valueOf(Double.longBitsToDouble(this.numbers[index]));
+                default:
+                    return this.strings[index];
+            }
+        }
+
+        void putTo(HashMap<String, String> extFields) {
+            for (int i = 0; i < this.present.length; i++) {
+                if (this.present[i]) {
+                    extFields.putIfAbsent(this.schema.names[i], getString(i));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.remoting.protocol;
+
+import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.rocketmq.remoting.exception.RemotingCommandException;
+
+/**
+ * Per connection state of {@link SerializeType#BINARY}. The schemas of the custom headers and the interned strings
+ * are defined inline the first time they are sent on the connection and referred by id afterwards, so the tables of
+ * both sides stay the same as long as the commands are encoded and decoded in order, which is the case as netty
+ * runs the encoder and the decoder of a channel in its event loop. A failed encoding or decoding closes the channel.
+ */
+public class BinarySerializeContext {
+    public static final int MAX_SCHEMA_NUM = 4096;
+    public static final int MAX_INTERNED_STRING_NUM = 4096;
+    public static final int MAX_INTERNED_STRING_LENGTH = 255;
+
+    private static final AttributeKey<BinarySerializeContext> CONTEXT_KEY = AttributeKey.valueOf("BinarySerializeContext");
+
+    private volatile boolean peerSupported = false;
+
+    private final Map<CommandCustomHeaderCodec, Integer> outSchemaIds = new IdentityHashMap<CommandCustomHeaderCodec, Integer>();
+    private final Map<String, Integer> outStringIds = new HashMap<String, Integer>();
+
+    private final List<BinarySerializable.Schema> inSchemas = new ArrayList<BinarySerializable.Schema>();
+    private final List<String> inStrings = new ArrayList<String>();
+
+    public static BinarySerializeContext of(Channel channel) {
+        Attribute<BinarySerializeContext> attribute = channel.attr(CONTEXT_KEY);
+        BinarySerializeContext context = attribute.get();
+        if (context == null) {
+            context = new BinarySerializeContext();
+            BinarySerializeContext old = attribute.setIfAbsent(context);
+            if (old != null) {
+                context = old;
+            }
+        }
+        return context;
+    }
+
+    /**
+     * @return whether the peer declared that it can decode {@link SerializeType#BINARY}
+     */
+    public boolean isPeerSupported() {
+        return peerSupported;
+    }
+
+    public void setPeerSupported(boolean peerSupported) {
+        this.peerSupported = peerSupported;
+    }
+
+    /**
+     * @return id of the schema sent before, or 0 if it is not defined on the connection yet
+     */
+    int getOutSchemaId(CommandCustomHeaderCodec codec) {
+        Integer id = this.outSchemaIds.get(codec);
+        return id != null ? id : 0;
+    }
+
+    /**
+     * @return id of the new schema, or 0 if the table is full and the schema has to be sent inline every time
+     */
+    int defineOutSchema(CommandCustomHeaderCodec codec) {
+        if (this.outSchemaIds.size() >= MAX_SCHEMA_NUM) {
+            return 0;
+        }
+        int id = this.outSchemaIds.size() + 1;
+        this.outSchemaIds.put(codec, id);
+        return id;
+    }
+
+    /**
+     * @return id of the interned string, or 0 if it is not interned yet
+     */
+    int getOutStringId(String str) {
+        Integer id = this.outStringIds.get(str);
+        return id != null ? id : 0;
+    }
+
+    /**
+     * @return id of the newly interned string, or 0 if the string is not worth interning
+     */
+    int defineOutString(String str) {
+        if (this.outStringIds.size() >= MAX_INTERNED_STRING_NUM || str.length() > MAX_INTERNED_STRING_LENGTH) {
+            return 0;
+        }
+        int id = this.outStringIds.size() + 1;
+        this.outStringIds.put(str, id);
+        return id;
+    }
+
+    BinarySerializable.Schema getInSchema(int id) throws RemotingCommandException {
+        if (id <= 0 || id > this.inSchemas.size()) {
+            throw new RemotingCommandException("Binary protocol decoding failed, unknown schema id: " + id);
+        }
+        return this.inSchemas.get(id - 1);
+    }
+
+    void defineInSchema(int id, BinarySerializable.Schema schema) throws RemotingCommandException {
+        if (id != this.inSchemas.size() + 1 || id > MAX_SCHEMA_NUM) {
+            throw new RemotingCommandException("Binary protocol decoding failed, unexpected schema id: " + id);
+        }
+        this.inSchemas.add(schema);
+    }
+
+    String getInString(int id) throws RemotingCommandException {
+        if (id <= 0 || id > this.inStrings.size()) {
+            throw new RemotingCommandException("Binary protocol decoding failed, unknown string id: " + id);
+        }
+        return this.inStrings.get(id - 1);
+    }
+
+    void defineInString(String str) throws RemotingCommandException {
+        if (this.inStrings.size() >= MAX_INTERNED_STRING_NUM) {
+            throw new RemotingCommandException("Binary protocol decoding failed, too many interned strings");
+        }
+        this.inStrings.add(str);
+    }
+}
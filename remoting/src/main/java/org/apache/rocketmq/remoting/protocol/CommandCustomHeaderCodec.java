@@ -0,0 +1,528 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.remoting.protocol;
+
+import io.netty.buffer.ByteBuf;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.rocketmq.remoting.CommandCustomHeader;
+import org.apache.rocketmq.remoting.annotation.CFIntern;
+import org.apache.rocketmq.remoting.annotation.CFNotNull;
+import org.apache.rocketmq.remoting.exception.RemotingCommandException;
+
+/**
+ * Encoder and decoder of the fields of a {@link CommandCustomHeader} class. The fields, their types and whether
+ * they are nullable are resolved once for a class, so a command only reads and writes the values. Numbers and
+ * booleans of primitive fields are written without boxing, and {@link #encode(CommandCustomHeader, ByteBuf)} writes
+ * the fields of the {@link SerializeType#ROCKETMQ} header straight to the buffer without the ext fields map. The
+ * fields in the order of declaration also make the schema of {@link SerializeType#BINARY}.
+ */
+public class CommandCustomHeaderCodec {
+    private static final ClassValue<CommandCustomHeaderCodec> CODECS = new ClassValue<CommandCustomHeaderCodec>() {
+        @Override
+        protected CommandCustomHeaderCodec computeValue(Class<?> type) {
+            return new CommandCustomHeaderCodec(type);
+        }
+    };
+
+    private static final byte[] TRUE_BYTES = "true".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FALSE_BYTES = "false".getBytes(StandardCharsets.UTF_8);
+
+    private enum FieldType {
+        STRING,
+        INTEGER,
+        INT,
+        LONG_OBJECT,
+        LONG,
+        BOOLEAN_OBJECT,
+        BOOLEAN,
+        DOUBLE_OBJECT,
+        DOUBLE,
+        UNSUPPORTED
+    }
+
+    private static class FieldCodec {
+        private final Field field;
+        private final String name;
+        private final byte[] nameBytes;
+        private final FieldType type;
+        private final boolean nullable;
+        private final byte wireType;
+
+        FieldCodec(Field field, FieldType type, boolean nullable) {
+            this.field = field;
+            this.name = field.getName();
+            this.nameBytes = this.name.getBytes(StandardCharsets.UTF_8);
+            this.type = type;
+            this.nullable = nullable;
+            this.wireType = wireTypeOf(type, field.getAnnotation(CFIntern.class) != null);
+        }
+    }
+
+    private final FieldCodec[] fieldCodecs;
+    private final Map<String, FieldCodec> fieldCodecMap = new HashMap<String, FieldCodec>();
+
+    private CommandCustomHeaderCodec(Class<?> headerClass) {
+        List<FieldCodec> fieldCodecList = new ArrayList<FieldCodec>();
+        for (Field field : headerClass.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) || field.getName().startsWith("this")) {
+                continue;
+            }
+            field.setAccessible(true);
+            FieldCodec fieldCodec = new FieldCodec(field, typeOf(field.getType()), isFieldNullable(field));
+            fieldCodecList.add(fieldCodec);
+            this.fieldCodecMap.put(fieldCodec.name, fieldCodec);
+        }
+        this.fieldCodecs = fieldCodecList.toArray(new FieldCodec[0]);
+    }
+
+    public static CommandCustomHeaderCodec of(Class<?> headerClass) {
+        return CODECS.get(headerClass);
+    }
+
+    /**
+     * @return whether the field of the name is written by the encoding of the header, which skips the null fields
+     */
+    public boolean isFieldWritten(CommandCustomHeader header, String name) {
+        FieldCodec fieldCodec = this.fieldCodecMap.get(name);
+        if (fieldCodec == null) {
+            return false;
+        }
+        if (fieldCodec.field.getType().isPrimitive()) {
+            return true;
+        }
+        try {
+            return fieldCodec.field.get(header) != null;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Set the fields of the header from the ext fields. Like before, a field failed to decode is logged and left
+     * unset, {@link CommandCustomHeader#checkFields()} decides whether the header is usable.
+     */
+    public void decode(CommandCustomHeader header, HashMap<String, String> extFields) {
+        for (FieldCodec fieldCodec : this.fieldCodecs) {
+            decodeField(header, fieldCodec, extFields.get(fieldCodec.name));
+        }
+    }
+
+    /**
+     * Set the fields of the header from the fields decoded by the schema of the sender, the fields not in the schema
+     * are looked up in the ext fields.
+     */
+    void decode(CommandCustomHeader header, BinarySerializable.HeaderFields fields, HashMap<String, String> extFields) {
+        int[] indexes = getSchemaIndexes(fields.schema);
+        for (int i = 0; i < this.fieldCodecs.length; i++) {
+            FieldCodec fieldCodec = this.fieldCodecs[i];
+            int index = indexes[i];
+            if (index >= 0 && fields.present[index]) {
+                if (baseWireType(fieldCodec.wireType) == baseWireType(fields.schema.wireTypes[index])) {
+                    decodeField(header, fieldCodec, fields, index);
+                } else {
+                    decodeField(header, fieldCodec, fields.getString(index));
+                }
+            } else {
+                decodeField(header, fieldCodec, extFields != null ? extFields.get(fieldCodec.name) : null);
+            }
+        }
+    }
+
+    private void decodeField(CommandCustomHeader header, FieldCodec fieldCodec, String value) {
+        if (null == value) {
+            if (!fieldCodec.nullable) {
+                RemotingCommand.log.error("Failed field [{}] decoding", fieldCodec.name,
+                    new RemotingCommandException("the custom field <" + fieldCodec.name + "> is null"));
+            }
+            return;
+        }
+
+        try {
+            Field field = fieldCodec.field;
+            switch (fieldCodec.type) {
+                case STRING:
+                    field.set(header, value);
+                    break;
+                case INTEGER:
+                    field.set(header, Integer.valueOf(value));
+                    break;
+                case INT:
+                    field.setInt(header, Integer.parseInt(value));
+                    break;
+                case LONG_OBJECT:
+                    field.set(header, Long.valueOf(value));
+                    break;
+                case LONG:
+                    field.setLong(header, Long.parseLong(value));
+                    break;
+                case BOOLEAN_OBJECT:
+                    field.set(header, Boolean.valueOf(value));
+                    break;
+                case BOOLEAN:
+                    field.setBoolean(header, Boolean.parseBoolean(value));
+                    break;
+                case DOUBLE_OBJECT:
+                    field.set(header, Double.valueOf(value));
+                    break;
+                case DOUBLE:
+                    field.setDouble(header, Double.parseDouble(value));
+                    break;
+                default:
+                    throw new RemotingCommandException("the custom field <" + fieldCodec.name + "> type is not supported");
+            }
+        } catch (Throwable e) {
+            RemotingCommand.log.error("Failed field [{}] decoding", fieldCodec.name, e);
+        }
+    }
+
+    private void decodeField(CommandCustomHeader header, FieldCodec fieldCodec, BinarySerializable.HeaderFields fields,
+        int index) {
+        try {
+            Field field = fieldCodec.field;
+            long number = fields.numbers[index];
+            switch (fieldCodec.type) {
+                case INTEGER:
+                    field.set(header, (int) number);
+                    break;
+                case INT:
+                    field.setInt(header, (int) number);
+                    break;
+                case LONG_OBJECT:
+                    field.set(header, number);
+                    break;
+                case LONG:
+                    field.setLong(header, number);
+                    break;
+                case BOOLEAN_OBJECT:
+                    field.set(header, number != 0);
+                    break;
+                case BOOLEAN:
+                    field.setBoolean(header, number != 0);
+                    break;
+                case DOUBLE_OBJECT:
+                    field.set(header, Double.longBitsToDouble(number));
+                    break;
+                case DOUBLE:
+                    field.setDouble(header, Double.longBitsToDouble(number));
+                    break;
+                default:
+                    field.set(header, fields.strings[index]);
+                    break;
+            }
+        } catch (Throwable e) {
+            RemotingCommand.log.error("Failed field [{}] decoding", fieldCodec.name, e);
+        }
+    }
+
+    private int[] getSchemaIndexes(BinarySerializable.Schema schema) {
+        BinarySerializable.Mapping mapping = schema.getMapping();
+        if (mapping != null && mapping.codec == this) {
+            return mapping.indexes;
+        }
+
+        int[] indexes = new int[this.fieldCodecs.length];
+        for (int i = 0; i < this.fieldCodecs.length; i++) {
+            indexes[i] = -1;
+            for (int j = 0; j < schema.names.length; j++) {
+                if (this.fieldCodecs[i].name.equals(schema.names[j])) {
+                    indexes[i] = j;
+                    break;
+                }
+            }
+        }
+        schema.setMapping(new BinarySerializable.Mapping(this, indexes));
+        return indexes;
+    }
+
+    /**
+     * Put the non null fields of the header to the ext fields.
+     */
+    public void encode(CommandCustomHeader header, HashMap<String, String> extFields) {
+        for (FieldCodec fieldCodec : this.fieldCodecs) {
+            try {
+                Field field = fieldCodec.field;
+                String value;
+                switch (fieldCodec.type) {
+                    case INT:
+                        value = String.valueOf(field.getInt(header));
+                        break;
+                    case LONG:
+                        value = String.valueOf(field.getLong(header));
+                        break;
+                    case BOOLEAN:
+                        value = String.valueOf(field.getBoolean(header));
+                        break;
+                    default:
+                        Object object = field.get(header);
+                        value = object != null ? object.toString() : null;
+                        break;
+                }
+                if (value != null) {
+                    extFields.put(fieldCodec.name, value);
+                }
+            } catch (Exception e) {
+                RemotingCommand.log.error("Failed to access field [{}]", fieldCodec.name, e);
+            }
+        }
+    }
+
+    /**
+     * Write the non null fields of the header as the entries of the ext fields of {@link SerializeType#ROCKETMQ}.
+     */
+    public void encode(CommandCustomHeader header, ByteBuf out) {
+        for (FieldCodec fieldCodec : this.fieldCodecs) {
+            try {
+                Field field = fieldCodec.field;
+                switch (fieldCodec.type) {
+                    case STRING: {
+                        String value = (String) field.get(header);
+                        if (value != null) {
+                            writeName(out, fieldCodec);
+                            RocketMQSerializable.writeStr(out, false, value);
+                        }
+                        break;
+                    }
+                    case INT:
+                        writeName(out, fieldCodec);
+                        writeDecimal(out, field.getInt(header));
+                        break;
+                    case LONG:
+                        writeName(out, fieldCodec);
+                        writeDecimal(out, field.getLong(header));
+                        break;
+                    case BOOLEAN:
+                        writeName(out, fieldCodec);
+                        writeBoolean(out, field.getBoolean(header));
+                        break;
+                    case INTEGER:
+                    case LONG_OBJECT: {
+                        Number value = (Number) field.get(header);
+                        if (value != null) {
+                            writeName(out, fieldCodec);
+                            writeDecimal(out, value.longValue());
+                        }
+                        break;
+                    }
+                    case BOOLEAN_OBJECT: {
+                        Boolean value = (Boolean) field.get(header);
+                        if (value != null) {
+                            writeName(out, fieldCodec);
+                            writeBoolean(out, value);
+                        }
+                        break;
+                    }
+                    default: {
+                        Object value = field.get(header);
+                        if (value != null) {
+                            writeName(out, fieldCodec);
+                            RocketMQSerializable.writeStr(out, false, value.toString());
+                        }
+                        break;
+                    }
+                }
+            } catch (Exception e) {
+                RemotingCommand.log.error("Failed to access field [{}]", fieldCodec.name, e);
+            }
+        }
+    }
+
+    /**
+     * Write the schema reference and the fields of {@link SerializeType#BINARY}, the schema is defined inline the first
+     * time it is sent on the connection.
+     */
+    public void encode(CommandCustomHeader header, ByteBuf out, BinarySerializeContext context) {
+        int schemaId = context.getOutSchemaId(this);
+        if (schemaId > 0) {
+            BinarySerializable.writeVarInt(out, schemaId << 1);
+        } else {
+            schemaId = context.defineOutSchema(this);
+            BinarySerializable.writeVarInt(out, schemaId << 1 | 1);
+            BinarySerializable.writeVarInt(out, this.fieldCodecs.length);
+            for (FieldCodec fieldCodec : this.fieldCodecs) {
+                BinarySerializable.writeString(out, fieldCodec.name);
+                out.writeByte(fieldCodec.wireType);
+            }
+        }
+
+        for (FieldCodec fieldCodec : this.fieldCodecs) {
+            try {
+                Field field = fieldCodec.field;
+                switch (fieldCodec.type) {
+                    case STRING:
+                        if (fieldCodec.wireType == BinarySerializable.WIRE_INTERNED_STRING) {
+                            BinarySerializable.writeInternedString(out, (String) field.get(header), context);
+                        } else {
+                            BinarySerializable.writeString(out, (String) field.get(header));
+                        }
+                        break;
+                    case INT:
+                        BinarySerializable.writeVarLong(out, field.getInt(header));
+                        break;
+                    case LONG:
+                        BinarySerializable.writeVarLong(out, field.getLong(header));
+                        break;
+                    case BOOLEAN:
+                        out.writeByte(field.getBoolean(header) ? 1 : 0);
+                        break;
+                    case DOUBLE:
+                        out.writeLong(Double.doubleToRawLongBits(field.getDouble(header)));
+                        break;
+                    case INTEGER:
+                    case LONG_OBJECT: {
+                        Number value = (Number) field.get(header);
+                        out.writeByte(value != null ? 1 : 0);
+                        if (value != null) {
+                            BinarySerializable.writeVarLong(out, value.longValue());
+                        }
+                        break;
+                    }
+                    case BOOLEAN_OBJECT: {
+                        Boolean value = (Boolean) field.get(header);
+                        out.writeByte(value != null ? 1 : 0);
+                        if (value != null) {
+                            out.writeByte(value ? 1 : 0);
+                        }
+                        break;
+                    }
+                    case DOUBLE_OBJECT: {
+                        Double value = (Double) field.get(header);
+                        out.writeByte(value != null ? 1 : 0);
+                        if (value != null) {
+                            out.writeLong(Double.doubleToRawLongBits(value));
+                        }
+                        break;
+                    }
+                    default: {
+                        Object value = field.get(header);
+                        BinarySerializable.writeString(out, value != null ? value.toString() : null);
+                        break;
+                    }
+                }
+            } catch (IllegalAccessException e) {
+                // the layout is fixed by the schema, so a field can not be skipped like the ext fields
+                throw new IllegalStateException("Failed to access field [" + fieldCodec.name + "]", e);
+            }
+        }
+    }
+
+    private static void writeName(ByteBuf out, FieldCodec fieldCodec) {
+        out.writeShort(fieldCodec.nameBytes.length);
+        out.writeBytes(fieldCodec.nameBytes);
+    }
+
+    private static void writeBoolean(ByteBuf out, boolean value) {
+        byte[] bytes = value ? TRUE_BYTES : FALSE_BYTES;
+        out.writeInt(bytes.length);
+        out.writeBytes(bytes);
+    }
+
+    /**
+     * Write the decimal string of the value, the same as {@code writeStr(out, false, String.valueOf(value))}.
+     */
+    static void writeDecimal(ByteBuf out, long value) {
+        if (value == Long.MIN_VALUE) {
+            RocketMQSerializable.writeStr(out, false, String.valueOf(value));
+            return;
+        }
+
+        long abs = value < 0 ? -value : value;
+        int len = 1;
+        for (long v = abs; v >= 10; v /= 10) {
+            len++;
+        }
+        if (value < 0) {
+            len++;
+        }
+
+        out.writeInt(len);
+        int index = out.writerIndex();
+        out.writeZero(len);
+        int pos = index + len - 1;
+        do {
+            out.setByte(pos--, (int) ('0' + abs % 10));
+            abs /= 10;
+        } while (abs > 0);
+        if (value < 0) {
+            out.setByte(index, '-');
+        }
+    }
+
+    static boolean isFieldNullable(Field field) {
+        return field.getAnnotation(CFNotNull.class) == null;
+    }
+
+    private static byte wireTypeOf(FieldType type, boolean intern) {
+        switch (type) {
+            case STRING:
+                return intern ? BinarySerializable.WIRE_INTERNED_STRING : BinarySerializable.WIRE_STRING;
+            case INT:
+            case LONG:
+                return BinarySerializable.WIRE_NUMBER;
+            case INTEGER:
+            case LONG_OBJECT:
+                return BinarySerializable.WIRE_NUMBER | BinarySerializable.WIRE_OPTIONAL;
+            case BOOLEAN:
+                return BinarySerializable.WIRE_BOOLEAN;
+            case BOOLEAN_OBJECT:
+                return BinarySerializable.WIRE_BOOLEAN | BinarySerializable.WIRE_OPTIONAL;
+            case DOUBLE:
+                return BinarySerializable.WIRE_DOUBLE;
+            case DOUBLE_OBJECT:
+                return BinarySerializable.WIRE_DOUBLE | BinarySerializable.WIRE_OPTIONAL;
+            default:
+                return BinarySerializable.WIRE_STRING;
+        }
+    }
+
+    /**
+     * @return wire type without the optional bit, the interned strings are the same as the strings
+     */
+    private static int baseWireType(byte wireType) {
+        int baseWireType = wireType & ~BinarySerializable.WIRE_OPTIONAL;
+        return baseWireType == BinarySerializable.WIRE_INTERNED_STRING ? BinarySerializable.WIRE_STRING : baseWireType;
+    }
+
+    private static FieldType typeOf(Class<?> type) {
+        if (type == String.class) {
+            return FieldType.STRING;
+        } else if (type == Integer.class) {
+            return FieldType.INTEGER;
+        } else if (type == int.class) {
+            return FieldType.INT;
+        } else if (type == Long.class) {
+            return FieldType.LONG_OBJECT;
+        } else if (type == long.class) {
+            return FieldType.LONG;
+        } else if (type == Boolean.class) {
+            return FieldType.BOOLEAN_OBJECT;
+        } else if (type == boolean.class) {
+            return FieldType.BOOLEAN;
+        } else if (type == Double.class) {
+            return FieldType.DOUBLE_OBJECT;
+        } else if (type == double.class) {
+            return FieldType.DOUBLE;
+        }
+        return FieldType.UNSUPPORTED;
+    }
+}
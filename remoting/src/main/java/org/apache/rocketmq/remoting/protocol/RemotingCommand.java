@@ -17,18 +17,13 @@
 package org.apache.rocketmq.remoting.protocol;
 
 import com.alibaba.fastjson.annotation.JSONField;
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Modifier;
 import java.nio.ByteBuffer;
 import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.rocketmq.logging.InternalLogger;
 import org.apache.rocketmq.logging.InternalLoggerFactory;
 import org.apache.rocketmq.remoting.CommandCustomHeader;
-import org.apache.rocketmq.remoting.annotation.CFNotNull;
 import org.apache.rocketmq.remoting.common.RemotingHelper;
 import org.apache.rocketmq.remoting.exception.RemotingCommandException;
 
@@ -42,21 +37,9 @@ public class RemotingCommand {
     static final InternalLogger log = InternalLoggerFactory.getLogger(RemotingHelper.ROCKETMQ_REMOTING);
     private static final int RPC_TYPE = 0; // 0, REQUEST_COMMAND
     private static final int RPC_ONEWAY = 1; // 0, RPC
-    private static final Map<Class<? extends CommandCustomHeader>, Field[]> CLASS_HASH_MAP =
-        new HashMap<Class<? extends CommandCustomHeader>, Field[]>();
-    private static final Map<Class, String> CANONICAL_NAME_CACHE = new HashMap<Class, String>();
     // 1, Oneway
     // 1, RESPONSE_COMMAND
-    private static final Map<Field, Boolean> NULLABLE_FIELD_CACHE = new HashMap<Field, Boolean>();
-    private static final String STRING_CANONICAL_NAME = String.class.getCanonicalName();
-    private static final String DOUBLE_CANONICAL_NAME_1 = Double.class.getCanonicalName();
-    private static final String DOUBLE_CANONICAL_NAME_2 = double.class.getCanonicalName();
-    private static final String INTEGER_CANONICAL_NAME_1 = Integer.class.getCanonicalName();
-    private static final String INTEGER_CANONICAL_NAME_2 = int.class.getCanonicalName();
-    private static final String LONG_CANONICAL_NAME_1 = Long.class.getCanonicalName();
-    private static final String LONG_CANONICAL_NAME_2 = long.class.getCanonicalName();
-    private static final String BOOLEAN_CANONICAL_NAME_1 = Boolean.class.getCanonicalName();
-    private static final String BOOLEAN_CANONICAL_NAME_2 = boolean.class.getCanonicalName();
+    private static final int RPC_BINARY_SUPPORTED = 2; // 1, the sender can decode SerializeType.BINARY
     private static volatile int configVersion = -1;
     private static AtomicInteger requestId = new AtomicInteger(0);
 
@@ -81,10 +64,12 @@ public class RemotingCommand {
     private String remark;
     private HashMap<String, String> extFields;
     private transient CommandCustomHeader customHeader;
+    private transient BinarySerializable.HeaderFields binaryHeaderFields;
 
     private SerializeType serializeTypeCurrentRPC = serializeTypeConfigInThisServer;
 
     private transient byte[] body;
+    private transient ByteBuf bodyBuffer;
 
     protected RemotingCommand() {
     }
@@ -154,6 +139,14 @@ public class RemotingCommand {
     }
 
     public static RemotingCommand decode(final ByteBuf byteBuffer) throws RemotingCommandException {
+        return decode(byteBuffer, null);
+    }
+
+    /**
+     * Decode a command received on the connection of the context, which is required by {@link SerializeType#BINARY}.
+     */
+    public static RemotingCommand decode(final ByteBuf byteBuffer,
+        final BinarySerializeContext context) throws RemotingCommandException {
         int length = byteBuffer.readableBytes();
         int oriHeaderLen = byteBuffer.readInt();
         int headerLength = getHeaderLength(oriHeaderLen);
@@ -161,7 +154,14 @@ public class RemotingCommand {
             throw new RemotingCommandException("decode error, bad header length: " + headerLength);
         }
 
-        RemotingCommand cmd = headerDecode(byteBuffer, headerLength, getProtocolType(oriHeaderLen));
+        SerializeType type = getProtocolType(oriHeaderLen);
+        RemotingCommand cmd = headerDecode(byteBuffer, headerLength, type, context);
+        if (cmd == null) {
+            throw new RemotingCommandException("decode error, unknown serialize type: " + (oriHeaderLen >>> 24));
+        }
+        if (context != null && (type == SerializeType.BINARY || cmd.isBinarySupported())) {
+            context.setPeerSupported(true);
+        }
 
         int bodyLength = length - 4 - headerLength;
         byte[] bodyData = null;
@@ -178,7 +178,11 @@ public class RemotingCommand {
         return length & 0xFFFFFF;
     }
 
-    private static RemotingCommand headerDecode(ByteBuf byteBuffer, int len, SerializeType type) throws RemotingCommandException {
+    private static RemotingCommand headerDecode(ByteBuf byteBuffer, int len, SerializeType type,
+        BinarySerializeContext context) throws RemotingCommandException {
+        if (type == null) {
+            return null;
+        }
         switch (type) {
             case JSON:
                 byte[] headerData = new byte[len];
@@ -190,6 +194,10 @@ public class RemotingCommand {
                 RemotingCommand resultRMQ = RocketMQSerializable.rocketMQProtocolDecode(byteBuffer, len);
                 resultRMQ.setSerializeTypeCurrentRPC(type);
                 return resultRMQ;
+            case BINARY:
+                RemotingCommand resultBinary = BinarySerializable.binaryProtocolDecode(byteBuffer, len, context);
+                resultBinary.setSerializeTypeCurrentRPC(type);
+                return resultBinary;
             default:
                 break;
         }
@@ -259,106 +267,34 @@ public class RemotingCommand {
             return null;
         }
 
-        if (this.extFields != null) {
+        if (this.binaryHeaderFields != null) {
+            CommandCustomHeaderCodec.of(classHeader).decode(objectHeader, this.binaryHeaderFields, this.extFields);
+            objectHeader.checkFields();
+        } else if (this.extFields != null) {
             if (objectHeader instanceof FastCodesHeader && useFastEncode) {
                 ((FastCodesHeader) objectHeader).decode(this.extFields);
                 objectHeader.checkFields();
                 return objectHeader;
             }
 
-            Field[] fields = getClazzFields(classHeader);
-            for (Field field : fields) {
-                if (!Modifier.isStatic(field.getModifiers())) {
-                    String fieldName = field.getName();
-                    if (!fieldName.startsWith("this")) {
-                        try {
-                            String value = this.extFields.get(fieldName);
-                            if (null == value) {
-                                if (!isFieldNullable(field)) {
-                                    throw new RemotingCommandException("the custom field <" + fieldName + "> is null");
-                                }
-                                continue;
-                            }
-
-                            field.setAccessible(true);
-                            String type = getCanonicalName(field.getType());
-                            Object valueParsed;
-
-                            if (type.equals(STRING_CANONICAL_NAME)) {
-                                valueParsed = value;
-                            } else if (type.equals(INTEGER_CANONICAL_NAME_1) || type.equals(INTEGER_CANONICAL_NAME_2)) {
-                                valueParsed = Integer.parseInt(value);
-                            } else if (type.equals(LONG_CANONICAL_NAME_1) || type.equals(LONG_CANONICAL_NAME_2)) {
-                                valueParsed = Long.parseLong(value);
-                            } else if (type.equals(BOOLEAN_CANONICAL_NAME_1) || type.equals(BOOLEAN_CANONICAL_NAME_2)) {
-                                valueParsed = Boolean.parseBoolean(value);
-                            } else if (type.equals(DOUBLE_CANONICAL_NAME_1) || type.equals(DOUBLE_CANONICAL_NAME_2)) {
-                                valueParsed = Double.parseDouble(value);
-                            } else {
-                                throw new RemotingCommandException("the custom field <" + fieldName + "> type is not supported");
-                            }
-
-                            field.set(objectHeader, valueParsed);
-
-                        } catch (Throwable e) {
-                            log.error("Failed field [{}] decoding", fieldName, e);
-                        }
-                    }
-                }
-            }
-
+            CommandCustomHeaderCodec.of(classHeader).decode(objectHeader, this.extFields);
             objectHeader.checkFields();
         }
 
         return objectHeader;
     }
 
-    private Field[] getClazzFields(Class<? extends CommandCustomHeader> classHeader) {
-        Field[] field = CLASS_HASH_MAP.get(classHeader);
-
-        if (field == null) {
-            field = classHeader.getDeclaredFields();
-            synchronized (CLASS_HASH_MAP) {
-                CLASS_HASH_MAP.put(classHeader, field);
-            }
-        }
-        return field;
-    }
-
-    private boolean isFieldNullable(Field field) {
-        if (!NULLABLE_FIELD_CACHE.containsKey(field)) {
-            Annotation annotation = field.getAnnotation(CFNotNull.class);
-            synchronized (NULLABLE_FIELD_CACHE) {
-                NULLABLE_FIELD_CACHE.put(field, annotation == null);
-            }
-        }
-        return NULLABLE_FIELD_CACHE.get(field);
-    }
-
-    private String getCanonicalName(Class clazz) {
-        String name = CANONICAL_NAME_CACHE.get(clazz);
-
-        if (name == null) {
-            name = clazz.getCanonicalName();
-            synchronized (CANONICAL_NAME_CACHE) {
-                CANONICAL_NAME_CACHE.put(clazz, name);
-            }
-        }
-        return name;
-    }
-
     public ByteBuffer encode() {
         // 1> header length size
         int length = 4;
 
         // 2> header data length
-        byte[] headerData = this.headerEncode();
+        SerializeType serializeType = this.getEncodeSerializeType(null);
+        byte[] headerData = this.headerEncode(serializeType);
         length += headerData.length;
 
         // 3> body data length
-        if (this.body != null) {
-            length += body.length;
-        }
+        length += this.getBodyLength();
 
         ByteBuffer result = ByteBuffer.allocate(4 + length);
 
@@ -366,7 +302,7 @@ public class RemotingCommand {
         result.putInt(length);
 
         // header length
-        result.putInt(markProtocolType(headerData.length, serializeTypeCurrentRPC));
+        result.putInt(markProtocolType(headerData.length, serializeType));
 
         // header data
         result.put(headerData);
@@ -374,6 +310,8 @@ public class RemotingCommand {
         // body data;
         if (this.body != null) {
             result.put(this.body);
+        } else if (this.bodyBuffer != null) {
+            this.bodyBuffer.getBytes(this.bodyBuffer.readerIndex(), result);
         }
 
         result.flip();
@@ -381,9 +319,9 @@ public class RemotingCommand {
         return result;
     }
 
-    private byte[] headerEncode() {
+    private byte[] headerEncode(SerializeType serializeType) {
         this.makeCustomHeaderToNet();
-        if (SerializeType.ROCKETMQ == serializeTypeCurrentRPC) {
+        if (SerializeType.ROCKETMQ == serializeType) {
             return RocketMQSerializable.rocketMQProtocolEncode(this);
         } else {
             return RemotingSerializable.encode(this);
@@ -392,55 +330,56 @@ public class RemotingCommand {
 
     public void makeCustomHeaderToNet() {
         if (this.customHeader != null) {
-            Field[] fields = getClazzFields(customHeader.getClass());
             if (null == this.extFields) {
                 this.extFields = new HashMap<String, String>();
             }
+            CommandCustomHeaderCodec.of(this.customHeader.getClass()).encode(this.customHeader, this.extFields);
+        }
+    }
 
-            for (Field field : fields) {
-                if (!Modifier.isStatic(field.getModifiers())) {
-                    String name = field.getName();
-                    if (!name.startsWith("this")) {
-                        Object value = null;
-                        try {
-                            field.setAccessible(true);
-                            value = field.get(this.customHeader);
-                        } catch (Exception e) {
-                            log.error("Failed to access field [{}]", name, e);
-                        }
-
-                        if (value != null) {
-                            this.extFields.put(name, value.toString());
-                        }
-                    }
-                }
-            }
+    /**
+     * @return the serialize type to encode with, {@link SerializeType#BINARY} falls back to
+     * {@link SerializeType#ROCKETMQ} unless the peer of the connection declared that it can decode it
+     */
+    private SerializeType getEncodeSerializeType(BinarySerializeContext context) {
+        if (SerializeType.BINARY != serializeTypeCurrentRPC) {
+            return serializeTypeCurrentRPC;
         }
+        return context != null && context.isPeerSupported() ? SerializeType.BINARY : SerializeType.ROCKETMQ;
     }
 
     public void fastEncodeHeader(ByteBuf out) {
-        int bodySize = this.body != null ? this.body.length : 0;
+        fastEncodeHeader(out, null);
+    }
+
+    /**
+     * Encode the header for the connection of the context, which is required by {@link SerializeType#BINARY}.
+     */
+    public void fastEncodeHeader(ByteBuf out, BinarySerializeContext context) {
+        if (context != null) {
+            this.markBinarySupported();
+        }
+        SerializeType serializeType = this.getEncodeSerializeType(context);
+        int bodySize = this.getBodyLength();
         int beginIndex = out.writerIndex();
         // skip 8 bytes
         out.writeLong(0);
         int headerSize;
-        if (SerializeType.ROCKETMQ == serializeTypeCurrentRPC) {
-            if (customHeader != null && !(customHeader instanceof FastCodesHeader)) {
-                this.makeCustomHeaderToNet();
-            }
+        if (SerializeType.BINARY == serializeType) {
+            headerSize = BinarySerializable.binaryProtocolEncode(this, out, context);
+        } else if (SerializeType.ROCKETMQ == serializeType) {
+            // the custom header is written by its codec, not through the ext fields
             headerSize = RocketMQSerializable.rocketMQProtocolEncode(this, out);
         } else {
             this.makeCustomHeaderToNet();
-            byte[] header = RemotingSerializable.encode(this);
-            headerSize = header.length;
-            out.writeBytes(header);
+            headerSize = RemotingSerializable.encode(this, out);
         }
         out.setInt(beginIndex, 4 + headerSize + bodySize);
-        out.setInt(beginIndex + 4, markProtocolType(headerSize, serializeTypeCurrentRPC));
+        out.setInt(beginIndex + 4, markProtocolType(headerSize, serializeType));
     }
 
     public ByteBuffer encodeHeader() {
-        return encodeHeader(this.body != null ? this.body.length : 0);
+        return encodeHeader(this.getBodyLength());
     }
 
     public ByteBuffer encodeHeader(final int bodyLength) {
@@ -448,8 +387,9 @@ public class RemotingCommand {
         int length = 4;
 
         // 2> header data length
+        SerializeType serializeType = this.getEncodeSerializeType(null);
         byte[] headerData;
-        headerData = this.headerEncode();
+        headerData = this.headerEncode(serializeType);
 
         length += headerData.length;
 
@@ -462,7 +402,7 @@ public class RemotingCommand {
         result.putInt(length);
 
         // header length
-        result.putInt(markProtocolType(headerData.length, serializeTypeCurrentRPC));
+        result.putInt(markProtocolType(headerData.length, serializeType));
 
         // header data
         result.put(headerData);
@@ -472,6 +412,17 @@ public class RemotingCommand {
         return result;
     }
 
+    public void markBinarySupported() {
+        int bits = 1 << RPC_BINARY_SUPPORTED;
+        this.flag |= bits;
+    }
+
+    @JSONField(serialize = false)
+    public boolean isBinarySupported() {
+        int bits = 1 << RPC_BINARY_SUPPORTED;
+        return (this.flag & bits) == bits;
+    }
+
     public void markOnewayRPC() {
         int bits = 1 << RPC_ONEWAY;
         this.flag |= bits;
@@ -554,7 +505,46 @@ public class RemotingCommand {
         this.body = body;
     }
 
+    public ByteBuf getBodyBuffer() {
+        return bodyBuffer;
+    }
+
+    /**
+     * Set the body as a buffer, which is taken over and released by {@link org.apache.rocketmq.remoting.netty.NettyEncoder}
+     * once written, so a pooled direct buffer goes to the socket without being copied. The byte array
+     * {@link #setBody(byte[]) body} is preferred if both are set.
+     */
+    public void setBodyBuffer(ByteBuf bodyBuffer) {
+        this.bodyBuffer = bodyBuffer;
+    }
+
+    /**
+     * Release the {@link #setBodyBuffer(ByteBuf) body buffer} of the command which is not going to be written.
+     */
+    public void release() {
+        ByteBuf buffer = this.bodyBuffer;
+        if (buffer != null) {
+            this.bodyBuffer = null;
+            buffer.release();
+        }
+    }
+
+    private int getBodyLength() {
+        if (this.body != null) {
+            return this.body.length;
+        }
+        return this.bodyBuffer != null ? this.bodyBuffer.readableBytes() : 0;
+    }
+
     public HashMap<String, String> getExtFields() {
+        if (this.binaryHeaderFields != null) {
+            // the custom header fields of SerializeType.BINARY are put to the ext fields only when asked
+            if (this.extFields == null) {
+                this.extFields = new HashMap<String, String>();
+            }
+            this.binaryHeaderFields.putTo(this.extFields);
+            this.binaryHeaderFields = null;
+        }
         return extFields;
     }
 
@@ -562,6 +552,10 @@ public class RemotingCommand {
         this.extFields = extFields;
     }
 
+    void setBinaryHeaderFields(BinarySerializable.HeaderFields binaryHeaderFields) {
+        this.binaryHeaderFields = binaryHeaderFields;
+    }
+
     public void addExtField(String key, String value) {
         if (null == extFields) {
             extFields = new HashMap<String, String>();
@@ -19,6 +19,9 @@ package org.apache.rocketmq.remoting.protocol;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.serializer.SerializerFeature;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 
@@ -33,6 +36,21 @@ public abstract class RemotingSerializable {
         return null;
     }
 
+    /**
+     * Write the json of the object into the buffer, without building the intermediate string and bytes.
+     *
+     * @return the number of bytes written
+     */
+    public static int encode(final Object obj, final ByteBuf out) {
+        int beginIndex = out.writerIndex();
+        try {
+            JSON.writeJSONString(new ByteBufOutputStream(out), obj);
+        } catch (IOException e) {
+            throw new IllegalStateException("encode json failed", e);
+        }
+        return out.writerIndex() - beginIndex;
+    }
+
     public static String toJson(final Object obj, boolean prettyFormat) {
         return JSON.toJSONString(obj, prettyFormat);
     }
@@ -22,6 +22,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import org.apache.rocketmq.remoting.CommandCustomHeader;
 import org.apache.rocketmq.remoting.exception.RemotingCommandException;
 
 import io.netty.buffer.ByteBuf;
@@ -78,13 +79,20 @@ public class RocketMQSerializable {
 
         int mapLenIndex = out.writerIndex();
         out.writeInt(0);
-        if (cmd.readCustomHeader() instanceof FastCodesHeader) {
-            ((FastCodesHeader) cmd.readCustomHeader()).encode(out);
+        CommandCustomHeader customHeader = cmd.readCustomHeader();
+        CommandCustomHeaderCodec codec = null;
+        if (customHeader instanceof FastCodesHeader) {
+            ((FastCodesHeader) customHeader).encode(out);
+        } else if (customHeader != null) {
+            codec = CommandCustomHeaderCodec.of(customHeader.getClass());
+            codec.encode(customHeader, out);
         }
         HashMap<String, String> map = cmd.getExtFields();
         if (map != null && !map.isEmpty()) {
+            final CommandCustomHeaderCodec headerCodec = codec;
             map.forEach((k, v) -> {
-                if (k != null && v != null) {
+                // skip the fields already written by the codec, e.g. put to the ext fields by an rpc hook
+                if (k != null && v != null && (headerCodec == null || !headerCodec.isFieldWritten(customHeader, k))) {
                     writeStr(out, true, k);
                     writeStr(out, false, v);
                 }
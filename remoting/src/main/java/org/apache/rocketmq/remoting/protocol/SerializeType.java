@@ -19,7 +19,12 @@ package org.apache.rocketmq.remoting.protocol;
 
 public enum SerializeType {
     JSON((byte) 0),
-    ROCKETMQ((byte) 1);
+    ROCKETMQ((byte) 1),
+    /**
+     * Fixed binary layout of the custom header fields, see {@link BinarySerializable}. It is used only on the
+     * connections of which the peer declared that it can decode it, otherwise {@link #ROCKETMQ} is sent instead.
+     */
+    BINARY((byte) 2);
 
     private byte code;
 
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.remoting.netty;
+
+import io.netty.channel.DefaultEventLoopGroup;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.remoting.netty.EventLoopLatencyProbe.LatencySnapshot;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EventLoopLatencyProbeTest {
+    private DefaultEventLoopGroup group;
+    private EventLoopLatencyProbe probe;
+
+    @Before
+    public void init() {
+        group = new DefaultEventLoopGroup(2);
+        probe = new EventLoopLatencyProbe();
+        probe.register("TestLoop", group);
+    }
+
+    @After
+    public void destroy() {
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testProbe() throws Exception {
+        probe.probe();
+        // the probe tasks run before the ones submitted after them
+        awaitLoops();
+
+        List<LatencySnapshot> snapshots = probe.resetAndGet();
+        assertThat(snapshots).hasSize(2);
+        assertThat(snapshots.get(0).getName()).isEqualTo("TestLoop_0");
+        assertThat(snapshots.get(1).getName()).isEqualTo("TestLoop_1");
+        for (LatencySnapshot snapshot : snapshots) {
+            assertThat(snapshot.getCount()).isEqualTo(1);
+            assertThat(snapshot.getMaxMicros()).isGreaterThanOrEqualTo(snapshot.getAvgMicros());
+        }
+
+        // reset
+        assertThat(probe.resetAndGet().get(0).getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testProbeBlockedLoop() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        // block the first loop
+        group.next().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    blocked.await();
+                } catch (InterruptedException ignored) {
+                }
+            }
+        });
+        probe.probe();
+        Thread.sleep(50);
+        // no more task is submitted to a loop while its last one is pending
+        probe.probe();
+
+        LatencySnapshot snapshot = probe.resetAndGet().get(0);
+        assertThat(snapshot.getCount()).isEqualTo(0);
+        assertThat(snapshot.getMaxMicros()).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toMicros(50));
+
+        blocked.countDown();
+        awaitLoops();
+        snapshot = probe.resetAndGet().get(0);
+        assertThat(snapshot.getCount()).isEqualTo(1);
+        assertThat(snapshot.getMaxMicros()).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toMicros(50));
+    }
+
+    private void awaitLoops() throws Exception {
+        group.next().submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).await();
+        group.next().submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).await();
+    }
+}
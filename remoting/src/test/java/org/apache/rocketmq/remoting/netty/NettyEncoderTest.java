@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.remoting.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
+import org.apache.rocketmq.remoting.protocol.SerializeType;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NettyEncoderTest {
+
+    @Test
+    public void testEncodeBodyBuffer() throws Exception {
+        for (SerializeType serializeType : new SerializeType[] {SerializeType.JSON, SerializeType.ROCKETMQ}) {
+            EmbeddedChannel channel = new EmbeddedChannel(new NettyEncoder());
+            RemotingCommand response = RemotingCommand.createResponseCommand(0, "remark");
+            response.setSerializeTypeCurrentRPC(serializeType);
+            response.addExtField("key", "value");
+            ByteBuf body = Unpooled.directBuffer().writeBytes("Once, there was a chance for me!".getBytes());
+            response.setBodyBuffer(body);
+
+            assertThat(channel.writeOutbound(response)).isTrue();
+            assertThat(response.getBodyBuffer()).isNull();
+            ByteBuf frame = channel.readOutbound();
+            assertThat(frame.readInt()).isEqualTo(frame.readableBytes());
+            RemotingCommand decoded = RemotingCommand.decode(frame);
+            assertThat(decoded.getRemark()).isEqualTo("remark");
+            assertThat(decoded.getExtFields()).containsEntry("key", "value");
+            assertThat(new String(decoded.getBody())).isEqualTo("Once, there was a chance for me!");
+
+            frame.release();
+            assertThat(body.refCnt()).isEqualTo(0);
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    public void testEncodeHeapBody() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel(new NettyEncoder());
+        RemotingCommand request = RemotingCommand.createRequestCommand(0, null);
+        request.setBody("Once, there was a chance for me!".getBytes());
+
+        assertThat(channel.writeOutbound(request)).isTrue();
+        ByteBuf frame = channel.readOutbound();
+        assertThat(frame.readInt()).isEqualTo(frame.readableBytes());
+        RemotingCommand decoded = RemotingCommand.decode(frame);
+        assertThat(decoded.getOpaque()).isEqualTo(request.getOpaque());
+        assertThat(new String(decoded.getBody())).isEqualTo("Once, there was a chance for me!");
+        frame.release();
+        channel.finishAndReleaseAll();
+    }
+}
@@ -16,8 +16,16 @@
  */
 package org.apache.rocketmq.remoting.netty;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import org.apache.rocketmq.remoting.InvokeCallback;
+import org.apache.rocketmq.remoting.common.Pair;
 import org.apache.rocketmq.remoting.common.SemaphoreReleaseOnlyOnce;
 import org.apache.rocketmq.remoting.protocol.RemotingCommand;
 import org.junit.Test;
@@ -27,6 +35,10 @@ import org.mockito.junit.MockitoJUnitRunner;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -105,4 +117,54 @@ public class NettyRemotingAbstractTest {
         remotingAbstract.scanResponseTable();
         assertNull(remotingAbstract.responseTable.get(dummyId));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testProcessRequestCommand_OnewayReleaseBodyBuffer() throws Exception {
+        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+        when(ctx.channel()).thenReturn(new EmbeddedChannel());
+        ByteBuf bodyBuffer = Unpooled.directBuffer(16).writeLong(1L);
+        RemotingCommand request = RemotingCommand.createRequestCommand(1, null);
+        request.markOnewayRPC();
+
+        processRequestWithBodyBuffer(ctx, request, bodyBuffer);
+        verify(ctx, never()).writeAndFlush(any());
+        assertThat(bodyBuffer.refCnt()).isEqualTo(0);
+    }
+
+    @Test
+    public void testProcessRequestCommand_WriteFailedReleaseBodyBuffer() throws Exception {
+        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+        when(ctx.channel()).thenReturn(new EmbeddedChannel());
+        when(ctx.writeAndFlush(any())).thenThrow(new IllegalStateException("write failed"));
+        ByteBuf bodyBuffer = Unpooled.directBuffer(16).writeLong(1L);
+        RemotingCommand request = RemotingCommand.createRequestCommand(1, null);
+
+        processRequestWithBodyBuffer(ctx, request, bodyBuffer);
+        assertThat(bodyBuffer.refCnt()).isEqualTo(0);
+    }
+
+    private void processRequestWithBodyBuffer(ChannelHandlerContext ctx, RemotingCommand request,
+        final ByteBuf bodyBuffer) throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        remotingAbstract.processorTable.put(request.getCode(), new Pair<NettyRequestProcessor, ExecutorService>(
+            new NettyRequestProcessor() {
+                @Override
+                public RemotingCommand processRequest(ChannelHandlerContext ctx, RemotingCommand request) {
+                    RemotingCommand response = RemotingCommand.createResponseCommand(0, null);
+                    response.setBodyBuffer(bodyBuffer);
+                    return response;
+                }
+
+                @Override
+                public boolean rejectRequest() {
+                    return false;
+                }
+            }, executor));
+        try {
+            remotingAbstract.processRequestCommand(ctx, request);
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(3, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.remoting.netty;
+
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ResponseTableTest {
+    @Test
+    public void testPutGetRemove() {
+        ResponseTable responseTable = new ResponseTable();
+        Map<Integer, ResponseFuture> expected = new HashMap<Integer, ResponseFuture>();
+        Channel channel = new EmbeddedChannel();
+        Random random = new Random(0);
+        for (int i = 0; i < 100000; i++) {
+            int opaque = random.nextInt(2000) - 1000;
+            switch (random.nextInt(3)) {
+                case 0:
+                    ResponseFuture responseFuture = new ResponseFuture(channel, opaque, 3000, null, null);
+                    assertThat(responseTable.put(opaque, responseFuture)).isSameAs(expected.put(opaque, responseFuture));
+                    break;
+                case 1:
+                    assertThat(responseTable.remove(opaque)).isSameAs(expected.remove(opaque));
+                    break;
+                default:
+                    assertThat(responseTable.get(opaque)).isSameAs(expected.get(opaque));
+                    break;
+            }
+        }
+        assertThat(responseTable.size()).isEqualTo(expected.size());
+    }
+
+    @Test
+    public void testRemoveByChannel() {
+        ResponseTable responseTable = new ResponseTable();
+        Channel channel = new EmbeddedChannel();
+        Channel otherChannel = new EmbeddedChannel();
+        for (int i = 0; i < 1000; i++) {
+            responseTable.put(i, new ResponseFuture(i % 3 == 0 ? channel : otherChannel, i, 3000, null, null));
+        }
+
+        List<ResponseFuture> removed = responseTable.removeByChannel(channel);
+        assertThat(removed).hasSize(334);
+        assertThat(responseTable.size()).isEqualTo(666);
+        for (int i = 0; i < 1000; i++) {
+            if (i % 3 == 0) {
+                assertThat(responseTable.get(i)).isNull();
+            } else {
+                assertThat(responseTable.get(i).getProcessChannel()).isSameAs(otherChannel);
+            }
+        }
+    }
+
+    @Test
+    public void testExpire() {
+        ResponseTable responseTable = new ResponseTable();
+        long now = System.currentTimeMillis();
+        responseTable.put(1, new ResponseFuture(null, 1, -ResponseTable.EXPIRE_DELAY_MILLIS, null, null));
+        responseTable.put(2, new ResponseFuture(null, 2, 3000, null, null));
+        // longer than a round of the wheel
+        responseTable.put(3, new ResponseFuture(null, 3, 300 * 1000, null, null));
+        responseTable.put(4, new ResponseFuture(null, 4, 3000, null, null));
+        responseTable.remove(4);
+
+        List<ResponseFuture> expired = responseTable.expire(now);
+        assertThat(expired).hasSize(1);
+        assertThat(expired.get(0).getOpaque()).isEqualTo(1);
+
+        expired = responseTable.expire(now + 3000 + ResponseTable.EXPIRE_DELAY_MILLIS + 100);
+        assertThat(expired).hasSize(1);
+        assertThat(expired.get(0).getOpaque()).isEqualTo(2);
+
+        assertThat(responseTable.expire(now + 200 * 1000)).isEmpty();
+        expired = responseTable.expire(now + 300 * 1000 + ResponseTable.EXPIRE_DELAY_MILLIS + 100);
+        assertThat(expired).hasSize(1);
+        assertThat(expired.get(0).getOpaque()).isEqualTo(3);
+        assertThat(responseTable.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testRemoveUnlinkFromWheel() {
+        ResponseTable responseTable = new ResponseTable();
+        // of the same stripe, and of the same bucket as the deadlines are passed
+        ResponseFuture first = new ResponseFuture(null, 0, -ResponseTable.EXPIRE_DELAY_MILLIS, null, null);
+        ResponseFuture middle = new ResponseFuture(null, 32, -ResponseTable.EXPIRE_DELAY_MILLIS, null, null);
+        ResponseFuture last = new ResponseFuture(null, 64, -ResponseTable.EXPIRE_DELAY_MILLIS, null, null);
+        responseTable.put(0, first);
+        responseTable.put(32, middle);
+        responseTable.put(64, last);
+        assertThat(last.getNextInWheel()).isSameAs(middle);
+        assertThat(middle.getNextInWheel()).isSameAs(first);
+
+        responseTable.remove(32);
+        assertUnlinked(middle);
+        assertThat(last.getNextInWheel()).isSameAs(first);
+        assertThat(first.getPrevInWheel()).isSameAs(last);
+
+        responseTable.remove(64);
+        assertUnlinked(last);
+        assertThat(first.getPrevInWheel()).isNull();
+
+        List<ResponseFuture> expired = responseTable.expire(System.currentTimeMillis());
+        assertThat(expired).containsExactly(first);
+        assertUnlinked(first);
+    }
+
+    private static void assertUnlinked(ResponseFuture responseFuture) {
+        assertThat(responseFuture.getWheelBucket()).isEqualTo(-1);
+        assertThat(responseFuture.getPrevInWheel()).isNull();
+        assertThat(responseFuture.getNextInWheel()).isNull();
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.remoting.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.nio.ByteBuffer;
+import org.apache.rocketmq.remoting.CommandCustomHeader;
+import org.apache.rocketmq.remoting.annotation.CFIntern;
+import org.apache.rocketmq.remoting.annotation.CFNotNull;
+import org.apache.rocketmq.remoting.exception.RemotingCommandException;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BinarySerializableTest {
+    private BinarySerializeContext clientContext;
+    private BinarySerializeContext serverContext;
+
+    @Before
+    public void init() {
+        clientContext = BinarySerializeContext.of(new EmbeddedChannel());
+        serverContext = BinarySerializeContext.of(new EmbeddedChannel());
+    }
+
+    @Test
+    public void testNegotiation() throws RemotingCommandException {
+        RemotingCommand request = createRequest("TopicTest");
+        assertThat(transfer(request, clientContext, serverContext).getSerializeTypeCurrentRPC()).isEqualTo(SerializeType.ROCKETMQ);
+        assertThat(serverContext.isPeerSupported()).isTrue();
+        assertThat(clientContext.isPeerSupported()).isFalse();
+
+        RemotingCommand response = RemotingCommand.createResponseCommand(RemotingSysResponseCode.SUCCESS, null);
+        response.setSerializeTypeCurrentRPC(SerializeType.ROCKETMQ);
+        transfer(response, serverContext, clientContext);
+        assertThat(clientContext.isPeerSupported()).isTrue();
+
+        request = createRequest("TopicTest");
+        assertThat(transfer(request, clientContext, serverContext).getSerializeTypeCurrentRPC()).isEqualTo(SerializeType.BINARY);
+
+        // without the context of a connection, e.g. the header of a file region
+        ByteBuffer encoded = createRequest("TopicTest").encode();
+        encoded.getInt();
+        assertThat(RemotingCommand.getProtocolType(encoded.getInt())).isEqualTo(SerializeType.ROCKETMQ);
+    }
+
+    @Test
+    public void testEncodeAndDecode() throws RemotingCommandException {
+        clientContext.setPeerSupported(true);
+        int firstSize = 0;
+        for (int i = 0; i < 3; i++) {
+            RemotingCommand request = createRequest("TopicTest");
+            request.setRemark("remark");
+            request.addExtField("key", "value" + i);
+            request.setBody(new byte[] {1, 2, 3});
+
+            ByteBuf out = Unpooled.buffer();
+            request.fastEncodeHeader(out, clientContext);
+            out.writeBytes(request.getBody());
+            assertThat(out.readInt()).isEqualTo(out.readableBytes());
+            if (i == 0) {
+                firstSize = out.readableBytes();
+            } else {
+                // the schema and the interned strings are sent only the first time
+                assertThat(out.readableBytes()).isLessThan(firstSize);
+            }
+            RemotingCommand decoded = RemotingCommand.decode(out, serverContext);
+
+            assertThat(decoded.getSerializeTypeCurrentRPC()).isEqualTo(SerializeType.BINARY);
+            assertThat(decoded.getCode()).isEqualTo(request.getCode());
+            assertThat(decoded.getOpaque()).isEqualTo(request.getOpaque());
+            assertThat(decoded.getRemark()).isEqualTo("remark");
+            assertThat(decoded.getBody()).isEqualTo(new byte[] {1, 2, 3});
+
+            BinaryHeader header = (BinaryHeader) decoded.decodeCommandCustomHeader(BinaryHeader.class);
+            assertThat(header.getTopic()).isEqualTo("TopicTest");
+            assertThat(header.getGroup()).isNull();
+            assertThat(header.getQueueId()).isEqualTo(-3);
+            assertThat(header.getOffset()).isEqualTo(Long.MIN_VALUE);
+            assertThat(header.getBoxedOffset()).isEqualTo(1024L);
+            assertThat(header.getNullInteger()).isNull();
+            assertThat(header.isFlag()).isTrue();
+            assertThat(header.getDoubleValue()).isEqualTo(0.618);
+            assertThat(header.getProperties()).isEqualTo("你好");
+
+            assertThat(decoded.getExtFields()).containsEntry("key", "value" + i)
+                .containsEntry("topic", "TopicTest")
+                .containsEntry("offset", String.valueOf(Long.MIN_VALUE))
+                .containsEntry("flag", "true")
+                .containsEntry("doubleValue", "0.618")
+                .doesNotContainKey("group");
+        }
+    }
+
+    @Test
+    public void testDecodeBySchemaOfSender() throws RemotingCommandException {
+        clientContext.setPeerSupported(true);
+        RemotingCommand request = createRequest("TopicTest");
+        request.addExtField("extOnly", "ext");
+        RemotingCommand decoded = transfer(request, clientContext, serverContext);
+
+        ReceiverHeader header = (ReceiverHeader) decoded.decodeCommandCustomHeader(ReceiverHeader.class);
+        assertThat(header.getTopic()).isEqualTo("TopicTest");
+        assertThat(header.getQueueId()).isEqualTo(-3L);
+        assertThat(header.getOffset()).isEqualTo(String.valueOf(Long.MIN_VALUE));
+        assertThat(header.getExtOnly()).isEqualTo("ext");
+        assertThat(header.getMissing()).isNull();
+    }
+
+    @Test
+    public void testVarInt() throws RemotingCommandException {
+        long[] longs = {0, 1, -1, 63, -64, 64, Long.MAX_VALUE, Long.MIN_VALUE};
+        int[] ints = {0, 127, 128, -1, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        ByteBuf buf = Unpooled.buffer();
+        for (long value : longs) {
+            BinarySerializable.writeVarLong(buf, value);
+        }
+        for (int value : ints) {
+            BinarySerializable.writeVarInt(buf, value);
+        }
+        for (long value : longs) {
+            assertThat(BinarySerializable.readVarLong(buf)).isEqualTo(value);
+        }
+        for (int value : ints) {
+            assertThat(BinarySerializable.readVarInt(buf)).isEqualTo(value);
+        }
+    }
+
+    private RemotingCommand createRequest(String topic) {
+        BinaryHeader header = new BinaryHeader();
+        header.setTopic(topic);
+        RemotingCommand request = RemotingCommand.createRequestCommand(11, header);
+        request.setSerializeTypeCurrentRPC(SerializeType.BINARY);
+        return request;
+    }
+
+    private RemotingCommand transfer(RemotingCommand cmd, BinarySerializeContext from,
+        BinarySerializeContext to) throws RemotingCommandException {
+        ByteBuf out = Unpooled.buffer();
+        cmd.fastEncodeHeader(out, from);
+        out.readInt();
+        return RemotingCommand.decode(out, to);
+    }
+}
+
+class BinaryHeader implements CommandCustomHeader {
+    @CFNotNull
+    @CFIntern
+    private String topic;
+    @CFIntern
+    private String group;
+    private int queueId = -3;
+    private long offset = Long.MIN_VALUE;
+    private Long boxedOffset = 1024L;
+    private Integer nullInteger;
+    private boolean flag = true;
+    private Double doubleValue = 0.618;
+    private String properties = "你好";
+
+    @Override
+    public void checkFields() throws RemotingCommandException {
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public void setTopic(String topic) {
+        this.topic = topic;
+    }
+
+    public String getGroup() {
+        return group;
+    }
+
+    public int getQueueId() {
+        return queueId;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public Long getBoxedOffset() {
+        return boxedOffset;
+    }
+
+    public Integer getNullInteger() {
+        return nullInteger;
+    }
+
+    public boolean isFlag() {
+        return flag;
+    }
+
+    public Double getDoubleValue() {
+        return doubleValue;
+    }
+
+    public String getProperties() {
+        return properties;
+    }
+}
+
+class ReceiverHeader implements CommandCustomHeader {
+    private String topic;
+    private Long queueId;
+    private String offset;
+    private String extOnly;
+    private String missing;
+
+    @Override
+    public void checkFields() throws RemotingCommandException {
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public Long getQueueId() {
+        return queueId;
+    }
+
+    public String getOffset() {
+        return offset;
+    }
+
+    public String getExtOnly() {
+        return extOnly;
+    }
+
+    public String getMissing() {
+        return missing;
+    }
+}
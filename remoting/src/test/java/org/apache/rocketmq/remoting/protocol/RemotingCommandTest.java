@@ -17,7 +17,8 @@
 package org.apache.rocketmq.remoting.protocol;
 
 import java.lang.reflect.Field;
-import java.lang.reflect.Method;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import java.nio.ByteBuffer;
 import org.apache.rocketmq.remoting.CommandCustomHeader;
 import org.apache.rocketmq.remoting.annotation.CFNotNull;
@@ -217,19 +218,48 @@ public class RemotingCommandTest {
     }
 
     @Test
-    public void testNotNullField() throws Exception {
-        RemotingCommand remotingCommand = new RemotingCommand();
-        Method method = RemotingCommand.class.getDeclaredMethod("isFieldNullable", Field.class);
-        method.setAccessible(true);
+    public void testFastEncodeAndDecode_RocketMQWithCustomHeader() throws RemotingCommandException {
+        CodecHeader header = new CodecHeader();
+        header.setMinLongValue(Long.MIN_VALUE);
+        header.setLongObject(-1024L);
+        RemotingCommand cmd = RemotingCommand.createRequestCommand(103, header);
+        cmd.setSerializeTypeCurrentRPC(SerializeType.ROCKETMQ);
+        // an rpc hook puts the header fields to the ext fields before sending
+        cmd.makeCustomHeaderToNet();
+        cmd.addExtField("key", "value");
+
+        ByteBuf out = Unpooled.buffer();
+        cmd.fastEncodeHeader(out);
+        assertThat(out.readInt()).isEqualTo(out.readableBytes());
+        RemotingCommand decodedCommand = RemotingCommand.decode(out);
+
+        assertThat(decodedCommand.getExtFields()).hasSize(9);
+        assertThat(decodedCommand.getExtFields().get("key")).isEqualTo("value");
+        assertThat(decodedCommand.getExtFields().get("intValue")).isEqualTo("-2333");
+        assertThat(decodedCommand.getExtFields()).doesNotContainKey("nullString");
+
+        CodecHeader decodedHeader = (CodecHeader) decodedCommand.decodeCommandCustomHeader(CodecHeader.class);
+        assertThat(decodedHeader.getStringValue()).isEqualTo(header.getStringValue());
+        assertThat(decodedHeader.getIntValue()).isEqualTo(-2333);
+        assertThat(decodedHeader.getIntegerValue()).isEqualTo(0);
+        assertThat(decodedHeader.getMinLongValue()).isEqualTo(Long.MIN_VALUE);
+        assertThat(decodedHeader.getLongObject()).isEqualTo(-1024L);
+        assertThat(decodedHeader.isBooleanValue()).isFalse();
+        assertThat(decodedHeader.getBooleanObject()).isTrue();
+        assertThat(decodedHeader.getDoubleValue()).isEqualTo(0.618);
+        assertThat(decodedHeader.getNullString()).isNull();
+    }
 
+    @Test
+    public void testNotNullField() throws Exception {
         Field nullString = FieldTestClass.class.getDeclaredField("nullString");
-        assertThat(method.invoke(remotingCommand, nullString)).isEqualTo(false);
+        assertThat(CommandCustomHeaderCodec.isFieldNullable(nullString)).isEqualTo(false);
 
         Field nullableString = FieldTestClass.class.getDeclaredField("nullable");
-        assertThat(method.invoke(remotingCommand, nullableString)).isEqualTo(true);
+        assertThat(CommandCustomHeaderCodec.isFieldNullable(nullableString)).isEqualTo(true);
 
         Field value = FieldTestClass.class.getDeclaredField("value");
-        assertThat(method.invoke(remotingCommand, value)).isEqualTo(false);
+        assertThat(CommandCustomHeaderCodec.isFieldNullable(value)).isEqualTo(false);
     }
 }
 
@@ -279,4 +309,63 @@ class ExtFieldsHeader implements CommandCustomHeader {
     public double getDoubleValue() {
         return doubleValue;
     }
-}
\ No newline at end of file
+}
+class CodecHeader implements CommandCustomHeader {
+    private String stringValue = "\u4f60\u597d, rocketmq";
+    private int intValue = -2333;
+    private Integer integerValue = 0;
+    private long minLongValue;
+    private Long longObject;
+    private boolean booleanValue = false;
+    private Boolean booleanObject = Boolean.TRUE;
+    private Double doubleValue = 0.618;
+    private String nullString;
+
+    @Override
+    public void checkFields() throws RemotingCommandException {
+    }
+
+    public String getStringValue() {
+        return stringValue;
+    }
+
+    public int getIntValue() {
+        return intValue;
+    }
+
+    public Integer getIntegerValue() {
+        return integerValue;
+    }
+
+    public long getMinLongValue() {
+        return minLongValue;
+    }
+
+    public void setMinLongValue(long minLongValue) {
+        this.minLongValue = minLongValue;
+    }
+
+    public Long getLongObject() {
+        return longObject;
+    }
+
+    public void setLongObject(Long longObject) {
+        this.longObject = longObject;
+    }
+
+    public boolean isBooleanValue() {
+        return booleanValue;
+    }
+
+    public Boolean getBooleanObject() {
+        return booleanObject;
+    }
+
+    public Double getDoubleValue() {
+        return doubleValue;
+    }
+
+    public String getNullString() {
+        return nullString;
+    }
+}
@@ -20,6 +20,9 @@ import com.alibaba.fastjson.serializer.SerializerFeature;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.TypeAdapter;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -43,6 +46,18 @@ public class RemotingSerializableTest {
         assertThat(decodedSample).isEqualTo(sample);
     }
 
+    @Test
+    public void testEncodeToByteBuf() {
+        Sample sample = new Sample();
+        ByteBuf out = Unpooled.buffer();
+        out.writeInt(0);
+
+        int length = RemotingSerializable.encode(sample, out);
+        byte[] bytes = RemotingSerializable.encode(sample);
+        assertThat(length).isEqualTo(bytes.length);
+        assertThat(ByteBufUtil.getBytes(out, 4, length)).isEqualTo(bytes);
+    }
+
     @Test
     public void testToJson_normalString() {
         RemotingSerializable serializable = new RemotingSerializable() {
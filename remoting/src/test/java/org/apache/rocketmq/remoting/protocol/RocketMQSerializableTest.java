@@ -228,4 +228,25 @@ public class RocketMQSerializableTest {
         assertThat(h2.getStr()).isEqualTo("s1");
         assertThat(h2.getNum()).isEqualTo(100);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testFastEncodeWithExtFields() throws Exception {
+        ByteBuf buf = ByteBufAllocator.DEFAULT.buffer(16);
+        MyHeader1 header1 = new MyHeader1();
+        header1.setNum(100);
+        RemotingCommand cmd = RemotingCommand.createRequestCommand(1, header1);
+        cmd.makeCustomHeaderToNet();
+        // put by an rpc hook, the null field of the header does not take it over
+        cmd.addExtField("str", "s1");
+        cmd.addExtField("num", "200");
+        cmd.addExtField("other", "o1");
+        RocketMQSerializable.rocketMQProtocolEncode(cmd, buf);
+        RemotingCommand cmd2 = RocketMQSerializable.rocketMQProtocolDecode(buf, buf.readableBytes());
+        buf.release();
+
+        assertThat(cmd2.getExtFields()).hasSize(3).containsEntry("other", "o1");
+        MyHeader1 h2 = (MyHeader1) cmd2.decodeCommandCustomHeader(MyHeader1.class);
+        assertThat(h2.getStr()).isEqualTo("s1");
+        assertThat(h2.getNum()).isEqualTo(100);
+    }
+}
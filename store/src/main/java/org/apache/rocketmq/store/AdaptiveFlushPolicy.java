@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.store;
+
+/**
+ * Schedule of the commit log flush and commit services when adaptive flush is enabled. Instead of writing whenever a
+ * fixed number of pages is dirty, every write is sized to take about the target latency on the device: the dirty
+ * byte threshold follows the throughput observed on the previous writes, a write starts as soon as that many bytes
+ * are dirty, and dirty data never waits longer than the max interval.
+ *
+ * <p>With a fixed cost per write the threshold settles where the write takes the target latency: small writes see a
+ * low throughput, which keeps the threshold small until the latency has room to grow.</p>
+ */
+public class AdaptiveFlushPolicy {
+    private static final double SMOOTHING_FACTOR = 0.2;
+
+    private final long targetLatencyMillis;
+    private final long maxIntervalMillis;
+    private final long minBytes;
+    private final long maxBytes;
+
+    /**
+     * Smoothed write throughput of the device, zero until the first write has been measured.
+     */
+    private volatile double bytesPerMillis = 0;
+    private volatile long lastWriteTimestamp = System.currentTimeMillis();
+
+    public AdaptiveFlushPolicy(long targetLatencyMillis, long maxIntervalMillis, long minBytes, long maxBytes) {
+        this.targetLatencyMillis = targetLatencyMillis;
+        this.maxIntervalMillis = maxIntervalMillis;
+        this.minBytes = minBytes;
+        this.maxBytes = Math.max(minBytes, maxBytes);
+    }
+
+    /**
+     * @return the number of dirty bytes that should take about the target latency to write
+     */
+    public long getTargetBytes() {
+        double throughput = this.bytesPerMillis;
+        if (throughput <= 0) {
+            return this.minBytes;
+        }
+        long target = (long) (throughput * this.targetLatencyMillis);
+        return Math.min(this.maxBytes, Math.max(this.minBytes, target));
+    }
+
+    /**
+     * @param dirtyBytes bytes waiting to be written
+     * @param now current time in milliseconds
+     * @return how long the service may still wait before writing, 0 means write now
+     */
+    public long getWaitMillis(long dirtyBytes, long now) {
+        if (dirtyBytes <= 0) {
+            return this.maxIntervalMillis;
+        }
+        if (dirtyBytes >= this.getTargetBytes()) {
+            return 0;
+        }
+        return Math.max(0, this.lastWriteTimestamp + this.maxIntervalMillis - now);
+    }
+
+    /**
+     * Feed back a finished write.
+     *
+     * @param bytes bytes written
+     * @param costNanos time the write took
+     * @param now current time in milliseconds
+     */
+    public void onWrite(long bytes, long costNanos, long now) {
+        if (bytes <= 0) {
+            return;
+        }
+        this.lastWriteTimestamp = now;
+        double sample = bytes * 1_000_000d / Math.max(1, costNanos);
+        double throughput = this.bytesPerMillis;
+        this.bytesPerMillis = throughput <= 0 ? sample : throughput + SMOOTHING_FACTOR * (sample - throughput);
+    }
+
+    public double getBytesPerMillis() {
+        return bytesPerMillis;
+    }
+}
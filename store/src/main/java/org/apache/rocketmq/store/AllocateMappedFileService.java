@@ -22,9 +22,12 @@ import java.util.ServiceLoader;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import org.apache.rocketmq.common.ServiceThread;
+import org.apache.rocketmq.common.ThreadFactoryImpl;
 import org.apache.rocketmq.common.UtilAll;
 import org.apache.rocketmq.common.constant.LoggerName;
 import org.apache.rocketmq.logging.InternalLogger;
@@ -43,13 +46,22 @@ public class AllocateMappedFileService extends ServiceThread {
         new PriorityBlockingQueue<AllocateRequest>();
     private volatile boolean hasException = false;
     private DefaultMessageStore messageStore;
+    private ExecutorService extraAllocateExecutor;
 
     public AllocateMappedFileService(DefaultMessageStore messageStore) {
         this.messageStore = messageStore;
     }
 
     public MappedFile putRequestAndReturnMappedFile(String nextFilePath, String nextNextFilePath, int fileSize) {
-        int canSubmitRequests = 2;
+        return putRequestAndReturnMappedFile(nextFilePath, new String[] {nextNextFilePath}, fileSize);
+    }
+
+    /**
+     * Return the file at nextFilePath, waiting for it to be created if needed, and request the files at
+     * aheadFilePaths to be created in advance.
+     */
+    public MappedFile putRequestAndReturnMappedFile(String nextFilePath, String[] aheadFilePaths, int fileSize) {
+        int canSubmitRequests = aheadFilePaths.length + 1;
         if (this.messageStore.getMessageStoreConfig().isTransientStorePoolEnable()) {
             if (this.messageStore.getMessageStoreConfig().isFastFailIfNoBufferInStorePool()
                 && BrokerRole.SLAVE != this.messageStore.getMessageStoreConfig().getBrokerRole()) { //if broker is slave, don't fast fail even no buffer in pool
@@ -74,18 +86,21 @@ public class AllocateMappedFileService extends ServiceThread {
             canSubmitRequests--;
         }
 
-        AllocateRequest nextNextReq = new AllocateRequest(nextNextFilePath, fileSize);
-        boolean nextNextPutOK = this.requestTable.putIfAbsent(nextNextFilePath, nextNextReq) == null;
-        if (nextNextPutOK) {
-            if (canSubmitRequests <= 0) {
-                log.warn("[NOTIFYME]TransientStorePool is not enough, so skip preallocate mapped file, " +
-                    "RequestQueueSize : {}, StorePoolSize: {}", this.requestQueue.size(), this.messageStore.getTransientStorePool().availableBufferNums());
-                this.requestTable.remove(nextNextFilePath);
-            } else {
-                boolean offerOK = this.requestQueue.offer(nextNextReq);
+        for (String aheadFilePath : aheadFilePaths) {
+            AllocateRequest aheadReq = new AllocateRequest(aheadFilePath, fileSize);
+            boolean aheadPutOK = this.requestTable.putIfAbsent(aheadFilePath, aheadReq) == null;
+            if (aheadPutOK) {
+                if (canSubmitRequests <= 0) {
+                    log.warn("[NOTIFYME]TransientStorePool is not enough, so skip preallocate mapped file, " +
+                        "RequestQueueSize : {}, StorePoolSize: {}", this.requestQueue.size(), this.messageStore.getTransientStorePool().availableBufferNums());
+                    this.requestTable.remove(aheadFilePath);
+                    break;
+                }
+                boolean offerOK = this.requestQueue.offer(aheadReq);
                 if (!offerOK) {
                     log.warn("never expected here, add a request to preallocate queue failed");
                 }
+                canSubmitRequests--;
             }
         }
 
@@ -97,7 +112,10 @@ public class AllocateMappedFileService extends ServiceThread {
         AllocateRequest result = this.requestTable.get(nextFilePath);
         try {
             if (result != null) {
+                long beginTime = System.currentTimeMillis();
                 boolean waitOK = result.getCountDownLatch().await(waitTimeOut, TimeUnit.MILLISECONDS);
+                this.messageStore.getStoreStatsService().incAllocateMappedFileWait(
+                    UtilAll.computeElapsedTimeMilliseconds(beginTime));
                 if (!waitOK) {
                     log.warn("create mmap timeout " + result.getFilePath() + " " + result.getFileSize());
                     return null;
@@ -115,14 +133,51 @@ public class AllocateMappedFileService extends ServiceThread {
         return null;
     }
 
+    public int getAllocateAheadNum() {
+        return this.messageStore.getMessageStoreConfig().getAllocateMappedFileAheadNum();
+    }
+
     @Override
     public String getServiceName() {
         return AllocateMappedFileService.class.getSimpleName();
     }
 
+    @Override
+    public void start() {
+        super.start();
+        int threadNum = this.messageStore.getMessageStoreConfig().getAllocateMappedFileThreadNum();
+        if (threadNum > 1) {
+            // the extra threads take requests from the same queue, so the nearest file is still created first
+            this.extraAllocateExecutor = Executors.newFixedThreadPool(threadNum - 1,
+                new ThreadFactoryImpl("AllocateMappedFileThread_"));
+            for (int i = 1; i < threadNum; i++) {
+                this.extraAllocateExecutor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        while (!AllocateMappedFileService.this.isStopped() && mmapOperation()) {
+
+                        }
+                    }
+                });
+            }
+        }
+    }
+
     @Override
     public void shutdown() {
         super.shutdown(true);
+        if (this.extraAllocateExecutor != null) {
+            this.extraAllocateExecutor.shutdownNow();
+            // a thread still creating a file would publish it after the cleanup below
+            try {
+                if (!this.extraAllocateExecutor.awaitTermination(this.getJointime(), TimeUnit.MILLISECONDS)) {
+                    log.warn("extra allocate threads not terminated in {} ms", this.getJointime());
+                }
+            } catch (InterruptedException e) {
+                log.warn("extra allocate threads awaitTermination interrupted", e);
+                Thread.currentThread().interrupt();
+            }
+        }
         for (AllocateRequest req : this.requestTable.values()) {
             if (req.mappedFile != null) {
                 log.info("delete pre allocated maped file, {}", req.mappedFile.getFileName());
@@ -164,7 +219,10 @@ public class AllocateMappedFileService extends ServiceThread {
                 long beginTime = System.currentTimeMillis();
 
                 MappedFile mappedFile;
-                if (messageStore.getMessageStoreConfig().isTransientStorePoolEnable()) {
+                if (messageStore.getMessageStoreConfig().isCommitLogDirectIOEnable()) {
+                    mappedFile = new DirectIOMappedFile(req.getFilePath(), req.getFileSize(),
+                        messageStore.getTransientStorePool(), messageStore.getDirectIOBlockCache());
+                } else if (messageStore.getMessageStoreConfig().isTransientStorePoolEnable()) {
                     try {
                         mappedFile = ServiceLoader.load(MappedFile.class).iterator().next();
                         mappedFile.init(req.getFilePath(), req.getFileSize(), messageStore.getTransientStorePool());
@@ -26,7 +26,8 @@ import org.apache.rocketmq.store.CommitLog.PutMessageContext;
 public interface AppendMessageCallback {
 
     /**
-     * After message serialization, write MapedByteBuffer
+     * After message serialization, write MapedByteBuffer. If the context is reserve only, the offsets are assigned
+     * but the bytes are left in the encoded buffer of the message for the caller to copy.
      *
      * @return How many bytes to write
      */
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.logging.InternalLogger;
+import org.apache.rocketmq.logging.InternalLoggerFactory;
+import org.apache.rocketmq.store.stats.BrokerStatsManager;
+
+/**
+ * Cold read mode of {@link DefaultMessageStore#getMessage}. A consumer reading the commit log behind the in-memory
+ * window faults on its pages one by one, so when it pulls a queue sequentially the commit log ahead of its cursor is
+ * advised into page cache, and the bytes it gets are accounted to the group as from disk or from page cache.
+ * <p/>
+ * The commit log is shared by all the topics, so what is read ahead also holds the messages of other queues.
+ */
+public class ColdReadPrefetcher {
+    private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.STORE_LOGGER_NAME);
+
+    private static final long CURSOR_EXPIRED_MILLIS = 1000 * 60 * 2;
+
+    private final DefaultMessageStore defaultMessageStore;
+    private final BrokerStatsManager brokerStatsManager;
+    private final ConcurrentMap<String/* topic@queueId@group */, ReadCursor> cursorTable = new ConcurrentHashMap<>(64);
+
+    public ColdReadPrefetcher(final DefaultMessageStore defaultMessageStore,
+        final BrokerStatsManager brokerStatsManager) {
+        this.defaultMessageStore = defaultMessageStore;
+        this.brokerStatsManager = brokerStatsManager;
+    }
+
+    /**
+     * @return the commit log offset up to which the reader pulling from {@code offset} was read ahead, -1 if it is not
+     * a sequential cold reader
+     */
+    public long getReadAheadEnd(final String group, final String topic, final int queueId, final long offset) {
+        ReadCursor cursor = this.cursorTable.get(buildKey(group, topic, queueId));
+        if (cursor != null && cursor.nextBeginOffset == offset) {
+            return cursor.readAheadEnd;
+        }
+        return -1;
+    }
+
+    public void onMessageGot(final String group, final String topic, final int queueId, final long offset,
+        final long nextBeginOffset, final boolean isInDisk, final GetMessageResult getResult) {
+        this.recordReadSource(group, topic, isInDisk, getResult);
+
+        final String key = buildKey(group, topic, queueId);
+        if (!isInDisk) {
+            this.cursorTable.remove(key);
+            return;
+        }
+
+        ReadCursor cursor = this.cursorTable.get(key);
+        if (cursor == null) {
+            cursor = new ReadCursor();
+            ReadCursor prev = this.cursorTable.putIfAbsent(key, cursor);
+            if (prev != null) {
+                cursor = prev;
+            }
+        }
+
+        List<SelectMappedBufferResult> messageMapedList = getResult.getMessageMapedList();
+        if (cursor.nextBeginOffset == offset && !messageMapedList.isEmpty()) {
+            SelectMappedBufferResult last = messageMapedList.get(messageMapedList.size() - 1);
+            long readEnd = last.getStartOffset() + last.getSize();
+            int readAheadSize = this.defaultMessageStore.getMessageStoreConfig().getColdReadAheadSize();
+            // read ahead again once half of the window is consumed, so the advice is not repeated on every pull
+            if (cursor.readAheadEnd - readEnd < readAheadSize / 2) {
+                long from = Math.max(readEnd, cursor.readAheadEnd);
+                this.defaultMessageStore.getCommitLog().readAhead(from, (int) (readEnd + readAheadSize - from));
+                cursor.readAheadEnd = readEnd + readAheadSize;
+            }
+        }
+        cursor.nextBeginOffset = nextBeginOffset;
+        cursor.lastPullTimestamp = System.currentTimeMillis();
+    }
+
+    /**
+     * Remove the cursors of the readers which stopped pulling.
+     */
+    public void cleanExpiredCursor() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, ReadCursor>> it = this.cursorTable.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, ReadCursor> next = it.next();
+            if (now - next.getValue().lastPullTimestamp > CURSOR_EXPIRED_MILLIS) {
+                it.remove();
+                log.info("remove expired cold read cursor {}", next.getKey());
+            }
+        }
+    }
+
+    private void recordReadSource(final String group, final String topic, final boolean isInDisk,
+        final GetMessageResult getResult) {
+        if (this.brokerStatsManager == null || getResult.getBufferTotalSize() == 0) {
+            return;
+        }
+
+        int diskSize = 0;
+        if (isInDisk) {
+            for (SelectMappedBufferResult select : getResult.getMessageMapedList()) {
+                MappedFile mappedFile = select.getMappedFile();
+                if (mappedFile == null) {
+                    continue;
+                }
+                int position = (int) (select.getStartOffset() - mappedFile.getFileFromOffset());
+                diskSize += select.getSize() - mappedFile.countResidentBytes(position, select.getSize());
+            }
+        }
+
+        int cacheSize = getResult.getBufferTotalSize() - diskSize;
+        if (diskSize > 0) {
+            this.brokerStatsManager.incGroupGetFromDiskSize(group, topic, diskSize);
+        }
+        if (cacheSize > 0) {
+            this.brokerStatsManager.incGroupGetFromCacheSize(group, topic, cacheSize);
+        }
+    }
+
+    private static String buildKey(final String group, final String topic, final int queueId) {
+        return topic + "@" + queueId + "@" + group;
+    }
+
+    static class ReadCursor {
+        private volatile long nextBeginOffset = -1;
+        private volatile long readAheadEnd = -1;
+        private volatile long lastPullTimestamp;
+    }
+}
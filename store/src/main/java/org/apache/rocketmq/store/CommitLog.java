@@ -36,10 +36,12 @@ import org.apache.rocketmq.store.config.FlushDiskType;
 import org.apache.rocketmq.store.config.MessageStoreConfig;
 import org.apache.rocketmq.store.ha.HAService;
 import org.apache.rocketmq.store.schedule.ScheduleMessageService;
+import org.apache.rocketmq.store.timer.TimerMessageStore;
 
 import java.net.Inet6Address;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -48,6 +50,10 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Supplier;
 
 /**
@@ -76,6 +82,20 @@ public class CommitLog {
 
     protected final PutMessageLock putMessageLock;
 
+    private final boolean reservedSlotAppend;
+    private final boolean directBatchAppend;
+    private final AdaptiveFlushPolicy flushPolicy;
+    private final AdaptiveFlushPolicy commitPolicy;
+
+    private final boolean putMessageCombine;
+    private final ConcurrentLinkedQueue<CombinedPutRequest> combineQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean combining = new AtomicBoolean(false);
+    // only touched by the thread that holds combining
+    private final CombinedPutRequest[] combineRequests;
+    private final MessageExtBrokerInner[] combineMsgs;
+    private final PutMessageContext[] combineContexts;
+    private final AppendMessageResult[] combineResults;
+
     private volatile Set<String> fullStorePaths = Collections.emptySet();
 
     protected final MultiDispatch multiDispatch;
@@ -111,6 +131,28 @@ public class CommitLog {
             }
         };
         this.putMessageLock = defaultMessageStore.getMessageStoreConfig().isUseReentrantLockWhenPutMessage() ? new PutMessageReentrantLock() : new PutMessageSpinLock();
+        this.reservedSlotAppend = defaultMessageStore.getMessageStoreConfig().isEnableReservedSlotAppend();
+        this.directBatchAppend = defaultMessageStore.getMessageStoreConfig().isEnableDirectBatchAppend();
+        MessageStoreConfig messageStoreConfig = defaultMessageStore.getMessageStoreConfig();
+        if (messageStoreConfig.isEnableAdaptiveFlush()) {
+            this.flushPolicy = new AdaptiveFlushPolicy(messageStoreConfig.getAdaptiveFlushTargetLatency(),
+                messageStoreConfig.getFlushIntervalCommitLog(),
+                (long) messageStoreConfig.getFlushCommitLogLeastPages() * MappedFile.OS_PAGE_SIZE,
+                messageStoreConfig.getMappedFileSizeCommitLog());
+            this.commitPolicy = new AdaptiveFlushPolicy(messageStoreConfig.getAdaptiveFlushTargetLatency(),
+                messageStoreConfig.getCommitIntervalCommitLog(),
+                (long) messageStoreConfig.getCommitCommitLogLeastPages() * MappedFile.OS_PAGE_SIZE,
+                messageStoreConfig.getMappedFileSizeCommitLog());
+        } else {
+            this.flushPolicy = null;
+            this.commitPolicy = null;
+        }
+        this.putMessageCombine = defaultMessageStore.getMessageStoreConfig().isEnablePutMessageCombine();
+        int combineMaxNum = Math.max(1, defaultMessageStore.getMessageStoreConfig().getPutMessageCombineMaxNum());
+        this.combineRequests = new CombinedPutRequest[combineMaxNum];
+        this.combineMsgs = new MessageExtBrokerInner[combineMaxNum];
+        this.combineContexts = new PutMessageContext[combineMaxNum];
+        this.combineResults = new AppendMessageResult[combineMaxNum];
 
         this.multiDispatch = new MultiDispatch(defaultMessageStore, this);
 
@@ -184,6 +226,24 @@ public class CommitLog {
         return this.mappedFileQueue.deleteExpiredFileByTime(expiredTime, deleteFilesInterval, intervalForcibly, cleanImmediately);
     }
 
+    /**
+     * Delete the expired files as above, but keep the ones ending after maxOffset.
+     */
+    public int deleteExpiredFile(
+        final long expiredTime,
+        final int deleteFilesInterval,
+        final long intervalForcibly,
+        final boolean cleanImmediately,
+        final long maxOffset
+    ) {
+        return this.mappedFileQueue.deleteExpiredFileByTime(expiredTime, deleteFilesInterval, intervalForcibly,
+            cleanImmediately, maxOffset);
+    }
+
+    public MappedFileQueue getMappedFileQueue() {
+        return mappedFileQueue;
+    }
+
     /**
      * Read CommitLog data, use data replication
      */
@@ -394,6 +454,11 @@ public class CommitLog {
                                 storeTimestamp);
                         }
                     }
+
+                    String deliverMs = propertiesMap.get(MessageConst.PROPERTY_TIMER_DELIVER_MS);
+                    if (TopicValidator.RMQ_SYS_WHEEL_TIMER.equals(topic) && deliverMs != null) {
+                        tagsCode = Long.parseLong(deliverMs);
+                    }
                 }
             }
 
@@ -604,6 +669,41 @@ public class CommitLog {
         return keyBuilder.toString();
     }
 
+    /**
+     * Store the message of a delivery time into the timer topic, for the timing wheel to put it back then.
+     */
+    protected void transformTimerMessage(final MessageExtBrokerInner msg) {
+        String deliverMs = msg.getProperty(MessageConst.PROPERTY_TIMER_DELIVER_MS);
+        String delayMs = msg.getProperty(MessageConst.PROPERTY_TIMER_DELAY_MS);
+        if (deliverMs == null && delayMs == null) {
+            return;
+        }
+
+        long deliverTimeMs;
+        try {
+            deliverTimeMs = deliverMs != null ? Long.parseLong(deliverMs) : msg.getStoreTimestamp() + Long.parseLong(delayMs);
+        } catch (NumberFormatException e) {
+            log.warn("illegal timer property of message, deliverMs={}, delayMs={}, deliver it at once", deliverMs, delayMs);
+            return;
+        }
+
+        MessageAccessor.clearProperty(msg, MessageConst.PROPERTY_TIMER_DELAY_MS);
+        if (deliverTimeMs <= msg.getStoreTimestamp()) {
+            MessageAccessor.clearProperty(msg, MessageConst.PROPERTY_TIMER_DELIVER_MS);
+            msg.setPropertiesString(MessageDecoder.messageProperties2String(msg.getProperties()));
+            return;
+        }
+
+        MessageAccessor.putProperty(msg, MessageConst.PROPERTY_TIMER_DELIVER_MS, String.valueOf(deliverTimeMs));
+        // Backup real topic, queueId
+        MessageAccessor.putProperty(msg, MessageConst.PROPERTY_REAL_TOPIC, msg.getTopic());
+        MessageAccessor.putProperty(msg, MessageConst.PROPERTY_REAL_QUEUE_ID, String.valueOf(msg.getQueueId()));
+        msg.setPropertiesString(MessageDecoder.messageProperties2String(msg.getProperties()));
+
+        msg.setTopic(TopicValidator.RMQ_SYS_WHEEL_TIMER);
+        msg.setQueueId(TimerMessageStore.TIMER_QUEUE_ID);
+    }
+
     public CompletableFuture<PutMessageResult> asyncPutMessage(final MessageExtBrokerInner msg) {
         // Set the storage time
         msg.setStoreTimestamp(System.currentTimeMillis());
@@ -636,6 +736,8 @@ public class CommitLog {
 
                 msg.setTopic(topic);
                 msg.setQueueId(queueId);
+            } else if (this.defaultMessageStore.getMessageStoreConfig().isTimerWheelEnable()) {
+                this.transformTimerMessage(msg);
             }
         }
 
@@ -658,9 +760,15 @@ public class CommitLog {
             msg.setEncodedBuff(putMessageThreadLocal.getEncoder().getEncoderBuffer());
         }
         PutMessageContext putMessageContext = new PutMessageContext(generateKey(putMessageThreadLocal.getKeyBuilder(), msg));
+        putMessageContext.setReserveOnly(this.reservedSlotAppend);
+
+        if (this.putMessageCombine && !multiDispatch.isMultiDispatchMsg(msg)) {
+            return asyncPutMessageCombined(msg, putMessageContext);
+        }
 
         long elapsedTimeInLock = 0;
         MappedFile unlockMappedFile = null;
+        MappedFile appendMappedFile;
 
         putMessageLock.lock(); //spin or ReentrantLock ,depending on store config
         try {
@@ -672,7 +780,7 @@ public class CommitLog {
             // global
             msg.setStoreTimestamp(beginLockTimestamp);
 
-            if (null == mappedFile || mappedFile.isFull()) {
+            if (null == mappedFile || mappedFile.isFullyReserved()) {
                 mappedFile = this.mappedFileQueue.getLastMappedFile(0); // Mark: NewFile may be cause noise
             }
             if (null == mappedFile) {
@@ -680,7 +788,7 @@ public class CommitLog {
                 return CompletableFuture.completedFuture(new PutMessageResult(PutMessageStatus.CREATE_MAPEDFILE_FAILED, null));
             }
 
-            result = mappedFile.appendMessage(msg, this.appendMessageCallback, putMessageContext);
+            result = appendMessage(mappedFile, msg, putMessageContext);
             switch (result.getStatus()) {
                 case PUT_OK:
                     break;
@@ -693,7 +801,7 @@ public class CommitLog {
                         log.error("create mapped file2 error, topic: " + msg.getTopic() + " clientAddr: " + msg.getBornHostString());
                         return CompletableFuture.completedFuture(new PutMessageResult(PutMessageStatus.CREATE_MAPEDFILE_FAILED, result));
                     }
-                    result = mappedFile.appendMessage(msg, this.appendMessageCallback, putMessageContext);
+                    result = appendMessage(mappedFile, msg, putMessageContext);
                     break;
                 case MESSAGE_SIZE_EXCEEDED:
                 case PROPERTIES_SIZE_EXCEEDED:
@@ -704,12 +812,18 @@ public class CommitLog {
                     return CompletableFuture.completedFuture(new PutMessageResult(PutMessageStatus.UNKNOWN_ERROR, result));
             }
 
+            appendMappedFile = mappedFile;
             elapsedTimeInLock = this.defaultMessageStore.getSystemClock().now() - beginLockTimestamp;
         } finally {
             beginTimeInLock = 0;
             putMessageLock.unlock();
         }
 
+        if (putMessageContext.isReserveOnly() && result.getStatus() == AppendMessageStatus.PUT_OK) {
+            writeReservedSlot(appendMappedFile, result, msg.getEncodedBuff());
+            msg.setEncodedBuff(null);
+        }
+
         if (elapsedTimeInLock > 500) {
             log.warn("[NOTIFYME]putMessage in lock cost time(ms)={}, bodyLength={} AppendMessageResult={}", elapsedTimeInLock, msg.getBody().length, result);
         }
@@ -737,6 +851,201 @@ public class CommitLog {
         });
     }
 
+    /**
+     * Queue the message for the thread currently holding the put message lock, or become that thread and append all
+     * the queued messages in one go. The encoded buffer of the message is thread local, so the caller waits until it
+     * has been appended.
+     */
+    private CompletableFuture<PutMessageResult> asyncPutMessageCombined(final MessageExtBrokerInner msg,
+        final PutMessageContext putMessageContext) {
+        CombinedPutRequest request = new CombinedPutRequest(msg, putMessageContext);
+        this.combineQueue.offer(request);
+        while (!request.isDone()) {
+            if (this.combining.compareAndSet(false, true)) {
+                try {
+                    this.doCombinedAppend();
+                } finally {
+                    this.combining.set(false);
+                }
+                // hand over to a sender that queued while we were appending
+                CombinedPutRequest next = this.combineQueue.peek();
+                if (next != null) {
+                    LockSupport.unpark(next.getWaiter());
+                }
+            } else if (this.combining.get()) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+
+        if (request.getFailedResult() != null) {
+            return CompletableFuture.completedFuture(request.getFailedResult());
+        }
+
+        AppendMessageResult result = request.getResult();
+        if (putMessageContext.isReserveOnly()) {
+            writeReservedSlot(request.getMappedFile(), result, msg.getEncodedBuff());
+            msg.setEncodedBuff(null);
+        }
+
+        PutMessageResult putMessageResult = new PutMessageResult(PutMessageStatus.PUT_OK, result);
+
+        // Statistics
+        StoreStatsService storeStatsService = this.defaultMessageStore.getStoreStatsService();
+        storeStatsService.getSinglePutMessageTopicTimesTotal(msg.getTopic()).add(1);
+        storeStatsService.getSinglePutMessageTopicSizeTotal(msg.getTopic()).add(result.getWroteBytes());
+
+        CompletableFuture<PutMessageStatus> replicaResultFuture = submitReplicaRequest(result, msg);
+        return request.getFlushFuture().thenCombine(replicaResultFuture, (flushStatus, replicaStatus) -> {
+            if (flushStatus != PutMessageStatus.PUT_OK) {
+                putMessageResult.setPutMessageStatus(flushStatus);
+            }
+            if (replicaStatus != PutMessageStatus.PUT_OK) {
+                putMessageResult.setPutMessageStatus(replicaStatus);
+            }
+            return putMessageResult;
+        });
+    }
+
+    private void doCombinedAppend() {
+        int num = 0;
+        CombinedPutRequest polled;
+        while (num < this.combineRequests.length && (polled = this.combineQueue.poll()) != null) {
+            this.combineRequests[num] = polled;
+            this.combineMsgs[num] = polled.getMsg();
+            this.combineContexts[num] = polled.getPutMessageContext();
+            num++;
+        }
+        if (num == 0) {
+            return;
+        }
+
+        long elapsedTimeInLock = 0;
+        MappedFile unlockMappedFile = null;
+
+        putMessageLock.lock();
+        try {
+            long beginLockTimestamp = this.defaultMessageStore.getSystemClock().now();
+            this.beginTimeInLock = beginLockTimestamp;
+
+            MappedFile mappedFile = this.mappedFileQueue.getLastMappedFile();
+            int rolledIndex = -1;
+            int i = 0;
+            while (i < num) {
+                if (null == mappedFile || mappedFile.isFullyReserved()) {
+                    mappedFile = this.mappedFileQueue.getLastMappedFile(0); // Mark: NewFile may be cause noise
+                }
+                if (null == mappedFile) {
+                    log.error("create mapped file error, topic: " + this.combineMsgs[i].getTopic() + " clientAddr: " + this.combineMsgs[i].getBornHostString());
+                    for (; i < num; i++) {
+                        this.combineRequests[i].setFailedResult(new PutMessageResult(PutMessageStatus.CREATE_MAPEDFILE_FAILED, this.combineResults[i]));
+                    }
+                    break;
+                }
+
+                for (int j = i; j < num; j++) {
+                    // Here settings are stored timestamp, in order to ensure an orderly
+                    // global
+                    this.combineMsgs[j].setStoreTimestamp(beginLockTimestamp);
+                }
+                int last = i + appendCombinedMessages(mappedFile, i, num) - 1;
+                for (int j = i; j < last; j++) {
+                    this.combineRequests[j].setResult(mappedFile, this.combineResults[j]);
+                }
+
+                AppendMessageResult result = this.combineResults[last];
+                i = last + 1;
+                switch (result.getStatus()) {
+                    case PUT_OK:
+                        this.combineRequests[last].setResult(mappedFile, result);
+                        break;
+                    case END_OF_FILE:
+                        unlockMappedFile = mappedFile;
+                        mappedFile = null;
+                        if (rolledIndex != last) {
+                            // Create a new file, re-write the message
+                            rolledIndex = last;
+                            i = last;
+                        } else {
+                            this.combineRequests[last].setFailedResult(new PutMessageResult(PutMessageStatus.UNKNOWN_ERROR, result));
+                        }
+                        break;
+                    case MESSAGE_SIZE_EXCEEDED:
+                    case PROPERTIES_SIZE_EXCEEDED:
+                        this.combineRequests[last].setFailedResult(new PutMessageResult(PutMessageStatus.MESSAGE_ILLEGAL, result));
+                        break;
+                    case UNKNOWN_ERROR:
+                    default:
+                        this.combineRequests[last].setFailedResult(new PutMessageResult(PutMessageStatus.UNKNOWN_ERROR, result));
+                        break;
+                }
+            }
+
+            elapsedTimeInLock = this.defaultMessageStore.getSystemClock().now() - beginLockTimestamp;
+        } catch (Throwable e) {
+            log.error("append combined messages failed, combined messages={}", num, e);
+            // the senders are waiting for their requests, the appended ones still write their reserved slots
+            for (int i = 0; i < num; i++) {
+                CombinedPutRequest request = this.combineRequests[i];
+                if (request.getResult() == null && request.getFailedResult() == null) {
+                    request.setFailedResult(new PutMessageResult(PutMessageStatus.UNKNOWN_ERROR, null));
+                }
+            }
+        } finally {
+            beginTimeInLock = 0;
+            putMessageLock.unlock();
+        }
+
+        if (elapsedTimeInLock > 500) {
+            log.warn("[NOTIFYME]putMessage in lock cost time(ms)={}, combined messages={}", elapsedTimeInLock, num);
+        }
+
+        if (null != unlockMappedFile && this.defaultMessageStore.getMessageStoreConfig().isWarmMapedFileEnable()) {
+            this.defaultMessageStore.unlockMappedFile(unlockMappedFile);
+        }
+
+        // One flush request covers all the messages waiting for it
+        long waitNextOffset = -1;
+        for (int i = 0; i < num; i++) {
+            AppendMessageResult result = this.combineRequests[i].getResult();
+            if (result != null && this.combineMsgs[i].isWaitStoreMsgOK()) {
+                waitNextOffset = Math.max(waitNextOffset, result.getWroteOffset() + result.getWroteBytes());
+            }
+        }
+        CompletableFuture<PutMessageStatus> waitFlushFuture = waitNextOffset > 0
+            ? submitFlushRequest(waitNextOffset, true) : submitFlushRequest(-1, false);
+        CompletableFuture<PutMessageStatus> noWaitFlushFuture = CompletableFuture.completedFuture(PutMessageStatus.PUT_OK);
+
+        for (int i = 0; i < num; i++) {
+            CombinedPutRequest request = this.combineRequests[i];
+            request.complete(this.combineMsgs[i].isWaitStoreMsgOK() ? waitFlushFuture : noWaitFlushFuture);
+            this.combineRequests[i] = null;
+            this.combineMsgs[i] = null;
+            this.combineContexts[i] = null;
+            this.combineResults[i] = null;
+        }
+    }
+
+    private int appendCombinedMessages(final MappedFile mappedFile, final int from, final int to) {
+        if (!this.reservedSlotAppend) {
+            return mappedFile.appendMessages(this.combineMsgs, this.combineContexts, from, to, this.appendMessageCallback,
+                this.combineResults);
+        }
+        int i = from;
+        while (i < to) {
+            AppendMessageResult result = mappedFile.reserveMessage(this.combineMsgs[i], this.appendMessageCallback,
+                this.combineContexts[i]);
+            if (result.getStatus() == AppendMessageStatus.PUT_OK) {
+                // taken at once, the sender has to write the slot even if a later message fails the batch
+                this.combineRequests[i].setResult(mappedFile, result);
+            }
+            this.combineResults[i++] = result;
+            if (result.getStatus() != AppendMessageStatus.PUT_OK) {
+                break;
+            }
+        }
+        return i - from;
+    }
+
     public CompletableFuture<PutMessageResult> asyncPutMessages(final MessageExtBatch messageExtBatch) {
         messageExtBatch.setStoreTimestamp(System.currentTimeMillis());
         AppendMessageResult result;
@@ -771,7 +1080,13 @@ public class CommitLog {
         MessageExtEncoder batchEncoder = pmThreadLocal.getEncoder();
 
         PutMessageContext putMessageContext = new PutMessageContext(generateKey(pmThreadLocal.getKeyBuilder(), messageExtBatch));
-        messageExtBatch.setEncodedBuff(batchEncoder.encode(messageExtBatch, putMessageContext));
+        putMessageContext.setReserveOnly(this.reservedSlotAppend);
+        if (this.directBatchAppend && !putMessageContext.isReserveOnly()) {
+            batchEncoder.scan(messageExtBatch, putMessageContext);
+        } else {
+            messageExtBatch.setEncodedBuff(batchEncoder.encode(messageExtBatch, putMessageContext));
+        }
+        MappedFile appendMappedFile;
 
         putMessageLock.lock();
         try {
@@ -782,7 +1097,7 @@ public class CommitLog {
             // global
             messageExtBatch.setStoreTimestamp(beginLockTimestamp);
 
-            if (null == mappedFile || mappedFile.isFull()) {
+            if (null == mappedFile || mappedFile.isFullyReserved()) {
                 mappedFile = this.mappedFileQueue.getLastMappedFile(0); // Mark: NewFile may be cause noise
             }
             if (null == mappedFile) {
@@ -790,7 +1105,7 @@ public class CommitLog {
                 return CompletableFuture.completedFuture(new PutMessageResult(PutMessageStatus.CREATE_MAPEDFILE_FAILED, null));
             }
 
-            result = mappedFile.appendMessages(messageExtBatch, this.appendMessageCallback, putMessageContext);
+            result = appendMessages(mappedFile, messageExtBatch, putMessageContext);
             switch (result.getStatus()) {
                 case PUT_OK:
                     break;
@@ -803,7 +1118,7 @@ public class CommitLog {
                         log.error("Create mapped file2 error, topic: {} clientAddr: {}", messageExtBatch.getTopic(), messageExtBatch.getBornHostString());
                         return CompletableFuture.completedFuture(new PutMessageResult(PutMessageStatus.CREATE_MAPEDFILE_FAILED, result));
                     }
-                    result = mappedFile.appendMessages(messageExtBatch, this.appendMessageCallback, putMessageContext);
+                    result = appendMessages(mappedFile, messageExtBatch, putMessageContext);
                     break;
                 case MESSAGE_SIZE_EXCEEDED:
                 case PROPERTIES_SIZE_EXCEEDED:
@@ -813,12 +1128,18 @@ public class CommitLog {
                     return CompletableFuture.completedFuture(new PutMessageResult(PutMessageStatus.UNKNOWN_ERROR, result));
             }
 
+            appendMappedFile = mappedFile;
             elapsedTimeInLock = this.defaultMessageStore.getSystemClock().now() - beginLockTimestamp;
         } finally {
             beginTimeInLock = 0;
             putMessageLock.unlock();
         }
 
+        if (putMessageContext.isReserveOnly() && result.getStatus() == AppendMessageStatus.PUT_OK) {
+            writeReservedSlot(appendMappedFile, result, messageExtBatch.getEncodedBuff());
+            messageExtBatch.setEncodedBuff(null);
+        }
+
         if (elapsedTimeInLock > 500) {
             log.warn("[NOTIFYME]putMessages in lock cost time(ms)={}, bodyLength={} AppendMessageResult={}", elapsedTimeInLock, messageExtBatch.getBody().length, result);
         }
@@ -847,12 +1168,42 @@ public class CommitLog {
 
     }
 
+    private AppendMessageResult appendMessage(final MappedFile mappedFile, final MessageExtBrokerInner msg,
+        final PutMessageContext putMessageContext) {
+        if (putMessageContext.isReserveOnly()) {
+            return mappedFile.reserveMessage(msg, this.appendMessageCallback, putMessageContext);
+        }
+        return mappedFile.appendMessage(msg, this.appendMessageCallback, putMessageContext);
+    }
+
+    private AppendMessageResult appendMessages(final MappedFile mappedFile, final MessageExtBatch messageExtBatch,
+        final PutMessageContext putMessageContext) {
+        if (putMessageContext.isReserveOnly()) {
+            return mappedFile.reserveMessages(messageExtBatch, this.appendMessageCallback, putMessageContext);
+        }
+        return mappedFile.appendMessages(messageExtBatch, this.appendMessageCallback, putMessageContext);
+    }
+
+    /**
+     * Copy the encoded messages into the slot reserved for them, this runs outside of the put message lock.
+     */
+    private void writeReservedSlot(final MappedFile mappedFile, final AppendMessageResult result, final ByteBuffer encodedBuff) {
+        final long beginTimeMills = this.defaultMessageStore.now();
+        int position = (int) (result.getWroteOffset() - mappedFile.getFileFromOffset());
+        mappedFile.writeReservedSlot(position, encodedBuff, result.getStoreTimestamp());
+        result.setPagecacheRT(this.defaultMessageStore.now() - beginTimeMills);
+    }
+
     public CompletableFuture<PutMessageStatus> submitFlushRequest(AppendMessageResult result, MessageExt messageExt) {
+        return submitFlushRequest(result.getWroteOffset() + result.getWroteBytes(), messageExt.isWaitStoreMsgOK());
+    }
+
+    private CompletableFuture<PutMessageStatus> submitFlushRequest(final long nextOffset, final boolean waitStoreMsgOK) {
         // Synchronization flush
         if (FlushDiskType.SYNC_FLUSH == this.defaultMessageStore.getMessageStoreConfig().getFlushDiskType()) {
             final GroupCommitService service = (GroupCommitService) this.flushCommitLogService;
-            if (messageExt.isWaitStoreMsgOK()) {
-                GroupCommitRequest request = new GroupCommitRequest(result.getWroteOffset() + result.getWroteBytes(),
+            if (waitStoreMsgOK) {
+                GroupCommitRequest request = new GroupCommitRequest(nextOffset,
                         this.defaultMessageStore.getMessageStoreConfig().getSyncFlushTimeout());
                 flushDiskWatcher.add(request);
                 service.putRequest(request);
@@ -941,6 +1292,25 @@ public class CommitLog {
         return offset + mappedFileSize - offset % mappedFileSize;
     }
 
+    /**
+     * Hint the kernel to load the range into page cache, the part not written yet is skipped.
+     */
+    public void readAhead(final long offset, final int size) {
+        int mappedFileSize = this.defaultMessageStore.getMessageStoreConfig().getMappedFileSizeCommitLog();
+        long end = Math.min(offset + size, this.getMaxOffset());
+        long pos = offset;
+        while (pos < end) {
+            MappedFile mappedFile = this.mappedFileQueue.findMappedFileByOffset(pos, false);
+            if (mappedFile == null) {
+                return;
+            }
+            int filePos = (int) (pos % mappedFileSize);
+            int length = (int) Math.min(end - pos, mappedFileSize - filePos);
+            mappedFile.readAhead(filePos, length);
+            pos += length;
+        }
+    }
+
     public HashMap<String, Long> getTopicQueueTable() {
         return topicQueueTable;
     }
@@ -1006,6 +1376,25 @@ public class CommitLog {
 
     abstract class FlushCommitLogService extends ServiceThread {
         protected static final int RETRY_TIMES_OVER = 10;
+
+        protected long lastFlushedBytes = 0;
+        protected long lastFlushCostNanos = 0;
+
+        /**
+         * Flush the commit log and record how much was flushed and how long it took.
+         */
+        protected boolean flush(final int flushLeastPages) {
+            long flushedWhere = CommitLog.this.mappedFileQueue.getFlushedWhere();
+            long begin = System.nanoTime();
+            boolean result = CommitLog.this.mappedFileQueue.flush(flushLeastPages);
+            this.lastFlushCostNanos = System.nanoTime() - begin;
+            this.lastFlushedBytes = CommitLog.this.mappedFileQueue.getFlushedWhere() - flushedWhere;
+            if (this.lastFlushedBytes > 0) {
+                CommitLog.this.defaultMessageStore.getStoreStatsService().incFlushCommitLog(this.lastFlushedBytes,
+                    TimeUnit.NANOSECONDS.toMillis(this.lastFlushCostNanos));
+            }
+            return result;
+        }
     }
 
     class CommitRealTimeService extends FlushCommitLogService {
@@ -1021,6 +1410,15 @@ public class CommitLog {
         public void run() {
             CommitLog.log.info(this.getServiceName() + " service started");
             while (!this.isStopped()) {
+                if (CommitLog.this.commitPolicy != null) {
+                    try {
+                        this.commitAdaptively();
+                    } catch (Throwable e) {
+                        CommitLog.log.error(this.getServiceName() + " service has exception. ", e);
+                    }
+                    continue;
+                }
+
                 int interval = CommitLog.this.defaultMessageStore.getMessageStoreConfig().getCommitIntervalCommitLog();
 
                 int commitDataLeastPages = CommitLog.this.defaultMessageStore.getMessageStoreConfig().getCommitCommitLogLeastPages();
@@ -1059,6 +1457,28 @@ public class CommitLog {
             }
             CommitLog.log.info(this.getServiceName() + " service end");
         }
+
+        private void commitAdaptively() {
+            long dirtyBytes = CommitLog.this.mappedFileQueue.remainHowManyDataToCommit();
+            long waitMillis = CommitLog.this.commitPolicy.getWaitMillis(dirtyBytes, System.currentTimeMillis());
+            if (waitMillis > 0) {
+                this.waitForRunning(waitMillis);
+                return;
+            }
+
+            long committedWhere = CommitLog.this.mappedFileQueue.getCommittedWhere();
+            long begin = System.nanoTime();
+            CommitLog.this.mappedFileQueue.commit(0);
+            long cost = System.nanoTime() - begin;
+            long committedBytes = CommitLog.this.mappedFileQueue.getCommittedWhere() - committedWhere;
+            CommitLog.this.commitPolicy.onWrite(committedBytes, cost, System.currentTimeMillis());
+            if (committedBytes > 0) {
+                flushCommitLogService.wakeup();
+            } else {
+                // the dirty bytes can not be committed yet, e.g. a reserved slot is still being written
+                this.waitForRunning(1);
+            }
+        }
     }
 
     class FlushRealTimeService extends FlushCommitLogService {
@@ -1069,6 +1489,15 @@ public class CommitLog {
             CommitLog.log.info(this.getServiceName() + " service started");
 
             while (!this.isStopped()) {
+                if (CommitLog.this.flushPolicy != null) {
+                    try {
+                        this.flushAdaptively();
+                    } catch (Throwable e) {
+                        CommitLog.log.warn(this.getServiceName() + " service has exception. ", e);
+                    }
+                    continue;
+                }
+
                 boolean flushCommitLogTimed = CommitLog.this.defaultMessageStore.getMessageStoreConfig().isFlushCommitLogTimed();
 
                 int interval = CommitLog.this.defaultMessageStore.getMessageStoreConfig().getFlushIntervalCommitLog();
@@ -1099,7 +1528,7 @@ public class CommitLog {
                     }
 
                     long begin = System.currentTimeMillis();
-                    CommitLog.this.mappedFileQueue.flush(flushPhysicQueueLeastPages);
+                    this.flush(flushPhysicQueueLeastPages);
                     long storeTimestamp = CommitLog.this.mappedFileQueue.getStoreTimestamp();
                     if (storeTimestamp > 0) {
                         CommitLog.this.defaultMessageStore.getStoreCheckpoint().setPhysicMsgTimestamp(storeTimestamp);
@@ -1126,6 +1555,27 @@ public class CommitLog {
             CommitLog.log.info(this.getServiceName() + " service end");
         }
 
+        private void flushAdaptively() {
+            long dirtyBytes = CommitLog.this.mappedFileQueue.remainHowManyDataToFlush();
+            long waitMillis = CommitLog.this.flushPolicy.getWaitMillis(dirtyBytes, System.currentTimeMillis());
+            if (waitMillis > 0) {
+                this.waitForRunning(waitMillis);
+                return;
+            }
+
+            this.flush(0);
+            CommitLog.this.flushPolicy.onWrite(this.lastFlushedBytes, this.lastFlushCostNanos, System.currentTimeMillis());
+            if (this.lastFlushedBytes > 0) {
+                long storeTimestamp = CommitLog.this.mappedFileQueue.getStoreTimestamp();
+                if (storeTimestamp > 0) {
+                    CommitLog.this.defaultMessageStore.getStoreCheckpoint().setPhysicMsgTimestamp(storeTimestamp);
+                }
+            } else {
+                // the dirty bytes can not be flushed yet, e.g. a reserved slot is still being written
+                this.waitForRunning(1);
+            }
+        }
+
         @Override
         public String getServiceName() {
             return FlushRealTimeService.class.getSimpleName();
@@ -1188,6 +1638,28 @@ public class CommitLog {
             this.wakeup();
         }
 
+        /**
+         * Requeue the requests waiting for a reserved slot, without waking up, so the next round waits a little
+         * instead of spinning on the flush.
+         */
+        private void requeueRequests(final List<GroupCommitRequest> requests) {
+            lock.lock();
+            try {
+                this.requestsWrite.addAll(requests);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean hasRequeuedRequests() {
+            lock.lock();
+            try {
+                return !this.requestsWrite.isEmpty();
+            } finally {
+                lock.unlock();
+            }
+        }
+
         private void swapRequests() {
             lock.lock();
             try {
@@ -1201,18 +1673,32 @@ public class CommitLog {
 
         private void doCommit() {
             if (!this.requestsRead.isEmpty()) {
+                LinkedList<GroupCommitRequest> unfinished = null;
                 for (GroupCommitRequest req : this.requestsRead) {
                     // There may be a message in the next file, so a maximum of
                     // two times the flush
                     boolean flushOK = CommitLog.this.mappedFileQueue.getFlushedWhere() >= req.getNextOffset();
                     for (int i = 0; i < 2 && !flushOK; i++) {
-                        CommitLog.this.mappedFileQueue.flush(0);
+                        this.flush(0);
                         flushOK = CommitLog.this.mappedFileQueue.getFlushedWhere() >= req.getNextOffset();
                     }
 
+                    if (!flushOK && CommitLog.this.reservedSlotAppend && System.nanoTime() < req.getDeadLine()) {
+                        // a slot in front of the request is still being written, retry in the next round
+                        if (unfinished == null) {
+                            unfinished = new LinkedList<>();
+                        }
+                        unfinished.add(req);
+                        continue;
+                    }
+
                     req.wakeupCustomer(flushOK ? PutMessageStatus.PUT_OK : PutMessageStatus.FLUSH_DISK_TIMEOUT);
                 }
 
+                if (unfinished != null) {
+                    this.requeueRequests(unfinished);
+                }
+
                 long storeTimestamp = CommitLog.this.mappedFileQueue.getStoreTimestamp();
                 if (storeTimestamp > 0) {
                     CommitLog.this.defaultMessageStore.getStoreCheckpoint().setPhysicMsgTimestamp(storeTimestamp);
@@ -1222,7 +1708,7 @@ public class CommitLog {
             } else {
                 // Because of individual messages is set to not sync flush, it
                 // will come to this process
-                CommitLog.this.mappedFileQueue.flush(0);
+                this.flush(0);
             }
         }
 
@@ -1231,7 +1717,8 @@ public class CommitLog {
 
             while (!this.isStopped()) {
                 try {
-                    this.waitForRunning(10);
+                    // retry the requeued requests soon, a reserved slot is written in a moment
+                    this.waitForRunning(this.hasRequeuedRequests() ? 1 : 10);
                     this.doCommit();
                 } catch (Exception e) {
                     CommitLog.log.warn(this.getServiceName() + " service has exception. ", e);
@@ -1360,9 +1847,11 @@ public class CommitLog {
 
 
             final long beginTimeMills = CommitLog.this.defaultMessageStore.now();
-            // Write messages to the queue buffer
-            byteBuffer.put(preEncodeBuffer);
-            msgInner.setEncodedBuff(null);
+            // Write messages to the queue buffer, or leave it to the writer of the reserved slot
+            if (!putMessageContext.isReserveOnly()) {
+                byteBuffer.put(preEncodeBuffer);
+                msgInner.setEncodedBuff(null);
+            }
             AppendMessageResult result = new AppendMessageResult(AppendMessageStatus.PUT_OK, wroteOffset, msgLen, msgIdSupplier,
                 msgInner.getStoreTimestamp(), queueOffset, CommitLog.this.defaultMessageStore.now() - beginTimeMills);
 
@@ -1424,6 +1913,28 @@ public class CommitLog {
                 return buffer.toString();
             };
 
+            BatchLayout layout = putMessageContext.getBatchLayout();
+            if (layout != null) {
+                // Determines whether there is sufficient free space
+                if ((layout.getTotalLength() + END_FILE_MIN_BLANK_LENGTH) > maxBlank) {
+                    this.msgStoreItemMemory.clear();
+                    // 1 TOTALSIZE
+                    this.msgStoreItemMemory.putInt(maxBlank);
+                    // 2 MAGICCODE
+                    this.msgStoreItemMemory.putInt(CommitLog.BLANK_MAGIC_CODE);
+                    // 3 The remaining space may be any value
+                    byteBuffer.put(this.msgStoreItemMemory.array(), 0, 8);
+                    return new AppendMessageResult(AppendMessageStatus.END_OF_FILE, wroteOffset, maxBlank, msgIdSupplier, messageExtBatch.getStoreTimestamp(),
+                        beginQueueOffset, CommitLog.this.defaultMessageStore.now() - beginTimeMills);
+                }
+                queueOffset = this.writeBatch(fileFromOffset, byteBuffer, messageExtBatch, layout, queueOffset, putMessageContext.getPhyPos());
+                AppendMessageResult result = new AppendMessageResult(AppendMessageStatus.PUT_OK, wroteOffset, layout.getTotalLength(), msgIdSupplier,
+                    messageExtBatch.getStoreTimestamp(), beginQueueOffset, CommitLog.this.defaultMessageStore.now() - beginTimeMills);
+                result.setMsgNum(layout.getCount());
+                CommitLog.this.topicQueueTable.put(key, queueOffset);
+                return result;
+            }
+
             messagesByteBuff.mark();
             int index = 0;
             while (messagesByteBuff.hasRemaining()) {
@@ -1466,8 +1977,10 @@ public class CommitLog {
 
             messagesByteBuff.position(0);
             messagesByteBuff.limit(totalMsgLen);
-            byteBuffer.put(messagesByteBuff);
-            messageExtBatch.setEncodedBuff(null);
+            if (!putMessageContext.isReserveOnly()) {
+                byteBuffer.put(messagesByteBuff);
+                messageExtBatch.setEncodedBuff(null);
+            }
             AppendMessageResult result = new AppendMessageResult(AppendMessageStatus.PUT_OK, wroteOffset, totalMsgLen, msgIdSupplier,
                 messageExtBatch.getStoreTimestamp(), beginQueueOffset, CommitLog.this.defaultMessageStore.now() - beginTimeMills);
             result.setMsgNum(msgNum);
@@ -1476,6 +1989,80 @@ public class CommitLog {
             return result;
         }
 
+        /**
+         * Serialize the messages of the batch body straight into the mapped file, following the positions recorded
+         * by {@link MessageExtEncoder#scan(MessageExtBatch, PutMessageContext)}.
+         *
+         * @return the queue offset after the last message
+         */
+        private long writeBatch(final long fileFromOffset, final ByteBuffer byteBuffer, final MessageExtBatch messageExtBatch,
+            final BatchLayout layout, long queueOffset, final long[] phyPos) {
+            final byte[] body = messageExtBatch.getBody();
+            final byte[] bornHostBytes = messageExtBatch.getBornHostBytes().array();
+            final byte[] storeHostBytes = messageExtBatch.getStoreHostBytes().array();
+            final byte[] topicData = layout.getTopicData();
+            final byte[] batchPropData = layout.getBatchPropData();
+
+            for (int i = 0; i < layout.getCount(); i++) {
+                long wroteOffset = fileFromOffset + byteBuffer.position();
+                // 1 TOTALSIZE
+                byteBuffer.putInt(layout.getMsgLen(i));
+                // 2 MAGICCODE
+                byteBuffer.putInt(CommitLog.MESSAGE_MAGIC_CODE);
+                // 3 BODYCRC
+                byteBuffer.putInt(layout.getBodyCrc(i));
+                // 4 QUEUEID
+                byteBuffer.putInt(messageExtBatch.getQueueId());
+                // 5 FLAG
+                byteBuffer.putInt(layout.getFlag(i));
+                // 6 QUEUEOFFSET
+                byteBuffer.putLong(queueOffset);
+                // 7 PHYSICALOFFSET
+                byteBuffer.putLong(wroteOffset);
+                // 8 SYSFLAG
+                byteBuffer.putInt(messageExtBatch.getSysFlag());
+                // 9 BORNTIMESTAMP
+                byteBuffer.putLong(messageExtBatch.getBornTimestamp());
+                // 10 BORNHOST
+                byteBuffer.put(bornHostBytes);
+                // 11 STORETIMESTAMP
+                byteBuffer.putLong(messageExtBatch.getStoreTimestamp());
+                // 12 STOREHOSTADDRESS
+                byteBuffer.put(storeHostBytes);
+                // 13 RECONSUMETIMES
+                byteBuffer.putInt(messageExtBatch.getReconsumeTimes());
+                // 14 Prepared Transaction Offset, batch does not support transaction
+                byteBuffer.putLong(0);
+                // 15 BODY
+                int bodyLen = layout.getBodyLen(i);
+                byteBuffer.putInt(bodyLen);
+                if (bodyLen > 0) {
+                    byteBuffer.put(body, layout.getBodyPos(i), bodyLen);
+                }
+                // 16 TOPIC
+                byteBuffer.put((byte) topicData.length);
+                byteBuffer.put(topicData);
+                // 17 PROPERTIES
+                int propertiesLen = layout.getPropertiesLen(i);
+                boolean needAppendLastPropertySeparator = layout.isNeedAppendLastPropertySeparator(i);
+                int totalPropLen = propertiesLen + batchPropData.length + (needAppendLastPropertySeparator ? 1 : 0);
+                byteBuffer.putShort((short) totalPropLen);
+                if (propertiesLen > 0) {
+                    byteBuffer.put(body, layout.getPropertiesPos(i), propertiesLen);
+                }
+                if (batchPropData.length > 0) {
+                    if (needAppendLastPropertySeparator) {
+                        byteBuffer.put((byte) MessageDecoder.PROPERTY_SEPARATOR);
+                    }
+                    byteBuffer.put(batchPropData);
+                }
+
+                phyPos[i] = wroteOffset;
+                queueOffset++;
+            }
+            return queueOffset;
+        }
+
     }
 
     public static class MessageExtEncoder {
@@ -1484,6 +2071,7 @@ public class CommitLog {
         private final int maxMessageBodySize;
         // The maximum length of the full message.
         private final int maxMessageSize;
+        private final BatchLayout batchLayout = new BatchLayout();
         MessageExtEncoder(final int maxMessageBodySize) {
             ByteBufAllocator alloc = UnpooledByteBufAllocator.DEFAULT;
             //Reserve 64kb for encoding buffer outside body
@@ -1689,11 +2277,166 @@ public class CommitLog {
             return this.byteBuf.nioBuffer();
         }
 
+        /**
+         * Validate the batch body once and record where every message sits in it, without copying anything. The
+         * messages are then serialized straight into the mapped file by the append callback, instead of going
+         * through the encoder buffer as {@link #encode(MessageExtBatch, PutMessageContext)} does.
+         */
+        protected void scan(final MessageExtBatch messageExtBatch, PutMessageContext putMessageContext) {
+            ByteBuffer messagesByteBuff = messageExtBatch.wrap();
+
+            int totalLength = messagesByteBuff.limit();
+            if (totalLength > this.maxMessageBodySize) {
+                CommitLog.log.warn("message body size exceeded, msg body size: " + totalLength + ", maxMessageSize: " + this.maxMessageBodySize);
+                throw new RuntimeException("message body size exceeded");
+            }
+
+            // properties from MessageExtBatch
+            String batchPropStr = MessageDecoder.messageProperties2String(messageExtBatch.getProperties());
+            final byte[] batchPropData = batchPropStr.getBytes(MessageDecoder.CHARSET_UTF8);
+            int batchPropLen = batchPropData.length;
+            if (batchPropLen > Short.MAX_VALUE) {
+                CommitLog.log.warn("Properties size of messageExtBatch exceeded, properties size: {}, maxSize: {}.", batchPropLen, Short.MAX_VALUE);
+                throw new RuntimeException("Properties size of messageExtBatch exceeded!");
+            }
+
+            final byte[] topicData = messageExtBatch.getTopic().getBytes(MessageDecoder.CHARSET_UTF8);
+            BatchLayout layout = this.batchLayout;
+            layout.reset(topicData, batchPropData);
+
+            while (messagesByteBuff.hasRemaining()) {
+                // 1 TOTALSIZE, 2 MAGICCODE, 3 BODYCRC, 4 FLAG, 5 BODY length
+                if (messagesByteBuff.remaining() < 20) {
+                    throw new RuntimeException("message batch body is truncated");
+                }
+                messagesByteBuff.position(messagesByteBuff.position() + 12);
+                int flag = messagesByteBuff.getInt();
+                int bodyLen = messagesByteBuff.getInt();
+                if (bodyLen < 0 || bodyLen + 2 > messagesByteBuff.remaining()) {
+                    throw new RuntimeException("message batch body is truncated");
+                }
+                int bodyPos = messagesByteBuff.position();
+                int bodyCrc = UtilAll.crc32(messagesByteBuff.array(), bodyPos, bodyLen);
+                messagesByteBuff.position(bodyPos + bodyLen);
+                // 6 properties
+                short propertiesLen = messagesByteBuff.getShort();
+                if (propertiesLen < 0 || propertiesLen > messagesByteBuff.remaining()) {
+                    throw new RuntimeException("message batch body is truncated");
+                }
+                int propertiesPos = messagesByteBuff.position();
+                messagesByteBuff.position(propertiesPos + propertiesLen);
+                boolean needAppendLastPropertySeparator = propertiesLen > 0 && batchPropLen > 0
+                    && messagesByteBuff.get(messagesByteBuff.position() - 1) != MessageDecoder.PROPERTY_SEPARATOR;
+
+                int totalPropLen = needAppendLastPropertySeparator ? propertiesLen + batchPropLen + 1
+                                                                     : propertiesLen + batchPropLen;
+                final int msgLen = calMsgLength(messageExtBatch.getSysFlag(), bodyLen, topicData.length, totalPropLen);
+                layout.add(msgLen, bodyCrc, flag, bodyPos, bodyLen, propertiesPos, propertiesLen, needAppendLastPropertySeparator);
+            }
+            putMessageContext.setBatchSize(layout.getCount());
+            putMessageContext.setPhyPos(new long[layout.getCount()]);
+            putMessageContext.setBatchLayout(layout);
+        }
+
         public ByteBuffer getEncoderBuffer() {
             return this.byteBuf.nioBuffer();
         }
     }
 
+    /**
+     * Where the messages of a batch sit in the batch body, one fixed size record of ints per message.
+     */
+    static class BatchLayout {
+        private static final int MSG_LEN = 0;
+        private static final int BODY_CRC = 1;
+        private static final int FLAG = 2;
+        private static final int BODY_POS = 3;
+        private static final int BODY_LEN = 4;
+        private static final int PROPERTIES_POS = 5;
+        private static final int PROPERTIES_LEN = 6;
+        private static final int APPEND_SEPARATOR = 7;
+        private static final int RECORD_SIZE = 8;
+
+        private int[] records = new int[RECORD_SIZE * 64];
+        private int count;
+        private int totalLength;
+        private byte[] topicData;
+        private byte[] batchPropData;
+
+        void reset(byte[] topicData, byte[] batchPropData) {
+            this.count = 0;
+            this.totalLength = 0;
+            this.topicData = topicData;
+            this.batchPropData = batchPropData;
+        }
+
+        void add(int msgLen, int bodyCrc, int flag, int bodyPos, int bodyLen, int propertiesPos, int propertiesLen,
+            boolean needAppendLastPropertySeparator) {
+            int base = this.count * RECORD_SIZE;
+            if (base + RECORD_SIZE > this.records.length) {
+                this.records = Arrays.copyOf(this.records, this.records.length * 2);
+            }
+            this.records[base + MSG_LEN] = msgLen;
+            this.records[base + BODY_CRC] = bodyCrc;
+            this.records[base + FLAG] = flag;
+            this.records[base + BODY_POS] = bodyPos;
+            this.records[base + BODY_LEN] = bodyLen;
+            this.records[base + PROPERTIES_POS] = propertiesPos;
+            this.records[base + PROPERTIES_LEN] = propertiesLen;
+            this.records[base + APPEND_SEPARATOR] = needAppendLastPropertySeparator ? 1 : 0;
+            this.count++;
+            this.totalLength += msgLen;
+        }
+
+        int getCount() {
+            return count;
+        }
+
+        int getTotalLength() {
+            return totalLength;
+        }
+
+        byte[] getTopicData() {
+            return topicData;
+        }
+
+        byte[] getBatchPropData() {
+            return batchPropData;
+        }
+
+        int getMsgLen(int index) {
+            return this.records[index * RECORD_SIZE + MSG_LEN];
+        }
+
+        int getBodyCrc(int index) {
+            return this.records[index * RECORD_SIZE + BODY_CRC];
+        }
+
+        int getFlag(int index) {
+            return this.records[index * RECORD_SIZE + FLAG];
+        }
+
+        int getBodyPos(int index) {
+            return this.records[index * RECORD_SIZE + BODY_POS];
+        }
+
+        int getBodyLen(int index) {
+            return this.records[index * RECORD_SIZE + BODY_LEN];
+        }
+
+        int getPropertiesPos(int index) {
+            return this.records[index * RECORD_SIZE + PROPERTIES_POS];
+        }
+
+        int getPropertiesLen(int index) {
+            return this.records[index * RECORD_SIZE + PROPERTIES_LEN];
+        }
+
+        boolean isNeedAppendLastPropertySeparator(int index) {
+            return this.records[index * RECORD_SIZE + APPEND_SEPARATOR] != 0;
+        }
+    }
+
     static class PutMessageThreadLocal {
         private MessageExtEncoder encoder;
         private StringBuilder keyBuilder;
@@ -1712,10 +2455,76 @@ public class CommitLog {
         }
     }
 
+    static class CombinedPutRequest {
+        private final MessageExtBrokerInner msg;
+        private final PutMessageContext putMessageContext;
+        private final Thread waiter;
+        private MappedFile mappedFile;
+        private AppendMessageResult result;
+        private PutMessageResult failedResult;
+        private CompletableFuture<PutMessageStatus> flushFuture;
+        private volatile boolean done = false;
+
+        CombinedPutRequest(MessageExtBrokerInner msg, PutMessageContext putMessageContext) {
+            this.msg = msg;
+            this.putMessageContext = putMessageContext;
+            this.waiter = Thread.currentThread();
+        }
+
+        public MessageExtBrokerInner getMsg() {
+            return msg;
+        }
+
+        public PutMessageContext getPutMessageContext() {
+            return putMessageContext;
+        }
+
+        public Thread getWaiter() {
+            return waiter;
+        }
+
+        public MappedFile getMappedFile() {
+            return mappedFile;
+        }
+
+        public AppendMessageResult getResult() {
+            return result;
+        }
+
+        public void setResult(MappedFile mappedFile, AppendMessageResult result) {
+            this.mappedFile = mappedFile;
+            this.result = result;
+        }
+
+        public PutMessageResult getFailedResult() {
+            return failedResult;
+        }
+
+        public void setFailedResult(PutMessageResult failedResult) {
+            this.failedResult = failedResult;
+        }
+
+        public CompletableFuture<PutMessageStatus> getFlushFuture() {
+            return flushFuture;
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+
+        public void complete(CompletableFuture<PutMessageStatus> flushFuture) {
+            this.flushFuture = flushFuture;
+            this.done = true;
+            LockSupport.unpark(this.waiter);
+        }
+    }
+
     static class PutMessageContext {
         private String topicQueueTableKey;
         private long[] phyPos;
         private int batchSize;
+        private boolean reserveOnly;
+        private BatchLayout batchLayout;
 
         public PutMessageContext(String topicQueueTableKey) {
             this.topicQueueTableKey = topicQueueTableKey;
@@ -1740,5 +2549,21 @@ public class CommitLog {
         public void setBatchSize(int batchSize) {
             this.batchSize = batchSize;
         }
+
+        public boolean isReserveOnly() {
+            return reserveOnly;
+        }
+
+        public void setReserveOnly(boolean reserveOnly) {
+            this.reserveOnly = reserveOnly;
+        }
+
+        public BatchLayout getBatchLayout() {
+            return batchLayout;
+        }
+
+        public void setBatchLayout(BatchLayout batchLayout) {
+            this.batchLayout = batchLayout;
+        }
     }
 }
@@ -47,6 +47,7 @@ public class ConsumeQueue {
     private long maxPhysicOffset = -1;
     private volatile long minLogicOffset = 0;
     private ConsumeQueueExt consumeQueueExt = null;
+    private ConsumeQueueTimeIndex timeIndex = null;
 
     public ConsumeQueue(
         final String topic,
@@ -78,6 +79,15 @@ public class ConsumeQueue {
                 defaultMessageStore.getMessageStoreConfig().getBitMapLengthConsumeQueueExt()
             );
         }
+
+        if (defaultMessageStore.getMessageStoreConfig().isEnableConsumeQueueTimeIndex()) {
+            this.timeIndex = new ConsumeQueueTimeIndex(
+                topic,
+                queueId,
+                StorePathConfigHelper.getStorePathConsumeQueueTimeIndex(defaultMessageStore.getMessageStoreConfig().getStorePathRootDir()),
+                ConsumeQueueTimeIndex.TIME_INDEX_FILE_SIZE
+            );
+        }
     }
 
     public boolean load() {
@@ -86,6 +96,9 @@ public class ConsumeQueue {
         if (isExtReadEnable()) {
             result &= this.consumeQueueExt.load();
         }
+        if (isTimeIndexEnable()) {
+            result &= this.timeIndex.load();
+        }
         return result;
     }
 
@@ -154,9 +167,54 @@ public class ConsumeQueue {
                 this.consumeQueueExt.truncateByMaxAddress(maxExtAddr);
             }
         }
+
+        if (isTimeIndexEnable()) {
+            this.recoverTimeIndex();
+        }
+    }
+
+    /**
+     * Drop the time index units beyond the recovered queue, and fill the ones missed since its last flush.
+     */
+    private void recoverTimeIndex() {
+        this.timeIndex.recover();
+        long maxOffsetInQueue = this.getMaxOffsetInQueue();
+        this.timeIndex.truncateByMaxQueueOffset(maxOffsetInQueue);
+
+        // an empty index is not rebuilt from the whole queue, lookups fall back to the consume queue until it grows
+        long lastIndexed = this.timeIndex.getMaxQueueOffset();
+        if (lastIndexed < 0) {
+            return;
+        }
+        int interval = this.getTimeIndexInterval();
+        for (long cqOffset = lastIndexed - lastIndexed % interval + interval; cqOffset < maxOffsetInQueue; cqOffset += interval) {
+            SelectMappedBufferResult sbr = this.getIndexBuffer(cqOffset);
+            if (sbr == null) {
+                continue;
+            }
+            try {
+                long phyOffset = sbr.getByteBuffer().getLong();
+                int size = sbr.getByteBuffer().getInt();
+                long storeTime = this.defaultMessageStore.getCommitLog().pickupStoreTimestamp(phyOffset, size);
+                if (storeTime > 0) {
+                    this.timeIndex.put(cqOffset, storeTime);
+                }
+            } finally {
+                sbr.release();
+            }
+        }
+        log.info("recover consume queue time index {}-{} to queue offset {}", this.topic, this.queueId,
+            this.timeIndex.getMaxQueueOffset());
     }
 
     public long getOffsetInQueueByTime(final long timestamp) {
+        if (isTimeIndexEnable()) {
+            long offset = this.getOffsetInQueueByTimeIndex(timestamp);
+            if (offset >= 0) {
+                return offset;
+            }
+        }
+
         MappedFile mappedFile = this.mappedFileQueue.getMappedFileByTime(timestamp);
         if (mappedFile != null) {
             long offset = 0;
@@ -225,7 +283,98 @@ public class ConsumeQueue {
         return 0;
     }
 
+    /**
+     * Bracket the timestamp by the time index, then binary search the consume queue units inside the bracket only.
+     *
+     * @return -1 if the time index does not cover the timestamp
+     */
+    private long getOffsetInQueueByTimeIndex(final long timestamp) {
+        long minOffset = this.getMinOffsetInQueue();
+        long maxOffset = this.getMaxOffsetInQueue() - 1;
+        if (maxOffset < minOffset) {
+            return -1;
+        }
+
+        long low = this.timeIndex.floorQueueOffset(timestamp);
+        if (low < 0) {
+            long firstIndexed = this.timeIndex.getMinQueueOffset();
+            // messages stored before the first unit are not indexed, e.g. when the index was enabled later
+            if (firstIndexed < 0 || firstIndexed - minOffset > this.getTimeIndexInterval()) {
+                return -1;
+            }
+        }
+        low = Math.max(low, minOffset);
+        if (low > maxOffset) {
+            return -1;
+        }
+
+        long high = this.timeIndex.higherQueueOffset(timestamp);
+        if (high < 0 || high > maxOffset) {
+            high = maxOffset;
+        }
+        if (high < low) {
+            high = low;
+        }
+
+        long targetOffset = -1, leftOffset = -1, rightOffset = -1;
+        long leftIndexValue = -1L, rightIndexValue = -1L;
+        long minPhysicOffset = this.defaultMessageStore.getMinPhyOffset();
+        while (high >= low) {
+            long midOffset = (low + high) >>> 1;
+            SelectMappedBufferResult sbr = this.getIndexBuffer(midOffset);
+            if (sbr == null) {
+                return -1;
+            }
+            long phyOffset;
+            int size;
+            try {
+                phyOffset = sbr.getByteBuffer().getLong();
+                size = sbr.getByteBuffer().getInt();
+            } finally {
+                sbr.release();
+            }
+            if (phyOffset < minPhysicOffset) {
+                low = midOffset + 1;
+                leftOffset = midOffset;
+                continue;
+            }
+
+            long storeTime = this.defaultMessageStore.getCommitLog().pickupStoreTimestamp(phyOffset, size);
+            if (storeTime < 0) {
+                return 0;
+            } else if (storeTime == timestamp) {
+                targetOffset = midOffset;
+                break;
+            } else if (storeTime > timestamp) {
+                high = midOffset - 1;
+                rightOffset = midOffset;
+                rightIndexValue = storeTime;
+            } else {
+                low = midOffset + 1;
+                leftOffset = midOffset;
+                leftIndexValue = storeTime;
+            }
+        }
+
+        if (targetOffset != -1) {
+            return targetOffset;
+        } else if (leftIndexValue == -1) {
+            return rightOffset;
+        } else if (rightIndexValue == -1) {
+            return leftOffset;
+        } else {
+            return Math.abs(timestamp - leftIndexValue) > Math.abs(timestamp - rightIndexValue) ? rightOffset : leftOffset;
+        }
+    }
+
     public void truncateDirtyLogicFiles(long phyOffset) {
+        this.truncateDirtyLogicFiles0(phyOffset);
+        if (isTimeIndexEnable()) {
+            this.timeIndex.truncateByMaxQueueOffset(this.getMaxOffsetInQueue());
+        }
+    }
+
+    private void truncateDirtyLogicFiles0(long phyOffset) {
 
         int logicFileSize = this.mappedFileSize;
 
@@ -330,6 +479,9 @@ public class ConsumeQueue {
         if (isExtReadEnable()) {
             result = result & this.consumeQueueExt.flush(flushLeastPages);
         }
+        if (isTimeIndexEnable()) {
+            result = result & this.timeIndex.flush(flushLeastPages);
+        }
 
         return result;
     }
@@ -337,6 +489,9 @@ public class ConsumeQueue {
     public int deleteExpiredFile(long offset) {
         int cnt = this.mappedFileQueue.deleteExpiredFileByOffset(offset, CQ_STORE_UNIT_SIZE);
         this.correctMinOffset(offset);
+        if (isTimeIndexEnable()) {
+            this.timeIndex.deleteExpiredFile(this.getMinOffsetInQueue());
+        }
         return cnt;
     }
 
@@ -408,6 +563,7 @@ public class ConsumeQueue {
                     this.defaultMessageStore.getStoreCheckpoint().setPhysicMsgTimestamp(request.getStoreTimestamp());
                 }
                 this.defaultMessageStore.getStoreCheckpoint().setLogicsMsgTimestamp(request.getStoreTimestamp());
+                this.putTimeIndex(request.getConsumeQueueOffset(), request.getStoreTimestamp());
                 if (multiQueue) {
                     multiDispatchLmqQueue(request, maxRetries);
                 }
@@ -461,6 +617,7 @@ public class ConsumeQueue {
                 request.getTagsCode(),
                 queueOffset);
             if (result) {
+                cq.putTimeIndex(queueOffset, request.getStoreTimestamp());
                 break;
             } else {
                 log.warn("[BUG]put commit log position info to " + queueName + ":" + queueId + " " + request.getCommitLogOffset()
@@ -529,6 +686,13 @@ public class ConsumeQueue {
         return false;
     }
 
+    private void putTimeIndex(final long cqOffset, final long storeTimestamp) {
+        if (isTimeIndexEnable() && cqOffset % this.getTimeIndexInterval() == 0
+            && !this.timeIndex.put(cqOffset, storeTimestamp)) {
+            log.warn("Save consume queue time index fail, topic:{}, queueId:{}, offset:{}", topic, queueId, cqOffset);
+        }
+    }
+
     private void fillPreBlank(final MappedFile mappedFile, final long untilWhere) {
         ByteBuffer byteBuffer = ByteBuffer.allocate(CQ_STORE_UNIT_SIZE);
         byteBuffer.putLong(0L);
@@ -589,6 +753,10 @@ public class ConsumeQueue {
         return queueId;
     }
 
+    public MappedFileQueue getMappedFileQueue() {
+        return mappedFileQueue;
+    }
+
     public long getMaxPhysicOffset() {
         return maxPhysicOffset;
     }
@@ -604,6 +772,9 @@ public class ConsumeQueue {
         if (isExtReadEnable()) {
             this.consumeQueueExt.destroy();
         }
+        if (isTimeIndexEnable()) {
+            this.timeIndex.destroy();
+        }
     }
 
     public long getMessageTotalInQueue() {
@@ -619,12 +790,23 @@ public class ConsumeQueue {
         if (isExtReadEnable()) {
             this.consumeQueueExt.checkSelf();
         }
+        if (isTimeIndexEnable()) {
+            this.timeIndex.checkSelf();
+        }
     }
 
     protected boolean isExtReadEnable() {
         return this.consumeQueueExt != null;
     }
 
+    protected boolean isTimeIndexEnable() {
+        return this.timeIndex != null;
+    }
+
+    private int getTimeIndexInterval() {
+        return Math.max(1, this.defaultMessageStore.getMessageStoreConfig().getConsumeQueueTimeIndexInterval());
+    }
+
     protected boolean isExtWriteEnable() {
         return this.consumeQueueExt != null
             && this.defaultMessageStore.getMessageStoreConfig().isEnableConsumeQueueExt();
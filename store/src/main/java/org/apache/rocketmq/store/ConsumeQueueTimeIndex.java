@@ -0,0 +1,301 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.List;
+import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.logging.InternalLogger;
+import org.apache.rocketmq.logging.InternalLoggerFactory;
+
+/**
+ * Sparse time index of consume queue, one unit of (queue offset, store timestamp) every
+ * {@link org.apache.rocketmq.store.config.MessageStoreConfig#getConsumeQueueTimeIndexInterval()} messages.
+ * <p/>
+ * <li>1. This class is used only by {@link ConsumeQueue}</li>
+ * <li>2. Units are sorted by queue offset and store timestamp, so the index brackets a timestamp without reading
+ * the commit log.</li>
+ * <li>3. It is only a hint, missing units just make the bracket wider.</li>
+ */
+public class ConsumeQueueTimeIndex {
+    private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.STORE_LOGGER_NAME);
+
+    public static final int TIME_INDEX_UNIT_SIZE = 16;
+    public static final int TIME_INDEX_FILE_SIZE = TIME_INDEX_UNIT_SIZE * 64 * 1024;
+
+    private final MappedFileQueue mappedFileQueue;
+    private final String topic;
+    private final int queueId;
+    private final ByteBuffer byteBufferIndex;
+
+    private volatile long maxQueueOffset = -1;
+
+    public ConsumeQueueTimeIndex(final String topic,
+        final int queueId,
+        final String storePath,
+        final int mappedFileSize) {
+        this.topic = topic;
+        this.queueId = queueId;
+
+        String queueDir = storePath
+            + File.separator + topic
+            + File.separator + queueId;
+
+        this.mappedFileQueue = new MappedFileQueue(queueDir, mappedFileSize, null);
+        this.byteBufferIndex = ByteBuffer.allocate(TIME_INDEX_UNIT_SIZE);
+    }
+
+    public boolean load() {
+        boolean result = this.mappedFileQueue.load();
+        log.info("load consume queue time index " + this.topic + "-" + this.queueId + " " + (result ? "OK" : "Failed"));
+        return result;
+    }
+
+    public void recover() {
+        final List<MappedFile> mappedFiles = this.mappedFileQueue.getMappedFiles();
+        if (mappedFiles.isEmpty()) {
+            return;
+        }
+
+        int index = mappedFiles.size() - 3;
+        if (index < 0) {
+            index = 0;
+        }
+
+        int mappedFileSize = this.mappedFileQueue.getMappedFileSize();
+        MappedFile mappedFile = mappedFiles.get(index);
+        ByteBuffer byteBuffer = mappedFile.sliceByteBuffer();
+        long processOffset = mappedFile.getFileFromOffset();
+        long mappedFileOffset = 0;
+        long lastQueueOffset = -1;
+        while (true) {
+            for (int i = 0; i < mappedFileSize; i += TIME_INDEX_UNIT_SIZE) {
+                long queueOffset = byteBuffer.getLong();
+                long storeTimestamp = byteBuffer.getLong();
+
+                if (queueOffset > lastQueueOffset && storeTimestamp > 0) {
+                    mappedFileOffset = i + TIME_INDEX_UNIT_SIZE;
+                    lastQueueOffset = queueOffset;
+                } else {
+                    break;
+                }
+            }
+
+            if (mappedFileOffset == mappedFileSize) {
+                index++;
+                if (index >= mappedFiles.size()) {
+                    break;
+                }
+                mappedFile = mappedFiles.get(index);
+                byteBuffer = mappedFile.sliceByteBuffer();
+                processOffset = mappedFile.getFileFromOffset();
+                mappedFileOffset = 0;
+            } else {
+                break;
+            }
+        }
+
+        processOffset += mappedFileOffset;
+        this.mappedFileQueue.setFlushedWhere(processOffset);
+        this.mappedFileQueue.setCommittedWhere(processOffset);
+        this.mappedFileQueue.truncateDirtyFiles(processOffset);
+        this.maxQueueOffset = lastQueueOffset;
+        log.info("recover consume queue time index {}-{} over, max queue offset {}", this.topic, this.queueId,
+            lastQueueOffset);
+    }
+
+    /**
+     * Append a unit, the queue offsets must be increasing, repeated ones are ignored.
+     */
+    public boolean put(final long queueOffset, final long storeTimestamp) {
+        if (queueOffset <= this.maxQueueOffset) {
+            return true;
+        }
+
+        MappedFile mappedFile = this.mappedFileQueue.getLastMappedFile(0);
+        if (mappedFile == null) {
+            log.error("Create consume queue time index file failed, {}-{}", this.topic, this.queueId);
+            return false;
+        }
+
+        this.byteBufferIndex.flip();
+        this.byteBufferIndex.limit(TIME_INDEX_UNIT_SIZE);
+        this.byteBufferIndex.putLong(queueOffset);
+        this.byteBufferIndex.putLong(storeTimestamp);
+        if (mappedFile.appendMessage(this.byteBufferIndex.array())) {
+            this.maxQueueOffset = queueOffset;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return queue offset of the last unit stored at or before the timestamp, -1 if none
+     */
+    public long floorQueueOffset(final long timestamp) {
+        long low = this.getMinUnitIndex();
+        long high = this.getMaxUnitIndex() - 1;
+        long result = -1;
+        while (low <= high) {
+            long mid = (low + high) >>> 1;
+            long[] unit = this.getUnit(mid);
+            if (unit == null) {
+                return -1;
+            }
+            if (unit[1] <= timestamp) {
+                result = unit[0];
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return queue offset of the first unit stored after the timestamp, -1 if none
+     */
+    public long higherQueueOffset(final long timestamp) {
+        long low = this.getMinUnitIndex();
+        long high = this.getMaxUnitIndex() - 1;
+        long result = -1;
+        while (low <= high) {
+            long mid = (low + high) >>> 1;
+            long[] unit = this.getUnit(mid);
+            if (unit == null) {
+                return -1;
+            }
+            if (unit[1] > timestamp) {
+                result = unit[0];
+                high = mid - 1;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return queue offset of the first unit, -1 if the index is empty
+     */
+    public long getMinQueueOffset() {
+        long[] unit = this.getUnit(this.getMinUnitIndex());
+        return unit != null ? unit[0] : -1;
+    }
+
+    public long getMaxQueueOffset() {
+        return maxQueueOffset;
+    }
+
+    /**
+     * Remove the units of queue offset not less than {@code maxQueueOffset}.
+     */
+    public void truncateByMaxQueueOffset(final long maxQueueOffset) {
+        if (maxQueueOffset > this.maxQueueOffset) {
+            return;
+        }
+
+        long low = this.getMinUnitIndex();
+        long high = this.getMaxUnitIndex() - 1;
+        long firstDirty = this.getMaxUnitIndex();
+        long lastQueueOffset = -1;
+        while (low <= high) {
+            long mid = (low + high) >>> 1;
+            long[] unit = this.getUnit(mid);
+            if (unit == null) {
+                break;
+            }
+            if (unit[0] >= maxQueueOffset) {
+                firstDirty = mid;
+                high = mid - 1;
+            } else {
+                lastQueueOffset = unit[0];
+                low = mid + 1;
+            }
+        }
+
+        log.info("Truncate consume queue time index {}-{} by max queue offset {}", this.topic, this.queueId,
+            maxQueueOffset);
+        long truncateOffset = firstDirty * TIME_INDEX_UNIT_SIZE;
+        this.mappedFileQueue.truncateDirtyFiles(truncateOffset);
+        this.maxQueueOffset = lastQueueOffset;
+
+        // clear the dirty units, otherwise recover would take them back after restart
+        int mappedFileSize = this.mappedFileQueue.getMappedFileSize();
+        MappedFile mappedFile = this.mappedFileQueue.getLastMappedFile();
+        if (mappedFile != null && truncateOffset >= mappedFile.getFileFromOffset()
+            && truncateOffset < mappedFile.getFileFromOffset() + mappedFileSize) {
+            ByteBuffer byteBuffer = mappedFile.sliceByteBuffer();
+            for (int pos = (int) (truncateOffset % mappedFileSize); pos < mappedFileSize; pos += TIME_INDEX_UNIT_SIZE) {
+                byteBuffer.putLong(pos, 0L);
+                byteBuffer.putLong(pos + 8, 0L);
+            }
+        }
+    }
+
+    /**
+     * Delete the files of which all units are less than {@code minQueueOffset}.
+     */
+    public int deleteExpiredFile(final long minQueueOffset) {
+        return this.mappedFileQueue.deleteExpiredFileByOffset(minQueueOffset, TIME_INDEX_UNIT_SIZE);
+    }
+
+    public boolean flush(final int flushLeastPages) {
+        return this.mappedFileQueue.flush(flushLeastPages);
+    }
+
+    public void checkSelf() {
+        this.mappedFileQueue.checkSelf();
+    }
+
+    public void destroy() {
+        this.maxQueueOffset = -1;
+        this.mappedFileQueue.destroy();
+    }
+
+    private long getMinUnitIndex() {
+        long minOffset = this.mappedFileQueue.getMinOffset();
+        return minOffset < 0 ? 0 : minOffset / TIME_INDEX_UNIT_SIZE;
+    }
+
+    private long getMaxUnitIndex() {
+        return this.mappedFileQueue.getMaxOffset() / TIME_INDEX_UNIT_SIZE;
+    }
+
+    /**
+     * @return (queue offset, store timestamp) of the unit, null if it is not available
+     */
+    private long[] getUnit(final long unitIndex) {
+        long offset = unitIndex * TIME_INDEX_UNIT_SIZE;
+        MappedFile mappedFile = this.mappedFileQueue.findMappedFileByOffset(offset);
+        if (mappedFile == null) {
+            return null;
+        }
+        SelectMappedBufferResult result = mappedFile.selectMappedBuffer(
+            (int) (offset % this.mappedFileQueue.getMappedFileSize()), TIME_INDEX_UNIT_SIZE);
+        if (result == null) {
+            return null;
+        }
+        try {
+            ByteBuffer byteBuffer = result.getByteBuffer();
+            return new long[] {byteBuffer.getLong(), byteBuffer.getLong()};
+        } finally {
+            result.release();
+        }
+    }
+}
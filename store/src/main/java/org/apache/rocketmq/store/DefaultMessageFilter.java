@@ -47,4 +47,9 @@ public class DefaultMessageFilter implements MessageFilter {
     public boolean isMatchedByCommitLog(ByteBuffer msgBuffer, Map<String, String> properties) {
         return true;
     }
+
+    @Override
+    public boolean isTagsCodeFilter() {
+        return true;
+    }
 }
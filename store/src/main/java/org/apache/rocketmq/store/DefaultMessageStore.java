@@ -25,19 +25,24 @@ import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileLock;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -70,6 +75,8 @@ import org.apache.rocketmq.store.index.IndexService;
 import org.apache.rocketmq.store.index.QueryOffsetResult;
 import org.apache.rocketmq.store.schedule.ScheduleMessageService;
 import org.apache.rocketmq.store.stats.BrokerStatsManager;
+import org.apache.rocketmq.store.tiered.TieredStoreService;
+import org.apache.rocketmq.store.timer.TimerMessageStore;
 
 public class DefaultMessageStore implements MessageStore {
     private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.STORE_LOGGER_NAME);
@@ -96,10 +103,18 @@ public class DefaultMessageStore implements MessageStore {
 
     private final ScheduleMessageService scheduleMessageService;
 
+    private final TimerMessageStore timerMessageStore;
+
     private final StoreStatsService storeStatsService;
 
     private final TransientStorePool transientStorePool;
 
+    private final DirectIOBlockCache directIOBlockCache;
+
+    private final TieredStoreService tieredStoreService;
+
+    private final ColdReadPrefetcher coldReadPrefetcher;
+
     private final RunningFlags runningFlags = new RunningFlags();
     private final SystemClock systemClock = new SystemClock();
 
@@ -147,21 +162,44 @@ public class DefaultMessageStore implements MessageStore {
         this.cleanConsumeQueueService = new CleanConsumeQueueService();
         this.storeStatsService = new StoreStatsService();
         this.indexService = new IndexService(this);
+        if (messageStoreConfig.isTieredStoreEnable() && !messageStoreConfig.isEnableDLegerCommitLog()) {
+            this.tieredStoreService = new TieredStoreService(this);
+        } else {
+            this.tieredStoreService = null;
+        }
+        if (messageStoreConfig.isColdReadAheadEnable()) {
+            this.coldReadPrefetcher = new ColdReadPrefetcher(this, brokerStatsManager);
+        } else {
+            this.coldReadPrefetcher = null;
+        }
         if (!messageStoreConfig.isEnableDLegerCommitLog()) {
             this.haService = new HAService(this);
         } else {
             this.haService = null;
         }
-        this.reputMessageService = new ReputMessageService();
+        if (messageStoreConfig.isEnableParallelDispatch()) {
+            this.reputMessageService = new ConcurrentReputMessageService();
+        } else {
+            this.reputMessageService = new ReputMessageService();
+        }
 
         this.scheduleMessageService = new ScheduleMessageService(this);
 
+        if (messageStoreConfig.isTimerWheelEnable()) {
+            this.timerMessageStore = new TimerMessageStore(this);
+        } else {
+            this.timerMessageStore = null;
+        }
+
         this.transientStorePool = new TransientStorePool(messageStoreConfig);
 
         if (messageStoreConfig.isTransientStorePoolEnable()) {
             this.transientStorePool.init();
         }
 
+        this.directIOBlockCache = new DirectIOBlockCache(messageStoreConfig.getDirectIOReadCacheBlockSize(),
+            messageStoreConfig.getDirectIOReadCacheBlockNum());
+
         this.allocateMappedFileService.start();
 
         this.indexService.start();
@@ -203,6 +241,10 @@ public class DefaultMessageStore implements MessageStore {
             // load Consume Queue
             result = result && this.loadConsumeQueue();
 
+            if (null != this.tieredStoreService) {
+                result = result && this.tieredStoreService.load();
+            }
+
             if (result) {
                 this.storeCheckpoint =
                     new StoreCheckpoint(StorePathConfigHelper.getStoreCheckpoint(this.messageStoreConfig.getStorePathRootDir()));
@@ -216,6 +258,10 @@ public class DefaultMessageStore implements MessageStore {
                 if (null != scheduleMessageService) {
                     result =  this.scheduleMessageService.load();
                 }
+
+                if (null != this.timerMessageStore) {
+                    result = result && this.timerMessageStore.load(lastExitOK);
+                }
             }
 
         } catch (Exception e) {
@@ -299,6 +345,9 @@ public class DefaultMessageStore implements MessageStore {
         this.flushConsumeQueueService.start();
         this.commitLog.start();
         this.storeStatsService.start();
+        if (this.tieredStoreService != null) {
+            this.tieredStoreService.start();
+        }
 
         this.createTempFile();
         this.addScheduleTask();
@@ -321,11 +370,17 @@ public class DefaultMessageStore implements MessageStore {
             if (this.scheduleMessageService != null) {
                 this.scheduleMessageService.shutdown();
             }
+            if (this.timerMessageStore != null) {
+                this.timerMessageStore.shutdown();
+            }
             if (this.haService != null) {
                 this.haService.shutdown();
             }
 
             this.storeStatsService.shutdown();
+            if (this.tieredStoreService != null) {
+                this.tieredStoreService.shutdown();
+            }
             this.indexService.shutdown();
             this.commitLog.shutdown();
             this.reputMessageService.shutdown();
@@ -357,6 +412,9 @@ public class DefaultMessageStore implements MessageStore {
         this.destroyLogics();
         this.commitLog.destroy();
         this.indexService.destroy();
+        if (this.timerMessageStore != null) {
+            this.timerMessageStore.destroy();
+        }
         this.deleteFile(StorePathConfigHelper.getAbortFile(this.messageStoreConfig.getStorePathRootDir()));
         this.deleteFile(StorePathConfigHelper.getStoreCheckpoint(this.messageStoreConfig.getStorePathRootDir()));
     }
@@ -596,8 +654,16 @@ public class DefaultMessageStore implements MessageStore {
                 status = GetMessageStatus.NO_MESSAGE_IN_QUEUE;
                 nextBeginOffset = nextOffsetCorrection(offset, 0);
             } else if (offset < minOffset) {
-                status = GetMessageStatus.OFFSET_TOO_SMALL;
-                nextBeginOffset = nextOffsetCorrection(offset, minOffset);
+                if (this.tieredStoreService != null) {
+                    getResult = this.tieredStoreService.getMessage(consumeQueue, offset, maxMsgNums, messageFilter);
+                }
+                if (getResult != null) {
+                    status = getResult.getStatus();
+                    nextBeginOffset = getResult.getNextBeginOffset();
+                } else {
+                    status = GetMessageStatus.OFFSET_TOO_SMALL;
+                    nextBeginOffset = nextOffsetCorrection(offset, minOffset);
+                }
             } else if (offset == maxOffset) {
                 status = GetMessageStatus.OFFSET_OVERFLOW_ONE;
                 nextBeginOffset = nextOffsetCorrection(offset, offset);
@@ -619,72 +685,156 @@ public class DefaultMessageStore implements MessageStore {
 
                         getResult = new GetMessageResult(maxMsgNums);
 
+                        // the range read ahead for a sequential cold reader is in page cache already
+                        final long readAheadEnd = this.coldReadPrefetcher != null
+                            ? this.coldReadPrefetcher.getReadAheadEnd(group, topic, queueId, offset) : -1;
+
                         ConsumeQueueExt.CqExtUnit cqExtUnit = new ConsumeQueueExt.CqExtUnit();
-                        for (; i < bufferConsumeQueue.getSize() && i < maxFilterMessageCount; i += ConsumeQueue.CQ_STORE_UNIT_SIZE) {
-                            long offsetPy = bufferConsumeQueue.getByteBuffer().getLong();
-                            int sizePy = bufferConsumeQueue.getByteBuffer().getInt();
-                            long tagsCode = bufferConsumeQueue.getByteBuffer().getLong();
+                        if (messageFilter == null || messageFilter.isTagsCodeFilter()) {
+                            // filter the units of the whole block by tags code first, then read the matched
+                            // messages lying next to each other in the commit log through one mapped buffer
+                            final ByteBuffer cqBuffer = bufferConsumeQueue.getByteBuffer();
+                            final int scanSize = Math.min(bufferConsumeQueue.getSize(), maxFilterMessageCount);
+                            final long[] matchedOffsetPy = new long[maxMsgNums];
+                            final int[] matchedSizePy = new int[maxMsgNums];
+                            int matchedNum = 0;
+                            int matchedTotalSize = 0;
+                            for (; i < scanSize; i += ConsumeQueue.CQ_STORE_UNIT_SIZE) {
+                                long offsetPy = cqBuffer.getLong(i);
+                                int sizePy = cqBuffer.getInt(i + 8);
+                                long tagsCode = cqBuffer.getLong(i + 12);
+
+                                maxPhyOffsetPulling = offsetPy;
+
+                                boolean isInDisk = offsetPy >= readAheadEnd && checkInDiskByCommitOffset(offsetPy, maxOffsetPy);
+                                if (matchedNum >= maxMsgNums
+                                    || this.isTheBatchFull(sizePy, maxMsgNums, matchedTotalSize, matchedNum, isInDisk)) {
+                                    break;
+                                }
 
-                            maxPhyOffsetPulling = offsetPy;
+                                if (messageFilter != null) {
+                                    boolean match;
+                                    if (consumeQueue.isExtAddr(tagsCode)) {
+                                        if (consumeQueue.getExt(tagsCode, cqExtUnit)) {
+                                            match = messageFilter.isMatchedByConsumeQueue(cqExtUnit.getTagsCode(), cqExtUnit);
+                                        } else {
+                                            // can't find ext content.Client will filter messages by tag also.
+                                            log.error("[BUG] can't find consume queue extend file content!addr={}, offsetPy={}, sizePy={}, topic={}, group={}",
+                                                tagsCode, offsetPy, sizePy, topic, group);
+                                            match = messageFilter.isMatchedByConsumeQueue(null, null);
+                                        }
+                                    } else {
+                                        match = messageFilter.isMatchedByTagsCode(tagsCode);
+                                    }
+                                    if (!match) {
+                                        continue;
+                                    }
+                                }
 
-                            if (nextPhyFileStartOffset != Long.MIN_VALUE) {
-                                if (offsetPy < nextPhyFileStartOffset)
-                                    continue;
+                                matchedOffsetPy[matchedNum] = offsetPy;
+                                matchedSizePy[matchedNum] = sizePy;
+                                matchedNum++;
+                                matchedTotalSize += sizePy;
                             }
 
-                            boolean isInDisk = checkInDiskByCommitOffset(offsetPy, maxOffsetPy);
+                            final int mappedFileSizeCommitLog = this.messageStoreConfig.getMappedFileSizeCommitLog();
+                            int from = 0;
+                            while (from < matchedNum) {
+                                int to = from + 1;
+                                long rangeEndPy = matchedOffsetPy[from] + matchedSizePy[from];
+                                while (to < matchedNum && matchedOffsetPy[to] == rangeEndPy
+                                    && matchedOffsetPy[to] / mappedFileSizeCommitLog == matchedOffsetPy[from] / mappedFileSizeCommitLog) {
+                                    rangeEndPy += matchedSizePy[to];
+                                    to++;
+                                }
 
-                            if (this.isTheBatchFull(sizePy, maxMsgNums, getResult.getBufferTotalSize(), getResult.getMessageCount(),
-                                isInDisk)) {
-                                break;
-                            }
+                                SelectMappedBufferResult selectResult =
+                                    this.commitLog.getMessage(matchedOffsetPy[from], (int) (rangeEndPy - matchedOffsetPy[from]));
+                                if (null == selectResult) {
+                                    if (getResult.getBufferTotalSize() == 0) {
+                                        status = GetMessageStatus.MESSAGE_WAS_REMOVING;
+                                    }
 
-                            boolean extRet = false, isTagsCodeLegal = true;
-                            if (consumeQueue.isExtAddr(tagsCode)) {
-                                extRet = consumeQueue.getExt(tagsCode, cqExtUnit);
-                                if (extRet) {
-                                    tagsCode = cqExtUnit.getTagsCode();
-                                } else {
-                                    // can't find ext content.Client will filter messages by tag also.
-                                    log.error("[BUG] can't find consume queue extend file content!addr={}, offsetPy={}, sizePy={}, topic={}, group={}",
-                                        tagsCode, offsetPy, sizePy, topic, group);
-                                    isTagsCodeLegal = false;
+                                    nextPhyFileStartOffset = this.commitLog.rollNextFile(matchedOffsetPy[from]);
+                                    while (to < matchedNum && matchedOffsetPy[to] < nextPhyFileStartOffset) {
+                                        to++;
+                                    }
+                                    from = to;
+                                    continue;
                                 }
+
+                                this.storeStatsService.getGetMessageTransferedMsgCount().add(to - from);
+                                getResult.addMessages(selectResult, matchedSizePy, from, to - from);
+                                status = GetMessageStatus.FOUND;
+                                from = to;
                             }
+                        } else {
+                            for (; i < bufferConsumeQueue.getSize() && i < maxFilterMessageCount; i += ConsumeQueue.CQ_STORE_UNIT_SIZE) {
+                                long offsetPy = bufferConsumeQueue.getByteBuffer().getLong();
+                                int sizePy = bufferConsumeQueue.getByteBuffer().getInt();
+                                long tagsCode = bufferConsumeQueue.getByteBuffer().getLong();
+
+                                maxPhyOffsetPulling = offsetPy;
 
-                            if (messageFilter != null
-                                && !messageFilter.isMatchedByConsumeQueue(isTagsCodeLegal ? tagsCode : null, extRet ? cqExtUnit : null)) {
-                                if (getResult.getBufferTotalSize() == 0) {
-                                    status = GetMessageStatus.NO_MATCHED_MESSAGE;
+                                if (nextPhyFileStartOffset != Long.MIN_VALUE) {
+                                    if (offsetPy < nextPhyFileStartOffset)
+                                        continue;
                                 }
 
-                                continue;
-                            }
+                                boolean isInDisk = offsetPy >= readAheadEnd && checkInDiskByCommitOffset(offsetPy, maxOffsetPy);
 
-                            SelectMappedBufferResult selectResult = this.commitLog.getMessage(offsetPy, sizePy);
-                            if (null == selectResult) {
-                                if (getResult.getBufferTotalSize() == 0) {
-                                    status = GetMessageStatus.MESSAGE_WAS_REMOVING;
+                                if (this.isTheBatchFull(sizePy, maxMsgNums, getResult.getBufferTotalSize(), getResult.getMessageCount(),
+                                    isInDisk)) {
+                                    break;
                                 }
 
-                                nextPhyFileStartOffset = this.commitLog.rollNextFile(offsetPy);
-                                continue;
-                            }
+                                boolean extRet = false, isTagsCodeLegal = true;
+                                if (consumeQueue.isExtAddr(tagsCode)) {
+                                    extRet = consumeQueue.getExt(tagsCode, cqExtUnit);
+                                    if (extRet) {
+                                        tagsCode = cqExtUnit.getTagsCode();
+                                    } else {
+                                        // can't find ext content.Client will filter messages by tag also.
+                                        log.error("[BUG] can't find consume queue extend file content!addr={}, offsetPy={}, sizePy={}, topic={}, group={}",
+                                            tagsCode, offsetPy, sizePy, topic, group);
+                                        isTagsCodeLegal = false;
+                                    }
+                                }
 
-                            if (messageFilter != null
-                                && !messageFilter.isMatchedByCommitLog(selectResult.getByteBuffer().slice(), null)) {
-                                if (getResult.getBufferTotalSize() == 0) {
-                                    status = GetMessageStatus.NO_MATCHED_MESSAGE;
+                                if (messageFilter != null
+                                    && !messageFilter.isMatchedByConsumeQueue(isTagsCodeLegal ? tagsCode : null, extRet ? cqExtUnit : null)) {
+                                    if (getResult.getBufferTotalSize() == 0) {
+                                        status = GetMessageStatus.NO_MATCHED_MESSAGE;
+                                    }
+
+                                    continue;
                                 }
-                                // release...
-                                selectResult.release();
-                                continue;
-                            }
 
-                            this.storeStatsService.getGetMessageTransferedMsgCount().add(1);
-                            getResult.addMessage(selectResult);
-                            status = GetMessageStatus.FOUND;
-                            nextPhyFileStartOffset = Long.MIN_VALUE;
+                                SelectMappedBufferResult selectResult = this.commitLog.getMessage(offsetPy, sizePy);
+                                if (null == selectResult) {
+                                    if (getResult.getBufferTotalSize() == 0) {
+                                        status = GetMessageStatus.MESSAGE_WAS_REMOVING;
+                                    }
+
+                                    nextPhyFileStartOffset = this.commitLog.rollNextFile(offsetPy);
+                                    continue;
+                                }
+
+                                if (messageFilter != null
+                                    && !messageFilter.isMatchedByCommitLog(selectResult.getByteBuffer().slice(), null)) {
+                                    if (getResult.getBufferTotalSize() == 0) {
+                                        status = GetMessageStatus.NO_MATCHED_MESSAGE;
+                                    }
+                                    // release...
+                                    selectResult.release();
+                                    continue;
+                                }
+
+                                this.storeStatsService.getGetMessageTransferedMsgCount().add(1);
+                                getResult.addMessage(selectResult);
+                                status = GetMessageStatus.FOUND;
+                                nextPhyFileStartOffset = Long.MIN_VALUE;
+                            }
                         }
 
                         if (diskFallRecorded) {
@@ -694,6 +844,11 @@ public class DefaultMessageStore implements MessageStore {
 
                         nextBeginOffset = offset + (i / ConsumeQueue.CQ_STORE_UNIT_SIZE);
 
+                        if (this.coldReadPrefetcher != null) {
+                            this.coldReadPrefetcher.onMessageGot(group, topic, queueId, offset, nextBeginOffset,
+                                checkInDiskByCommitOffset(maxPhyOffsetPulling, maxOffsetPy), getResult);
+                        }
+
                         long diff = maxOffsetPy - maxPhyOffsetPulling;
                         long memory = (long) (StoreUtil.TOTAL_PHYSICAL_MEMORY_SIZE
                             * (this.messageStoreConfig.getAccessMessageInMemoryMaxRatio() / 100.0));
@@ -862,6 +1017,12 @@ public class DefaultMessageStore implements MessageStore {
             }
         }
 
+        this.indexService.buildRunningStats(result);
+
+        if (this.timerMessageStore != null) {
+            this.timerMessageStore.buildRunningStats(result);
+        }
+
         result.put(RunningStats.commitLogMinOffset.name(), String.valueOf(DefaultMessageStore.this.getMinPhyOffset()));
         result.put(RunningStats.commitLogMaxOffset.name(), String.valueOf(DefaultMessageStore.this.getMaxPhyOffset()));
 
@@ -1058,6 +1219,7 @@ public class DefaultMessageStore implements MessageStore {
             String topic = next.getKey();
 
             if (!topics.contains(topic) && !topic.equals(TopicValidator.RMQ_SYS_SCHEDULE_TOPIC)
+                    && !topic.equals(TopicValidator.RMQ_SYS_WHEEL_TIMER)
                     && !topic.equals(TopicValidator.RMQ_SYS_TRANS_OP_HALF_TOPIC)
                     && !MixAll.isLmq(topic)) {
                 ConcurrentMap<Integer, ConsumeQueue> queueTable = next.getValue();
@@ -1345,6 +1507,15 @@ public class DefaultMessageStore implements MessageStore {
             }
         }, 1, 10, TimeUnit.MINUTES);
 
+        if (this.coldReadPrefetcher != null) {
+            this.scheduledExecutorService.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    DefaultMessageStore.this.coldReadPrefetcher.cleanExpiredCursor();
+                }
+            }, 1, 1, TimeUnit.MINUTES);
+        }
+
         this.scheduledExecutorService.scheduleAtFixedRate(new Runnable() {
             @Override
             public void run() {
@@ -1461,6 +1632,14 @@ public class DefaultMessageStore implements MessageStore {
         return transientStorePool;
     }
 
+    public TieredStoreService getTieredStoreService() {
+        return tieredStoreService;
+    }
+
+    public DirectIOBlockCache getDirectIOBlockCache() {
+        return directIOBlockCache;
+    }
+
     private void putConsumeQueue(final String topic, final int queueId, final ConsumeQueue consumeQueue) {
         ConcurrentMap<Integer/* queueId */, ConsumeQueue> map = this.consumeQueueTable.get(topic);
         if (null == map) {
@@ -1531,6 +1710,10 @@ public class DefaultMessageStore implements MessageStore {
         return scheduleMessageService;
     }
 
+    public TimerMessageStore getTimerMessageStore() {
+        return timerMessageStore;
+    }
+
     public RunningFlags getRunningFlags() {
         return runningFlags;
     }
@@ -1577,6 +1760,14 @@ public class DefaultMessageStore implements MessageStore {
             }
         }
 
+        if (this.timerMessageStore != null) {
+            if (brokerRole == BrokerRole.SLAVE) {
+                this.timerMessageStore.shutdown();
+            } else {
+                this.timerMessageStore.start();
+            }
+        }
+
     }
 
     @Override
@@ -1661,6 +1852,21 @@ public class DefaultMessageStore implements MessageStore {
         }
     }
 
+    class CommitLogDispatcherBuildIndexShard implements CommitLogDispatcher {
+        private final int shard;
+
+        CommitLogDispatcherBuildIndexShard(int shard) {
+            this.shard = shard;
+        }
+
+        @Override
+        public void dispatch(DispatchRequest request) {
+            if (DefaultMessageStore.this.messageStoreConfig.isMessageIndexEnable()) {
+                DefaultMessageStore.this.indexService.buildIndex(request, this.shard);
+            }
+        }
+    }
+
     class CleanCommitLogService {
 
         private final static int MAX_MANUAL_DELETE_FILE_TIMES = 20;
@@ -1716,8 +1922,15 @@ public class DefaultMessageStore implements MessageStore {
 
                 fileReservedTime *= 60 * 60 * 1000;
 
-                deleteCount = DefaultMessageStore.this.commitLog.deleteExpiredFile(fileReservedTime, deletePhysicFilesInterval,
-                    destroyMapedFileIntervalForcibly, cleanAtOnce);
+                if (DefaultMessageStore.this.tieredStoreService != null && !cleanAtOnce) {
+                    // keep the files not offloaded yet, unless the disk is about to be full
+                    deleteCount = DefaultMessageStore.this.commitLog.deleteExpiredFile(fileReservedTime, deletePhysicFilesInterval,
+                        destroyMapedFileIntervalForcibly, false,
+                        DefaultMessageStore.this.tieredStoreService.getOffloadedCommitLogOffset());
+                } else {
+                    deleteCount = DefaultMessageStore.this.commitLog.deleteExpiredFile(fileReservedTime, deletePhysicFilesInterval,
+                        destroyMapedFileIntervalForcibly, cleanAtOnce);
+                }
                 if (deleteCount > 0) {
                 } else if (spacefull) {
                     log.warn("disk space will be full soon, but delete file failed.");
@@ -1899,6 +2112,10 @@ public class DefaultMessageStore implements MessageStore {
 
                 for (ConcurrentMap<Integer, ConsumeQueue> maps : tables.values()) {
                     for (ConsumeQueue logic : maps.values()) {
+                        if (DefaultMessageStore.this.tieredStoreService != null
+                            && !DefaultMessageStore.this.tieredStoreService.offloadConsumeQueue(logic)) {
+                            continue;
+                        }
                         int deleteCount = logic.deleteExpiredFile(minOffset);
 
                         if (deleteCount > 0 && deleteLogicsFilesInterval > 0) {
@@ -1990,7 +2207,7 @@ public class DefaultMessageStore implements MessageStore {
 
     class ReputMessageService extends ServiceThread {
 
-        private volatile long reputFromOffset = 0;
+        protected volatile long reputFromOffset = 0;
 
         public long getReputFromOffset() {
             return reputFromOffset;
@@ -2025,7 +2242,7 @@ public class DefaultMessageStore implements MessageStore {
             return this.reputFromOffset < DefaultMessageStore.this.commitLog.getMaxOffset();
         }
 
-        private void doReput() {
+        protected void doReput() {
             if (this.reputFromOffset < DefaultMessageStore.this.commitLog.getMinOffset()) {
                 log.warn("The reputFromOffset={} is smaller than minPyOffset={}, this usually indicate that the dispatch behind too much and the commitlog has expired.",
                     this.reputFromOffset, DefaultMessageStore.this.commitLog.getMinOffset());
@@ -2051,16 +2268,9 @@ public class DefaultMessageStore implements MessageStore {
                             if (dispatchRequest.isSuccess()) {
                                 if (size > 0) {
                                     DefaultMessageStore.this.doDispatch(dispatchRequest);
-
-                                    if (BrokerRole.SLAVE != DefaultMessageStore.this.getMessageStoreConfig().getBrokerRole()
-                                            && DefaultMessageStore.this.brokerConfig.isLongPollingEnable()
-                                            && DefaultMessageStore.this.messageArrivingListener != null) {
-                                        DefaultMessageStore.this.messageArrivingListener.arriving(dispatchRequest.getTopic(),
-                                            dispatchRequest.getQueueId(), dispatchRequest.getConsumeQueueOffset() + 1,
-                                            dispatchRequest.getTagsCode(), dispatchRequest.getStoreTimestamp(),
-                                            dispatchRequest.getBitMap(), dispatchRequest.getPropertiesMap());
-                                        notifyMessageArrive4MultiQueue(dispatchRequest);
-                                    }
+                                    DefaultMessageStore.this.storeStatsService.incDispatchLagTime(
+                                        System.currentTimeMillis() - dispatchRequest.getStoreTimestamp());
+                                    this.notifyMessageArriving(dispatchRequest);
 
                                     this.reputFromOffset += size;
                                     readSize += size;
@@ -2102,6 +2312,18 @@ public class DefaultMessageStore implements MessageStore {
             }
         }
 
+        protected void notifyMessageArriving(DispatchRequest dispatchRequest) {
+            if (BrokerRole.SLAVE != DefaultMessageStore.this.getMessageStoreConfig().getBrokerRole()
+                && DefaultMessageStore.this.brokerConfig.isLongPollingEnable()
+                && DefaultMessageStore.this.messageArrivingListener != null) {
+                DefaultMessageStore.this.messageArrivingListener.arriving(dispatchRequest.getTopic(),
+                    dispatchRequest.getQueueId(), dispatchRequest.getConsumeQueueOffset() + 1,
+                    dispatchRequest.getTagsCode(), dispatchRequest.getStoreTimestamp(),
+                    dispatchRequest.getBitMap(), dispatchRequest.getPropertiesMap());
+                notifyMessageArrive4MultiQueue(dispatchRequest);
+            }
+        }
+
         private void notifyMessageArrive4MultiQueue(DispatchRequest dispatchRequest) {
             Map<String, String> prop = dispatchRequest.getPropertiesMap();
             if (prop == null) {
@@ -2152,4 +2374,458 @@ public class DefaultMessageStore implements MessageStore {
         }
 
     }
+
+    /**
+     * Staged variant of {@link ReputMessageService}. The service thread only slices the commit log, the slices are
+     * decoded by a thread pool and the decoded requests are handed over to dispatch lanes: consume queues are built
+     * by lanes sharded by topic-queue, so every queue is still written in commit log order, and each dispatcher
+     * registered after the consume queue dispatcher gets a lane of its own. Dispatchers registered before it, like the
+     * filter bit map calculation, decorate the request and therefore run right after decoding.
+     *
+     * The reput offset only moves past an entry once all lanes have dispatched it, so {@link #behind()} keeps telling
+     * how much of the commit log is not visible to consumers yet.
+     */
+    class ConcurrentReputMessageService extends ReputMessageService {
+        private static final int MAX_INFLIGHT_BATCH_NUM = 64;
+        private static final int MIN_PARALLEL_DECODE_NUM = 16;
+
+        private static final int READ_CONTINUE = 0;
+        private static final int READ_NEXT_FILE = 1;
+        private static final int READ_STOP = 2;
+
+        private final ConcurrentLinkedQueue<DispatchBatch> inflightBatches = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger inflightBatchNum = new AtomicInteger(0);
+
+        /**
+         * Where the reader continues, ahead of the reput offset by the entries still in the lanes.
+         */
+        private volatile long readOffset = 0;
+        private long flushedOffset = -1;
+
+        private CommitLogDispatcher[] preDispatchers;
+        private CommitLogDispatcher consumeQueueDispatcher;
+        private CommitLogDispatcher[] postDispatchers;
+
+        private ExecutorService decodeExecutor;
+        private ExecutorService[] consumeQueueLanes;
+        private ExecutorService[] dispatcherLanes;
+
+        private List<List<DispatchRequest>> consumeQueueRequests;
+        private List<List<DispatchRequest>> dispatcherRequests;
+
+        @Override
+        public void setReputFromOffset(long reputFromOffset) {
+            super.setReputFromOffset(reputFromOffset);
+            this.readOffset = reputFromOffset;
+        }
+
+        @Override
+        public void start() {
+            List<CommitLogDispatcher> dispatchers = new ArrayList<>(DefaultMessageStore.this.dispatcherList);
+            int consumeQueueIndex = -1;
+            for (int i = 0; i < dispatchers.size(); i++) {
+                if (dispatchers.get(i) instanceof CommitLogDispatcherBuildConsumeQueue) {
+                    consumeQueueIndex = i;
+                    break;
+                }
+            }
+            if (consumeQueueIndex >= 0) {
+                this.preDispatchers = dispatchers.subList(0, consumeQueueIndex).toArray(new CommitLogDispatcher[0]);
+                this.consumeQueueDispatcher = dispatchers.get(consumeQueueIndex);
+                this.postDispatchers = dispatchers.subList(consumeQueueIndex + 1, dispatchers.size()).toArray(new CommitLogDispatcher[0]);
+            } else {
+                this.preDispatchers = new CommitLogDispatcher[0];
+                this.postDispatchers = dispatchers.toArray(new CommitLogDispatcher[0]);
+            }
+            this.postDispatchers = this.splitIndexDispatcher(this.postDispatchers);
+
+            MessageStoreConfig config = DefaultMessageStore.this.messageStoreConfig;
+            this.decodeExecutor = Executors.newFixedThreadPool(Math.max(1, config.getDispatchDecodeThreadNum()),
+                new ThreadFactoryImpl("DispatchDecodeThread_"));
+
+            int laneNum = this.consumeQueueDispatcher == null ? 0 : Math.max(1, config.getDispatchConsumeQueueLaneNum());
+            this.consumeQueueLanes = new ExecutorService[laneNum];
+            this.consumeQueueRequests = new ArrayList<>(laneNum);
+            for (int i = 0; i < laneNum; i++) {
+                this.consumeQueueLanes[i] = Executors.newSingleThreadExecutor(new ThreadFactoryImpl("DispatchConsumeQueueLane_" + i + "_"));
+                this.consumeQueueRequests.add(new ArrayList<>());
+            }
+
+            this.dispatcherLanes = new ExecutorService[this.postDispatchers.length];
+            this.dispatcherRequests = new ArrayList<>(this.postDispatchers.length);
+            for (int i = 0; i < this.postDispatchers.length; i++) {
+                this.dispatcherLanes[i] = Executors.newSingleThreadExecutor(
+                    new ThreadFactoryImpl("DispatchLane_" + this.postDispatchers[i].getClass().getSimpleName() + "_"));
+                this.dispatcherRequests.add(new ArrayList<>());
+            }
+
+            super.start();
+        }
+
+        /**
+         * Give every shard of the index its own lane, the shards are written to different index files.
+         */
+        private CommitLogDispatcher[] splitIndexDispatcher(CommitLogDispatcher[] dispatchers) {
+            int shardNum = DefaultMessageStore.this.indexService.getShardNum();
+            if (shardNum == 1) {
+                return dispatchers;
+            }
+            List<CommitLogDispatcher> result = new ArrayList<>(dispatchers.length + shardNum);
+            for (CommitLogDispatcher dispatcher : dispatchers) {
+                if (dispatcher instanceof CommitLogDispatcherBuildIndex) {
+                    for (int shard = 0; shard < shardNum; shard++) {
+                        result.add(new CommitLogDispatcherBuildIndexShard(shard));
+                    }
+                } else {
+                    result.add(dispatcher);
+                }
+            }
+            return result.toArray(new CommitLogDispatcher[0]);
+        }
+
+        @Override
+        public void shutdown() {
+            super.shutdown();
+
+            List<ExecutorService> executors = new ArrayList<>();
+            executors.add(this.decodeExecutor);
+            Collections.addAll(executors, this.consumeQueueLanes);
+            Collections.addAll(executors, this.dispatcherLanes);
+            for (ExecutorService executor : executors) {
+                executor.shutdown();
+            }
+            try {
+                for (ExecutorService executor : executors) {
+                    executor.awaitTermination(5000, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                log.warn("Interrupted while waiting for the dispatch lanes to finish", e);
+            }
+        }
+
+        @Override
+        protected void doReput() {
+            if (this.readOffset < DefaultMessageStore.this.commitLog.getMinOffset()) {
+                log.warn("The reputFromOffset={} is smaller than minPyOffset={}, this usually indicate that the dispatch behind too much and the commitlog has expired.",
+                    this.readOffset, DefaultMessageStore.this.commitLog.getMinOffset());
+                this.readOffset = DefaultMessageStore.this.commitLog.getMinOffset();
+                this.flushBatch();
+            }
+            for (boolean doNext = true; this.readOffset < DefaultMessageStore.this.commitLog.getMaxOffset() && doNext; ) {
+
+                if (DefaultMessageStore.this.getMessageStoreConfig().isDuplicationEnable()
+                    && this.readOffset >= DefaultMessageStore.this.getConfirmOffset()) {
+                    break;
+                }
+
+                SelectMappedBufferResult result = DefaultMessageStore.this.commitLog.getData(this.readOffset);
+                if (result == null) {
+                    break;
+                }
+                try {
+                    this.readOffset = result.getStartOffset();
+                    final long endOffset = result.getStartOffset() + result.getSize();
+                    ByteBuffer byteBuffer = result.getByteBuffer();
+
+                    for (int readSize = 0; readSize < result.getSize() && doNext; ) {
+                        this.awaitInflightBatches();
+
+                        int state;
+                        List<ByteBuffer> slices = this.sliceMessages(byteBuffer, readSize, result.getSize());
+                        if (slices.isEmpty()) {
+                            byteBuffer.position(readSize);
+                            DispatchRequest dispatchRequest =
+                                DefaultMessageStore.this.commitLog.checkMessageAndReturnSize(byteBuffer, false, false);
+                            this.preDispatch(dispatchRequest);
+                            state = this.accept(dispatchRequest, endOffset);
+                        } else {
+                            state = this.decodeAndAccept(slices, endOffset);
+                        }
+                        this.flushBatch();
+
+                        if (state == READ_NEXT_FILE) {
+                            break;
+                        } else if (state == READ_STOP) {
+                            doNext = false;
+                        }
+                        readSize = (int) (this.readOffset - result.getStartOffset());
+                    }
+                } finally {
+                    result.release();
+                }
+            }
+        }
+
+        /**
+         * Cut the regular messages starting at {@code from} into slices that can be decoded independently. Anything
+         * else, the blank tail of a file or a broken entry, is left to the sequential path.
+         */
+        private List<ByteBuffer> sliceMessages(ByteBuffer byteBuffer, int from, int limit) {
+            if (DefaultMessageStore.this.messageStoreConfig.isEnableDLegerCommitLog()) {
+                return Collections.emptyList();
+            }
+            int maxNum = DefaultMessageStore.this.messageStoreConfig.getDispatchBatchMaxNum();
+            List<ByteBuffer> slices = new ArrayList<>();
+            int position = from;
+            while (slices.size() < maxNum && position + 8 <= limit) {
+                int totalSize = byteBuffer.getInt(position);
+                int magicCode = byteBuffer.getInt(position + MessageDecoder.MESSAGE_MAGIC_CODE_POSTION);
+                if (magicCode != CommitLog.MESSAGE_MAGIC_CODE || totalSize <= 0 || position + totalSize > limit) {
+                    break;
+                }
+                ByteBuffer slice = byteBuffer.duplicate();
+                slice.limit(position + totalSize);
+                slice.position(position);
+                slices.add(slice.slice());
+                position += totalSize;
+            }
+            return slices;
+        }
+
+        private int decodeAndAccept(final List<ByteBuffer> slices, long endOffset) {
+            final DispatchRequest[] requests = new DispatchRequest[slices.size()];
+            // the slices are back to back from the read offset
+            final long[] offsets = new long[slices.size()];
+            long offset = this.readOffset;
+            for (int i = 0; i < slices.size(); i++) {
+                offsets[i] = offset;
+                offset += slices.get(i).remaining();
+            }
+            int threadNum = DefaultMessageStore.this.messageStoreConfig.getDispatchDecodeThreadNum();
+            if (slices.size() < MIN_PARALLEL_DECODE_NUM || threadNum <= 1) {
+                this.decode(slices, offsets, requests, 0, slices.size());
+            } else {
+                int chunkSize = (slices.size() + threadNum - 1) / threadNum;
+                List<Future<?>> futures = new ArrayList<>(threadNum);
+                for (int from = chunkSize; from < slices.size(); from += chunkSize) {
+                    final int start = from;
+                    final int end = Math.min(from + chunkSize, slices.size());
+                    futures.add(this.decodeExecutor.submit(() -> this.decode(slices, offsets, requests, start, end)));
+                }
+                this.decode(slices, offsets, requests, 0, chunkSize);
+                for (Future<?> future : futures) {
+                    try {
+                        future.get();
+                    } catch (InterruptedException | ExecutionException e) {
+                        log.warn("Decode commit log entries failed, reputFromOffset={}", this.readOffset, e);
+                    }
+                }
+            }
+
+            for (DispatchRequest dispatchRequest : requests) {
+                if (dispatchRequest == null) {
+                    return READ_STOP;
+                }
+                int state = this.accept(dispatchRequest, endOffset);
+                if (state != READ_CONTINUE) {
+                    return state;
+                }
+            }
+            return READ_CONTINUE;
+        }
+
+        /**
+         * Decode the slices into the requests, the one failed and the ones after it are left null, so the reading stops
+         * before it and retries from there.
+         */
+        private void decode(List<ByteBuffer> slices, long[] offsets, DispatchRequest[] requests, int from, int to) {
+            for (int i = from; i < to; i++) {
+                try {
+                    DispatchRequest dispatchRequest =
+                        DefaultMessageStore.this.commitLog.checkMessageAndReturnSize(slices.get(i), false, false);
+                    this.preDispatch(dispatchRequest);
+                    requests[i] = dispatchRequest;
+                } catch (Throwable e) {
+                    log.error("Decode commit log entry failed, COMMITLOG OFFSET: {}", offsets[i], e);
+                    return;
+                }
+            }
+        }
+
+        private void preDispatch(DispatchRequest dispatchRequest) {
+            if (dispatchRequest.isSuccess() && dispatchRequest.getMsgSize() > 0) {
+                for (CommitLogDispatcher dispatcher : this.preDispatchers) {
+                    dispatcher.dispatch(dispatchRequest);
+                }
+            }
+        }
+
+        /**
+         * Same bookkeeping as {@link ReputMessageService#doReput()}, except that the request is queued for the lanes
+         * instead of being dispatched in place.
+         */
+        private int accept(DispatchRequest dispatchRequest, long endOffset) {
+            int size = dispatchRequest.getBufferSize() == -1 ? dispatchRequest.getMsgSize() : dispatchRequest.getBufferSize();
+            if (dispatchRequest.isSuccess()) {
+                if (size > 0) {
+                    this.addToBatch(dispatchRequest);
+                    this.readOffset += size;
+                    if (DefaultMessageStore.this.getMessageStoreConfig().getBrokerRole() == BrokerRole.SLAVE) {
+                        DefaultMessageStore.this.storeStatsService
+                            .getSinglePutMessageTopicTimesTotal(dispatchRequest.getTopic()).add(1);
+                        DefaultMessageStore.this.storeStatsService
+                            .getSinglePutMessageTopicSizeTotal(dispatchRequest.getTopic())
+                            .add(dispatchRequest.getMsgSize());
+                    }
+                    return READ_CONTINUE;
+                } else if (size == 0) {
+                    this.readOffset = DefaultMessageStore.this.commitLog.rollNextFile(this.readOffset);
+                    return READ_NEXT_FILE;
+                }
+                return READ_STOP;
+            }
+
+            if (size > 0) {
+                log.error("[BUG]read total count not equals msg total size. reputFromOffset={}", this.readOffset);
+                this.readOffset += size;
+                return READ_CONTINUE;
+            }
+            // If user open the dledger pattern or the broker is master node,
+            // it will not ignore the exception and fix the reputFromOffset variable
+            if (DefaultMessageStore.this.getMessageStoreConfig().isEnableDLegerCommitLog() ||
+                DefaultMessageStore.this.brokerConfig.getBrokerId() == MixAll.MASTER_ID) {
+                log.error("[BUG]dispatch message to consume queue error, COMMITLOG OFFSET: {}", this.readOffset);
+                this.readOffset = endOffset;
+            }
+            return READ_STOP;
+        }
+
+        private void addToBatch(DispatchRequest dispatchRequest) {
+            if (this.consumeQueueDispatcher != null) {
+                if (DefaultMessageStore.this.checkMultiDispatchQueue(dispatchRequest)) {
+                    // the light message queues are shared by all lanes, so let everything before settle first
+                    this.flushBatch();
+                    this.awaitDispatched();
+                    this.dispatchToConsumeQueue(dispatchRequest);
+                } else {
+                    int hash = 31 * dispatchRequest.getTopic().hashCode() + dispatchRequest.getQueueId();
+                    this.consumeQueueRequests.get(Math.abs(hash % this.consumeQueueLanes.length)).add(dispatchRequest);
+                }
+            }
+            for (List<DispatchRequest> requests : this.dispatcherRequests) {
+                requests.add(dispatchRequest);
+            }
+        }
+
+        private void dispatchToConsumeQueue(DispatchRequest dispatchRequest) {
+            this.consumeQueueDispatcher.dispatch(dispatchRequest);
+            DefaultMessageStore.this.storeStatsService.incDispatchLagTime(
+                System.currentTimeMillis() - dispatchRequest.getStoreTimestamp());
+            this.notifyMessageArriving(dispatchRequest);
+        }
+
+        /**
+         * Hand the requests collected so far over to the lanes as one batch ending at the current read offset.
+         */
+        private void flushBatch() {
+            if (this.readOffset == this.flushedOffset) {
+                return;
+            }
+            this.flushedOffset = this.readOffset;
+
+            final DispatchBatch batch = new DispatchBatch(this.readOffset);
+            for (List<DispatchRequest> requests : this.consumeQueueRequests) {
+                if (!requests.isEmpty()) {
+                    batch.remaining.incrementAndGet();
+                }
+            }
+            for (List<DispatchRequest> requests : this.dispatcherRequests) {
+                if (!requests.isEmpty()) {
+                    batch.remaining.incrementAndGet();
+                }
+            }
+            this.inflightBatchNum.incrementAndGet();
+            this.inflightBatches.add(batch);
+
+            for (int i = 0; i < this.consumeQueueLanes.length; i++) {
+                final List<DispatchRequest> requests = this.consumeQueueRequests.get(i);
+                if (!requests.isEmpty()) {
+                    this.consumeQueueRequests.set(i, new ArrayList<>());
+                    this.consumeQueueLanes[i].execute(() -> {
+                        try {
+                            for (DispatchRequest dispatchRequest : requests) {
+                                this.dispatchToConsumeQueue(dispatchRequest);
+                            }
+                        } catch (Throwable e) {
+                            log.error("Build consume queue failed, batch end offset={}", batch.endOffset, e);
+                        } finally {
+                            this.complete(batch);
+                        }
+                    });
+                }
+            }
+            for (int i = 0; i < this.dispatcherLanes.length; i++) {
+                final List<DispatchRequest> requests = this.dispatcherRequests.get(i);
+                if (!requests.isEmpty()) {
+                    final CommitLogDispatcher dispatcher = this.postDispatchers[i];
+                    this.dispatcherRequests.set(i, new ArrayList<>());
+                    this.dispatcherLanes[i].execute(() -> {
+                        try {
+                            for (DispatchRequest dispatchRequest : requests) {
+                                dispatcher.dispatch(dispatchRequest);
+                            }
+                        } catch (Throwable e) {
+                            log.error("Dispatch by {} failed, batch end offset={}", dispatcher.getClass().getSimpleName(), batch.endOffset, e);
+                        } finally {
+                            this.complete(batch);
+                        }
+                    });
+                }
+            }
+
+            if (batch.remaining.get() == 0) {
+                this.advanceReputFromOffset();
+            }
+        }
+
+        private void complete(DispatchBatch batch) {
+            if (batch.remaining.decrementAndGet() == 0) {
+                this.advanceReputFromOffset();
+            }
+        }
+
+        private void advanceReputFromOffset() {
+            synchronized (this.inflightBatches) {
+                for (DispatchBatch batch = this.inflightBatches.peek(); batch != null && batch.remaining.get() == 0;
+                     batch = this.inflightBatches.peek()) {
+                    this.inflightBatches.poll();
+                    this.inflightBatchNum.decrementAndGet();
+                    this.reputFromOffset = batch.endOffset;
+                }
+            }
+        }
+
+        private void awaitInflightBatches() {
+            while (this.inflightBatchNum.get() >= MAX_INFLIGHT_BATCH_NUM && !this.isStopped()) {
+                this.sleepOneMillisecond();
+            }
+        }
+
+        private void awaitDispatched() {
+            while (this.inflightBatchNum.get() > 0 && !this.isStopped()) {
+                this.sleepOneMillisecond();
+            }
+        }
+
+        private void sleepOneMillisecond() {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException ignored) {
+            }
+        }
+
+        @Override
+        public String getServiceName() {
+            return ConcurrentReputMessageService.class.getSimpleName();
+        }
+
+        class DispatchBatch {
+            private final long endOffset;
+            private final AtomicInteger remaining = new AtomicInteger(0);
+
+            DispatchBatch(long endOffset) {
+                this.endOffset = endOffset;
+            }
+        }
+    }
 }
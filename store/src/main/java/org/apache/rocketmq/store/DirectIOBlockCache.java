@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU cache of fixed size blocks read back from the commit log files written by {@link DirectIOMappedFile}, which do
+ * not go through the page cache. Blocks are keyed by their physical offset in the commit log and only hold data that
+ * has been committed, so they never change unless the files are truncated or deleted, see {@link #invalidate}.
+ */
+public class DirectIOBlockCache {
+    private final int blockSize;
+    private final int maxBlockNum;
+    private final LinkedHashMap<Long, ByteBuffer> blockTable;
+    private final AtomicLong hitTimes = new AtomicLong(0);
+    private final AtomicLong missTimes = new AtomicLong(0);
+
+    public DirectIOBlockCache(final int blockSize, final int maxBlockNum) {
+        this.blockSize = blockSize;
+        this.maxBlockNum = maxBlockNum;
+        this.blockTable = new LinkedHashMap<Long, ByteBuffer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, ByteBuffer> eldest) {
+                return size() > DirectIOBlockCache.this.maxBlockNum;
+            }
+        };
+    }
+
+    /**
+     * @return the block starting at the physical offset, or null if it is not cached
+     */
+    public ByteBuffer getBlock(final long offset) {
+        ByteBuffer block;
+        synchronized (this.blockTable) {
+            block = this.blockTable.get(offset);
+        }
+        if (block != null) {
+            this.hitTimes.incrementAndGet();
+            return block.duplicate();
+        }
+        this.missTimes.incrementAndGet();
+        return null;
+    }
+
+    public void putBlock(final long offset, final ByteBuffer block) {
+        synchronized (this.blockTable) {
+            this.blockTable.put(offset, block);
+        }
+    }
+
+    /**
+     * Drop the blocks overlapping the physical range [from, to), whose content is about to change.
+     */
+    public void invalidate(final long from, final long to) {
+        synchronized (this.blockTable) {
+            Iterator<Long> it = this.blockTable.keySet().iterator();
+            while (it.hasNext()) {
+                long offset = it.next();
+                if (offset + this.blockSize > from && offset < to) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public int getBlockNum() {
+        synchronized (this.blockTable) {
+            return this.blockTable.size();
+        }
+    }
+
+    public long getHitTimes() {
+        return hitTimes.get();
+    }
+
+    public long getMissTimes() {
+        return missTimes.get();
+    }
+}
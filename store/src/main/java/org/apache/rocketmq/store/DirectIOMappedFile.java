@@ -0,0 +1,273 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store;
+
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.apache.rocketmq.store.config.FlushDiskType;
+import org.apache.rocketmq.store.util.LibC;
+import sun.nio.ch.DirectBuffer;
+
+/**
+ * Commit log file written with O_DIRECT. Messages are appended to the aligned write buffer borrowed from the
+ * {@link TransientStorePool} and committed as whole aligned blocks, the last partial block zero padded and written
+ * again on the next commit, so writing never faults in or dirties pages of the mapping.
+ * <p>
+ * Reads of a given size are served by positional reads through the shared {@link DirectIOBlockCache}. Sequential
+ * scans of the rest of the file, as done by recovery, reput and HA, still go through the mapping, which is only read.
+ * <p>
+ * If the file can not be opened with O_DIRECT, e.g. on tmpfs, it behaves as a plain {@link MappedFile} backed by the
+ * transient store pool.
+ */
+public class DirectIOMappedFile extends MappedFile {
+    public static final int DIRECT_IO_ALIGNMENT = OS_PAGE_SIZE;
+
+    private final DirectIOBlockCache blockCache;
+    private int fd = -1;
+    private ByteBuffer tailBuffer;
+    private volatile boolean directWritten = false;
+
+    public DirectIOMappedFile(final String fileName, final int fileSize, final TransientStorePool transientStorePool,
+        final DirectIOBlockCache blockCache) throws IOException {
+        this.blockCache = blockCache;
+        init(fileName, fileSize, transientStorePool);
+    }
+
+    /**
+     * Allocate a direct buffer whose address is aligned, as required by O_DIRECT.
+     */
+    public static ByteBuffer allocateAlignedBuffer(final int capacity, final int alignment) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(capacity + alignment);
+        long address = ((DirectBuffer) buffer).address();
+        int offset = (int) ((alignment - address % alignment) % alignment);
+        buffer.position(offset);
+        buffer.limit(offset + capacity);
+        return buffer.slice();
+    }
+
+    @Override
+    public void init(final String fileName, final int fileSize,
+        final TransientStorePool transientStorePool) throws IOException {
+        super.init(fileName, fileSize, transientStorePool);
+        if (this.writeBuffer == null || ((DirectBuffer) this.writeBuffer).address() % DIRECT_IO_ALIGNMENT != 0) {
+            log.warn("no aligned write buffer for {}, fall back to the mapped file", fileName);
+            return;
+        }
+
+        this.fd = LibC.INSTANCE.open(fileName, LibC.O_RDWR | LibC.O_DIRECT);
+        if (this.fd < 0) {
+            log.error("open {} with O_DIRECT failed, errno = {}, fall back to the mapped file", fileName,
+                Native.getLastError());
+            return;
+        }
+        this.tailBuffer = allocateAlignedBuffer(DIRECT_IO_ALIGNMENT, DIRECT_IO_ALIGNMENT);
+    }
+
+    public boolean isDirectIO() {
+        return this.fd >= 0;
+    }
+
+    @Override
+    protected void commit0() {
+        if (!this.isDirectIO()) {
+            super.commit0();
+            return;
+        }
+
+        int writePos = this.wrotePosition.get();
+        int lastCommittedPosition = this.committedPosition.get();
+
+        if (writePos - lastCommittedPosition > 0) {
+            try {
+                int from = lastCommittedPosition - lastCommittedPosition % DIRECT_IO_ALIGNMENT;
+                int tail = writePos - writePos % DIRECT_IO_ALIGNMENT;
+                if (tail > from) {
+                    this.pwrite(((DirectBuffer) this.writeBuffer).address() + from, from, tail - from);
+                }
+                if (writePos > tail) {
+                    // the buffer beyond the write position holds stale data of the file the pool buffer was used for
+                    // before, so only the written part of the tail block goes to disk
+                    ByteBuffer byteBuffer = this.writeBuffer.slice();
+                    byteBuffer.position(tail);
+                    byteBuffer.limit(writePos);
+                    this.tailBuffer.clear();
+                    this.tailBuffer.put(byteBuffer);
+                    while (this.tailBuffer.hasRemaining()) {
+                        this.tailBuffer.put((byte) 0);
+                    }
+                    this.pwrite(((DirectBuffer) this.tailBuffer).address(), tail, DIRECT_IO_ALIGNMENT);
+                }
+                this.directWritten = true;
+                this.committedPosition.set(writePos);
+            } catch (Throwable e) {
+                log.error("Error occurred when commit data with direct io.", e);
+            }
+        }
+    }
+
+    private void pwrite(final long address, final int position, final int length) throws IOException {
+        int written = 0;
+        while (written < length) {
+            long ret = LibC.INSTANCE.pwrite(this.fd, new Pointer(address + written),
+                new NativeLong(length - written), position + written).longValue();
+            if (ret < 0) {
+                throw new IOException("pwrite " + this.getFileName() + " at " + (position + written)
+                    + " failed, errno = " + Native.getLastError());
+            }
+            written += ret;
+        }
+    }
+
+    @Override
+    protected void force() throws IOException {
+        if (this.directWritten) {
+            // O_DIRECT only skips the page cache, the device may still hold the data in its volatile cache
+            this.fileChannel.force(false);
+        } else {
+            super.force();
+        }
+    }
+
+    @Override
+    public SelectMappedBufferResult selectMappedBuffer(int pos, int size) {
+        if (!this.isDirectIO()) {
+            return super.selectMappedBuffer(pos, size);
+        }
+
+        int readPosition = getReadPosition();
+        if ((pos + size) <= readPosition) {
+            if (this.hold()) {
+                try {
+                    ByteBuffer byteBuffer = this.read(pos, size, readPosition);
+                    return new SelectMappedBufferResult(this.getFileFromOffset() + pos, byteBuffer, size, this);
+                } catch (Throwable e) {
+                    log.error("read " + size + " bytes at " + pos + " of " + this.getFileName() + " failed", e);
+                    this.release();
+                }
+            } else {
+                log.warn("matched, but hold failed, request pos: " + pos + ", fileFromOffset: "
+                    + this.getFileFromOffset());
+            }
+        } else {
+            log.warn("selectMappedBuffer request pos invalid, request pos: " + pos + ", size: " + size
+                + ", fileFromOffset: " + this.getFileFromOffset());
+        }
+
+        return null;
+    }
+
+    private ByteBuffer read(final int pos, final int size, final int readPosition) throws IOException {
+        final int blockSize = this.blockCache.getBlockSize();
+        int blockPos = pos - pos % blockSize;
+        if (pos + size <= blockPos + blockSize) {
+            ByteBuffer block = this.loadBlock(blockPos, readPosition);
+            if (block != null) {
+                block.position(pos - blockPos);
+                block.limit(pos - blockPos + size);
+                return block.slice();
+            }
+        }
+
+        ByteBuffer byteBuffer = ByteBuffer.allocate(size);
+        while (byteBuffer.hasRemaining()) {
+            int current = pos + byteBuffer.position();
+            blockPos = current - current % blockSize;
+            ByteBuffer block = this.loadBlock(blockPos, readPosition);
+            if (block == null) {
+                // the rest lies in the block still being written
+                this.readFully(byteBuffer, current);
+                break;
+            }
+            block.position(current - blockPos);
+            block.limit(Math.min(blockSize, block.position() + byteBuffer.remaining()));
+            byteBuffer.put(block);
+        }
+        byteBuffer.flip();
+        return byteBuffer;
+    }
+
+    /**
+     * @return the block at the position, or null if it is not completely committed yet, which is never cached
+     */
+    private ByteBuffer loadBlock(final int blockPos, final int readPosition) throws IOException {
+        final int blockSize = this.blockCache.getBlockSize();
+        if (blockPos + blockSize > readPosition) {
+            return null;
+        }
+
+        long offset = this.getFileFromOffset() + blockPos;
+        ByteBuffer block = this.blockCache.getBlock(offset);
+        if (block == null) {
+            block = ByteBuffer.allocate(blockSize);
+            this.readFully(block, blockPos);
+            this.blockCache.putBlock(offset, block);
+            block = block.duplicate();
+        }
+        block.clear();
+        return block;
+    }
+
+    private void readFully(final ByteBuffer byteBuffer, long position) throws IOException {
+        while (byteBuffer.hasRemaining()) {
+            int read = this.fileChannel.read(byteBuffer, position);
+            if (read < 0) {
+                throw new EOFException("read " + this.getFileName() + " at " + position);
+            }
+            position += read;
+        }
+    }
+
+    @Override
+    public void setWrotePosition(int pos) {
+        super.setWrotePosition(pos);
+        if (this.isDirectIO()) {
+            this.blockCache.invalidate(this.getFileFromOffset() + pos, this.getFileFromOffset() + this.fileSize);
+        }
+    }
+
+    /**
+     * There is nothing to fault in, reserve the blocks of the file instead so that the writes do not allocate them.
+     */
+    @Override
+    public void warmMappedFile(FlushDiskType type, int pages) {
+        if (!this.isDirectIO()) {
+            super.warmMappedFile(type, pages);
+            return;
+        }
+
+        long beginTime = System.currentTimeMillis();
+        int ret = LibC.INSTANCE.posix_fallocate(this.fd, 0, this.fileSize);
+        log.info("direct io file warm-up done. mappedFile={}, fallocate ret = {}, costTime={}", this.getFileName(),
+            ret, System.currentTimeMillis() - beginTime);
+    }
+
+    @Override
+    public boolean cleanup(final long currentRef) {
+        boolean result = super.cleanup(currentRef);
+        if (result && this.fd >= 0) {
+            LibC.INSTANCE.close(this.fd);
+            this.fd = -1;
+            clean(this.tailBuffer);
+            this.blockCache.invalidate(this.getFileFromOffset(), this.getFileFromOffset() + this.fileSize);
+        }
+        return result;
+    }
+}
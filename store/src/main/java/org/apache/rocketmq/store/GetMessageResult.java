@@ -95,6 +95,31 @@ public class GetMessageResult {
             mapedBuffer.getSize() / BrokerStatsManager.SIZE_PER_COUNT);
     }
 
+    /**
+     * Add the messages lying next to each other in the commit log, they share the same mapped buffer.
+     *
+     * @param mapedBuffer buffer of all the messages
+     * @param msgSizes sizes of the messages, in order
+     * @param from index of the first message in {@code msgSizes}
+     * @param msgNum count of the messages
+     */
+    public void addMessages(final SelectMappedBufferResult mapedBuffer, final int[] msgSizes, final int from,
+        final int msgNum) {
+        this.messageMapedList.add(mapedBuffer);
+        ByteBuffer byteBuffer = mapedBuffer.getByteBuffer();
+        int position = byteBuffer.position();
+        for (int i = from; i < from + msgNum; i++) {
+            ByteBuffer msgBuffer = byteBuffer.duplicate();
+            msgBuffer.position(position);
+            msgBuffer.limit(position + msgSizes[i]);
+            this.messageBufferList.add(msgBuffer.slice());
+            this.msgCount4Commercial += (int) Math.ceil(
+                msgSizes[i] / BrokerStatsManager.SIZE_PER_COUNT);
+            position += msgSizes[i];
+        }
+        this.bufferTotalSize += mapedBuffer.getSize();
+    }
+
     public void release() {
         for (SelectMappedBufferResult select : this.messageMapedList) {
             select.release();
@@ -110,7 +135,7 @@ public class GetMessageResult {
     }
 
     public int getMessageCount() {
-        return this.messageMapedList.size();
+        return this.messageBufferList.size();
     }
 
     public boolean isSuggestPullingFromSlave() {
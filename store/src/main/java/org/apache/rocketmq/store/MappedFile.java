@@ -29,6 +29,7 @@ import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import org.apache.rocketmq.common.UtilAll;
@@ -53,6 +54,17 @@ public class MappedFile extends ReferenceResource {
     protected final AtomicInteger wrotePosition = new AtomicInteger(0);
     protected final AtomicInteger committedPosition = new AtomicInteger(0);
     private final AtomicInteger flushedPosition = new AtomicInteger(0);
+    /**
+     * Tail of the slots handed out by {@link #reserveMessage}. Bytes between {@link #wrotePosition} and this position
+     * may still be copied by their writers, so {@link #wrotePosition} acts as the commit watermark: it only moves over
+     * slots whose copy has completed, and flush, commit and readers never go beyond it.
+     */
+    protected final AtomicInteger reservedPosition = new AtomicInteger(0);
+    /**
+     * Slots completed ahead of the watermark, start position to end position, guarded by itself. There are at most as
+     * many as the writers copying at the same time, so they are kept in plain arrays and looked up by scanning.
+     */
+    private final PendingSlots pendingSlots = new PendingSlots();
     protected int fileSize;
     protected FileChannel fileChannel;
     /**
@@ -237,6 +249,139 @@ public class MappedFile extends ReferenceResource {
         return new AppendMessageResult(AppendMessageStatus.UNKNOWN_ERROR);
     }
 
+    /**
+     * Append the pre-encoded messages of several put requests one after another and move the write position once
+     * for all of them. It stops after the first message whose status is not PUT_OK.
+     *
+     * @return the number of results filled in, starting at {@code from}
+     */
+    public int appendMessages(final MessageExtBrokerInner[] msgs, final PutMessageContext[] putMessageContexts,
+            final int from, final int to, final AppendMessageCallback cb, final AppendMessageResult[] results) {
+        assert cb != null;
+
+        int currentPos = this.wrotePosition.get();
+
+        if (currentPos < this.fileSize) {
+            ByteBuffer byteBuffer = writeBuffer != null ? writeBuffer.slice() : this.mappedByteBuffer.slice();
+            byteBuffer.position(currentPos);
+            int wroteBytes = 0;
+            long lastStoreTimestamp = 0;
+            int i = from;
+            while (i < to) {
+                AppendMessageResult result = cb.doAppend(this.getFileFromOffset(), byteBuffer,
+                        this.fileSize - currentPos - wroteBytes, msgs[i], putMessageContexts[i]);
+                results[i++] = result;
+                wroteBytes += result.getWroteBytes();
+                if (result.getStatus() != AppendMessageStatus.PUT_OK) {
+                    break;
+                }
+                lastStoreTimestamp = result.getStoreTimestamp();
+            }
+            this.wrotePosition.addAndGet(wroteBytes);
+            if (lastStoreTimestamp > 0) {
+                this.storeTimestamp = lastStoreTimestamp;
+            }
+            return i - from;
+        }
+        log.error("MappedFile.appendMessages return null, wrotePosition: {} fileSize: {}", currentPos, this.fileSize);
+        results[from] = new AppendMessageResult(AppendMessageStatus.UNKNOWN_ERROR);
+        return 1;
+    }
+
+    public AppendMessageResult reserveMessage(final MessageExtBrokerInner msg, final AppendMessageCallback cb,
+            PutMessageContext putMessageContext) {
+        return reserveMessagesInner(msg, cb, putMessageContext);
+    }
+
+    public AppendMessageResult reserveMessages(final MessageExtBatch messageExtBatch, final AppendMessageCallback cb,
+            PutMessageContext putMessageContext) {
+        return reserveMessagesInner(messageExtBatch, cb, putMessageContext);
+    }
+
+    /**
+     * Allocate a slot for the message at the reserved position. The callback assigns the offsets and patches the
+     * pre-encoded buffer of the message, the bytes themselves are copied afterwards by {@link #writeReservedSlot},
+     * which the caller is expected to do outside of the put message lock.
+     */
+    public AppendMessageResult reserveMessagesInner(final MessageExt messageExt, final AppendMessageCallback cb,
+            PutMessageContext putMessageContext) {
+        assert messageExt != null;
+        assert cb != null;
+        assert putMessageContext.isReserveOnly();
+
+        int currentPos = this.getReservedPosition();
+
+        if (currentPos < this.fileSize) {
+            ByteBuffer byteBuffer = writeBuffer != null ? writeBuffer.slice() : this.mappedByteBuffer.slice();
+            byteBuffer.position(currentPos);
+            AppendMessageResult result;
+            if (messageExt instanceof MessageExtBrokerInner) {
+                result = cb.doAppend(this.getFileFromOffset(), byteBuffer, this.fileSize - currentPos,
+                        (MessageExtBrokerInner) messageExt, putMessageContext);
+            } else if (messageExt instanceof MessageExtBatch) {
+                result = cb.doAppend(this.getFileFromOffset(), byteBuffer, this.fileSize - currentPos,
+                        (MessageExtBatch) messageExt, putMessageContext);
+            } else {
+                return new AppendMessageResult(AppendMessageStatus.UNKNOWN_ERROR);
+            }
+            if (!this.reservedPosition.compareAndSet(currentPos, currentPos + result.getWroteBytes())) {
+                log.error("MappedFile.reserveMessage concurrent reservation, reservedPosition: {} expect: {}",
+                    this.reservedPosition.get(), currentPos);
+                return new AppendMessageResult(AppendMessageStatus.UNKNOWN_ERROR);
+            }
+            if (result.getStatus() == AppendMessageStatus.END_OF_FILE) {
+                // the blank magic code has been written by the callback already
+                this.completeSlot(currentPos, currentPos + result.getWroteBytes(), result.getStoreTimestamp());
+            }
+            return result;
+        }
+        log.error("MappedFile.reserveMessage return null, reservedPosition: {} fileSize: {}", currentPos, this.fileSize);
+        return new AppendMessageResult(AppendMessageStatus.UNKNOWN_ERROR);
+    }
+
+    /**
+     * Copy the encoded messages into the slot reserved at {@code position} and publish it once all the slots
+     * before it have been written.
+     */
+    public void writeReservedSlot(final int position, final ByteBuffer data, final long storeTimestamp) {
+        int size = data.remaining();
+        try {
+            ByteBuffer byteBuffer = writeBuffer != null ? writeBuffer.slice() : this.mappedByteBuffer.slice();
+            byteBuffer.position(position);
+            byteBuffer.put(data);
+        } catch (Throwable e) {
+            log.error("MappedFile.writeReservedSlot failed, position: {} size: {}", position, size, e);
+            throw e;
+        } finally {
+            // published even if the copy failed, otherwise the watermark never moves over the slots after it
+            this.completeSlot(position, position + size, storeTimestamp);
+        }
+    }
+
+    private void completeSlot(final int start, final int end, final long storeTimestamp) {
+        if (this.wrotePosition.compareAndSet(start, end)) {
+            // only the writer moving the watermark over its own slot updates the timestamp, so it never runs
+            // ahead of the data visible to flush
+            this.storeTimestamp = storeTimestamp;
+        } else {
+            this.pendingSlots.put(start, end);
+        }
+
+        // publish the slots completed out of order behind us, the put above is visible to whoever moves the
+        // watermark next, so no slot is left behind
+        while (this.pendingSlots.size() > 0) {
+            synchronized (this.pendingSlots) {
+                int current = this.wrotePosition.get();
+                int next = this.pendingSlots.remove(current);
+                if (next < 0) {
+                    return;
+                }
+                // the slot at the watermark is pending, so no writer moves the watermark but us
+                this.wrotePosition.compareAndSet(current, next);
+            }
+        }
+    }
+
     public long getFileFromOffset() {
         return this.fileFromOffset;
     }
@@ -292,12 +437,7 @@ public class MappedFile extends ReferenceResource {
                 int value = getReadPosition();
 
                 try {
-                    //We only append data to fileChannel or mappedByteBuffer, never both.
-                    if (writeBuffer != null || this.fileChannel.position() != 0) {
-                        this.fileChannel.force(false);
-                    } else {
-                        this.mappedByteBuffer.force();
-                    }
+                    this.force();
                 } catch (Throwable e) {
                     log.error("Error occurred when force data to disk.", e);
                 }
@@ -312,6 +452,15 @@ public class MappedFile extends ReferenceResource {
         return this.getFlushedPosition();
     }
 
+    protected void force() throws IOException {
+        //We only append data to fileChannel or mappedByteBuffer, never both.
+        if (writeBuffer != null || this.fileChannel.position() != 0) {
+            this.fileChannel.force(false);
+        } else {
+            this.mappedByteBuffer.force();
+        }
+    }
+
     public int commit(final int commitLeastPages) {
         if (writeBuffer == null) {
             //no need to commit data to file channel, so just regard wrotePosition as committedPosition.
@@ -395,6 +544,13 @@ public class MappedFile extends ReferenceResource {
         return this.fileSize == this.wrotePosition.get();
     }
 
+    /**
+     * @return true if no more slot can be reserved in this file, the slots may still be in the middle of writing
+     */
+    public boolean isFullyReserved() {
+        return this.fileSize == this.getReservedPosition();
+    }
+
     public SelectMappedBufferResult selectMappedBuffer(int pos, int size) {
         int readPosition = getReadPosition();
         if ((pos + size) <= readPosition) {
@@ -486,6 +642,11 @@ public class MappedFile extends ReferenceResource {
 
     public void setWrotePosition(int pos) {
         this.wrotePosition.set(pos);
+        this.reservedPosition.set(pos);
+    }
+
+    public int getReservedPosition() {
+        return Math.max(this.reservedPosition.get(), this.wrotePosition.get());
     }
 
     /**
@@ -501,6 +662,14 @@ public class MappedFile extends ReferenceResource {
 
     public void warmMappedFile(FlushDiskType type, int pages) {
         long beginTime = System.currentTimeMillis();
+        // let the kernel fault in the whole file at once when there is no need to force it in steps
+        if (type == FlushDiskType.ASYNC_FLUSH && this.populateWrite()) {
+            log.info("mapped file warm-up done by madvise. mappedFile={}, costTime={}", this.getFileName(),
+                System.currentTimeMillis() - beginTime);
+            this.mlock();
+            return;
+        }
+
         ByteBuffer byteBuffer = this.mappedByteBuffer.slice();
         int flush = 0;
         long time = System.currentTimeMillis();
@@ -538,6 +707,12 @@ public class MappedFile extends ReferenceResource {
         this.mlock();
     }
 
+    private boolean populateWrite() {
+        final long address = ((DirectBuffer) (this.mappedByteBuffer)).address();
+        int ret = LibC.INSTANCE.madvise(new Pointer(address), new NativeLong(this.fileSize), LibC.MADV_POPULATE_WRITE);
+        return ret == 0;
+    }
+
     public String getFileName() {
         return fileName;
     }
@@ -585,6 +760,49 @@ public class MappedFile extends ReferenceResource {
         log.info("munlock {} {} {} ret = {} time consuming = {}", address, this.fileName, this.fileSize, ret, System.currentTimeMillis() - beginTime);
     }
 
+    /**
+     * Ask the kernel to read the range into page cache asynchronously, so the reads following do not fault on it.
+     */
+    public boolean readAhead(final int position, final int size) {
+        if (size <= 0 || !this.hold()) {
+            return false;
+        }
+        try {
+            final long address = ((DirectBuffer) this.mappedByteBuffer).address() + position;
+            final long alignedAddress = address - address % OS_PAGE_SIZE;
+            int ret = LibC.INSTANCE.madvise(new Pointer(alignedAddress), new NativeLong(address + size - alignedAddress),
+                LibC.MADV_WILLNEED);
+            return ret == 0;
+        } finally {
+            this.release();
+        }
+    }
+
+    /**
+     * @return the bytes of the range resident in page cache counted by pages, or {@code size} if it is unknown
+     */
+    public int countResidentBytes(final int position, final int size) {
+        if (size <= 0 || !this.hold()) {
+            return size;
+        }
+        try {
+            final long address = ((DirectBuffer) this.mappedByteBuffer).address() + position;
+            final long alignedAddress = address - address % OS_PAGE_SIZE;
+            final int pages = (int) ((address + size - alignedAddress + OS_PAGE_SIZE - 1) / OS_PAGE_SIZE);
+            byte[] vec = new byte[pages];
+            if (LibC.INSTANCE.mincore(new Pointer(alignedAddress), new NativeLong(address + size - alignedAddress), vec) != 0) {
+                return size;
+            }
+            int residentPages = 0;
+            for (byte b : vec) {
+                residentPages += b & 1;
+            }
+            return (int) ((long) size * residentPages / pages);
+        } finally {
+            this.release();
+        }
+    }
+
     //testable
     File getFile() {
         return this.file;
@@ -594,4 +812,41 @@ public class MappedFile extends ReferenceResource {
     public String toString() {
         return this.fileName;
     }
+
+    private static final class PendingSlots {
+        private int[] starts = new int[8];
+        private int[] ends = new int[8];
+        private volatile int size;
+
+        synchronized void put(final int start, final int end) {
+            if (this.size == this.starts.length) {
+                this.starts = Arrays.copyOf(this.starts, this.size * 2);
+                this.ends = Arrays.copyOf(this.ends, this.size * 2);
+            }
+            this.starts[this.size] = start;
+            this.ends[this.size] = end;
+            this.size++;
+        }
+
+        /**
+         * @return the end of the slot pending at {@code start}, -1 if there is none
+         */
+        synchronized int remove(final int start) {
+            for (int i = 0; i < this.size; i++) {
+                if (this.starts[i] == start) {
+                    int end = this.ends[i];
+                    int last = this.size - 1;
+                    this.starts[i] = this.starts[last];
+                    this.ends[i] = this.ends[last];
+                    this.size = last;
+                    return end;
+                }
+            }
+            return -1;
+        }
+
+        int size() {
+            return this.size;
+        }
+    }
 }
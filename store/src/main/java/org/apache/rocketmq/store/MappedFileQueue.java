@@ -205,7 +205,7 @@ public class MappedFileQueue {
             createOffset = startOffset - (startOffset % this.mappedFileSize);
         }
 
-        if (mappedFileLast != null && mappedFileLast.isFull()) {
+        if (mappedFileLast != null && mappedFileLast.isFullyReserved()) {
             createOffset = mappedFileLast.getFileFromOffset() + this.mappedFileSize;
         }
 
@@ -218,17 +218,27 @@ public class MappedFileQueue {
 
     protected MappedFile tryCreateMappedFile(long createOffset) {
         String nextFilePath = this.storePath + File.separator + UtilAll.offset2FileName(createOffset);
-        String nextNextFilePath = this.storePath + File.separator + UtilAll.offset2FileName(createOffset
-                + this.mappedFileSize);
-        return doCreateMappedFile(nextFilePath, nextNextFilePath);
+        String[] aheadFilePaths = new String[this.getAllocateAheadNum()];
+        for (int i = 0; i < aheadFilePaths.length; i++) {
+            aheadFilePaths[i] = this.storePath + File.separator + UtilAll.offset2FileName(createOffset
+                    + (long) (i + 1) * this.mappedFileSize);
+        }
+        return doCreateMappedFile(nextFilePath, aheadFilePaths);
+    }
+
+    /**
+     * @return how many files after the one being created are allocated in advance
+     */
+    protected int getAllocateAheadNum() {
+        return this.allocateMappedFileService != null ? this.allocateMappedFileService.getAllocateAheadNum() : 0;
     }
 
-    protected MappedFile doCreateMappedFile(String nextFilePath, String nextNextFilePath) {
+    protected MappedFile doCreateMappedFile(String nextFilePath, String... aheadFilePaths) {
         MappedFile mappedFile = null;
 
         if (this.allocateMappedFileService != null) {
             mappedFile = this.allocateMappedFileService.putRequestAndReturnMappedFile(nextFilePath,
-                    nextNextFilePath, this.mappedFileSize);
+                    aheadFilePaths, this.mappedFileSize);
         } else {
             try {
                 mappedFile = new MappedFile(nextFilePath, this.mappedFileSize);
@@ -351,6 +361,18 @@ public class MappedFileQueue {
         final int deleteFilesInterval,
         final long intervalForcibly,
         final boolean cleanImmediately) {
+        return deleteExpiredFileByTime(expiredTime, deleteFilesInterval, intervalForcibly, cleanImmediately,
+            Long.MAX_VALUE);
+    }
+
+    /**
+     * @param maxOffset only the files ending at or before it may be deleted
+     */
+    public int deleteExpiredFileByTime(final long expiredTime,
+        final int deleteFilesInterval,
+        final long intervalForcibly,
+        final boolean cleanImmediately,
+        final long maxOffset) {
         Object[] mfs = this.copyMappedFiles(0);
 
         if (null == mfs)
@@ -362,6 +384,9 @@ public class MappedFileQueue {
         if (null != mfs) {
             for (int i = 0; i < mfsLength; i++) {
                 MappedFile mappedFile = (MappedFile) mfs[i];
+                if (mappedFile.getFileFromOffset() + mappedFile.getFileSize() > maxOffset) {
+                    break;
+                }
                 long liveMaxTimestamp = mappedFile.getLastModifiedTimestamp() + expiredTime;
                 if (System.currentTimeMillis() >= liveMaxTimestamp || cleanImmediately) {
                     if (mappedFile.destroy(intervalForcibly)) {
@@ -436,6 +461,31 @@ public class MappedFileQueue {
         return deleteCount;
     }
 
+    /**
+     * Delete the files lying wholly before the offset, the last one is always kept.
+     */
+    public int deleteExpiredFileBefore(final long offset) {
+        Object[] mfs = this.copyMappedFiles(0);
+
+        List<MappedFile> files = new ArrayList<MappedFile>();
+        int deleteCount = 0;
+        if (null != mfs) {
+            for (int i = 0; i < mfs.length - 1; i++) {
+                MappedFile mappedFile = (MappedFile) mfs[i];
+                if (mappedFile.getFileFromOffset() + this.mappedFileSize <= offset && mappedFile.destroy(1000 * 60)) {
+                    files.add(mappedFile);
+                    deleteCount++;
+                } else {
+                    break;
+                }
+            }
+        }
+
+        deleteExpiredFile(files);
+
+        return deleteCount;
+    }
+
     public boolean flush(final int flushLeastPages) {
         boolean result = true;
         MappedFile mappedFile = this.findMappedFileByOffset(this.flushedWhere, this.flushedWhere == 0);
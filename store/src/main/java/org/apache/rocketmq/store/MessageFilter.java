@@ -40,4 +40,22 @@ public interface MessageFilter {
      */
     boolean isMatchedByCommitLog(final ByteBuffer msgBuffer,
         final Map<String, String> properties);
+
+    /**
+     * whether the filter only depends on the tags code, that is {@link #isMatchedByCommitLog} is always true and
+     * {@link #isMatchedByTagsCode} is the same as {@link #isMatchedByConsumeQueue} without extend unit.
+     * <br>If so, the store filters consume queue units in batch and never reads the commit log for filtering.
+     */
+    default boolean isTagsCodeFilter() {
+        return false;
+    }
+
+    /**
+     * match by the tags code stored in consume queue, used only if {@link #isTagsCodeFilter()}.
+     *
+     * @param tagsCode tagsCode, not an address of consume queue ext
+     */
+    default boolean isMatchedByTagsCode(final long tagsCode) {
+        return isMatchedByConsumeQueue(tagsCode, null);
+    }
 }
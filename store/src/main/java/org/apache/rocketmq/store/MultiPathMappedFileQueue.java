@@ -100,9 +100,12 @@ public class MultiPathMappedFileQueue extends MappedFileQueue {
         Arrays.sort(paths);
         String nextFilePath = paths[(int) (fileIdx % paths.length)] + File.separator
                 + UtilAll.offset2FileName(createOffset);
-        String nextNextFilePath = paths[(int) ((fileIdx + 1) % paths.length)] + File.separator
-                + UtilAll.offset2FileName(createOffset + this.mappedFileSize);
-        return doCreateMappedFile(nextFilePath, nextNextFilePath);
+        String[] aheadFilePaths = new String[this.getAllocateAheadNum()];
+        for (int i = 0; i < aheadFilePaths.length; i++) {
+            aheadFilePaths[i] = paths[(int) ((fileIdx + i + 1) % paths.length)] + File.separator
+                    + UtilAll.offset2FileName(createOffset + (long) (i + 1) * this.mappedFileSize);
+        }
+        return doCreateMappedFile(nextFilePath, aheadFilePaths);
     }
 
     @Override
@@ -58,4 +58,11 @@ public class SelectMappedBufferResult {
     public long getStartOffset() {
         return startOffset;
     }
+
+    /**
+     * @return the mapped file this buffer was selected from, null if it is released or not backed by one
+     */
+    public MappedFile getMappedFile() {
+        return mappedFile;
+    }
 }
@@ -43,6 +43,19 @@ public class StoreStatsService extends ServiceThread {
         "[<=0ms]", "[0~10ms]", "[10~50ms]", "[50~100ms]", "[100~200ms]", "[200~500ms]", "[500ms~1s]", "[1~2s]", "[2~3s]", "[3~4s]", "[4~5s]", "[5~10s]", "[10s~]",
     };
 
+    private static final long[] FLUSH_SIZE_BOUNDS = new long[] {
+        4 * 1024, 16 * 1024, 64 * 1024, 256 * 1024, 1024 * 1024, 4 * 1024 * 1024, 16 * 1024 * 1024,
+    };
+    private static final String[] FLUSH_SIZE_DESC = new String[] {
+        "[<=4KB]", "[4~16KB]", "[16~64KB]", "[64~256KB]", "[256KB~1MB]", "[1~4MB]", "[4~16MB]", "[16MB~]",
+    };
+    private static final long[] FLUSH_LATENCY_BOUNDS = new long[] {
+        1, 5, 10, 50, 100, 200, 500, 1000,
+    };
+    private static final String[] FLUSH_LATENCY_DESC = new String[] {
+        "[<=1ms]", "[1~5ms]", "[5~10ms]", "[10~50ms]", "[50~100ms]", "[100~200ms]", "[200~500ms]", "[500ms~1s]", "[1s~]",
+    };
+
     //The rule to define buckets
     private static final Map<Integer/*interval step size*/, Integer/*times*/> PUT_MESSAGE_ENTIRE_TIME_BUCKETS = new TreeMap<>();
     //buckets
@@ -78,6 +91,20 @@ public class StoreStatsService extends ServiceThread {
 
     private volatile long dispatchMaxBuffer = 0;
 
+    private final LongAdder[] flushCommitLogSizeDistribute = newLongAdders(FLUSH_SIZE_DESC.length);
+    private final LongAdder[] flushCommitLogLatencyDistribute = newLongAdders(FLUSH_LATENCY_DESC.length);
+    private volatile long flushCommitLogLatencyMax = 0;
+
+    private final LongAdder[] allocateMappedFileWaitDistribute = newLongAdders(FLUSH_LATENCY_DESC.length);
+    private final LongAdder allocateMappedFileWaitTimeTotal = new LongAdder();
+    private volatile long allocateMappedFileWaitTimeMax = 0;
+
+    private final LongAdder dispatchMessageTimesTotal = new LongAdder();
+    private final LongAdder dispatchLagTimeTotal = new LongAdder();
+    private volatile long dispatchLagTimeMax = 0;
+    // for dispatchLagTimeMax
+    private ReentrantLock dispatchLock = new ReentrantLock();
+
     private ReentrantLock samplingLock = new ReentrantLock();
     private long lastPrintTimestamp = System.currentTimeMillis();
 
@@ -234,6 +261,110 @@ public class StoreStatsService extends ServiceThread {
         this.dispatchMaxBuffer = value > this.dispatchMaxBuffer ? value : this.dispatchMaxBuffer;
     }
 
+    /**
+     * Record one flush of the commit log to disk.
+     *
+     * @param bytes bytes flushed
+     * @param costMillis time the flush took
+     */
+    public void incFlushCommitLog(long bytes, long costMillis) {
+        this.flushCommitLogSizeDistribute[bucketOf(FLUSH_SIZE_BOUNDS, bytes)].add(1);
+        this.flushCommitLogLatencyDistribute[bucketOf(FLUSH_LATENCY_BOUNDS, costMillis)].add(1);
+        if (costMillis > this.flushCommitLogLatencyMax) {
+            this.flushCommitLogLatencyMax = costMillis;
+        }
+    }
+
+    public long getFlushCommitLogLatencyMax() {
+        return flushCommitLogLatencyMax;
+    }
+
+    public LongAdder[] getFlushCommitLogSizeDistribute() {
+        return flushCommitLogSizeDistribute;
+    }
+
+    public LongAdder[] getFlushCommitLogLatencyDistribute() {
+        return flushCommitLogLatencyDistribute;
+    }
+
+    /**
+     * Record how long a put waited for the next mapped file to be allocated when rolling to it.
+     *
+     * @param costMillis time spent waiting
+     */
+    public void incAllocateMappedFileWait(long costMillis) {
+        this.allocateMappedFileWaitDistribute[bucketOf(FLUSH_LATENCY_BOUNDS, costMillis)].add(1);
+        this.allocateMappedFileWaitTimeTotal.add(costMillis);
+        if (costMillis > this.allocateMappedFileWaitTimeMax) {
+            this.allocateMappedFileWaitTimeMax = costMillis;
+        }
+    }
+
+    public long getAllocateMappedFileWaitTimeMax() {
+        return allocateMappedFileWaitTimeMax;
+    }
+
+    public long getAllocateMappedFileWaitTimeTotal() {
+        return allocateMappedFileWaitTimeTotal.longValue();
+    }
+
+    public LongAdder[] getAllocateMappedFileWaitDistribute() {
+        return allocateMappedFileWaitDistribute;
+    }
+
+    private static LongAdder[] newLongAdders(int size) {
+        LongAdder[] adders = new LongAdder[size];
+        for (int i = 0; i < size; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    private static int bucketOf(long[] bounds, long value) {
+        for (int i = 0; i < bounds.length; i++) {
+            if (value <= bounds[i]) {
+                return i;
+            }
+        }
+        return bounds.length;
+    }
+
+    private static String distributeToString(String[] desc, LongAdder[] distribute) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < distribute.length; i++) {
+            sb.append(String.format("%s:%d", desc[i], distribute[i].longValue()));
+            sb.append(" ");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Record how long a message waited between being stored in the commit log and being dispatched to its consume
+     * queue.
+     */
+    public void incDispatchLagTime(long value) {
+        this.dispatchMessageTimesTotal.add(1);
+        this.dispatchLagTimeTotal.add(value);
+        if (value > this.dispatchLagTimeMax) {
+            this.dispatchLock.lock();
+            this.dispatchLagTimeMax = value > this.dispatchLagTimeMax ? value : this.dispatchLagTimeMax;
+            this.dispatchLock.unlock();
+        }
+    }
+
+    public long getDispatchLagTimeMax() {
+        return dispatchLagTimeMax;
+    }
+
+    public double getDispatchLagTimeAvg() {
+        long times = this.dispatchMessageTimesTotal.longValue();
+        return times == 0 ? 0 : this.dispatchLagTimeTotal.longValue() / (double) times;
+    }
+
+    public LongAdder getDispatchMessageTimesTotal() {
+        return dispatchMessageTimesTotal;
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder(1024);
@@ -252,6 +383,12 @@ public class StoreStatsService extends ServiceThread {
         sb.append("\tputMessageAverageSize: " + (this.getPutMessageSizeTotal() / totalTimes.doubleValue())
             + "\r\n");
         sb.append("\tdispatchMaxBuffer: " + this.dispatchMaxBuffer + "\r\n");
+        sb.append("\tflushCommitLogSizeDistribute: " + distributeToString(FLUSH_SIZE_DESC, this.flushCommitLogSizeDistribute) + "\r\n");
+        sb.append("\tflushCommitLogLatencyDistribute: " + distributeToString(FLUSH_LATENCY_DESC, this.flushCommitLogLatencyDistribute) + "\r\n");
+        sb.append("\tallocateMappedFileWaitDistribute: " + distributeToString(FLUSH_LATENCY_DESC, this.allocateMappedFileWaitDistribute) + "\r\n");
+        sb.append("\tallocateMappedFileWaitTimeMax: " + this.allocateMappedFileWaitTimeMax + "\r\n");
+        sb.append("\tdispatchLagTimeMax: " + this.dispatchLagTimeMax + "\r\n");
+        sb.append("\tdispatchLagTimeAvg: " + this.getDispatchLagTimeAvg() + "\r\n");
         sb.append("\tgetMessageEntireTimeMax: " + this.getMessageEntireTimeMax + "\r\n");
         sb.append("\tputTps: " + this.getPutTps() + "\r\n");
         sb.append("\tgetFoundTps: " + this.getGetFoundTps() + "\r\n");
@@ -505,6 +642,15 @@ public class StoreStatsService extends ServiceThread {
         result.put("putMessageAverageSize",
             String.valueOf(this.getPutMessageSizeTotal() / totalTimes.doubleValue()));
         result.put("dispatchMaxBuffer", String.valueOf(this.dispatchMaxBuffer));
+        result.put("flushCommitLogSizeDistribute", distributeToString(FLUSH_SIZE_DESC, this.flushCommitLogSizeDistribute));
+        result.put("flushCommitLogLatencyDistribute", distributeToString(FLUSH_LATENCY_DESC, this.flushCommitLogLatencyDistribute));
+        result.put("flushCommitLogLatencyMax", String.valueOf(this.flushCommitLogLatencyMax));
+        result.put("allocateMappedFileWaitDistribute", distributeToString(FLUSH_LATENCY_DESC, this.allocateMappedFileWaitDistribute));
+        result.put("allocateMappedFileWaitTimeTotal", String.valueOf(this.allocateMappedFileWaitTimeTotal));
+        result.put("allocateMappedFileWaitTimeMax", String.valueOf(this.allocateMappedFileWaitTimeMax));
+        result.put("dispatchMessageTimesTotal", String.valueOf(this.dispatchMessageTimesTotal));
+        result.put("dispatchLagTimeMax", String.valueOf(this.dispatchLagTimeMax));
+        result.put("dispatchLagTimeAvg", String.format("%.2f", this.getDispatchLagTimeAvg()));
         result.put("getMessageEntireTimeMax", String.valueOf(this.getMessageEntireTimeMax));
         result.put("putTps", this.getPutTps());
         result.put("getFoundTps", this.getGetFoundTps());
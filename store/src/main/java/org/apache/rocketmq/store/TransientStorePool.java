@@ -48,7 +48,9 @@ public class TransientStorePool {
      */
     public void init() {
         for (int i = 0; i < poolSize; i++) {
-            ByteBuffer byteBuffer = ByteBuffer.allocateDirect(fileSize);
+            ByteBuffer byteBuffer = storeConfig.isCommitLogDirectIOEnable()
+                ? DirectIOMappedFile.allocateAlignedBuffer(fileSize, DirectIOMappedFile.DIRECT_IO_ALIGNMENT)
+                : ByteBuffer.allocateDirect(fileSize);
 
             final long address = ((DirectBuffer) byteBuffer).address();
             Pointer pointer = new Pointer(address);
@@ -49,6 +49,10 @@ public class MessageStoreConfig {
     // Bit count of filter bit map.
     // this will be set by pipe of calculate filter bit map.
     private int bitMapLengthConsumeQueueExt = 64;
+    // keep a sparse time index next to ConsumeQueue, to look up offset by time without scanning CommitLog
+    private boolean enableConsumeQueueTimeIndex = false;
+    // one time index unit every N messages of the ConsumeQueue
+    private int consumeQueueTimeIndexInterval = 32;
 
     // CommitLog flush interval
     // flush data to disk
@@ -65,6 +69,38 @@ public class MessageStoreConfig {
      */
     private boolean useReentrantLockWhenPutMessage = true;
 
+    /**
+     * Only reserve the commit log slot and queue offset in the put message lock, the message bytes are copied into
+     * the mapped file after the lock is released, so several producers can copy in parallel.
+     */
+    private boolean enableReservedSlotAppend = false;
+
+    /**
+     * Let the thread holding the put message lock append the single messages queued by other senders as well, so that
+     * concurrent sends share one lock acquisition and one flush request.
+     */
+    private boolean enablePutMessageCombine = false;
+
+    private int putMessageCombineMaxNum = 128;
+
+    /**
+     * Serialize the messages of a batch straight from the request body into the mapped file instead of encoding them
+     * into the thread local buffer first. Not used together with reserved slot append, which needs that buffer.
+     */
+    private boolean enableDirectBatchAppend = false;
+
+    /**
+     * Dispatch the commit log through a staged pipeline: entries are decoded by a thread pool, consume queues are
+     * built by lanes sharded by topic-queue and every other dispatcher gets a lane of its own.
+     */
+    private boolean enableParallelDispatch = false;
+
+    private int dispatchDecodeThreadNum = 4;
+
+    private int dispatchConsumeQueueLaneNum = 4;
+
+    private int dispatchBatchMaxNum = 256;
+
     // Whether schedule flush
     @ImportantField
     private boolean flushCommitLogTimed = true;
@@ -85,6 +121,21 @@ public class MessageStoreConfig {
     // The number of hours to keep a log file before deleting it (in hours)
     @ImportantField
     private int fileReservedTime = 72;
+
+    /**
+     * Offload the sealed commit log and consume queue files to a second, slower tier before they expire locally,
+     * and serve the messages below the min offset of a queue from there.
+     */
+    private boolean tieredStoreEnable = false;
+    private String tieredStoreBackendClass = "org.apache.rocketmq.store.tiered.LocalTieredStorageBackend";
+    // Root directory of the local tiered store backend
+    private String storePathTiered = null;
+    // The number of hours to keep a file in the tiered store
+    private int tieredStoreFileReservedTime = 24 * 30;
+    private int tieredStoreOffloadInterval = 1000 * 10;
+    // Bytes of a commit log segment read at once from the tiered store, and how many of them are cached
+    private int tieredStoreReadAheadSize = 1024 * 1024 * 4;
+    private int tieredStoreReadAheadNum = 64;
     // Flow control for ConsumeQueue
     private int putMsgIndexHightWater = 600000;
     // The maximum size of message body,default is 4M,4M only for body length,not include others.
@@ -95,6 +146,15 @@ public class MessageStoreConfig {
     private boolean checkCRCOnRecover = true;
     // How many pages are to be flushed when flush CommitLog
     private int flushCommitLogLeastPages = 4;
+
+    /**
+     * Let the commit log flush and commit services size every write by the dirty bytes and the write latency observed
+     * on the device, aiming at adaptiveFlushTargetLatency per write, instead of the fixed least pages. The flush and
+     * commit intervals then bound how long dirty data may wait.
+     */
+    private boolean enableAdaptiveFlush = false;
+
+    private int adaptiveFlushTargetLatency = 20;
     // How many pages are to be committed when commit data to file
     private int commitCommitLogLeastPages = 4;
     // Flush page size when the disk in warming state
@@ -114,10 +174,25 @@ public class MessageStoreConfig {
     private int maxTransferCountOnMessageInDisk = 8;
     @ImportantField
     private int accessMessageInMemoryMaxRatio = 40;
+    /**
+     * Advise the commit log ahead of sequential readers falling out of the in-memory window into page cache, and
+     * account the bytes they get from disk or page cache per group.
+     */
+    private boolean coldReadAheadEnable = false;
+    private int coldReadAheadSize = 1024 * 1024 * 4;
     @ImportantField
     private boolean messageIndexEnable = true;
     private int maxHashSlotNum = 5000000;
     private int maxIndexNum = 5000000 * 4;
+    /**
+     * Keys are hashed over this many index files written at the same time, with parallel dispatch each of them is
+     * built by its own dispatch lane.
+     */
+    private int indexShardNum = 1;
+    /**
+     * Bits per key of the bloom summary kept beside an index file for skipping it on query, 0 to disable.
+     */
+    private int indexBloomBitsPerKey = 0;
     private int maxMsgsNumBatch = 64;
     @ImportantField
     private boolean messageIndexSafe = false;
@@ -139,6 +214,10 @@ public class MessageStoreConfig {
     @ImportantField
     private boolean cleanFileForciblyEnable = true;
     private boolean warmMapedFileEnable = false;
+    // How many files are allocated in advance of the one being written
+    private int allocateMappedFileAheadNum = 1;
+    // Threads creating and warming the files allocated in advance
+    private int allocateMappedFileThreadNum = 1;
     private boolean offsetCheckInSlave = false;
     private boolean debugLockEnable = false;
     private boolean duplicationEnable = false;
@@ -151,6 +230,14 @@ public class MessageStoreConfig {
     private int transientStorePoolSize = 5;
     private boolean fastFailIfNoBufferInStorePool = false;
 
+    /**
+     * Write the commit log with O_DIRECT from the transient store pool buffers instead of through the page cache,
+     * reading messages back through a block cache. Only takes effect when the transient store pool is enabled.
+     */
+    private boolean commitLogDirectIOEnable = false;
+    private int directIOReadCacheBlockSize = 1024 * 64;
+    private int directIOReadCacheBlockNum = 1024;
+
     private boolean enableDLegerCommitLog = false;
     private String dLegerGroup;
     private String dLegerPeers;
@@ -169,6 +256,25 @@ public class MessageStoreConfig {
     private boolean enableScheduleAsyncDeliver = false;
     private int scheduleAsyncDeliverMaxPendingLimit = 2000;
     private int scheduleAsyncDeliverMaxResendNum2Blocked = 3;
+    /**
+     * Max messages of a delay level put in flight together by the sync delivery.
+     */
+    private int scheduleDeliverBatchNum = 32;
+
+    /**
+     * Deliver the messages of arbitrary delivery time by a timing wheel kept on disk, see
+     * {@link org.apache.rocketmq.store.timer.TimerMessageStore}.
+     */
+    private boolean timerWheelEnable = false;
+    private int timerPrecisionMs = 1000;
+    /**
+     * The wheel spans slot number * precision, 2 days by default, later delivery times go round the wheel again.
+     */
+    private int timerWheelSlotNum = 2 * 24 * 3600;
+    // TimerLog file size, a multiple of the unit size
+    private int mappedFileSizeTimerLog = 32 * 1024 * 1024 * 3;
+    private int timerFlushIntervalMs = 1000;
+    private int timerDeliverBatchNum = 32;
 
     public boolean isDebugLockEnable() {
         return debugLockEnable;
@@ -252,6 +358,22 @@ public class MessageStoreConfig {
         this.bitMapLengthConsumeQueueExt = bitMapLengthConsumeQueueExt;
     }
 
+    public boolean isEnableConsumeQueueTimeIndex() {
+        return enableConsumeQueueTimeIndex;
+    }
+
+    public void setEnableConsumeQueueTimeIndex(boolean enableConsumeQueueTimeIndex) {
+        this.enableConsumeQueueTimeIndex = enableConsumeQueueTimeIndex;
+    }
+
+    public int getConsumeQueueTimeIndexInterval() {
+        return consumeQueueTimeIndexInterval;
+    }
+
+    public void setConsumeQueueTimeIndexInterval(int consumeQueueTimeIndexInterval) {
+        this.consumeQueueTimeIndexInterval = consumeQueueTimeIndexInterval;
+    }
+
     public int getFlushIntervalCommitLog() {
         return flushIntervalCommitLog;
     }
@@ -433,6 +555,65 @@ public class MessageStoreConfig {
         this.destroyMapedFileIntervalForcibly = destroyMapedFileIntervalForcibly;
     }
 
+    public boolean isTieredStoreEnable() {
+        return tieredStoreEnable;
+    }
+
+    public void setTieredStoreEnable(boolean tieredStoreEnable) {
+        this.tieredStoreEnable = tieredStoreEnable;
+    }
+
+    public String getTieredStoreBackendClass() {
+        return tieredStoreBackendClass;
+    }
+
+    public void setTieredStoreBackendClass(String tieredStoreBackendClass) {
+        this.tieredStoreBackendClass = tieredStoreBackendClass;
+    }
+
+    public String getStorePathTiered() {
+        if (storePathTiered == null) {
+            return storePathRootDir + File.separator + "tiered";
+        }
+        return storePathTiered;
+    }
+
+    public void setStorePathTiered(String storePathTiered) {
+        this.storePathTiered = storePathTiered;
+    }
+
+    public int getTieredStoreFileReservedTime() {
+        return tieredStoreFileReservedTime;
+    }
+
+    public void setTieredStoreFileReservedTime(int tieredStoreFileReservedTime) {
+        this.tieredStoreFileReservedTime = tieredStoreFileReservedTime;
+    }
+
+    public int getTieredStoreOffloadInterval() {
+        return tieredStoreOffloadInterval;
+    }
+
+    public void setTieredStoreOffloadInterval(int tieredStoreOffloadInterval) {
+        this.tieredStoreOffloadInterval = tieredStoreOffloadInterval;
+    }
+
+    public int getTieredStoreReadAheadSize() {
+        return tieredStoreReadAheadSize;
+    }
+
+    public void setTieredStoreReadAheadSize(int tieredStoreReadAheadSize) {
+        this.tieredStoreReadAheadSize = tieredStoreReadAheadSize;
+    }
+
+    public int getTieredStoreReadAheadNum() {
+        return tieredStoreReadAheadNum;
+    }
+
+    public void setTieredStoreReadAheadNum(int tieredStoreReadAheadNum) {
+        this.tieredStoreReadAheadNum = tieredStoreReadAheadNum;
+    }
+
     public int getFileReservedTime() {
         return fileReservedTime;
     }
@@ -449,6 +630,22 @@ public class MessageStoreConfig {
         this.redeleteHangedFileInterval = redeleteHangedFileInterval;
     }
 
+    public boolean isColdReadAheadEnable() {
+        return coldReadAheadEnable;
+    }
+
+    public void setColdReadAheadEnable(boolean coldReadAheadEnable) {
+        this.coldReadAheadEnable = coldReadAheadEnable;
+    }
+
+    public int getColdReadAheadSize() {
+        return coldReadAheadSize;
+    }
+
+    public void setColdReadAheadSize(int coldReadAheadSize) {
+        this.coldReadAheadSize = coldReadAheadSize;
+    }
+
     public int getAccessMessageInMemoryMaxRatio() {
         return accessMessageInMemoryMaxRatio;
     }
@@ -465,6 +662,22 @@ public class MessageStoreConfig {
         this.messageIndexEnable = messageIndexEnable;
     }
 
+    public int getIndexShardNum() {
+        return indexShardNum;
+    }
+
+    public void setIndexShardNum(int indexShardNum) {
+        this.indexShardNum = indexShardNum;
+    }
+
+    public int getIndexBloomBitsPerKey() {
+        return indexBloomBitsPerKey;
+    }
+
+    public void setIndexBloomBitsPerKey(int indexBloomBitsPerKey) {
+        this.indexBloomBitsPerKey = indexBloomBitsPerKey;
+    }
+
     public int getMaxHashSlotNum() {
         return maxHashSlotNum;
     }
@@ -633,6 +846,22 @@ public class MessageStoreConfig {
         this.flushLeastPagesWhenWarmMapedFile = flushLeastPagesWhenWarmMapedFile;
     }
 
+    public int getAllocateMappedFileAheadNum() {
+        return allocateMappedFileAheadNum;
+    }
+
+    public void setAllocateMappedFileAheadNum(int allocateMappedFileAheadNum) {
+        this.allocateMappedFileAheadNum = allocateMappedFileAheadNum;
+    }
+
+    public int getAllocateMappedFileThreadNum() {
+        return allocateMappedFileThreadNum;
+    }
+
+    public void setAllocateMappedFileThreadNum(int allocateMappedFileThreadNum) {
+        this.allocateMappedFileThreadNum = allocateMappedFileThreadNum;
+    }
+
     public boolean isOffsetCheckInSlave() {
         return offsetCheckInSlave;
     }
@@ -672,6 +901,36 @@ public class MessageStoreConfig {
         this.transientStorePoolSize = transientStorePoolSize;
     }
 
+    /**
+     * Enable the direct IO write engine only if commitLogDirectIOEnable is true and the transient store pool is
+     * enabled, whose buffers the engine writes from
+     *
+     * @return <tt>true</tt> or <tt>false</tt>
+     */
+    public boolean isCommitLogDirectIOEnable() {
+        return commitLogDirectIOEnable && isTransientStorePoolEnable();
+    }
+
+    public void setCommitLogDirectIOEnable(boolean commitLogDirectIOEnable) {
+        this.commitLogDirectIOEnable = commitLogDirectIOEnable;
+    }
+
+    public int getDirectIOReadCacheBlockSize() {
+        return directIOReadCacheBlockSize;
+    }
+
+    public void setDirectIOReadCacheBlockSize(int directIOReadCacheBlockSize) {
+        this.directIOReadCacheBlockSize = directIOReadCacheBlockSize;
+    }
+
+    public int getDirectIOReadCacheBlockNum() {
+        return directIOReadCacheBlockNum;
+    }
+
+    public void setDirectIOReadCacheBlockNum(int directIOReadCacheBlockNum) {
+        this.directIOReadCacheBlockNum = directIOReadCacheBlockNum;
+    }
+
     public int getCommitIntervalCommitLog() {
         return commitIntervalCommitLog;
     }
@@ -696,6 +955,86 @@ public class MessageStoreConfig {
         this.useReentrantLockWhenPutMessage = useReentrantLockWhenPutMessage;
     }
 
+    public boolean isEnableReservedSlotAppend() {
+        return enableReservedSlotAppend;
+    }
+
+    public void setEnableReservedSlotAppend(boolean enableReservedSlotAppend) {
+        this.enableReservedSlotAppend = enableReservedSlotAppend;
+    }
+
+    public boolean isEnablePutMessageCombine() {
+        return enablePutMessageCombine;
+    }
+
+    public void setEnablePutMessageCombine(boolean enablePutMessageCombine) {
+        this.enablePutMessageCombine = enablePutMessageCombine;
+    }
+
+    public int getPutMessageCombineMaxNum() {
+        return putMessageCombineMaxNum;
+    }
+
+    public void setPutMessageCombineMaxNum(int putMessageCombineMaxNum) {
+        this.putMessageCombineMaxNum = putMessageCombineMaxNum;
+    }
+
+    public boolean isEnableAdaptiveFlush() {
+        return enableAdaptiveFlush;
+    }
+
+    public void setEnableAdaptiveFlush(boolean enableAdaptiveFlush) {
+        this.enableAdaptiveFlush = enableAdaptiveFlush;
+    }
+
+    public int getAdaptiveFlushTargetLatency() {
+        return adaptiveFlushTargetLatency;
+    }
+
+    public void setAdaptiveFlushTargetLatency(int adaptiveFlushTargetLatency) {
+        this.adaptiveFlushTargetLatency = adaptiveFlushTargetLatency;
+    }
+
+    public boolean isEnableDirectBatchAppend() {
+        return enableDirectBatchAppend;
+    }
+
+    public void setEnableDirectBatchAppend(boolean enableDirectBatchAppend) {
+        this.enableDirectBatchAppend = enableDirectBatchAppend;
+    }
+
+    public boolean isEnableParallelDispatch() {
+        return enableParallelDispatch;
+    }
+
+    public void setEnableParallelDispatch(boolean enableParallelDispatch) {
+        this.enableParallelDispatch = enableParallelDispatch;
+    }
+
+    public int getDispatchDecodeThreadNum() {
+        return dispatchDecodeThreadNum;
+    }
+
+    public void setDispatchDecodeThreadNum(int dispatchDecodeThreadNum) {
+        this.dispatchDecodeThreadNum = dispatchDecodeThreadNum;
+    }
+
+    public int getDispatchConsumeQueueLaneNum() {
+        return dispatchConsumeQueueLaneNum;
+    }
+
+    public void setDispatchConsumeQueueLaneNum(int dispatchConsumeQueueLaneNum) {
+        this.dispatchConsumeQueueLaneNum = dispatchConsumeQueueLaneNum;
+    }
+
+    public int getDispatchBatchMaxNum() {
+        return dispatchBatchMaxNum;
+    }
+
+    public void setDispatchBatchMaxNum(int dispatchBatchMaxNum) {
+        this.dispatchBatchMaxNum = dispatchBatchMaxNum;
+    }
+
     public int getCommitCommitLogLeastPages() {
         return commitCommitLogLeastPages;
     }
@@ -822,4 +1161,60 @@ public class MessageStoreConfig {
     public void setScheduleAsyncDeliverMaxResendNum2Blocked(int scheduleAsyncDeliverMaxResendNum2Blocked) {
         this.scheduleAsyncDeliverMaxResendNum2Blocked = scheduleAsyncDeliverMaxResendNum2Blocked;
     }
+
+    public int getScheduleDeliverBatchNum() {
+        return scheduleDeliverBatchNum;
+    }
+
+    public void setScheduleDeliverBatchNum(int scheduleDeliverBatchNum) {
+        this.scheduleDeliverBatchNum = scheduleDeliverBatchNum;
+    }
+
+    public boolean isTimerWheelEnable() {
+        return timerWheelEnable;
+    }
+
+    public void setTimerWheelEnable(boolean timerWheelEnable) {
+        this.timerWheelEnable = timerWheelEnable;
+    }
+
+    public int getTimerPrecisionMs() {
+        return timerPrecisionMs;
+    }
+
+    public void setTimerPrecisionMs(int timerPrecisionMs) {
+        this.timerPrecisionMs = timerPrecisionMs;
+    }
+
+    public int getTimerWheelSlotNum() {
+        return timerWheelSlotNum;
+    }
+
+    public void setTimerWheelSlotNum(int timerWheelSlotNum) {
+        this.timerWheelSlotNum = timerWheelSlotNum;
+    }
+
+    public int getMappedFileSizeTimerLog() {
+        return mappedFileSizeTimerLog;
+    }
+
+    public void setMappedFileSizeTimerLog(int mappedFileSizeTimerLog) {
+        this.mappedFileSizeTimerLog = mappedFileSizeTimerLog;
+    }
+
+    public int getTimerFlushIntervalMs() {
+        return timerFlushIntervalMs;
+    }
+
+    public void setTimerFlushIntervalMs(int timerFlushIntervalMs) {
+        this.timerFlushIntervalMs = timerFlushIntervalMs;
+    }
+
+    public int getTimerDeliverBatchNum() {
+        return timerDeliverBatchNum;
+    }
+
+    public void setTimerDeliverBatchNum(int timerDeliverBatchNum) {
+        this.timerDeliverBatchNum = timerDeliverBatchNum;
+    }
 }
@@ -407,6 +407,8 @@ public class DLedgerCommitLog extends CommitLog {
 
                 msg.setTopic(topic);
                 msg.setQueueId(queueId);
+            } else if (this.defaultMessageStore.getMessageStoreConfig().isTimerWheelEnable()) {
+                this.transformTimerMessage(msg);
             }
         }
 
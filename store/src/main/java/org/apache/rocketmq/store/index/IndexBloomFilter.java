@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.store.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.logging.InternalLogger;
+import org.apache.rocketmq.logging.InternalLoggerFactory;
+import org.apache.rocketmq.store.MappedFile;
+
+/**
+ * Bloom summary of the keys put into one {@link IndexFile}, so a query skips the files which cannot hold the key
+ * without touching their hash slots. It is kept in a file next to the index file and written through the mapped
+ * buffer, by one writer, the thread building the index file. The file is mapped directly rather than by
+ * {@link MappedFile}, which takes the file name for an offset.
+ * <p/>
+ * Layout: magic code(4), hash number(4), word number(4), reserved(4), then the bits in words of 8 bytes.
+ */
+public class IndexBloomFilter {
+    private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.STORE_LOGGER_NAME);
+
+    public static final String BLOOM_FILE_SUFFIX = ".bloom";
+    public static final int HEADER_SIZE = 16;
+    private static final int MAGIC_CODE = 0xB100F117;
+
+    private final File file;
+    private final MappedByteBuffer byteBuffer;
+    private final long bitNum;
+    private final int hashNum;
+
+    private IndexBloomFilter(final File file, final MappedByteBuffer byteBuffer, final int hashNum,
+        final int wordNum) {
+        this.file = file;
+        this.byteBuffer = byteBuffer;
+        this.bitNum = (long) wordNum * 64;
+        this.hashNum = hashNum;
+    }
+
+    /**
+     * Create an empty summary for {@code keyNum} keys.
+     */
+    public static IndexBloomFilter create(final String fileName, final int keyNum,
+        final int bitsPerKey) throws IOException {
+        int wordNum = (int) Math.min(Math.max(1, ((long) keyNum * bitsPerKey + 63) / 64),
+            (Integer.MAX_VALUE - HEADER_SIZE) / 8);
+        // the number of hash functions which minimizes the false positive rate, ln2 * m / n
+        int hashNum = Math.max(1, (int) Math.round(bitsPerKey * Math.log(2)));
+
+        File file = new File(fileName);
+        MappedFile.ensureDirOK(file.getParent());
+        MappedByteBuffer byteBuffer = map(file, HEADER_SIZE + wordNum * 8);
+        byteBuffer.putInt(4, hashNum);
+        byteBuffer.putInt(8, wordNum);
+        // the magic code last, a summary half created is never taken
+        byteBuffer.putInt(0, MAGIC_CODE);
+        return new IndexBloomFilter(file, byteBuffer, hashNum, wordNum);
+    }
+
+    /**
+     * @return the summary kept in the file, null if there is none
+     */
+    public static IndexBloomFilter load(final String fileName) throws IOException {
+        File file = new File(fileName);
+        if (!file.exists() || file.length() < HEADER_SIZE) {
+            return null;
+        }
+
+        MappedByteBuffer byteBuffer = map(file, (int) file.length());
+        int hashNum = byteBuffer.getInt(4);
+        int wordNum = byteBuffer.getInt(8);
+        if (byteBuffer.getInt(0) != MAGIC_CODE || hashNum <= 0 || wordNum <= 0
+            || HEADER_SIZE + (long) wordNum * 8 != file.length()) {
+            log.warn("index bloom file {} is broken, ignore it", fileName);
+            MappedFile.clean(byteBuffer);
+            return null;
+        }
+        return new IndexBloomFilter(file, byteBuffer, hashNum, wordNum);
+    }
+
+    /**
+     * The mapping stays valid after the channel is closed.
+     */
+    private static MappedByteBuffer map(final File file, final int size) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    public void put(final String key) {
+        long hash = mix(key.hashCode());
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        for (int i = 0; i < this.hashNum; i++) {
+            long bit = ((hash1 + (long) i * hash2) & Long.MAX_VALUE) % this.bitNum;
+            int index = HEADER_SIZE + (int) (bit >>> 6) * 8;
+            long value = this.byteBuffer.getLong(index);
+            long mask = 1L << bit;
+            if ((value & mask) == 0) {
+                this.byteBuffer.putLong(index, value | mask);
+            }
+        }
+    }
+
+    public boolean mightContain(final String key) {
+        long hash = mix(key.hashCode());
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        for (int i = 0; i < this.hashNum; i++) {
+            long bit = ((hash1 + (long) i * hash2) & Long.MAX_VALUE) % this.bitNum;
+            if ((this.byteBuffer.getLong(HEADER_SIZE + (int) (bit >>> 6) * 8) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void flush() {
+        this.byteBuffer.force();
+    }
+
+    /**
+     * Unmap and delete the file, called once its index file is destroyed, so no one reads the summary any more.
+     */
+    public boolean destroy() {
+        MappedFile.clean(this.byteBuffer);
+        boolean result = this.file.delete();
+        log.info("delete index bloom file {} {}", this.file.getPath(), result ? "OK" : "Failed");
+        return result;
+    }
+
+    /**
+     * Spread the 32 bits hash code to 64 bits, the finalizer of MurmurHash3.
+     */
+    private static long mix(final int hashCode) {
+        long h = hashCode;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
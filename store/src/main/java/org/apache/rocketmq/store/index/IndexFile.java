@@ -35,15 +35,28 @@ public class IndexFile {
     private final MappedFile mappedFile;
     private final MappedByteBuffer mappedByteBuffer;
     private final IndexHeader indexHeader;
+    /**
+     * Kept in {@link IndexBloomFilter#BLOOM_FILE_SUFFIX} file next to the index file, null if there is none.
+     */
+    private IndexBloomFilter bloomFilter;
 
     public IndexFile(final String fileName, final int hashSlotNum, final int indexNum,
         final long endPhyOffset, final long endTimestamp) throws IOException {
+        this(fileName, hashSlotNum, indexNum, endPhyOffset, endTimestamp, 0);
+    }
+
+    public IndexFile(final String fileName, final int hashSlotNum, final int indexNum,
+        final long endPhyOffset, final long endTimestamp, final int bloomBitsPerKey) throws IOException {
         int fileTotalSize =
             IndexHeader.INDEX_HEADER_SIZE + (hashSlotNum * hashSlotSize) + (indexNum * indexSize);
         this.mappedFile = new MappedFile(fileName, fileTotalSize);
         this.mappedByteBuffer = this.mappedFile.getMappedByteBuffer();
         this.hashSlotNum = hashSlotNum;
         this.indexNum = indexNum;
+        if (bloomBitsPerKey > 0) {
+            this.bloomFilter = IndexBloomFilter.create(fileName + IndexBloomFilter.BLOOM_FILE_SUFFIX, indexNum,
+                bloomBitsPerKey);
+        }
 
         ByteBuffer byteBuffer = this.mappedByteBuffer.slice();
         this.indexHeader = new IndexHeader(byteBuffer);
@@ -65,12 +78,21 @@ public class IndexFile {
 
     public void load() {
         this.indexHeader.load();
+        try {
+            this.bloomFilter = IndexBloomFilter.load(this.getFileName() + IndexBloomFilter.BLOOM_FILE_SUFFIX);
+        } catch (IOException e) {
+            log.warn("load index bloom file of " + this.getFileName() + " failed, query without it", e);
+        }
     }
 
     public void flush() {
         long beginTime = System.currentTimeMillis();
         if (this.mappedFile.hold()) {
             this.indexHeader.updateByteBuffer();
+            // the filter must be durable before the index counts its keys, or a reload may skip indexed keys
+            if (this.bloomFilter != null) {
+                this.bloomFilter.flush();
+            }
             this.mappedByteBuffer.force();
             this.mappedFile.release();
             log.info("flush index file elapsed time(ms) " + (System.currentTimeMillis() - beginTime));
@@ -82,7 +104,11 @@ public class IndexFile {
     }
 
     public boolean destroy(final long intervalForcibly) {
-        return this.mappedFile.destroy(intervalForcibly);
+        boolean result = this.mappedFile.destroy(intervalForcibly);
+        if (result && this.bloomFilter != null) {
+            this.bloomFilter.destroy();
+        }
+        return result;
     }
 
     public boolean putKey(final String key, final long phyOffset, final long storeTimestamp) {
@@ -93,6 +119,11 @@ public class IndexFile {
 
             try {
 
+                // before the slot is updated, so the key is never visible while the summary misses it
+                if (this.bloomFilter != null) {
+                    this.bloomFilter.put(key);
+                }
+
                 int slotValue = this.mappedByteBuffer.getInt(absSlotPos);
                 if (slotValue <= invalidIndex || slotValue > this.indexHeader.getIndexCount()) {
                     slotValue = invalidIndex;
@@ -165,6 +196,14 @@ public class IndexFile {
         return this.indexHeader.getEndPhyOffset();
     }
 
+    public boolean hasBloomFilter() {
+        return this.bloomFilter != null;
+    }
+
+    public boolean mightContain(final String key) {
+        return this.bloomFilter == null || this.bloomFilter.mightContain(key);
+    }
+
     public boolean isTimeMatched(final long begin, final long end) {
         boolean result = begin < this.indexHeader.getBeginTimestamp() && end > this.indexHeader.getEndTimestamp();
         result = result || (begin >= this.indexHeader.getBeginTimestamp() && begin <= this.indexHeader.getEndTimestamp());
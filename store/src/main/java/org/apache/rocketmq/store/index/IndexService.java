@@ -19,12 +19,16 @@ package org.apache.rocketmq.store.index;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.apache.rocketmq.common.UtilAll;
 import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.common.running.RunningStats;
 import org.apache.rocketmq.logging.InternalLogger;
 import org.apache.rocketmq.logging.InternalLoggerFactory;
 import org.apache.rocketmq.common.message.MessageConst;
@@ -45,6 +49,28 @@ public class IndexService {
     private final String storePath;
     private final ArrayList<IndexFile> indexFileList = new ArrayList<IndexFile>();
     private final ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+    private final int bloomBitsPerKey;
+
+    /**
+     * Keys are hashed over the shards, each of which writes its own index file guarded by its own lock, so the
+     * shards can be built by different threads. The files of all the shards are kept in {@link #indexFileList} in
+     * the order of creation. The files of shard 0 are right in the index directory, the same as the ones not sharded,
+     * and the files of the other shards are in the sub directory named by the shard.
+     */
+    private final int shardNum;
+    private final Object[] shardLocks;
+    private final IndexFile[] activeIndexFiles;
+    /**
+     * Begin timestamp of the last index file flushed after written full, per shard.
+     */
+    private final long[] flushedBeginTimestamps;
+
+    /**
+     * Lookups of index files with bloom summary, rejected by the summary, and passed but found nothing in the file.
+     */
+    private final LongAdder bloomNegativeTimes = new LongAdder();
+    private final LongAdder bloomPositiveTimes = new LongAdder();
+    private final LongAdder bloomFalsePositiveTimes = new LongAdder();
 
     public IndexService(final DefaultMessageStore store) {
         this.defaultMessageStore = store;
@@ -52,22 +78,33 @@ public class IndexService {
         this.indexNum = store.getMessageStoreConfig().getMaxIndexNum();
         this.storePath =
             StorePathConfigHelper.getStorePathIndex(store.getMessageStoreConfig().getStorePathRootDir());
+        this.bloomBitsPerKey = store.getMessageStoreConfig().getIndexBloomBitsPerKey();
+        this.shardNum = Math.max(1, store.getMessageStoreConfig().getIndexShardNum());
+        this.shardLocks = new Object[this.shardNum];
+        for (int i = 0; i < this.shardNum; i++) {
+            this.shardLocks[i] = new Object();
+        }
+        this.activeIndexFiles = new IndexFile[this.shardNum];
+        this.flushedBeginTimestamps = new long[this.shardNum];
     }
 
     public boolean load(final boolean lastExitOK) {
-        File dir = new File(this.storePath);
-        File[] files = dir.listFiles();
-        if (files != null) {
-            // ascending order
-            Arrays.sort(files);
+        List<File> files = this.listIndexFiles();
+        if (!files.isEmpty()) {
             for (File file : files) {
+                if (file.getName().endsWith(IndexBloomFilter.BLOOM_FILE_SUFFIX)) {
+                    // loaded with its index file
+                    continue;
+                }
                 try {
                     IndexFile f = new IndexFile(file.getPath(), this.hashSlotNum, this.indexNum, 0, 0);
                     f.load();
 
                     if (!lastExitOK) {
-                        if (f.getEndTimestamp() > this.defaultMessageStore.getStoreCheckpoint()
-                            .getIndexMsgTimestamp()) {
+                        long indexMsgTimestamp = this.defaultMessageStore.getStoreCheckpoint().getIndexMsgTimestamp();
+                        // the checkpoint of shards is where the files begin, see updateFlushedTimestamp
+                        if (this.shardNum == 1 ? f.getEndTimestamp() > indexMsgTimestamp
+                            : f.getBeginTimestamp() >= indexMsgTimestamp) {
                             f.destroy(0);
                             continue;
                         }
@@ -75,6 +112,12 @@ public class IndexService {
 
                     log.info("load index file OK, " + f.getFileName());
                     this.indexFileList.add(f);
+
+                    // the last file of a shard goes on being written
+                    int shard = parseShard(f.getFileName());
+                    if (shard < this.shardNum) {
+                        this.activeIndexFiles[shard] = f;
+                    }
                 } catch (IOException e) {
                     log.error("load file {} error", file, e);
                     return false;
@@ -109,7 +152,7 @@ public class IndexService {
             List<IndexFile> fileList = new ArrayList<IndexFile>();
             for (int i = 0; i < (files.length - 1); i++) {
                 IndexFile f = (IndexFile) files[i];
-                if (f.getEndPhyOffset() < offset) {
+                if (f.getEndPhyOffset() < offset && !this.isActive(f)) {
                     fileList.add(f);
                 } else {
                     break;
@@ -147,6 +190,11 @@ public class IndexService {
                 f.destroy(1000 * 3);
             }
             this.indexFileList.clear();
+            for (int i = 0; i < this.shardNum; i++) {
+                synchronized (this.shardLocks[i]) {
+                    this.activeIndexFiles[i] = null;
+                }
+            }
         } catch (Exception e) {
             log.error("destroy exception", e);
         } finally {
@@ -160,23 +208,38 @@ public class IndexService {
         long indexLastUpdateTimestamp = 0;
         long indexLastUpdatePhyoffset = 0;
         maxNum = Math.min(maxNum, this.defaultMessageStore.getMessageStoreConfig().getMaxMsgsNumBatch());
+        final String idxKey = buildKey(topic, key);
         try {
             this.readWriteLock.readLock().lock();
             if (!this.indexFileList.isEmpty()) {
-                for (int i = this.indexFileList.size(); i > 0; i--) {
-                    IndexFile f = this.indexFileList.get(i - 1);
-                    boolean lastFile = i == this.indexFileList.size();
-                    if (lastFile) {
+                // the shards are built apart, so the index is complete only up to the slowest one
+                for (int i = 0; i < this.shardNum; i++) {
+                    IndexFile f = this.activeIndexFiles[i];
+                    if (f != null && (indexLastUpdatePhyoffset == 0 || f.getEndPhyOffset() < indexLastUpdatePhyoffset)) {
                         indexLastUpdateTimestamp = f.getEndTimestamp();
                         indexLastUpdatePhyoffset = f.getEndPhyOffset();
                     }
+                }
 
+                for (int i = this.indexFileList.size(); i > 0; i--) {
+                    IndexFile f = this.indexFileList.get(i - 1);
                     if (f.isTimeMatched(begin, end)) {
-
-                        f.selectPhyOffset(phyOffsets, buildKey(topic, key), maxNum, begin, end);
+                        if (!f.hasBloomFilter()) {
+                            f.selectPhyOffset(phyOffsets, idxKey, maxNum, begin, end);
+                        } else if (!f.mightContain(idxKey)) {
+                            this.bloomNegativeTimes.increment();
+                        } else {
+                            this.bloomPositiveTimes.increment();
+                            int size = phyOffsets.size();
+                            f.selectPhyOffset(phyOffsets, idxKey, maxNum, begin, end);
+                            if (phyOffsets.size() == size && size < maxNum) {
+                                this.bloomFalsePositiveTimes.increment();
+                            }
+                        }
                     }
 
-                    if (f.getBeginTimestamp() < begin) {
+                    // the files of shards are not ordered by time
+                    if (this.shardNum == 1 && f.getBeginTimestamp() < begin) {
                         break;
                     }
 
@@ -199,65 +262,114 @@ public class IndexService {
     }
 
     public void buildIndex(DispatchRequest req) {
-        IndexFile indexFile = retryGetAndCreateIndexFile();
-        if (indexFile != null) {
-            long endPhyOffset = indexFile.getEndPhyOffset();
-            DispatchRequest msg = req;
-            String topic = msg.getTopic();
-            String keys = msg.getKeys();
-            if (msg.getCommitLogOffset() < endPhyOffset) {
-                return;
-            }
+        this.buildIndex(req, -1);
+    }
 
-            final int tranType = MessageSysFlag.getTransactionValue(msg.getSysFlag());
-            switch (tranType) {
-                case MessageSysFlag.TRANSACTION_NOT_TYPE:
-                case MessageSysFlag.TRANSACTION_PREPARED_TYPE:
-                case MessageSysFlag.TRANSACTION_COMMIT_TYPE:
-                    break;
-                case MessageSysFlag.TRANSACTION_ROLLBACK_TYPE:
-                    return;
-            }
+    /**
+     * Build the index of the keys falling into the shard, -1 for all the shards.
+     */
+    public void buildIndex(DispatchRequest req, int shard) {
+        DispatchRequest msg = req;
+        String topic = msg.getTopic();
+        String keys = msg.getKeys();
+
+        final int tranType = MessageSysFlag.getTransactionValue(msg.getSysFlag());
+        switch (tranType) {
+            case MessageSysFlag.TRANSACTION_NOT_TYPE:
+            case MessageSysFlag.TRANSACTION_PREPARED_TYPE:
+            case MessageSysFlag.TRANSACTION_COMMIT_TYPE:
+                break;
+            case MessageSysFlag.TRANSACTION_ROLLBACK_TYPE:
+                return;
+        }
 
-            if (req.getUniqKey() != null) {
-                indexFile = putKey(indexFile, msg, buildKey(topic, req.getUniqKey()));
-                if (indexFile == null) {
-                    log.error("putKey error commitlog {} uniqkey {}", req.getCommitLogOffset(), req.getUniqKey());
-                    return;
-                }
+        if (req.getUniqKey() != null) {
+            if (!putKey(msg, buildKey(topic, req.getUniqKey()), shard)) {
+                log.error("putKey error commitlog {} uniqkey {}", req.getCommitLogOffset(), req.getUniqKey());
+                return;
             }
+        }
 
-            if (keys != null && keys.length() > 0) {
-                String[] keyset = keys.split(MessageConst.KEY_SEPARATOR);
-                for (int i = 0; i < keyset.length; i++) {
-                    String key = keyset[i];
-                    if (key.length() > 0) {
-                        indexFile = putKey(indexFile, msg, buildKey(topic, key));
-                        if (indexFile == null) {
-                            log.error("putKey error commitlog {} uniqkey {}", req.getCommitLogOffset(), req.getUniqKey());
-                            return;
-                        }
+        if (keys != null && keys.length() > 0) {
+            String[] keyset = keys.split(MessageConst.KEY_SEPARATOR);
+            for (int i = 0; i < keyset.length; i++) {
+                String key = keyset[i];
+                if (key.length() > 0) {
+                    if (!putKey(msg, buildKey(topic, key), shard)) {
+                        log.error("putKey error commitlog {} uniqkey {}", req.getCommitLogOffset(), req.getUniqKey());
+                        return;
                     }
                 }
             }
-        } else {
-            log.error("build index error, stop building index");
         }
     }
 
-    private IndexFile putKey(IndexFile indexFile, DispatchRequest msg, String idxKey) {
-        for (boolean ok = indexFile.putKey(idxKey, msg.getCommitLogOffset(), msg.getStoreTimestamp()); !ok; ) {
-            log.warn("Index file [" + indexFile.getFileName() + "] is full, trying to create another one");
+    private boolean putKey(DispatchRequest msg, String idxKey, int shard) {
+        int keyShard = this.shardOf(idxKey);
+        if (shard >= 0 && shard != keyShard) {
+            return true;
+        }
 
-            indexFile = retryGetAndCreateIndexFile();
-            if (null == indexFile) {
-                return null;
+        synchronized (this.shardLocks[keyShard]) {
+            IndexFile indexFile = retryGetAndCreateIndexFile(keyShard);
+            if (indexFile == null) {
+                log.error("build index error, stop building index");
+                return false;
+            }
+            if (msg.getCommitLogOffset() < indexFile.getEndPhyOffset()) {
+                return true;
             }
 
-            ok = indexFile.putKey(idxKey, msg.getCommitLogOffset(), msg.getStoreTimestamp());
+            for (boolean ok = indexFile.putKey(idxKey, msg.getCommitLogOffset(), msg.getStoreTimestamp()); !ok; ) {
+                log.warn("Index file [" + indexFile.getFileName() + "] is full, trying to create another one");
+
+                indexFile = retryGetAndCreateIndexFile(keyShard);
+                if (null == indexFile) {
+                    return false;
+                }
+
+                ok = indexFile.putKey(idxKey, msg.getCommitLogOffset(), msg.getStoreTimestamp());
+            }
         }
 
-        return indexFile;
+        return true;
+    }
+
+    public int getShardNum() {
+        return shardNum;
+    }
+
+    public long getBloomNegativeTimes() {
+        return bloomNegativeTimes.sum();
+    }
+
+    public long getBloomPositiveTimes() {
+        return bloomPositiveTimes.sum();
+    }
+
+    public long getBloomFalsePositiveTimes() {
+        return bloomFalsePositiveTimes.sum();
+    }
+
+    /**
+     * Rate of the lookups passed by the bloom summaries while the keys are absent. Keys absent only in the time
+     * range queried are counted in as well, so it is an upper bound.
+     */
+    public double getBloomFalsePositiveRate() {
+        long falsePositiveTimes = this.bloomFalsePositiveTimes.sum();
+        long negativeTimes = falsePositiveTimes + this.bloomNegativeTimes.sum();
+        return negativeTimes == 0 ? 0 : (double) falsePositiveTimes / negativeTimes;
+    }
+
+    public void buildRunningStats(HashMap<String, String> stats) {
+        stats.put(RunningStats.indexBloomNegativeTimes.name(), String.valueOf(this.getBloomNegativeTimes()));
+        stats.put(RunningStats.indexBloomPositiveTimes.name(), String.valueOf(this.getBloomPositiveTimes()));
+        stats.put(RunningStats.indexBloomFalsePositiveTimes.name(), String.valueOf(this.getBloomFalsePositiveTimes()));
+        stats.put(RunningStats.indexBloomFalsePositiveRate.name(), String.format("%.4f", this.getBloomFalsePositiveRate()));
+    }
+
+    private int shardOf(final String idxKey) {
+        return this.shardNum == 1 ? 0 : Math.abs(idxKey.hashCode() % this.shardNum);
     }
 
     /**
@@ -266,10 +378,16 @@ public class IndexService {
      * @return {@link IndexFile} or null on failure.
      */
     public IndexFile retryGetAndCreateIndexFile() {
+        synchronized (this.shardLocks[0]) {
+            return this.retryGetAndCreateIndexFile(0);
+        }
+    }
+
+    private IndexFile retryGetAndCreateIndexFile(int shard) {
         IndexFile indexFile = null;
 
         for (int times = 0; null == indexFile && times < MAX_TRY_IDX_CREATE; times++) {
-            indexFile = this.getAndCreateLastIndexFile();
+            indexFile = this.getAndCreateLastIndexFile(shard);
             if (null != indexFile)
                 break;
 
@@ -290,15 +408,23 @@ public class IndexService {
     }
 
     public IndexFile getAndCreateLastIndexFile() {
+        synchronized (this.shardLocks[0]) {
+            return this.getAndCreateLastIndexFile(0);
+        }
+    }
+
+    /**
+     * Must be called with the lock of the shard held.
+     */
+    private IndexFile getAndCreateLastIndexFile(int shard) {
         IndexFile indexFile = null;
         IndexFile prevIndexFile = null;
         long lastUpdateEndPhyOffset = 0;
         long lastUpdateIndexTimestamp = 0;
 
         {
-            this.readWriteLock.readLock().lock();
-            if (!this.indexFileList.isEmpty()) {
-                IndexFile tmp = this.indexFileList.get(this.indexFileList.size() - 1);
+            IndexFile tmp = this.activeIndexFiles[shard];
+            if (tmp != null) {
                 if (!tmp.isWriteFull()) {
                     indexFile = tmp;
                 } else {
@@ -307,24 +433,29 @@ public class IndexService {
                     prevIndexFile = tmp;
                 }
             }
-
-            this.readWriteLock.readLock().unlock();
         }
 
         if (indexFile == null) {
             try {
                 String fileName =
                     this.storePath + File.separator
+                        + (shard > 0 ? shard + File.separator : "")
                         + UtilAll.timeMillisToHumanString(System.currentTimeMillis());
                 indexFile =
                     new IndexFile(fileName, this.hashSlotNum, this.indexNum, lastUpdateEndPhyOffset,
-                        lastUpdateIndexTimestamp);
-                this.readWriteLock.writeLock().lock();
-                this.indexFileList.add(indexFile);
+                        lastUpdateIndexTimestamp, this.bloomBitsPerKey);
             } catch (Exception e) {
                 log.error("getLastIndexFile exception ", e);
-            } finally {
-                this.readWriteLock.writeLock().unlock();
+            }
+
+            if (indexFile != null) {
+                this.readWriteLock.writeLock().lock();
+                try {
+                    this.indexFileList.add(indexFile);
+                    this.activeIndexFiles[shard] = indexFile;
+                } finally {
+                    this.readWriteLock.writeLock().unlock();
+                }
             }
 
             if (indexFile != null) {
@@ -351,7 +482,7 @@ public class IndexService {
         long indexMsgTimestamp = 0;
 
         if (f.isWriteFull()) {
-            indexMsgTimestamp = f.getEndTimestamp();
+            indexMsgTimestamp = this.shardNum == 1 ? f.getEndTimestamp() : this.updateFlushedTimestamp(f);
         }
 
         f.flush();
@@ -362,6 +493,80 @@ public class IndexService {
         }
     }
 
+    /**
+     * Where the index of shards is flushed up to for sure, the earliest of the begin timestamps of the last flushed
+     * full files. The files after them may be lost with the active ones, so they are all rebuilt after a crash.
+     *
+     * @return 0 if some shard has not flushed a full file yet
+     */
+    private long updateFlushedTimestamp(final IndexFile f) {
+        int shard = parseShard(f.getFileName());
+        synchronized (this.flushedBeginTimestamps) {
+            if (shard < this.shardNum && f.getBeginTimestamp() > this.flushedBeginTimestamps[shard]) {
+                this.flushedBeginTimestamps[shard] = f.getBeginTimestamp();
+            }
+            long timestamp = Long.MAX_VALUE;
+            for (long flushedBeginTimestamp : this.flushedBeginTimestamps) {
+                timestamp = Math.min(timestamp, flushedBeginTimestamp);
+            }
+            return timestamp;
+        }
+    }
+
+    private boolean isActive(final IndexFile f) {
+        for (int i = 0; i < this.shardNum; i++) {
+            synchronized (this.shardLocks[i]) {
+                if (this.activeIndexFiles[i] == f) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the index files of all the shards in ascending order of the creation time, by which they are named
+     */
+    private List<File> listIndexFiles() {
+        List<File> fileList = new ArrayList<File>();
+        File[] files = new File(this.storePath).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.isDirectory()) {
+                    fileList.add(file);
+                } else if (parseShardDir(file.getName()) > 0) {
+                    File[] shardFiles = file.listFiles();
+                    if (shardFiles != null) {
+                        Collections.addAll(fileList, shardFiles);
+                    }
+                }
+            }
+        }
+        Collections.sort(fileList, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                return o1.getName().compareTo(o2.getName());
+            }
+        });
+        return fileList;
+    }
+
+    private static int parseShard(final String fileName) {
+        File parent = new File(fileName).getParentFile();
+        return parent != null ? parseShardDir(parent.getName()) : 0;
+    }
+
+    /**
+     * @return the shard of the sub directory, 0 if it is not of a shard
+     */
+    private static int parseShardDir(final String dirName) {
+        try {
+            return Math.max(0, Integer.parseInt(dirName));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
     public void start() {
 
     }
@@ -16,8 +16,10 @@
  */
 package org.apache.rocketmq.store.schedule;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
@@ -28,7 +30,9 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 import org.apache.rocketmq.common.ConfigManager;
 import org.apache.rocketmq.common.MixAll;
 import org.apache.rocketmq.common.ThreadFactoryImpl;
@@ -72,15 +76,21 @@ public class ScheduleMessageService extends ConfigManager {
     private MessageStore writeMessageStore;
     private int maxDelayLevel;
     private boolean enableAsyncDeliver = false;
+    private int deliverBatchNum = 1;
     private ScheduledExecutorService handleExecutorService;
     private final Map<Integer /* level */, LinkedBlockingQueue<PutResultProcess>> deliverPendingTable =
         new ConcurrentHashMap<>(32);
+    private final ConcurrentMap<Integer /* level */, LongAdder/* delivered messages */> deliverTimesTable =
+        new ConcurrentHashMap<>(32);
+    private final ConcurrentMap<Integer /* level */, Long/* how late the messages are delivered */> deliverLagTable =
+        new ConcurrentHashMap<>(32);
 
     public ScheduleMessageService(final DefaultMessageStore defaultMessageStore) {
         this.defaultMessageStore = defaultMessageStore;
         this.writeMessageStore = defaultMessageStore;
         if (defaultMessageStore != null) {
             this.enableAsyncDeliver = defaultMessageStore.getMessageStoreConfig().isEnableScheduleAsyncDeliver();
+            this.deliverBatchNum = Math.max(1, defaultMessageStore.getMessageStoreConfig().getScheduleDeliverBatchNum());
         }
     }
 
@@ -110,6 +120,16 @@ public class ScheduleMessageService extends ConfigManager {
             String key = String.format("%s_%d", RunningStats.scheduleMessageOffset.name(), next.getKey());
             stats.put(key, value);
         }
+
+        for (Map.Entry<Integer, LongAdder> next : this.deliverTimesTable.entrySet()) {
+            String key = String.format("%s_%d", RunningStats.scheduleMessageDeliverTimes.name(), next.getKey());
+            stats.put(key, String.valueOf(next.getValue().sum()));
+        }
+
+        for (Map.Entry<Integer, Long> next : this.deliverLagTable.entrySet()) {
+            String key = String.format("%s_%d", RunningStats.scheduleMessageDeliverLag.name(), next.getKey());
+            stats.put(key, String.valueOf(next.getValue()));
+        }
     }
 
     private void updateOffset(int delayLevel, long offset) {
@@ -200,6 +220,22 @@ public class ScheduleMessageService extends ConfigManager {
         return maxDelayLevel;
     }
 
+    /**
+     * @return messages of the level delivered since start
+     */
+    public long getDeliverTimes(final int delayLevel) {
+        LongAdder deliverTimes = this.deliverTimesTable.get(delayLevel);
+        return deliverTimes != null ? deliverTimes.sum() : 0;
+    }
+
+    /**
+     * @return how late in milliseconds the level delivered its last due message, 0 if it is waiting for the next one
+     */
+    public long getDeliverLag(final int delayLevel) {
+        Long lag = this.deliverLagTable.get(delayLevel);
+        return lag != null ? lag : 0;
+    }
+
     @Override
     public String encode() {
         return this.encode(false);
@@ -295,6 +331,7 @@ public class ScheduleMessageService extends ConfigManager {
                 long num = Long.parseLong(value.substring(0, value.length() - 1));
                 long delayTimeMillis = tu * num;
                 this.delayLevelTable.put(level, delayTimeMillis);
+                this.deliverTimesTable.putIfAbsent(level, new LongAdder());
                 if (this.enableAsyncDeliver) {
                     this.deliverPendingTable.put(level, new LinkedBlockingQueue<>());
                 }
@@ -403,6 +440,7 @@ public class ScheduleMessageService extends ConfigManager {
             }
 
             long nextOffset = this.offset;
+            List<PutResultProcess> batch = new ArrayList<PutResultProcess>();
             try {
                 int i = 0;
                 ConsumeQueueExt.CqExtUnit cqExtUnit = new ConsumeQueueExt.CqExtUnit();
@@ -429,9 +467,12 @@ public class ScheduleMessageService extends ConfigManager {
 
                     long countdown = deliverTimestamp - now;
                     if (countdown > 0) {
-                        this.scheduleNextTimerTask(nextOffset, DELAY_FOR_A_WHILE);
+                        ScheduleMessageService.this.deliverLagTable.put(this.delayLevel, 0L);
+                        long failedOffset = this.syncDeliver(batch);
+                        this.scheduleNextTimerTask(failedOffset >= 0 ? failedOffset : nextOffset, DELAY_FOR_A_WHILE);
                         return;
                     }
+                    ScheduleMessageService.this.deliverLagTable.put(this.delayLevel, -countdown);
 
                     MessageExt msgExt = ScheduleMessageService.this.defaultMessageStore.lookMessageByOffset(offsetPy, sizePy);
                     if (msgExt == null) {
@@ -445,22 +486,35 @@ public class ScheduleMessageService extends ConfigManager {
                         continue;
                     }
 
-                    boolean deliverSuc;
                     if (ScheduleMessageService.this.enableAsyncDeliver) {
-                        deliverSuc = this.asyncDeliver(msgInner, msgExt.getMsgId(), nextOffset, offsetPy, sizePy);
+                        if (!this.asyncDeliver(msgInner, msgExt.getMsgId(), nextOffset, offsetPy, sizePy)) {
+                            this.scheduleNextTimerTask(nextOffset, DELAY_FOR_A_WHILE);
+                            return;
+                        }
                     } else {
-                        deliverSuc = this.syncDeliver(msgInner, msgExt.getMsgId(), nextOffset, offsetPy, sizePy);
-                    }
-
-                    if (!deliverSuc) {
-                        this.scheduleNextTimerTask(nextOffset, DELAY_FOR_A_WHILE);
-                        return;
+                        // put in flight together, waited for by the batch
+                        batch.add(this.deliverMessage(msgInner, msgExt.getMsgId(), nextOffset, offsetPy, sizePy, false));
+                        if (batch.size() >= ScheduleMessageService.this.deliverBatchNum) {
+                            long failedOffset = this.syncDeliver(batch);
+                            if (failedOffset >= 0) {
+                                this.scheduleNextTimerTask(failedOffset, DELAY_FOR_A_WHILE);
+                                return;
+                            }
+                        }
                     }
                 }
 
                 nextOffset = this.offset + (i / ConsumeQueue.CQ_STORE_UNIT_SIZE);
+                long failedOffset = this.syncDeliver(batch);
+                if (failedOffset >= 0) {
+                    nextOffset = failedOffset;
+                }
             } catch (Exception e) {
                 log.error("ScheduleMessageService, messageTimeup execute error, offset = {}", nextOffset, e);
+                long failedOffset = this.syncDeliver(batch);
+                if (failedOffset >= 0) {
+                    nextOffset = failedOffset;
+                }
             } finally {
                 bufferCQ.release();
             }
@@ -473,15 +527,25 @@ public class ScheduleMessageService extends ConfigManager {
                 this.delayLevel, offset), delay, TimeUnit.MILLISECONDS);
         }
 
-        private boolean syncDeliver(MessageExtBrokerInner msgInner, String msgId, long offset, long offsetPy,
-            int sizePy) {
-            PutResultProcess resultProcess = deliverMessage(msgInner, msgId, offset, offsetPy, sizePy, false);
-            PutMessageResult result = resultProcess.get();
-            boolean sendStatus = result != null && result.getPutMessageStatus() == PutMessageStatus.PUT_OK;
-            if (sendStatus) {
-                ScheduleMessageService.this.updateOffset(this.delayLevel, resultProcess.getNextOffset());
+        /**
+         * Wait for the puts of the batch in the order of offset. The ones after a failed put are delivered again
+         * from it.
+         *
+         * @return offset of the first message failed to put, -1 if none
+         */
+        private long syncDeliver(List<PutResultProcess> batch) {
+            try {
+                for (PutResultProcess resultProcess : batch) {
+                    PutMessageResult result = resultProcess.get();
+                    if (result == null || result.getPutMessageStatus() != PutMessageStatus.PUT_OK) {
+                        return resultProcess.getOffset();
+                    }
+                    ScheduleMessageService.this.updateOffset(this.delayLevel, resultProcess.getNextOffset());
+                }
+                return -1;
+            } finally {
+                batch.clear();
             }
-            return sendStatus;
         }
 
         private boolean asyncDeliver(MessageExtBrokerInner msgInner, String msgId, long offset, long offsetPy,
@@ -548,6 +612,11 @@ public class ScheduleMessageService extends ConfigManager {
                             pendingQueue.remove();
                             break;
                         case RUNNING:
+                            if (!isStarted()) {
+                                return;
+                            }
+                            // woken by the put result instead of polling it
+                            putResultProcess.waitProcessed(DELAY_FOR_A_WHILE);
                             break;
                         case EXCEPTION:
                             if (!isStarted()) {
@@ -584,6 +653,7 @@ public class ScheduleMessageService extends ConfigManager {
         private String msgId;
         private boolean autoResend = false;
         private CompletableFuture<PutMessageResult> future;
+        private CompletableFuture<Void> processed;
 
         private volatile int resendCount = 0;
         private volatile ProcessStatus status = ProcessStatus.RUNNING;
@@ -669,20 +739,32 @@ public class ScheduleMessageService extends ConfigManager {
         }
 
         public PutResultProcess thenProcess() {
-            this.future.thenAccept(result -> {
-                this.handleResult(result);
-            });
-
-            this.future.exceptionally(e -> {
-                log.error("ScheduleMessageService put message exceptionally, info: {}",
-                    PutResultProcess.this.toString(), e);
+            this.processed = this.future.handle((result, e) -> {
+                if (e != null) {
+                    log.error("ScheduleMessageService put message exceptionally, info: {}",
+                        PutResultProcess.this.toString(), e);
 
-                onException();
+                    onException();
+                } else {
+                    this.handleResult(result);
+                }
                 return null;
             });
             return this;
         }
 
+        /**
+         * Wait until the put result is handled, or the timeout elapses.
+         */
+        public void waitProcessed(long timeoutMillis) {
+            try {
+                this.processed.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ignored) {
+            } catch (InterruptedException | ExecutionException e) {
+                log.warn("ScheduleMessageService wait put result error, info: {}", this.toString(), e);
+            }
+        }
+
         private void handleResult(PutMessageResult result) {
             if (result != null && result.getPutMessageStatus() == PutMessageStatus.PUT_OK) {
                 onSuccess(result);
@@ -694,6 +776,10 @@ public class ScheduleMessageService extends ConfigManager {
 
         public void onSuccess(PutMessageResult result) {
             this.status = ProcessStatus.SUCCESS;
+            LongAdder deliverTimes = ScheduleMessageService.this.deliverTimesTable.get(this.delayLevel);
+            if (deliverTimes != null) {
+                deliverTimes.increment();
+            }
             if (ScheduleMessageService.this.defaultMessageStore.getMessageStoreConfig().isEnableScheduleMessageStats()) {
                 ScheduleMessageService.this.defaultMessageStore.getBrokerStatsManager().incQueueGetNums(MixAll.SCHEDULE_CONSUMER_GROUP, TopicValidator.RMQ_SYS_SCHEDULE_TOPIC, delayLevel - 1, result.getAppendMessageResult().getMsgNum());
                 ScheduleMessageService.this.defaultMessageStore.getBrokerStatsManager().incQueueGetSize(MixAll.SCHEDULE_CONSUMER_GROUP, TopicValidator.RMQ_SYS_SCHEDULE_TOPIC, delayLevel - 1, result.getAppendMessageResult().getWroteBytes());
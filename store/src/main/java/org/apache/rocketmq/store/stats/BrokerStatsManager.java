@@ -97,6 +97,7 @@ public class BrokerStatsManager {
         this.statsTable.put(Stats.BROKER_GET_NUMS, new StatsItemSet(Stats.BROKER_GET_NUMS, this.scheduledExecutorService, log));
         this.statsTable.put(Stats.GROUP_GET_FROM_DISK_NUMS, new StatsItemSet(Stats.GROUP_GET_FROM_DISK_NUMS, this.scheduledExecutorService, log));
         this.statsTable.put(Stats.GROUP_GET_FROM_DISK_SIZE, new StatsItemSet(Stats.GROUP_GET_FROM_DISK_SIZE, this.scheduledExecutorService, log));
+        this.statsTable.put(Stats.GROUP_GET_FROM_CACHE_SIZE, new StatsItemSet(Stats.GROUP_GET_FROM_CACHE_SIZE, this.scheduledExecutorService, log));
         this.statsTable.put(Stats.BROKER_GET_FROM_DISK_NUMS, new StatsItemSet(Stats.BROKER_GET_FROM_DISK_NUMS, this.scheduledExecutorService, log));
         this.statsTable.put(Stats.BROKER_GET_FROM_DISK_SIZE, new StatsItemSet(Stats.BROKER_GET_FROM_DISK_SIZE, this.scheduledExecutorService, log));
 
@@ -147,6 +148,8 @@ public class BrokerStatsManager {
         this.statsTable.get(Stats.QUEUE_GET_SIZE).delValueByPrefixKey(topic, "@");
         this.statsTable.get(Stats.SNDBCK_PUT_NUMS).delValueByPrefixKey(topic, "@");
         this.statsTable.get(Stats.GROUP_GET_LATENCY).delValueByInfixKey(topic, "@");
+        this.statsTable.get(Stats.GROUP_GET_FROM_DISK_SIZE).delValueByPrefixKey(topic, "@");
+        this.statsTable.get(Stats.GROUP_GET_FROM_CACHE_SIZE).delValueByPrefixKey(topic, "@");
         this.momentStatsItemSetFallSize.delValueByInfixKey(topic, "@");
         this.momentStatsItemSetFallTime.delValueByInfixKey(topic, "@");
     }
@@ -160,6 +163,8 @@ public class BrokerStatsManager {
         }
         this.statsTable.get(Stats.SNDBCK_PUT_NUMS).delValueBySuffixKey(group, "@");
         this.statsTable.get(Stats.GROUP_GET_LATENCY).delValueBySuffixKey(group, "@");
+        this.statsTable.get(Stats.GROUP_GET_FROM_DISK_SIZE).delValueBySuffixKey(group, "@");
+        this.statsTable.get(Stats.GROUP_GET_FROM_CACHE_SIZE).delValueBySuffixKey(group, "@");
         this.momentStatsItemSetFallSize.delValueBySuffixKey(group, "@");
         this.momentStatsItemSetFallTime.delValueBySuffixKey(group, "@");
     }
@@ -272,6 +277,17 @@ public class BrokerStatsManager {
         this.statsTable.get(Stats.GROUP_GET_LATENCY).addRTValue(statsKey, incValue, 1);
     }
 
+    public void incGroupGetFromDiskSize(final String group, final String topic, final int size) {
+        final String statsKey = buildStatsKey(topic, group);
+        this.statsTable.get(Stats.GROUP_GET_FROM_DISK_SIZE).addValue(statsKey, size, 1);
+        this.statsTable.get(Stats.BROKER_GET_FROM_DISK_SIZE).getAndCreateStatsItem(this.clusterName).getValue().add(size);
+    }
+
+    public void incGroupGetFromCacheSize(final String group, final String topic, final int size) {
+        final String statsKey = buildStatsKey(topic, group);
+        this.statsTable.get(Stats.GROUP_GET_FROM_CACHE_SIZE).addValue(statsKey, size, 1);
+    }
+
     public void incBrokerPutNums() {
         this.statsTable.get(Stats.BROKER_PUT_NUMS).getAndCreateStatsItem(this.clusterName).getValue().add(1);
     }
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store.tiered;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.logging.InternalLogger;
+import org.apache.rocketmq.logging.InternalLoggerFactory;
+import org.apache.rocketmq.store.MappedFile;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+
+/**
+ * Keep the segments as plain files under {@link MessageStoreConfig#getStorePathTiered()}, typically a larger and
+ * slower disk than the one of the commit log.
+ */
+public class LocalTieredStorageBackend implements TieredStorageBackend {
+    private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.STORE_LOGGER_NAME);
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int DEFAULT_MAX_OPEN_CHANNELS = 256;
+
+    /**
+     * The channels of the recently read segments, the least recently used one is closed beyond the max number.
+     */
+    private final LinkedHashMap<String, FileChannel> channelTable;
+    private Path rootPath;
+
+    public LocalTieredStorageBackend() {
+        this(DEFAULT_MAX_OPEN_CHANNELS);
+    }
+
+    LocalTieredStorageBackend(final int maxOpenChannels) {
+        this.channelTable = new LinkedHashMap<String, FileChannel>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, FileChannel> eldest) {
+                if (size() > maxOpenChannels) {
+                    closeChannel(eldest.getKey(), eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public void init(MessageStoreConfig messageStoreConfig) throws IOException {
+        MappedFile.ensureDirOK(messageStoreConfig.getStorePathTiered());
+        this.rootPath = Paths.get(messageStoreConfig.getStorePathTiered());
+    }
+
+    @Override
+    public void shutdown() {
+        synchronized (this.channelTable) {
+            for (Map.Entry<String, FileChannel> entry : this.channelTable.entrySet()) {
+                this.closeChannel(entry.getKey(), entry.getValue());
+            }
+            this.channelTable.clear();
+        }
+    }
+
+    @Override
+    public void upload(String key, File file) throws IOException {
+        Path target = this.toPath(key);
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(target.getFileName() + TEMP_SUFFIX);
+        Files.copy(file.toPath(), temp, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public int read(String key, long position, ByteBuffer byteBuffer) throws IOException {
+        try {
+            return this.openChannel(key).read(byteBuffer, position);
+        } catch (ClosedByInterruptException e) {
+            throw e;
+        } catch (ClosedChannelException e) {
+            // evicted by another reader meanwhile, open it again
+            return this.openChannel(key).read(byteBuffer, position);
+        }
+    }
+
+    private FileChannel openChannel(String key) throws IOException {
+        synchronized (this.channelTable) {
+            FileChannel fileChannel = this.channelTable.get(key);
+            if (fileChannel == null) {
+                fileChannel = FileChannel.open(this.toPath(key), StandardOpenOption.READ);
+                this.channelTable.put(key, fileChannel);
+            }
+            return fileChannel;
+        }
+    }
+
+    int getOpenChannelNum() {
+        synchronized (this.channelTable) {
+            return this.channelTable.size();
+        }
+    }
+
+    @Override
+    public List<String> list(String prefix) throws IOException {
+        List<String> keys = new ArrayList<>();
+        Path dir = this.toPath(prefix);
+        if (!Files.isDirectory(dir)) {
+            return keys;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.filter(path -> Files.isRegularFile(path) && !path.toString().endsWith(TEMP_SUFFIX))
+                .forEach(path -> keys.add(this.rootPath.relativize(path).toString().replace(File.separatorChar, '/')));
+        }
+        return keys;
+    }
+
+    @Override
+    public long size(String key) throws IOException {
+        return Files.size(this.toPath(key));
+    }
+
+    @Override
+    public long lastModified(String key) throws IOException {
+        return Files.getLastModifiedTime(this.toPath(key)).toMillis();
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        synchronized (this.channelTable) {
+            FileChannel fileChannel = this.channelTable.remove(key);
+            if (fileChannel != null) {
+                this.closeChannel(key, fileChannel);
+            }
+        }
+        Files.deleteIfExists(this.toPath(key));
+    }
+
+    private void closeChannel(String key, FileChannel fileChannel) {
+        try {
+            fileChannel.close();
+        } catch (IOException e) {
+            log.warn("close tiered segment " + key + " failed", e);
+        }
+    }
+
+    private Path toPath(String key) {
+        return this.rootPath.resolve(key.replace('/', File.separatorChar));
+    }
+}
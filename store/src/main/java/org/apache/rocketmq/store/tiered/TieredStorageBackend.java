@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store.tiered;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+
+/**
+ * Where the tiered store keeps the sealed segments, e.g. a slower local disk or an object store. Segments are
+ * immutable once uploaded and addressed by keys made of '/' separated names, such as
+ * {@code commitlog/00000000001073741824}.
+ * <p>
+ * Implementations need a public no-arg constructor, they are selected by
+ * {@link MessageStoreConfig#getTieredStoreBackendClass()}.
+ */
+public interface TieredStorageBackend {
+
+    void init(MessageStoreConfig messageStoreConfig) throws IOException;
+
+    void shutdown();
+
+    /**
+     * Store the content of the file under the key, the segment must not be visible before it is complete.
+     */
+    void upload(String key, File file) throws IOException;
+
+    /**
+     * Read from the segment at the position into the buffer.
+     *
+     * @return the number of bytes read, or -1 at the end of the segment
+     */
+    int read(String key, long position, ByteBuffer byteBuffer) throws IOException;
+
+    /**
+     * @return the keys of all the segments starting with the prefix
+     */
+    List<String> list(String prefix) throws IOException;
+
+    long size(String key) throws IOException;
+
+    /**
+     * @return the last modified time of the file the segment was uploaded from
+     */
+    long lastModified(String key) throws IOException;
+
+    void delete(String key) throws IOException;
+}
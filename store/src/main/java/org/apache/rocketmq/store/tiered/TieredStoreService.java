@@ -0,0 +1,481 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store.tiered;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import org.apache.rocketmq.common.ServiceThread;
+import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.logging.InternalLogger;
+import org.apache.rocketmq.logging.InternalLoggerFactory;
+import org.apache.rocketmq.store.ConsumeQueue;
+import org.apache.rocketmq.store.ConsumeQueueExt;
+import org.apache.rocketmq.store.DefaultMessageStore;
+import org.apache.rocketmq.store.GetMessageResult;
+import org.apache.rocketmq.store.GetMessageStatus;
+import org.apache.rocketmq.store.MappedFile;
+import org.apache.rocketmq.store.MappedFileQueue;
+import org.apache.rocketmq.store.MessageFilter;
+import org.apache.rocketmq.store.SelectMappedBufferResult;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+
+/**
+ * Second tier of the message store. Sealed commit log and consume queue files are uploaded to a
+ * {@link TieredStorageBackend} once they are full and flushed, and the local commit log files are only deleted after
+ * they have been uploaded. Messages below the min offset of a queue are then read back from the tier, the commit log
+ * segments in chunks of {@link MessageStoreConfig#getTieredStoreReadAheadSize()} bytes.
+ * <p>
+ * The segments keep the names of the files they were uploaded from, i.e. their start offset, so the index of the
+ * segment ranges is rebuilt by listing the backend on load.
+ */
+public class TieredStoreService extends ServiceThread {
+    private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.STORE_LOGGER_NAME);
+
+    private static final String COMMIT_LOG_DIR = "commitlog";
+    private static final String CONSUME_QUEUE_DIR = "consumequeue";
+
+    private final DefaultMessageStore messageStore;
+    private final MessageStoreConfig messageStoreConfig;
+    private TieredStorageBackend backend;
+
+    private final ConcurrentSkipListMap<Long/* start offset */, TieredSegment> commitLogSegmentTable =
+        new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<String/* topic-queueid */, ConcurrentSkipListMap<Long, TieredSegment>> consumeQueueSegmentTable =
+        new ConcurrentHashMap<>();
+    private final LinkedHashMap<Long/* start offset */, ByteBuffer> readAheadTable;
+
+    private volatile long offloadedCommitLogOffset = 0;
+
+    public TieredStoreService(final DefaultMessageStore messageStore) {
+        this.messageStore = messageStore;
+        this.messageStoreConfig = messageStore.getMessageStoreConfig();
+        final int readAheadNum = this.messageStoreConfig.getTieredStoreReadAheadNum();
+        this.readAheadTable = new LinkedHashMap<Long, ByteBuffer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, ByteBuffer> eldest) {
+                return size() > readAheadNum;
+            }
+        };
+    }
+
+    public boolean load() {
+        try {
+            this.backend = (TieredStorageBackend) Class.forName(this.messageStoreConfig.getTieredStoreBackendClass())
+                .getDeclaredConstructor().newInstance();
+            this.backend.init(this.messageStoreConfig);
+
+            for (String key : this.backend.list(COMMIT_LOG_DIR)) {
+                TieredSegment segment = this.loadSegment(key);
+                this.commitLogSegmentTable.put(segment.getStartOffset(), segment);
+            }
+            for (String key : this.backend.list(CONSUME_QUEUE_DIR)) {
+                // consumequeue/{topic}/{queueId}/{offset}
+                String[] names = key.split("/");
+                TieredSegment segment = this.loadSegment(key);
+                this.segmentTableOf(names[1], Integer.parseInt(names[2])).put(segment.getStartOffset(), segment);
+            }
+            log.info("load tiered store OK, commit log segments: {}, consume queues: {}",
+                this.commitLogSegmentTable.size(), this.consumeQueueSegmentTable.size());
+            return true;
+        } catch (Exception e) {
+            log.error("load tiered store exception", e);
+            return false;
+        }
+    }
+
+    private TieredSegment loadSegment(String key) throws IOException {
+        String name = key.substring(key.lastIndexOf('/') + 1);
+        return new TieredSegment(key, Long.parseLong(name), this.backend.size(key));
+    }
+
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        if (this.backend != null) {
+            this.backend.shutdown();
+        }
+    }
+
+    @Override
+    public String getServiceName() {
+        return TieredStoreService.class.getSimpleName();
+    }
+
+    @Override
+    public void run() {
+        log.info(this.getServiceName() + " service started");
+
+        while (!this.isStopped()) {
+            try {
+                this.waitForRunning(this.messageStoreConfig.getTieredStoreOffloadInterval());
+                this.doOffload();
+            } catch (Throwable e) {
+                log.warn(this.getServiceName() + " service has exception. ", e);
+            }
+        }
+
+        log.info(this.getServiceName() + " service end");
+    }
+
+    void doOffload() {
+        this.offloadConsumeQueues();
+        this.offloadCommitLog();
+        this.deleteExpiredSegments();
+    }
+
+    /**
+     * @return the commit log files ending at or before this offset are in the tiered store
+     */
+    public long getOffloadedCommitLogOffset() {
+        return offloadedCommitLogOffset;
+    }
+
+    private void offloadCommitLog() {
+        MappedFileQueue mappedFileQueue = this.messageStore.getCommitLog().getMappedFileQueue();
+        long flushedWhere = mappedFileQueue.getFlushedWhere();
+        long offloadedOffset = mappedFileQueue.getMinOffset();
+        for (MappedFile mappedFile : mappedFileQueue.getMappedFiles()) {
+            if (this.isStopped()) {
+                return;
+            }
+            long startOffset = mappedFile.getFileFromOffset();
+            if (!this.commitLogSegmentTable.containsKey(startOffset)) {
+                if (!mappedFile.isFull() || startOffset + mappedFile.getFileSize() > flushedWhere) {
+                    break;
+                }
+                if (!this.offload(COMMIT_LOG_DIR + "/" + UtilAll.offset2FileName(startOffset), mappedFile,
+                    this.commitLogSegmentTable)) {
+                    break;
+                }
+            }
+            offloadedOffset = startOffset + mappedFile.getFileSize();
+        }
+        this.offloadedCommitLogOffset = offloadedOffset;
+    }
+
+    private void offloadConsumeQueues() {
+        for (ConcurrentMap<Integer, ConsumeQueue> maps : this.messageStore.getConsumeQueueTable().values()) {
+            for (ConsumeQueue consumeQueue : maps.values()) {
+                if (this.isStopped()) {
+                    return;
+                }
+                this.offloadConsumeQueue(consumeQueue);
+            }
+        }
+    }
+
+    /**
+     * Upload the sealed files of the consume queue which are not in the tiered store yet.
+     *
+     * @return true if all of them have been uploaded
+     */
+    public boolean offloadConsumeQueue(final ConsumeQueue consumeQueue) {
+        synchronized (consumeQueue) {
+            ConcurrentSkipListMap<Long, TieredSegment> segmentTable =
+                this.segmentTableOf(consumeQueue.getTopic(), consumeQueue.getQueueId());
+            MappedFileQueue mappedFileQueue = consumeQueue.getMappedFileQueue();
+            long flushedWhere = mappedFileQueue.getFlushedWhere();
+            for (MappedFile mappedFile : mappedFileQueue.getMappedFiles()) {
+                long startOffset = mappedFile.getFileFromOffset();
+                if (segmentTable.containsKey(startOffset)) {
+                    continue;
+                }
+                if (!mappedFile.isFull() || startOffset + mappedFile.getFileSize() > flushedWhere) {
+                    break;
+                }
+                String key = CONSUME_QUEUE_DIR + "/" + consumeQueue.getTopic() + "/" + consumeQueue.getQueueId()
+                    + "/" + UtilAll.offset2FileName(startOffset);
+                if (!this.offload(key, mappedFile, segmentTable)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private boolean offload(String key, MappedFile mappedFile, ConcurrentSkipListMap<Long, TieredSegment> segmentTable) {
+        // holding the file keeps it from being deleted while it is uploaded
+        if (!mappedFile.hold()) {
+            return false;
+        }
+        try {
+            long beginTime = System.currentTimeMillis();
+            this.backend.upload(key, new File(mappedFile.getFileName()));
+            segmentTable.put(mappedFile.getFileFromOffset(),
+                new TieredSegment(key, mappedFile.getFileFromOffset(), mappedFile.getFileSize()));
+            log.info("offload {} to tiered store OK, costTime={}", mappedFile.getFileName(),
+                UtilAll.computeElapsedTimeMilliseconds(beginTime));
+            return true;
+        } catch (Throwable e) {
+            log.error("offload " + mappedFile.getFileName() + " to tiered store failed", e);
+            return false;
+        } finally {
+            mappedFile.release();
+        }
+    }
+
+    private void deleteExpiredSegments() {
+        long expiredTime = this.messageStoreConfig.getTieredStoreFileReservedTime() * 60L * 60 * 1000;
+        this.deleteExpiredSegments(this.commitLogSegmentTable, expiredTime,
+            this.messageStore.getCommitLog().getMappedFileQueue().getMinOffset());
+
+        for (ConcurrentMap<Integer, ConsumeQueue> maps : this.messageStore.getConsumeQueueTable().values()) {
+            for (ConsumeQueue consumeQueue : maps.values()) {
+                ConcurrentSkipListMap<Long, TieredSegment> segmentTable =
+                    this.consumeQueueSegmentTable.get(topicQueueKey(consumeQueue.getTopic(), consumeQueue.getQueueId()));
+                if (segmentTable != null) {
+                    this.deleteExpiredSegments(segmentTable, expiredTime,
+                        consumeQueue.getMappedFileQueue().getMinOffset());
+                }
+            }
+        }
+    }
+
+    /**
+     * Delete the expired segments from the oldest one, only those not present locally any more, which would be
+     * uploaded again otherwise.
+     */
+    private void deleteExpiredSegments(ConcurrentSkipListMap<Long, TieredSegment> segmentTable, long expiredTime,
+        long localMinOffset) {
+        Iterator<TieredSegment> it = segmentTable.values().iterator();
+        while (it.hasNext()) {
+            TieredSegment segment = it.next();
+            if (localMinOffset >= 0 && segment.getStartOffset() + segment.getSize() > localMinOffset) {
+                return;
+            }
+            try {
+                if (System.currentTimeMillis() < this.backend.lastModified(segment.getKey()) + expiredTime) {
+                    return;
+                }
+                it.remove();
+                this.backend.delete(segment.getKey());
+                log.info("delete expired tiered segment {}", segment.getKey());
+            } catch (IOException e) {
+                log.warn("delete expired tiered segment " + segment.getKey() + " failed", e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Read the messages of a queue from the offset, which is below the min offset of the queue.
+     *
+     * @return the messages found, or null if the tiered store does not hold the offset
+     */
+    public GetMessageResult getMessage(final ConsumeQueue consumeQueue, final long offset, final int maxMsgNums,
+        final MessageFilter messageFilter) {
+        SelectMappedBufferResult bufferConsumeQueue = this.getIndexBuffer(consumeQueue, offset);
+        if (bufferConsumeQueue == null) {
+            return null;
+        }
+
+        try {
+            GetMessageResult getResult = new GetMessageResult(maxMsgNums);
+            GetMessageStatus status = GetMessageStatus.NO_MATCHED_MESSAGE;
+            final long commitLogMinOffset = this.messageStore.getCommitLog().getMinOffset();
+            final int maxFilterMessageCount = Math.max(16000, maxMsgNums * ConsumeQueue.CQ_STORE_UNIT_SIZE);
+            ByteBuffer byteBuffer = bufferConsumeQueue.getByteBuffer();
+
+            int i = 0;
+            for (; i < bufferConsumeQueue.getSize() && i < maxFilterMessageCount; i += ConsumeQueue.CQ_STORE_UNIT_SIZE) {
+                long offsetPy = byteBuffer.getLong();
+                int sizePy = byteBuffer.getInt();
+                long tagsCode = byteBuffer.getLong();
+
+                if (this.isTheBatchFull(sizePy, maxMsgNums, getResult)) {
+                    break;
+                }
+
+                // the extended consume queue is not offloaded, leave the filtering by tag to the client
+                if (messageFilter != null && !ConsumeQueueExt.isExtAddr(tagsCode)
+                    && !messageFilter.isMatchedByConsumeQueue(tagsCode, null)) {
+                    continue;
+                }
+
+                SelectMappedBufferResult selectResult = offsetPy >= commitLogMinOffset
+                    ? this.messageStore.getCommitLog().getMessage(offsetPy, sizePy) : this.readCommitLog(offsetPy, sizePy);
+                if (selectResult == null) {
+                    if (i == 0) {
+                        return null;
+                    }
+                    break;
+                }
+
+                if (messageFilter != null
+                    && !messageFilter.isMatchedByCommitLog(selectResult.getByteBuffer().slice(), null)) {
+                    selectResult.release();
+                    continue;
+                }
+
+                getResult.addMessage(selectResult);
+                status = GetMessageStatus.FOUND;
+            }
+
+            getResult.setStatus(status);
+            getResult.setNextBeginOffset(offset + i / ConsumeQueue.CQ_STORE_UNIT_SIZE);
+            return getResult;
+        } finally {
+            bufferConsumeQueue.release();
+        }
+    }
+
+    private boolean isTheBatchFull(int sizePy, int maxMsgNums, GetMessageResult getResult) {
+        int bufferTotal = getResult.getBufferTotalSize();
+        int messageTotal = getResult.getMessageCount();
+        if (0 == bufferTotal || 0 == messageTotal) {
+            return false;
+        }
+        return maxMsgNums <= messageTotal
+            || bufferTotal + sizePy > this.messageStoreConfig.getMaxTransferBytesOnMessageInDisk()
+            || messageTotal > this.messageStoreConfig.getMaxTransferCountOnMessageInDisk() - 1;
+    }
+
+    /**
+     * The consume queue units from the offset, from the tiered store or from the local file, which may still exist
+     * after the commit log it refers to has been deleted.
+     */
+    private SelectMappedBufferResult getIndexBuffer(final ConsumeQueue consumeQueue, final long offset) {
+        long position = offset * ConsumeQueue.CQ_STORE_UNIT_SIZE;
+        ConcurrentSkipListMap<Long, TieredSegment> segmentTable =
+            this.consumeQueueSegmentTable.get(topicQueueKey(consumeQueue.getTopic(), consumeQueue.getQueueId()));
+        Map.Entry<Long, TieredSegment> entry = segmentTable != null ? segmentTable.floorEntry(position) : null;
+        if (entry != null && entry.getValue().contains(position)) {
+            TieredSegment segment = entry.getValue();
+            int size = (int) Math.min(segment.getStartOffset() + segment.getSize() - position, 16000);
+            try {
+                ByteBuffer byteBuffer = ByteBuffer.allocate(size - size % ConsumeQueue.CQ_STORE_UNIT_SIZE);
+                this.readFully(segment, position, byteBuffer);
+                byteBuffer.flip();
+                return new SelectMappedBufferResult(position, byteBuffer, byteBuffer.limit(), null);
+            } catch (IOException e) {
+                log.error("read tiered segment " + segment.getKey() + " at " + position + " failed", e);
+                return null;
+            }
+        }
+
+        MappedFile mappedFile = consumeQueue.getMappedFileQueue().findMappedFileByOffset(position);
+        if (mappedFile != null) {
+            return mappedFile.selectMappedBuffer((int) (position % mappedFile.getFileSize()));
+        }
+        return null;
+    }
+
+    private SelectMappedBufferResult readCommitLog(final long offsetPy, final int sizePy) {
+        Map.Entry<Long, TieredSegment> entry = this.commitLogSegmentTable.floorEntry(offsetPy);
+        if (entry == null || !entry.getValue().contains(offsetPy + sizePy - 1)) {
+            return null;
+        }
+
+        TieredSegment segment = entry.getValue();
+        try {
+            int readAheadSize = this.messageStoreConfig.getTieredStoreReadAheadSize();
+            long chunkOffset = offsetPy - (offsetPy - segment.getStartOffset()) % readAheadSize;
+            ByteBuffer chunk = this.getReadAheadChunk(segment, chunkOffset, readAheadSize);
+            int pos = (int) (offsetPy - chunkOffset);
+            ByteBuffer byteBuffer;
+            if (pos + sizePy <= chunk.limit()) {
+                chunk.position(pos);
+                chunk.limit(pos + sizePy);
+                byteBuffer = chunk.slice();
+            } else {
+                // the message spans two chunks
+                byteBuffer = ByteBuffer.allocate(sizePy);
+                this.readFully(segment, offsetPy, byteBuffer);
+                byteBuffer.flip();
+            }
+            return new SelectMappedBufferResult(offsetPy, byteBuffer, sizePy, null);
+        } catch (IOException e) {
+            log.error("read tiered segment " + segment.getKey() + " at " + offsetPy + " failed", e);
+            return null;
+        }
+    }
+
+    private ByteBuffer getReadAheadChunk(TieredSegment segment, long chunkOffset, int readAheadSize)
+        throws IOException {
+        ByteBuffer chunk;
+        synchronized (this.readAheadTable) {
+            chunk = this.readAheadTable.get(chunkOffset);
+        }
+        if (chunk == null) {
+            chunk = ByteBuffer.allocate((int) Math.min(readAheadSize,
+                segment.getStartOffset() + segment.getSize() - chunkOffset));
+            this.readFully(segment, chunkOffset, chunk);
+            chunk.flip();
+            synchronized (this.readAheadTable) {
+                this.readAheadTable.put(chunkOffset, chunk);
+            }
+        }
+        return chunk.duplicate();
+    }
+
+    private void readFully(TieredSegment segment, long offset, ByteBuffer byteBuffer) throws IOException {
+        long position = offset - segment.getStartOffset();
+        while (byteBuffer.hasRemaining()) {
+            int read = this.backend.read(segment.getKey(), position, byteBuffer);
+            if (read < 0) {
+                throw new EOFException("read tiered segment " + segment.getKey() + " at " + position);
+            }
+            position += read;
+        }
+    }
+
+    private ConcurrentSkipListMap<Long, TieredSegment> segmentTableOf(String topic, int queueId) {
+        return this.consumeQueueSegmentTable.computeIfAbsent(topicQueueKey(topic, queueId),
+            k -> new ConcurrentSkipListMap<>());
+    }
+
+    private static String topicQueueKey(String topic, int queueId) {
+        return topic + "@" + queueId;
+    }
+
+    static class TieredSegment {
+        private final String key;
+        private final long startOffset;
+        private final long size;
+
+        TieredSegment(String key, long startOffset, long size) {
+            this.key = key;
+            this.startOffset = startOffset;
+            this.size = size;
+        }
+
+        boolean contains(long offset) {
+            return offset >= this.startOffset && offset < this.startOffset + this.size;
+        }
+
+        String getKey() {
+            return key;
+        }
+
+        long getStartOffset() {
+            return startOffset;
+        }
+
+        long getSize() {
+            return size;
+        }
+    }
+}
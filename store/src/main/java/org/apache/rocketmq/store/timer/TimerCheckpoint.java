@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store.timer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.logging.InternalLogger;
+import org.apache.rocketmq.logging.InternalLoggerFactory;
+import org.apache.rocketmq.store.MappedFile;
+
+/**
+ * Where the timing wheel is up to: the queue offset of the timer topic to put into the wheel next, the slot time
+ * to deliver next and the end of the timer log known by the wheel, with the shape of the wheel they are for.
+ */
+public class TimerCheckpoint {
+    private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.STORE_LOGGER_NAME);
+    private final boolean fileExists;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel fileChannel;
+    private final MappedByteBuffer mappedByteBuffer;
+    private volatile long enqueueOffset = 0;
+    private volatile long readTimeMs = 0;
+    private volatile long timerLogPosition = 0;
+    private volatile long precisionMs = 0;
+    private volatile long slotNum = 0;
+
+    public TimerCheckpoint(final String path) throws IOException {
+        File file = new File(path);
+        MappedFile.ensureDirOK(file.getParent());
+        this.fileExists = file.exists();
+
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        this.fileChannel = this.randomAccessFile.getChannel();
+        this.mappedByteBuffer = fileChannel.map(MapMode.READ_WRITE, 0, MappedFile.OS_PAGE_SIZE);
+
+        if (this.fileExists) {
+            this.enqueueOffset = this.mappedByteBuffer.getLong(0);
+            this.readTimeMs = this.mappedByteBuffer.getLong(8);
+            this.timerLogPosition = this.mappedByteBuffer.getLong(16);
+            this.precisionMs = this.mappedByteBuffer.getLong(24);
+            this.slotNum = this.mappedByteBuffer.getLong(32);
+
+            log.info("timer checkpoint file exists, enqueueOffset {}, readTimeMs {} {}, timerLogPosition {}",
+                this.enqueueOffset, this.readTimeMs, UtilAll.timeMillisToHumanString(this.readTimeMs),
+                this.timerLogPosition);
+        } else {
+            log.info("timer checkpoint file not exists, " + path);
+        }
+    }
+
+    public void shutdown() {
+        this.flush();
+
+        // unmap mappedByteBuffer
+        MappedFile.clean(this.mappedByteBuffer);
+
+        try {
+            this.fileChannel.close();
+        } catch (IOException e) {
+            log.error("Failed to properly close the channel", e);
+        }
+    }
+
+    public void flush() {
+        this.mappedByteBuffer.putLong(0, this.enqueueOffset);
+        this.mappedByteBuffer.putLong(8, this.readTimeMs);
+        this.mappedByteBuffer.putLong(16, this.timerLogPosition);
+        this.mappedByteBuffer.putLong(24, this.precisionMs);
+        this.mappedByteBuffer.putLong(32, this.slotNum);
+        this.mappedByteBuffer.force();
+    }
+
+    public boolean isFileExists() {
+        return fileExists;
+    }
+
+    public long getEnqueueOffset() {
+        return enqueueOffset;
+    }
+
+    public void setEnqueueOffset(long enqueueOffset) {
+        this.enqueueOffset = enqueueOffset;
+    }
+
+    public long getReadTimeMs() {
+        return readTimeMs;
+    }
+
+    public void setReadTimeMs(long readTimeMs) {
+        this.readTimeMs = readTimeMs;
+    }
+
+    public long getTimerLogPosition() {
+        return timerLogPosition;
+    }
+
+    public void setTimerLogPosition(long timerLogPosition) {
+        this.timerLogPosition = timerLogPosition;
+    }
+
+    public long getPrecisionMs() {
+        return precisionMs;
+    }
+
+    public void setPrecisionMs(long precisionMs) {
+        this.precisionMs = precisionMs;
+    }
+
+    public long getSlotNum() {
+        return slotNum;
+    }
+
+    public void setSlotNum(long slotNum) {
+        this.slotNum = slotNum;
+    }
+}
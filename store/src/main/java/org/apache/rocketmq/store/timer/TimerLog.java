@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store.timer;
+
+import java.nio.ByteBuffer;
+import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.logging.InternalLogger;
+import org.apache.rocketmq.logging.InternalLoggerFactory;
+import org.apache.rocketmq.store.MappedFile;
+import org.apache.rocketmq.store.MappedFileQueue;
+import org.apache.rocketmq.store.SelectMappedBufferResult;
+
+/**
+ * Units of the messages put into the {@link TimerWheel}, appended only. The units of a slot are linked backward
+ * by the position of the previous one.
+ * <p/>
+ * Unit layout: magic code(4), previous unit position(8), commit log offset(8), message size(4), delivery time(8).
+ */
+public class TimerLog {
+    private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.STORE_LOGGER_NAME);
+
+    public static final int UNIT_SIZE = 32;
+    private static final int MAGIC_CODE = 0xAABB1357;
+
+    private final MappedFileQueue mappedFileQueue;
+    private final ByteBuffer byteBufferUnit = ByteBuffer.allocate(UNIT_SIZE);
+
+    public TimerLog(final String storePath, final int fileSize) {
+        // a unit never crosses files
+        this.mappedFileQueue = new MappedFileQueue(storePath, fileSize / UNIT_SIZE * UNIT_SIZE, null);
+    }
+
+    public boolean load() {
+        boolean result = this.mappedFileQueue.load();
+        log.info("load timer log " + (result ? "OK" : "Failed"));
+        return result;
+    }
+
+    /**
+     * Drop the units after the position, which the wheel does not know.
+     */
+    public void recover(final long position) {
+        this.mappedFileQueue.setFlushedWhere(position);
+        this.mappedFileQueue.setCommittedWhere(position);
+        this.mappedFileQueue.truncateDirtyFiles(position);
+    }
+
+    /**
+     * Must be called by one thread at a time.
+     *
+     * @return position of the unit, -1 on failure
+     */
+    public long append(final long prevPos, final long offsetPy, final int sizePy, final long deliverMs) {
+        MappedFile mappedFile = this.mappedFileQueue.getLastMappedFile(0);
+        if (mappedFile == null) {
+            log.error("Create timer log file failed");
+            return -1;
+        }
+
+        long pos = mappedFile.getFileFromOffset() + mappedFile.getWrotePosition();
+        this.byteBufferUnit.clear();
+        this.byteBufferUnit.putInt(MAGIC_CODE);
+        this.byteBufferUnit.putLong(prevPos);
+        this.byteBufferUnit.putLong(offsetPy);
+        this.byteBufferUnit.putInt(sizePy);
+        this.byteBufferUnit.putLong(deliverMs);
+        if (mappedFile.appendMessage(this.byteBufferUnit.array())) {
+            return pos;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the unit at the position, null if it is not available
+     */
+    public Unit getUnit(final long pos) {
+        MappedFile mappedFile = this.mappedFileQueue.findMappedFileByOffset(pos);
+        if (mappedFile == null) {
+            return null;
+        }
+        SelectMappedBufferResult result = mappedFile.selectMappedBuffer(
+            (int) (pos % this.mappedFileQueue.getMappedFileSize()), UNIT_SIZE);
+        if (result == null) {
+            return null;
+        }
+        try {
+            ByteBuffer byteBuffer = result.getByteBuffer();
+            if (byteBuffer.getInt() != MAGIC_CODE) {
+                log.error("[BUG] timer log unit at {} is broken", pos);
+                return null;
+            }
+            return new Unit(byteBuffer.getLong(), byteBuffer.getLong(), byteBuffer.getInt(), byteBuffer.getLong());
+        } finally {
+            result.release();
+        }
+    }
+
+    public long getMaxOffset() {
+        return this.mappedFileQueue.getMaxOffset();
+    }
+
+    public boolean flush() {
+        return this.mappedFileQueue.flush(0);
+    }
+
+    /**
+     * Delete the files of which no unit is kept by the wheel any more.
+     */
+    public int deleteExpiredFile(final long minPos) {
+        return this.mappedFileQueue.deleteExpiredFileBefore(minPos);
+    }
+
+    public void shutdown() {
+        this.mappedFileQueue.shutdown(1000 * 3);
+    }
+
+    public void destroy() {
+        this.mappedFileQueue.destroy();
+    }
+
+    public static class Unit {
+        private final long prevPos;
+        private final long offsetPy;
+        private final int sizePy;
+        private final long deliverMs;
+
+        public Unit(long prevPos, long offsetPy, int sizePy, long deliverMs) {
+            this.prevPos = prevPos;
+            this.offsetPy = offsetPy;
+            this.sizePy = sizePy;
+            this.deliverMs = deliverMs;
+        }
+
+        public long getPrevPos() {
+            return prevPos;
+        }
+
+        public long getOffsetPy() {
+            return offsetPy;
+        }
+
+        public int getSizePy() {
+            return sizePy;
+        }
+
+        public long getDeliverMs() {
+            return deliverMs;
+        }
+    }
+}
@@ -0,0 +1,492 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store.timer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.rocketmq.common.ServiceThread;
+import org.apache.rocketmq.common.TopicFilterType;
+import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.common.message.MessageAccessor;
+import org.apache.rocketmq.common.message.MessageConst;
+import org.apache.rocketmq.common.message.MessageDecoder;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.running.RunningStats;
+import org.apache.rocketmq.common.topic.TopicValidator;
+import org.apache.rocketmq.logging.InternalLogger;
+import org.apache.rocketmq.logging.InternalLoggerFactory;
+import org.apache.rocketmq.store.ConsumeQueue;
+import org.apache.rocketmq.store.ConsumeQueueExt;
+import org.apache.rocketmq.store.DefaultMessageStore;
+import org.apache.rocketmq.store.MessageExtBrokerInner;
+import org.apache.rocketmq.store.MessageStore;
+import org.apache.rocketmq.store.PutMessageResult;
+import org.apache.rocketmq.store.PutMessageStatus;
+import org.apache.rocketmq.store.SelectMappedBufferResult;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+import org.apache.rocketmq.store.config.StorePathConfigHelper;
+
+/**
+ * Delivers the messages at arbitrary times by a timing wheel kept on disk, instead of the fixed levels of
+ * {@link org.apache.rocketmq.store.schedule.ScheduleMessageService}.
+ * <p/>
+ * <li>1. The commit log stores the messages of a delivery time into {@link TopicValidator#RMQ_SYS_WHEEL_TIMER}, with
+ * the delivery time as the tags code of the consume queue, so they are put into the wheel without reading the
+ * commit log.</li>
+ * <li>2. A message is put into the slot of its delivery time as a {@link TimerLog} unit pointing into the commit
+ * log. The ones later than the span of the wheel are put into its last slot and go round again when the slot comes,
+ * as the upper levels of a hierarchical wheel.</li>
+ * <li>3. The slots are taken in time order, up to one precision early, and the messages of a slot are put back
+ * into their real topics in batches.</li>
+ * <li>4. The wheel, the timer log and where they are up to are flushed together by the one thread working on them.
+ * After an abnormal shutdown the wheel is rebuilt from the consume queue of the timer topic.</li>
+ */
+public class TimerMessageStore {
+    private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.STORE_LOGGER_NAME);
+
+    public static final int TIMER_QUEUE_ID = 0;
+
+    private static final long DELAY_FOR_A_WHILE = 100L;
+    private static final long CLEAN_INTERVAL = 60 * 1000L;
+    private static final int MAX_ENQUEUE_NUM = 1024;
+
+    private final DefaultMessageStore defaultMessageStore;
+    private final MessageStoreConfig messageStoreConfig;
+    private final String storePath;
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private final TimerService timerService = new TimerService();
+    private MessageStore writeMessageStore;
+
+    private TimerCheckpoint timerCheckpoint;
+    private TimerWheel timerWheel;
+    private TimerLog timerLog;
+
+    /**
+     * The queue offset of the timer topic to put into the wheel next and the slot time to deliver next, changed by
+     * the timer service only.
+     */
+    private volatile long enqueueOffset;
+    private volatile long readTimeMs;
+    /**
+     * The messages below the offset were in the wheel before it was rebuilt, those due before the read time were
+     * delivered then.
+     */
+    private long rebuildUntilOffset = -1;
+    private long lastFlushTimeMs = 0;
+    private long lastCleanTimeMs = 0;
+
+    private final LongAdder enqueueTimes = new LongAdder();
+    private final LongAdder deliverTimes = new LongAdder();
+
+    public TimerMessageStore(final DefaultMessageStore defaultMessageStore) {
+        this.defaultMessageStore = defaultMessageStore;
+        this.writeMessageStore = defaultMessageStore;
+        this.messageStoreConfig = defaultMessageStore.getMessageStoreConfig();
+        this.storePath = StorePathConfigHelper.getStorePathTimer(this.messageStoreConfig.getStorePathRootDir());
+    }
+
+    public void setWriteMessageStore(MessageStore writeMessageStore) {
+        this.writeMessageStore = writeMessageStore;
+    }
+
+    public boolean load(final boolean lastExitOK) {
+        try {
+            this.timerCheckpoint = new TimerCheckpoint(this.storePath + File.separator + "checkpoint");
+            int slotNum = this.messageStoreConfig.getTimerWheelSlotNum();
+            int precisionMs = this.messageStoreConfig.getTimerPrecisionMs();
+            String wheelPath = this.storePath + File.separator + "wheel";
+
+            this.timerLog = new TimerLog(this.storePath + File.separator + "timerlog",
+                this.messageStoreConfig.getMappedFileSizeTimerLog());
+            if (!this.timerLog.load()) {
+                return false;
+            }
+
+            long readTimeMs = this.timerCheckpoint.getReadTimeMs() > 0 ? this.timerCheckpoint.getReadTimeMs()
+                : System.currentTimeMillis();
+            this.readTimeMs = readTimeMs / precisionMs * precisionMs;
+
+            if (lastExitOK && this.timerCheckpoint.getPrecisionMs() == precisionMs
+                && this.timerCheckpoint.getSlotNum() == slotNum) {
+                this.timerWheel = new TimerWheel(wheelPath, slotNum, precisionMs);
+                this.timerLog.recover(this.timerCheckpoint.getTimerLogPosition());
+                this.enqueueOffset = this.timerCheckpoint.getEnqueueOffset();
+            } else {
+                log.warn("rebuild the timer wheel, last shutdown {}", lastExitOK ? "normally" : "abnormally");
+                UtilAll.deleteFile(new File(wheelPath));
+                this.timerWheel = new TimerWheel(wheelPath, slotNum, precisionMs);
+                this.timerLog.destroy();
+                this.enqueueOffset = 0;
+                // nothing is known about the messages due already without a checkpoint, take them as delivered
+                this.rebuildUntilOffset = this.timerCheckpoint.isFileExists() ? this.timerCheckpoint.getEnqueueOffset()
+                    : this.defaultMessageStore.getMaxOffsetInQueue(TopicValidator.RMQ_SYS_WHEEL_TIMER, TIMER_QUEUE_ID);
+            }
+            log.info("load timer message store OK, enqueueOffset {}, readTimeMs {}", this.enqueueOffset,
+                UtilAll.timeMillisToHumanString(this.readTimeMs));
+            return true;
+        } catch (IOException e) {
+            log.error("load timer message store exception", e);
+            return false;
+        }
+    }
+
+    public void start() {
+        if (this.started.compareAndSet(false, true)) {
+            this.timerService.start();
+        }
+    }
+
+    public void shutdown() {
+        if (this.started.compareAndSet(true, false)) {
+            this.timerService.shutdown();
+            this.checkpoint();
+        }
+    }
+
+    public boolean isStarted() {
+        return started.get();
+    }
+
+    public void destroy() {
+        if (this.timerLog != null) {
+            this.timerLog.destroy();
+        }
+        if (this.timerWheel != null) {
+            this.timerWheel.destroy();
+        }
+        if (this.timerCheckpoint != null) {
+            this.timerCheckpoint.shutdown();
+        }
+        UtilAll.deleteFile(new File(this.storePath));
+    }
+
+    public long getEnqueueOffset() {
+        return enqueueOffset;
+    }
+
+    public long getReadTimeMs() {
+        return readTimeMs;
+    }
+
+    /**
+     * @return number of the messages stored but not put into the wheel yet
+     */
+    public long getEnqueueLag() {
+        long maxOffset = this.defaultMessageStore.getMaxOffsetInQueue(TopicValidator.RMQ_SYS_WHEEL_TIMER,
+            TIMER_QUEUE_ID);
+        return Math.max(0, maxOffset - this.enqueueOffset);
+    }
+
+    /**
+     * @return milliseconds the slot delivered next is behind now
+     */
+    public long getDequeueLag() {
+        return Math.max(0, System.currentTimeMillis() - this.readTimeMs);
+    }
+
+    public long getEnqueueTimes() {
+        return enqueueTimes.sum();
+    }
+
+    public long getDeliverTimes() {
+        return deliverTimes.sum();
+    }
+
+    public void buildRunningStats(HashMap<String, String> stats) {
+        stats.put(RunningStats.timerEnqueueLag.name(), String.valueOf(this.getEnqueueLag()));
+        stats.put(RunningStats.timerDequeueLag.name(), String.valueOf(this.getDequeueLag()));
+    }
+
+    /**
+     * Put the messages newly stored into the wheel.
+     *
+     * @return true if some are put
+     */
+    boolean enqueue() {
+        ConsumeQueue cq = this.defaultMessageStore.findConsumeQueue(TopicValidator.RMQ_SYS_WHEEL_TIMER, TIMER_QUEUE_ID);
+        if (cq == null) {
+            return false;
+        }
+
+        if (this.enqueueOffset < cq.getMinOffsetInQueue()) {
+            log.warn("timer queue offset {} is less than the min offset {}, the messages are deleted",
+                this.enqueueOffset, cq.getMinOffsetInQueue());
+            this.enqueueOffset = cq.getMinOffsetInQueue();
+        }
+
+        SelectMappedBufferResult bufferCQ = cq.getIndexBuffer(this.enqueueOffset);
+        if (bufferCQ == null) {
+            return false;
+        }
+
+        int num = 0;
+        try {
+            ConsumeQueueExt.CqExtUnit cqExtUnit = new ConsumeQueueExt.CqExtUnit();
+            for (int i = 0; i < bufferCQ.getSize() && num < MAX_ENQUEUE_NUM; i += ConsumeQueue.CQ_STORE_UNIT_SIZE) {
+                long offsetPy = bufferCQ.getByteBuffer().getLong();
+                int sizePy = bufferCQ.getByteBuffer().getInt();
+                long deliverMs = bufferCQ.getByteBuffer().getLong();
+
+                if (cq.isExtAddr(deliverMs)) {
+                    if (cq.getExt(deliverMs, cqExtUnit)) {
+                        deliverMs = cqExtUnit.getTagsCode();
+                    } else {
+                        log.error("[BUG] can't find consume queue extend file content!addr={}, offsetPy={}, sizePy={}",
+                            deliverMs, offsetPy, sizePy);
+                        deliverMs = this.pickupDeliverMs(offsetPy, sizePy);
+                    }
+                }
+
+                boolean delivered = this.enqueueOffset < this.rebuildUntilOffset && deliverMs < this.readTimeMs;
+                if (!delivered && !this.putToWheel(offsetPy, sizePy, deliverMs, this.readTimeMs)) {
+                    break;
+                }
+                this.enqueueOffset++;
+                this.enqueueTimes.increment();
+                num++;
+            }
+        } finally {
+            bufferCQ.release();
+        }
+        return num > 0;
+    }
+
+    /**
+     * Deliver the slot of the read time if it is due.
+     *
+     * @return true if the slot is delivered
+     */
+    boolean dequeue() {
+        if (this.readTimeMs > System.currentTimeMillis()) {
+            return false;
+        }
+
+        TimerWheel.Slot slot = this.timerWheel.getSlot(this.readTimeMs);
+        List<TimerLog.Unit> dueUnits = new ArrayList<TimerLog.Unit>(slot.getNum());
+        List<TimerLog.Unit> overflowUnits = new ArrayList<TimerLog.Unit>();
+        long pos = slot.getLastPos();
+        for (int i = 0; i < slot.getNum() && pos >= 0; i++) {
+            TimerLog.Unit unit = this.timerLog.getUnit(pos);
+            if (unit == null) {
+                log.error("timer log unit at {} of slot {} is missing", pos, this.readTimeMs);
+                break;
+            }
+            if (this.timerWheel.alignTime(unit.getDeliverMs()) > this.readTimeMs) {
+                overflowUnits.add(unit);
+            } else {
+                dueUnits.add(unit);
+            }
+            pos = unit.getPrevPos();
+        }
+
+        if (!this.deliver(dueUnits)) {
+            return false;
+        }
+
+        // the slot is reused for the end of the span from now on
+        this.readTimeMs += this.timerWheel.getPrecisionMs();
+        for (TimerLog.Unit unit : overflowUnits) {
+            if (!this.putToWheel(unit.getOffsetPy(), unit.getSizePy(), unit.getDeliverMs(), this.readTimeMs)) {
+                log.error("put timer message back into the wheel failed, offsetPy={}, deliverMs={}",
+                    unit.getOffsetPy(), unit.getDeliverMs());
+            }
+        }
+        return true;
+    }
+
+    private boolean putToWheel(final long offsetPy, final int sizePy, final long deliverMs, final long readTimeMs) {
+        // the late ones go to the slot read next, the ones beyond the span to the last slot, to go round again
+        long slotTimeMs = Math.max(this.timerWheel.alignTime(deliverMs), readTimeMs);
+        slotTimeMs = Math.min(slotTimeMs, readTimeMs + this.timerWheel.getSpanMs() - this.timerWheel.getPrecisionMs());
+
+        TimerWheel.Slot slot = this.timerWheel.getSlot(slotTimeMs);
+        long pos = this.timerLog.append(slot.getLastPos(), offsetPy, sizePy, deliverMs);
+        if (pos < 0) {
+            return false;
+        }
+        this.timerWheel.putSlot(slotTimeMs, slot.getFirstPos() < 0 ? pos : slot.getFirstPos(), pos, slot.getNum() + 1);
+        return true;
+    }
+
+    /**
+     * Put the messages back in the order of commit log, a batch at a time, retrying the failed ones.
+     *
+     * @return false if stopped before all are delivered
+     */
+    private boolean deliver(final List<TimerLog.Unit> units) {
+        units.sort(Comparator.comparingLong(TimerLog.Unit::getOffsetPy));
+        int batchNum = Math.max(1, this.messageStoreConfig.getTimerDeliverBatchNum());
+        for (int from = 0; from < units.size(); from += batchNum) {
+            List<TimerLog.Unit> pending = units.subList(from, Math.min(from + batchNum, units.size()));
+            while (!(pending = this.deliverBatch(pending)).isEmpty()) {
+                if (!this.isStarted()) {
+                    return false;
+                }
+                try {
+                    Thread.sleep(DELAY_FOR_A_WHILE);
+                } catch (InterruptedException e) {
+                    log.warn("deliver timer messages interrupted", e);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the units to deliver again
+     */
+    private List<TimerLog.Unit> deliverBatch(final List<TimerLog.Unit> units) {
+        List<CompletableFuture<PutMessageResult>> futures = new ArrayList<CompletableFuture<PutMessageResult>>(units.size());
+        for (TimerLog.Unit unit : units) {
+            MessageExt msgExt = this.defaultMessageStore.lookMessageByOffset(unit.getOffsetPy(), unit.getSizePy());
+            if (msgExt == null) {
+                log.warn("timer message not found, offsetPy={}, sizePy={}", unit.getOffsetPy(), unit.getSizePy());
+                futures.add(null);
+                continue;
+            }
+
+            MessageExtBrokerInner msgInner = this.messageTimeup(msgExt);
+            if (TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC.equals(msgInner.getTopic())) {
+                log.error("[BUG] the real topic of timer msg is {}, discard the msg. msg={}",
+                    msgInner.getTopic(), msgInner);
+                futures.add(null);
+                continue;
+            }
+            futures.add(this.writeMessageStore.asyncPutMessage(msgInner));
+        }
+
+        List<TimerLog.Unit> failedUnits = new ArrayList<TimerLog.Unit>();
+        for (int i = 0; i < units.size(); i++) {
+            CompletableFuture<PutMessageResult> future = futures.get(i);
+            if (future == null) {
+                continue;
+            }
+
+            PutMessageResult result;
+            try {
+                result = future.get();
+            } catch (InterruptedException | ExecutionException e) {
+                result = null;
+            }
+
+            PutMessageStatus status = result != null ? result.getPutMessageStatus() : PutMessageStatus.UNKNOWN_ERROR;
+            if (status == PutMessageStatus.PUT_OK) {
+                this.deliverTimes.increment();
+            } else if (status == PutMessageStatus.MESSAGE_ILLEGAL || status == PutMessageStatus.PROPERTIES_SIZE_EXCEEDED) {
+                log.error("timer message can never be put, discard it, offsetPy={}, status={}",
+                    units.get(i).getOffsetPy(), status);
+            } else {
+                log.warn("put timer message failed, offsetPy={}, status={}", units.get(i).getOffsetPy(), status);
+                failedUnits.add(units.get(i));
+            }
+        }
+        return failedUnits;
+    }
+
+    private long pickupDeliverMs(final long offsetPy, final int sizePy) {
+        MessageExt msgExt = this.defaultMessageStore.lookMessageByOffset(offsetPy, sizePy);
+        String deliverMs = msgExt != null ? msgExt.getProperty(MessageConst.PROPERTY_TIMER_DELIVER_MS) : null;
+        return deliverMs != null ? Long.parseLong(deliverMs) : 0;
+    }
+
+    private MessageExtBrokerInner messageTimeup(MessageExt msgExt) {
+        MessageExtBrokerInner msgInner = new MessageExtBrokerInner();
+        msgInner.setBody(msgExt.getBody());
+        msgInner.setFlag(msgExt.getFlag());
+        MessageAccessor.setProperties(msgInner, msgExt.getProperties());
+        MessageAccessor.clearProperty(msgInner, MessageConst.PROPERTY_TIMER_DELIVER_MS);
+        MessageAccessor.clearProperty(msgInner, MessageConst.PROPERTY_TIMER_DELAY_MS);
+
+        TopicFilterType topicFilterType = MessageExt.parseTopicFilterType(msgInner.getSysFlag());
+        long tagsCodeValue =
+            MessageExtBrokerInner.tagsString2tagsCode(topicFilterType, msgInner.getTags());
+        msgInner.setTagsCode(tagsCodeValue);
+        msgInner.setPropertiesString(MessageDecoder.messageProperties2String(msgInner.getProperties()));
+
+        msgInner.setSysFlag(msgExt.getSysFlag());
+        msgInner.setBornTimestamp(msgExt.getBornTimestamp());
+        msgInner.setBornHost(msgExt.getBornHost());
+        msgInner.setStoreHost(msgExt.getStoreHost());
+        msgInner.setReconsumeTimes(msgExt.getReconsumeTimes());
+
+        msgInner.setWaitStoreMsgOK(false);
+
+        msgInner.setTopic(msgInner.getProperty(MessageConst.PROPERTY_REAL_TOPIC));
+        msgInner.setQueueId(Integer.parseInt(msgInner.getProperty(MessageConst.PROPERTY_REAL_QUEUE_ID)));
+
+        return msgInner;
+    }
+
+    private void checkpoint() {
+        this.timerLog.flush();
+        this.timerWheel.flush();
+        this.timerCheckpoint.setEnqueueOffset(this.enqueueOffset);
+        this.timerCheckpoint.setReadTimeMs(this.readTimeMs);
+        this.timerCheckpoint.setTimerLogPosition(this.timerLog.getMaxOffset());
+        this.timerCheckpoint.setPrecisionMs(this.timerWheel.getPrecisionMs());
+        this.timerCheckpoint.setSlotNum(this.timerWheel.getSlotNum());
+        this.timerCheckpoint.flush();
+    }
+
+    class TimerService extends ServiceThread {
+
+        @Override
+        public String getServiceName() {
+            return TimerService.class.getSimpleName();
+        }
+
+        @Override
+        public void run() {
+            log.info(this.getServiceName() + " service started");
+
+            while (!this.isStopped()) {
+                try {
+                    boolean busy = TimerMessageStore.this.enqueue();
+                    busy = TimerMessageStore.this.dequeue() || busy;
+
+                    long now = System.currentTimeMillis();
+                    if (now - lastFlushTimeMs >= messageStoreConfig.getTimerFlushIntervalMs()) {
+                        TimerMessageStore.this.checkpoint();
+                        lastFlushTimeMs = now;
+                    }
+                    if (now - lastCleanTimeMs >= CLEAN_INTERVAL) {
+                        long minPos = timerWheel.getMinFirstPos(readTimeMs);
+                        timerLog.deleteExpiredFile(minPos >= 0 ? minPos : timerLog.getMaxOffset());
+                        lastCleanTimeMs = now;
+                    }
+
+                    if (!busy) {
+                        this.waitForRunning(DELAY_FOR_A_WHILE);
+                    }
+                } catch (Throwable e) {
+                    log.warn(this.getServiceName() + " service has exception. ", e);
+                }
+            }
+
+            log.info(this.getServiceName() + " service end");
+        }
+    }
+}
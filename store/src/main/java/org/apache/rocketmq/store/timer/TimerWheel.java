@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store.timer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.logging.InternalLogger;
+import org.apache.rocketmq.logging.InternalLoggerFactory;
+import org.apache.rocketmq.store.MappedFile;
+
+/**
+ * Slots of the timing wheel, each of which is the head of a linked list of {@link TimerLog} units going backward.
+ * <p/>
+ * Slot layout: slot time(8), first unit position(8), last unit position(8), unit number(4), reserved(4). A slot
+ * written for another round of the wheel is taken as empty.
+ */
+public class TimerWheel {
+    private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.STORE_LOGGER_NAME);
+
+    public static final int SLOT_SIZE = 32;
+
+    private final String fileName;
+    private final int slotNum;
+    private final long precisionMs;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel fileChannel;
+    private final MappedByteBuffer mappedByteBuffer;
+
+    public TimerWheel(final String fileName, final int slotNum, final long precisionMs) throws IOException {
+        this.fileName = fileName;
+        this.slotNum = slotNum;
+        this.precisionMs = precisionMs;
+
+        File file = new File(fileName);
+        MappedFile.ensureDirOK(file.getParent());
+        if (file.exists() && file.length() != (long) slotNum * SLOT_SIZE) {
+            log.warn("timer wheel {} of size {} does not match {} slots, recreate it", fileName, file.length(), slotNum);
+            if (!file.delete()) {
+                throw new IOException("delete timer wheel " + fileName + " failed");
+            }
+        }
+
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        this.fileChannel = this.randomAccessFile.getChannel();
+        this.mappedByteBuffer = this.fileChannel.map(MapMode.READ_WRITE, 0, (long) slotNum * SLOT_SIZE);
+    }
+
+    public long alignTime(final long timeMs) {
+        return timeMs / this.precisionMs * this.precisionMs;
+    }
+
+    /**
+     * @return the slot of the aligned time, empty if nothing is put into it in this round
+     */
+    public Slot getSlot(final long timeMs) {
+        long slotTimeMs = this.alignTime(timeMs);
+        int pos = this.slotPosition(slotTimeMs);
+        if (this.mappedByteBuffer.getLong(pos) != slotTimeMs) {
+            return new Slot(slotTimeMs, -1, -1, 0);
+        }
+        return new Slot(slotTimeMs, this.mappedByteBuffer.getLong(pos + 8), this.mappedByteBuffer.getLong(pos + 16),
+            this.mappedByteBuffer.getInt(pos + 24));
+    }
+
+    public void putSlot(final long timeMs, final long firstPos, final long lastPos, final int num) {
+        long slotTimeMs = this.alignTime(timeMs);
+        int pos = this.slotPosition(slotTimeMs);
+        this.mappedByteBuffer.putLong(pos + 8, firstPos);
+        this.mappedByteBuffer.putLong(pos + 16, lastPos);
+        this.mappedByteBuffer.putInt(pos + 24, num);
+        // the slot time last, the slot is never taken with the positions of the previous round
+        this.mappedByteBuffer.putLong(pos, slotTimeMs);
+    }
+
+    /**
+     * @return the least position of units kept by the slots from the time on, -1 if none
+     */
+    public long getMinFirstPos(final long timeMs) {
+        long minPos = -1;
+        long slotTimeMs = this.alignTime(timeMs);
+        for (int i = 0; i < this.slotNum; i++, slotTimeMs += this.precisionMs) {
+            Slot slot = this.getSlot(slotTimeMs);
+            if (slot.getFirstPos() >= 0 && (minPos < 0 || slot.getFirstPos() < minPos)) {
+                minPos = slot.getFirstPos();
+            }
+        }
+        return minPos;
+    }
+
+    public long getPrecisionMs() {
+        return precisionMs;
+    }
+
+    public int getSlotNum() {
+        return slotNum;
+    }
+
+    /**
+     * Time span of the slots, the delivery times later than the span go round the wheel again.
+     */
+    public long getSpanMs() {
+        return this.slotNum * this.precisionMs;
+    }
+
+    public void flush() {
+        this.mappedByteBuffer.force();
+    }
+
+    public void shutdown() {
+        this.flush();
+
+        // unmap mappedByteBuffer
+        MappedFile.clean(this.mappedByteBuffer);
+
+        try {
+            this.fileChannel.close();
+        } catch (IOException e) {
+            log.error("Failed to properly close the channel", e);
+        }
+    }
+
+    public void destroy() {
+        this.shutdown();
+        if (!new File(this.fileName).delete()) {
+            log.warn("delete timer wheel {} failed", this.fileName);
+        }
+    }
+
+    private int slotPosition(final long slotTimeMs) {
+        return (int) (slotTimeMs / this.precisionMs % this.slotNum) * SLOT_SIZE;
+    }
+
+    public static class Slot {
+        private final long timeMs;
+        private final long firstPos;
+        private final long lastPos;
+        private final int num;
+
+        public Slot(long timeMs, long firstPos, long lastPos, int num) {
+            this.timeMs = timeMs;
+            this.firstPos = firstPos;
+            this.lastPos = lastPos;
+            this.num = num;
+        }
+
+        public long getTimeMs() {
+            return timeMs;
+        }
+
+        public long getFirstPos() {
+            return firstPos;
+        }
+
+        public long getLastPos() {
+            return lastPos;
+        }
+
+        public int getNum() {
+            return num;
+        }
+    }
+}
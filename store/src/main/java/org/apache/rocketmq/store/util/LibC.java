@@ -27,6 +27,8 @@ public interface LibC extends Library {
 
     int MADV_WILLNEED = 3;
     int MADV_DONTNEED = 4;
+    /* prefault page tables writable, since Linux 5.14 */
+    int MADV_POPULATE_WRITE = 23;
 
     int MCL_CURRENT = 1;
     int MCL_FUTURE = 2;
@@ -39,15 +41,30 @@ public interface LibC extends Library {
     /* synchronous memory sync */
     int MS_SYNC = 0x0004;
 
+    int O_RDWR = 0x0002;
+    /* bypass the page cache, the value differs between architectures */
+    int O_DIRECT = Platform.isARM() || "aarch64".equals(Platform.ARCH) ? 0x10000 : 0x4000;
+
     int mlock(Pointer var1, NativeLong var2);
 
     int munlock(Pointer var1, NativeLong var2);
 
     int madvise(Pointer var1, NativeLong var2, int var3);
 
+    /* one byte per page in vec, the least significant bit is set if the page is resident */
+    int mincore(Pointer addr, NativeLong length, byte[] vec);
+
     Pointer memset(Pointer p, int v, long len);
 
     int mlockall(int flags);
 
     int msync(Pointer p, NativeLong length, int flags);
+
+    int open(String path, int flags);
+
+    int close(int fd);
+
+    NativeLong pwrite(int fd, Pointer buf, NativeLong count, long offset);
+
+    int posix_fallocate(int fd, long offset, long len);
 }
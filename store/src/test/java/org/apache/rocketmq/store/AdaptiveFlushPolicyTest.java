@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.store;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.message.MessageDecoder;
+import org.apache.rocketmq.store.config.FlushDiskType;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+import org.apache.rocketmq.store.stats.BrokerStatsManager;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AdaptiveFlushPolicyTest {
+
+    @Test
+    public void testTargetBytesFollowThroughput() {
+        AdaptiveFlushPolicy policy = new AdaptiveFlushPolicy(10, 500, 4096, 1024 * 1024);
+        assertThat(policy.getTargetBytes()).isEqualTo(4096);
+
+        // 64KB in 1ms, 10ms worth is 640KB
+        policy.onWrite(64 * 1024, TimeUnit.MILLISECONDS.toNanos(1), 0);
+        assertThat(policy.getTargetBytes()).isEqualTo(640 * 1024);
+
+        // a much faster device is capped by the max bytes
+        for (int i = 0; i < 100; i++) {
+            policy.onWrite(1024 * 1024, TimeUnit.MICROSECONDS.toNanos(10), 0);
+        }
+        assertThat(policy.getTargetBytes()).isEqualTo(1024 * 1024);
+
+        // a very slow device is floored by the min bytes
+        for (int i = 0; i < 100; i++) {
+            policy.onWrite(1024, TimeUnit.SECONDS.toNanos(1), 0);
+        }
+        assertThat(policy.getTargetBytes()).isEqualTo(4096);
+    }
+
+    @Test
+    public void testWaitMillis() {
+        AdaptiveFlushPolicy policy = new AdaptiveFlushPolicy(10, 500, 4096, 1024 * 1024);
+        policy.onWrite(4096, TimeUnit.MILLISECONDS.toNanos(1), 1000);
+
+        assertThat(policy.getWaitMillis(0, 1000)).isEqualTo(500);
+        assertThat(policy.getWaitMillis(40 * 1024, 1000)).isEqualTo(0);
+        assertThat(policy.getWaitMillis(1024, 1200)).isEqualTo(300);
+        assertThat(policy.getWaitMillis(1024, 1600)).isEqualTo(0);
+
+        // an empty write does not move the deadline
+        policy.onWrite(0, 0, 1600);
+        assertThat(policy.getWaitMillis(1024, 1600)).isEqualTo(0);
+    }
+
+    @Test
+    public void testAdaptiveFlushStore() throws Exception {
+        String storePath = System.getProperty("user.home") + File.separator + "unitteststore-" + UUID.randomUUID();
+        MessageStoreConfig messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setMappedFileSizeCommitLog(1024 * 64);
+        messageStoreConfig.setMappedFileSizeConsumeQueue(1024 * 4);
+        messageStoreConfig.setMaxHashSlotNum(100);
+        messageStoreConfig.setMaxIndexNum(100 * 10);
+        messageStoreConfig.setFlushDiskType(FlushDiskType.ASYNC_FLUSH);
+        messageStoreConfig.setEnableAdaptiveFlush(true);
+        messageStoreConfig.setStorePathRootDir(storePath);
+        messageStoreConfig.setStorePathCommitLog(storePath + File.separator + "commitlog");
+        DefaultMessageStore messageStore = new DefaultMessageStore(messageStoreConfig,
+            new BrokerStatsManager("AdaptiveFlushPolicyTest", true), null, new BrokerConfig());
+        try {
+            assertThat(messageStore.load()).isTrue();
+            messageStore.start();
+
+            InetSocketAddress host = new InetSocketAddress("127.0.0.1", 8123);
+            for (int i = 0; i < 1000; i++) {
+                MessageExtBrokerInner msg = new MessageExtBrokerInner();
+                msg.setTopic("AdaptiveFlushTopic");
+                msg.setTags("TAG1");
+                msg.setBody(("message-" + i).getBytes());
+                msg.setQueueId(0);
+                msg.setBornTimestamp(System.currentTimeMillis());
+                msg.setBornHost(host);
+                msg.setStoreHost(host);
+                msg.setPropertiesString(MessageDecoder.messageProperties2String(msg.getProperties()));
+                assertThat(messageStore.putMessage(msg).getPutMessageStatus()).isEqualTo(PutMessageStatus.PUT_OK);
+            }
+
+            CommitLog commitLog = messageStore.getCommitLog();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (commitLog.mappedFileQueue.getFlushedWhere() < commitLog.getMaxOffset() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertThat(commitLog.mappedFileQueue.getFlushedWhere()).isEqualTo(commitLog.getMaxOffset());
+
+            long flushTimes = 0;
+            for (LongAdder count : messageStore.getStoreStatsService().getFlushCommitLogSizeDistribute()) {
+                flushTimes += count.sum();
+            }
+            assertThat(flushTimes).isGreaterThan(0);
+        } finally {
+            messageStore.shutdown();
+            messageStore.destroy();
+            UtilAll.deleteFile(new File(storePath));
+        }
+    }
+}
@@ -260,4 +260,81 @@ public class AppendCallbackTest {
 
     }
 
+    @Test
+    public void testAppendMessageBatchDirect() throws Exception {
+        List<Message> messages = new ArrayList<>();
+        String topic = "test-topic";
+        int queue = 0;
+        for (int i = 0; i < 10; i++) {
+            Message msg = new Message();
+            msg.setBody(("body" + i).getBytes());
+            msg.setTopic(topic);
+            msg.setTags("abc");
+            messages.add(msg);
+        }
+        MessageExtBatch messageExtBatch = new MessageExtBatch();
+        messageExtBatch.setTopic(topic);
+        messageExtBatch.setQueueId(queue);
+        messageExtBatch.setBornTimestamp(System.currentTimeMillis());
+        messageExtBatch.setStoreTimestamp(System.currentTimeMillis());
+        messageExtBatch.setBornHost(new InetSocketAddress("127.0.0.1", 123));
+        messageExtBatch.setStoreHost(new InetSocketAddress("127.0.0.1", 124));
+        messageExtBatch.putUserProperty("batchKey", "batchValue");
+        messageExtBatch.setBody(MessageDecoder.encodeMessages(messages));
+
+        PutMessageContext encodedContext = new PutMessageContext(topic + "-encoded");
+        messageExtBatch.setEncodedBuff(batchEncoder.encode(messageExtBatch, encodedContext));
+        ByteBuffer encodedBuff = ByteBuffer.allocate(1024 * 10);
+        AppendMessageResult encodedResult = callback.doAppend(0, encodedBuff, 1024 * 10, messageExtBatch, encodedContext);
+
+        PutMessageContext directContext = new PutMessageContext(topic + "-direct");
+        batchEncoder.scan(messageExtBatch, directContext);
+        ByteBuffer directBuff = ByteBuffer.allocate(1024 * 10);
+        AppendMessageResult directResult = callback.doAppend(0, directBuff, 1024 * 10, messageExtBatch, directContext);
+
+        assertEquals(AppendMessageStatus.PUT_OK, directResult.getStatus());
+        assertEquals(encodedResult.getWroteBytes(), directResult.getWroteBytes());
+        assertEquals(encodedResult.getMsgNum(), directResult.getMsgNum());
+        assertEquals(encodedResult.getMsgId(), directResult.getMsgId());
+        assertEquals(encodedBuff.position(), directBuff.position());
+        encodedBuff.flip();
+        directBuff.flip();
+        assertEquals(encodedBuff, directBuff);
+
+        for (int i = 0; i < 10; i++) {
+            MessageExt messageExt = MessageDecoder.decode(directBuff);
+            assertEquals("body" + i, new String(messageExt.getBody()));
+            assertEquals(i, messageExt.getQueueOffset());
+            assertEquals("batchValue", messageExt.getProperty("batchKey"));
+        }
+    }
+
+    @Test
+    public void testAppendMessageBatchDirectEndOfFile() throws Exception {
+        List<Message> messages = new ArrayList<>();
+        String topic = "test-topic";
+        int queue = 0;
+        for (int i = 0; i < 10; i++) {
+            Message msg = new Message();
+            msg.setBody("body".getBytes());
+            msg.setTopic(topic);
+            msg.setTags("abc");
+            messages.add(msg);
+        }
+        MessageExtBatch messageExtBatch = new MessageExtBatch();
+        messageExtBatch.setTopic(topic);
+        messageExtBatch.setQueueId(queue);
+        messageExtBatch.setBornTimestamp(System.currentTimeMillis());
+        messageExtBatch.setBornHost(new InetSocketAddress("127.0.0.1", 123));
+        messageExtBatch.setStoreHost(new InetSocketAddress("127.0.0.1", 124));
+        messageExtBatch.setBody(MessageDecoder.encodeMessages(messages));
+
+        PutMessageContext putMessageContext = new PutMessageContext(topic + "-" + queue);
+        batchEncoder.scan(messageExtBatch, putMessageContext);
+        ByteBuffer buff = ByteBuffer.allocate(1024 * 10);
+        AppendMessageResult result = callback.doAppend(0, buff, 1000, messageExtBatch, putMessageContext);
+        assertEquals(AppendMessageStatus.END_OF_FILE, result.getStatus());
+        assertEquals(1000, result.getWroteBytes());
+        assertEquals(8, buff.position()); //write blank size and magic value
+    }
 }
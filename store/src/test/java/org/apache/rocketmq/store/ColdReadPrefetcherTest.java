@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.store;
+
+import java.nio.ByteBuffer;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ColdReadPrefetcherTest {
+    private static final String GROUP = "ColdReadGroup";
+    private static final String TOPIC = "ColdReadTopic";
+    private static final int READ_AHEAD_SIZE = 1024;
+    private static final int MSG_SIZE = 100;
+
+    private CommitLog commitLog;
+    private ColdReadPrefetcher prefetcher;
+
+    @Before
+    public void init() {
+        MessageStoreConfig messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setColdReadAheadSize(READ_AHEAD_SIZE);
+        DefaultMessageStore messageStore = mock(DefaultMessageStore.class);
+        commitLog = mock(CommitLog.class);
+        when(messageStore.getMessageStoreConfig()).thenReturn(messageStoreConfig);
+        when(messageStore.getCommitLog()).thenReturn(commitLog);
+        prefetcher = new ColdReadPrefetcher(messageStore, null);
+    }
+
+    @Test
+    public void testSequentialRead() {
+        pull(0, true);
+        verify(commitLog, never()).readAhead(anyLong(), anyInt());
+
+        pull(1, true);
+        verify(commitLog).readAhead(2 * MSG_SIZE, READ_AHEAD_SIZE);
+        assertThat(prefetcher.getReadAheadEnd(GROUP, TOPIC, 0, 2)).isEqualTo(2 * MSG_SIZE + READ_AHEAD_SIZE);
+    }
+
+    @Test
+    public void testReadAheadWindow() {
+        long windowEnd = 2 * MSG_SIZE + READ_AHEAD_SIZE;
+        pull(0, true);
+        pull(1, true);
+
+        // nothing is advised again until half of the window is consumed
+        int offset = 2;
+        for (; windowEnd - (offset + 1) * MSG_SIZE >= READ_AHEAD_SIZE / 2; offset++) {
+            pull(offset, true);
+        }
+        verify(commitLog).readAhead(anyLong(), anyInt());
+        assertThat(prefetcher.getReadAheadEnd(GROUP, TOPIC, 0, offset)).isEqualTo(windowEnd);
+
+        // then only the part beyond the previous window is advised
+        pull(offset, true);
+        long readEnd = (offset + 1) * MSG_SIZE;
+        verify(commitLog).readAhead(windowEnd, (int) (readEnd + READ_AHEAD_SIZE - windowEnd));
+        assertThat(prefetcher.getReadAheadEnd(GROUP, TOPIC, 0, offset + 1)).isEqualTo(readEnd + READ_AHEAD_SIZE);
+    }
+
+    @Test
+    public void testRandomRead() {
+        pull(0, true);
+        pull(5, true);
+        pull(2, true);
+        pull(9, true);
+
+        verify(commitLog, never()).readAhead(anyLong(), anyInt());
+        assertThat(prefetcher.getReadAheadEnd(GROUP, TOPIC, 0, 10)).isEqualTo(-1);
+    }
+
+    @Test
+    public void testReadFromPageCache() {
+        pull(0, true);
+        pull(1, true);
+        assertThat(prefetcher.getReadAheadEnd(GROUP, TOPIC, 0, 2)).isGreaterThan(0);
+
+        pull(2, false);
+        assertThat(prefetcher.getReadAheadEnd(GROUP, TOPIC, 0, 3)).isEqualTo(-1);
+
+        pull(3, true);
+        verify(commitLog).readAhead(anyLong(), anyInt());
+    }
+
+    /**
+     * Pull the message at {@code offset} of the queue, which is stored at {@code offset * MSG_SIZE} in the commit log.
+     */
+    private void pull(long offset, boolean isInDisk) {
+        GetMessageResult getResult = new GetMessageResult();
+        getResult.addMessage(new SelectMappedBufferResult(offset * MSG_SIZE, ByteBuffer.allocate(MSG_SIZE), MSG_SIZE, null));
+        prefetcher.onMessageGot(GROUP, TOPIC, 0, offset, offset + 1, isInDisk, getResult);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.store;
+
+import java.io.File;
+import org.apache.rocketmq.common.UtilAll;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConsumeQueueTimeIndexTest {
+    private static final String STORE_PATH = "target/unit_test_store/ConsumeQueueTimeIndexTest";
+    private static final String TOPIC = "abc";
+    private static final int QUEUE_ID = 0;
+    private static final int FILE_SIZE = ConsumeQueueTimeIndex.TIME_INDEX_UNIT_SIZE * 4;
+
+    private ConsumeQueueTimeIndex genTimeIndex() {
+        return new ConsumeQueueTimeIndex(TOPIC, QUEUE_ID, STORE_PATH, FILE_SIZE);
+    }
+
+    @Test
+    public void testFloorAndHigher() {
+        ConsumeQueueTimeIndex timeIndex = genTimeIndex();
+        try {
+            assertThat(timeIndex.floorQueueOffset(1000)).isEqualTo(-1);
+            assertThat(timeIndex.getMinQueueOffset()).isEqualTo(-1);
+
+            // 10 units over 3 files
+            for (int i = 0; i < 10; i++) {
+                assertThat(timeIndex.put(i * 32, 1000 + i * 10)).isTrue();
+            }
+            // repeated units are ignored
+            assertThat(timeIndex.put(32, 5000)).isTrue();
+
+            assertThat(timeIndex.getMinQueueOffset()).isEqualTo(0);
+            assertThat(timeIndex.getMaxQueueOffset()).isEqualTo(9 * 32);
+            assertThat(timeIndex.floorQueueOffset(999)).isEqualTo(-1);
+            assertThat(timeIndex.higherQueueOffset(999)).isEqualTo(0);
+            assertThat(timeIndex.floorQueueOffset(1055)).isEqualTo(5 * 32);
+            assertThat(timeIndex.higherQueueOffset(1055)).isEqualTo(6 * 32);
+            assertThat(timeIndex.floorQueueOffset(1060)).isEqualTo(6 * 32);
+            assertThat(timeIndex.floorQueueOffset(2000)).isEqualTo(9 * 32);
+            assertThat(timeIndex.higherQueueOffset(2000)).isEqualTo(-1);
+        } finally {
+            timeIndex.destroy();
+        }
+    }
+
+    @Test
+    public void testTruncateAndRecover() {
+        ConsumeQueueTimeIndex timeIndex = genTimeIndex();
+        for (int i = 0; i < 10; i++) {
+            timeIndex.put(i * 32, 1000 + i * 10);
+        }
+        timeIndex.truncateByMaxQueueOffset(4 * 32 + 1);
+        assertThat(timeIndex.getMaxQueueOffset()).isEqualTo(4 * 32);
+        assertThat(timeIndex.higherQueueOffset(1045)).isEqualTo(-1);
+
+        assertThat(timeIndex.put(5 * 32, 1050)).isTrue();
+        timeIndex.flush(0);
+
+        ConsumeQueueTimeIndex recovered = genTimeIndex();
+        try {
+            assertThat(recovered.load()).isTrue();
+            recovered.recover();
+            assertThat(recovered.getMaxQueueOffset()).isEqualTo(5 * 32);
+            assertThat(recovered.floorQueueOffset(2000)).isEqualTo(5 * 32);
+
+            assertThat(recovered.deleteExpiredFile(4 * 32)).isEqualTo(1);
+            assertThat(recovered.getMinQueueOffset()).isEqualTo(4 * 32);
+        } finally {
+            recovered.destroy();
+        }
+    }
+
+    @After
+    public void destroy() {
+        UtilAll.deleteFile(new File(STORE_PATH));
+    }
+}
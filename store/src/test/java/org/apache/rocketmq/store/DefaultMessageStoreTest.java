@@ -35,7 +35,9 @@ import java.util.Random;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.rocketmq.common.BrokerConfig;
 import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.filter.FilterAPI;
 import org.apache.rocketmq.common.message.MessageConst;
+import org.apache.rocketmq.common.message.MessageDecoder;
 import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.store.config.FlushDiskType;
 import org.apache.rocketmq.store.config.MessageStoreConfig;
@@ -509,6 +511,47 @@ public class DefaultMessageStoreTest {
 
     }
 
+    @Test
+    public void testGetMessageFilteredByTagsCode() throws Exception {
+        String topic = "tagsCodeTopic";
+        for (int i = 0; i < 30; i++) {
+            MessageExtBrokerInner messageExtBrokerInner = buildMessage();
+            messageExtBrokerInner.setTopic(topic);
+            messageExtBrokerInner.setQueueId(0);
+            messageExtBrokerInner.setTags(i % 3 == 0 ? "TagA" : "TagB");
+            messageExtBrokerInner.setPropertiesString(MessageDecoder.messageProperties2String(messageExtBrokerInner.getProperties()));
+            messageStore.putMessage(messageExtBrokerInner);
+        }
+        StoreTestUtil.waitCommitLogReput((DefaultMessageStore) messageStore);
+
+        String group = "simple";
+        MessageFilter messageFilter = new DefaultMessageFilter(FilterAPI.buildSubscriptionData(topic, "TagA"));
+        GetMessageResult filteredResult = messageStore.getMessage(group, topic, 0, 0, 32, messageFilter);
+        try {
+            assertThat(filteredResult.getStatus()).isEqualTo(GetMessageStatus.FOUND);
+            assertThat(filteredResult.getNextBeginOffset()).isEqualTo(30);
+            assertThat(filteredResult.getMessageCount()).isEqualTo(10);
+            for (ByteBuffer buffer : filteredResult.getMessageBufferList()) {
+                assertThat(MessageDecoder.decode(buffer).getTags()).isEqualTo("TagA");
+            }
+        } finally {
+            filteredResult.release();
+        }
+
+        // the messages lying next to each other in the commit log share one mapped buffer
+        GetMessageResult allResult = messageStore.getMessage(group, topic, 0, 0, 32, null);
+        try {
+            assertThat(allResult.getMessageCount()).isEqualTo(30);
+            assertThat(allResult.getMessageMapedList().size()).isEqualTo(1);
+            for (int i = 0; i < 30; i++) {
+                MessageExt messageExt = MessageDecoder.decode(allResult.getMessageBufferList().get(i));
+                assertThat(messageExt.getQueueOffset()).isEqualTo(i);
+            }
+        } finally {
+            allResult.release();
+        }
+    }
+
     @Test
     public void testRecover() throws Exception {
         String topic = "recoverTopic";
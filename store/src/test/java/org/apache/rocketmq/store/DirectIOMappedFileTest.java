@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DirectIOMappedFileTest {
+    private static final int FILE_SIZE = 1024 * 64;
+    private static final int BLOCK_SIZE = 1024 * 4;
+
+    @Test
+    public void testBlockCacheEvictAndInvalidate() {
+        DirectIOBlockCache blockCache = new DirectIOBlockCache(BLOCK_SIZE, 2);
+        blockCache.putBlock(0, ByteBuffer.allocate(BLOCK_SIZE));
+        blockCache.putBlock(BLOCK_SIZE, ByteBuffer.allocate(BLOCK_SIZE));
+        assertThat(blockCache.getBlock(0)).isNotNull();
+
+        // the least recently used block goes first
+        blockCache.putBlock(2 * BLOCK_SIZE, ByteBuffer.allocate(BLOCK_SIZE));
+        assertThat(blockCache.getBlockNum()).isEqualTo(2);
+        assertThat(blockCache.getBlock(BLOCK_SIZE)).isNull();
+        assertThat(blockCache.getBlock(0)).isNotNull();
+
+        blockCache.invalidate(BLOCK_SIZE + 1, 3 * BLOCK_SIZE);
+        assertThat(blockCache.getBlock(2 * BLOCK_SIZE)).isNull();
+        assertThat(blockCache.getBlock(0)).isNotNull();
+        assertThat(blockCache.getHitTimes()).isEqualTo(3);
+        assertThat(blockCache.getMissTimes()).isEqualTo(2);
+    }
+
+    @Test
+    public void testCommitAndRead() throws IOException {
+        MessageStoreConfig storeConfig = new MessageStoreConfig();
+        storeConfig.setMappedFileSizeCommitLog(FILE_SIZE);
+        storeConfig.setTransientStorePoolEnable(true);
+        storeConfig.setTransientStorePoolSize(1);
+        storeConfig.setCommitLogDirectIOEnable(true);
+        TransientStorePool transientStorePool = new TransientStorePool(storeConfig);
+        transientStorePool.init();
+        DirectIOBlockCache blockCache = new DirectIOBlockCache(BLOCK_SIZE, 16);
+
+        DirectIOMappedFile mappedFile = new DirectIOMappedFile("target/unit_test_store/DirectIOMappedFileTest/000",
+            FILE_SIZE, transientStorePool, blockCache);
+        try {
+            Assume.assumeTrue("O_DIRECT is not supported here", mappedFile.isDirectIO());
+
+            byte[] data = new byte[BLOCK_SIZE + 100];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (byte) i;
+            }
+            ByteBuffer writeBuffer = mappedFile.writeBuffer.slice();
+            writeBuffer.put(data);
+            mappedFile.setWrotePosition(data.length);
+            assertThat(mappedFile.commit(0)).isEqualTo(data.length);
+            mappedFile.flush(0);
+
+            // the first block is complete and cached, the tail one is read from the file
+            SelectMappedBufferResult result = mappedFile.selectMappedBuffer(10, data.length - 10);
+            byte[] read = new byte[data.length - 10];
+            result.getByteBuffer().get(read);
+            result.release();
+            for (int i = 0; i < read.length; i++) {
+                assertThat(read[i]).isEqualTo(data[i + 10]);
+            }
+            assertThat(blockCache.getBlockNum()).isEqualTo(1);
+
+            result = mappedFile.selectMappedBuffer(BLOCK_SIZE - 10, 10);
+            assertThat(result.getByteBuffer().get(0)).isEqualTo(data[BLOCK_SIZE - 10]);
+            result.release();
+            assertThat(blockCache.getHitTimes()).isEqualTo(1);
+        } finally {
+            mappedFile.shutdown(1000);
+            mappedFile.destroy(1000);
+            transientStorePool.destroy();
+        }
+        assertThat(blockCache.getBlockNum()).isEqualTo(0);
+    }
+
+    @After
+    public void destroy() {
+        File file = new File("target/unit_test_store");
+        UtilAll.deleteFile(file);
+    }
+}
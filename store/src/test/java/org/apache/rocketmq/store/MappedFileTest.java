@@ -22,8 +22,11 @@ package org.apache.rocketmq.store;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.message.MessageExtBatch;
+import org.apache.rocketmq.store.CommitLog.PutMessageContext;
 import org.junit.After;
 import org.junit.Test;
 
@@ -31,6 +34,20 @@ import static org.assertj.core.api.Assertions.assertThat;
 
 public class MappedFileTest {
     private final String storeMessage = "Once, there was a chance for me!";
+    private final AppendMessageCallback reserveCallback = new AppendMessageCallback() {
+        @Override
+        public AppendMessageResult doAppend(long fileFromOffset, ByteBuffer byteBuffer, int maxBlank,
+            MessageExtBrokerInner msg, PutMessageContext putMessageContext) {
+            return new AppendMessageResult(AppendMessageStatus.PUT_OK, fileFromOffset + byteBuffer.position(),
+                msg.getEncodedBuff().remaining(), "", msg.getStoreTimestamp(), 0, 0);
+        }
+
+        @Override
+        public AppendMessageResult doAppend(long fileFromOffset, ByteBuffer byteBuffer, int maxBlank,
+            MessageExtBatch messageExtBatch, PutMessageContext putMessageContext) {
+            return new AppendMessageResult(AppendMessageStatus.UNKNOWN_ERROR);
+        }
+    };
 
     @Test
     public void testSelectMappedBuffer() throws IOException {
@@ -52,6 +69,83 @@ public class MappedFileTest {
         assertThat(mappedFile.destroy(1000)).isTrue();
     }
 
+    @Test
+    public void testWriteReservedSlotOutOfOrder() throws IOException {
+        MappedFile mappedFile = new MappedFile("target/unit_test_store/MappedFileTest/001", 1024 * 64);
+        PutMessageContext putMessageContext = new PutMessageContext("topic-0");
+        putMessageContext.setReserveOnly(true);
+
+        byte[][] slots = new byte[3][];
+        int[] positions = new int[3];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = (storeMessage + i).getBytes();
+            MessageExtBrokerInner msg = new MessageExtBrokerInner();
+            msg.setEncodedBuff(ByteBuffer.wrap(slots[i]));
+            AppendMessageResult result = mappedFile.reserveMessage(msg, reserveCallback, putMessageContext);
+            assertThat(result.getStatus()).isEqualTo(AppendMessageStatus.PUT_OK);
+            positions[i] = (int) (result.getWroteOffset() - mappedFile.getFileFromOffset());
+        }
+        assertThat(mappedFile.getReservedPosition()).isEqualTo(positions[2] + slots[2].length);
+        assertThat(mappedFile.getWrotePosition()).isEqualTo(0);
+
+        // the later slots are not visible until the first one is written
+        mappedFile.writeReservedSlot(positions[2], ByteBuffer.wrap(slots[2]), 0);
+        mappedFile.writeReservedSlot(positions[1], ByteBuffer.wrap(slots[1]), 0);
+        assertThat(mappedFile.getWrotePosition()).isEqualTo(0);
+        assertThat(mappedFile.selectMappedBuffer(0)).isNull();
+
+        mappedFile.writeReservedSlot(positions[0], ByteBuffer.wrap(slots[0]), 0);
+        assertThat(mappedFile.getWrotePosition()).isEqualTo(mappedFile.getReservedPosition());
+
+        SelectMappedBufferResult selectMappedBufferResult = mappedFile.selectMappedBuffer(positions[1], slots[1].length);
+        byte[] data = new byte[slots[1].length];
+        selectMappedBufferResult.getByteBuffer().get(data);
+        selectMappedBufferResult.release();
+        assertThat(data).isEqualTo(slots[1]);
+
+        mappedFile.shutdown(1000);
+        assertThat(mappedFile.destroy(1000)).isTrue();
+    }
+
+    @Test
+    public void testWriteManyReservedSlotsInReverse() throws IOException {
+        MappedFile mappedFile = new MappedFile("target/unit_test_store/MappedFileTest/002", 1024 * 64);
+        PutMessageContext putMessageContext = new PutMessageContext("topic-0");
+        putMessageContext.setReserveOnly(true);
+
+        int[] positions = new int[100];
+        for (int i = 0; i < positions.length; i++) {
+            MessageExtBrokerInner msg = new MessageExtBrokerInner();
+            msg.setEncodedBuff(ByteBuffer.wrap(storeMessage.getBytes()));
+            AppendMessageResult result = mappedFile.reserveMessage(msg, reserveCallback, putMessageContext);
+            positions[i] = (int) (result.getWroteOffset() - mappedFile.getFileFromOffset());
+        }
+
+        for (int i = positions.length - 1; i > 0; i--) {
+            mappedFile.writeReservedSlot(positions[i], ByteBuffer.wrap(storeMessage.getBytes()), 0);
+        }
+        assertThat(mappedFile.getWrotePosition()).isEqualTo(0);
+        mappedFile.writeReservedSlot(positions[0], ByteBuffer.wrap(storeMessage.getBytes()), 0);
+        assertThat(mappedFile.getWrotePosition()).isEqualTo(positions.length * storeMessage.length());
+
+        mappedFile.shutdown(1000);
+        assertThat(mappedFile.destroy(1000)).isTrue();
+    }
+
+    @Test
+    public void testReadAheadAndCountResidentBytes() throws IOException {
+        MappedFile mappedFile = new MappedFile("target/unit_test_store/MappedFileTest/002", 1024 * 64);
+        assertThat(mappedFile.appendMessage(storeMessage.getBytes())).isTrue();
+
+        assertThat(mappedFile.readAhead(0, 1024 * 64)).isTrue();
+        // the page written is resident
+        assertThat(mappedFile.countResidentBytes(0, storeMessage.length())).isEqualTo(storeMessage.length());
+
+        mappedFile.shutdown(1000);
+        assertThat(mappedFile.readAhead(0, 1024 * 64)).isFalse();
+        assertThat(mappedFile.destroy(1000)).isTrue();
+    }
+
     @After
     public void destory() {
         File file = new File("target/unit_test_store");
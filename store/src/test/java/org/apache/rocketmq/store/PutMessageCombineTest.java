@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.store;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.message.MessageDecoder;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.store.config.FlushDiskType;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+import org.apache.rocketmq.store.stats.BrokerStatsManager;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PutMessageCombineTest {
+    private static final String TOPIC = "PutMessageCombineTopic";
+    private static final int QUEUE_NUM = 4;
+    private static final int THREAD_NUM = 8;
+    private static final int MESSAGES_PER_THREAD = 300;
+
+    private final InetSocketAddress bornHost = new InetSocketAddress("127.0.0.1", 8123);
+    private final InetSocketAddress storeHost = new InetSocketAddress("127.0.0.1", 10911);
+    private String storePath;
+    private DefaultMessageStore messageStore;
+
+    @After
+    public void destroy() {
+        if (messageStore != null) {
+            messageStore.shutdown();
+            messageStore.destroy();
+        }
+        UtilAll.deleteFile(new File(storePath));
+    }
+
+    @Test
+    public void testConcurrentPutMessage() throws Exception {
+        messageStore = buildMessageStore(false);
+        putAndVerify();
+    }
+
+    @Test
+    public void testConcurrentPutMessageWithReservedSlot() throws Exception {
+        messageStore = buildMessageStore(true);
+        putAndVerify();
+    }
+
+    @Test
+    public void testAsyncPutMessageWithoutWaitStore() throws Exception {
+        messageStore = buildMessageStore(false);
+        List<CompletableFuture<PutMessageResult>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            MessageExtBrokerInner msg = buildMessage(0, i);
+            msg.setWaitStoreMsgOK(false);
+            futures.add(messageStore.asyncPutMessage(msg));
+        }
+        for (CompletableFuture<PutMessageResult> future : futures) {
+            assertThat(future.get(3, TimeUnit.SECONDS).getPutMessageStatus()).isEqualTo(PutMessageStatus.PUT_OK);
+        }
+    }
+
+    private DefaultMessageStore buildMessageStore(boolean reservedSlotAppend) throws Exception {
+        storePath = System.getProperty("user.home") + File.separator + "unitteststore-" + UUID.randomUUID();
+        MessageStoreConfig messageStoreConfig = new MessageStoreConfig();
+        // small files so that the combined batches keep crossing file boundaries
+        messageStoreConfig.setMappedFileSizeCommitLog(1024 * 16);
+        messageStoreConfig.setMappedFileSizeConsumeQueue(1024 * 4);
+        messageStoreConfig.setMaxHashSlotNum(100);
+        messageStoreConfig.setMaxIndexNum(100 * 10);
+        messageStoreConfig.setFlushDiskType(FlushDiskType.SYNC_FLUSH);
+        messageStoreConfig.setEnablePutMessageCombine(true);
+        messageStoreConfig.setPutMessageCombineMaxNum(16);
+        messageStoreConfig.setEnableReservedSlotAppend(reservedSlotAppend);
+        messageStoreConfig.setStorePathRootDir(storePath);
+        messageStoreConfig.setStorePathCommitLog(storePath + File.separator + "commitlog");
+        DefaultMessageStore store = new DefaultMessageStore(messageStoreConfig,
+            new BrokerStatsManager("PutMessageCombineTest", true), null, new BrokerConfig());
+        assertThat(store.load()).isTrue();
+        store.start();
+        return store;
+    }
+
+    private void putAndVerify() throws Exception {
+        final AtomicInteger failed = new AtomicInteger(0);
+        final CountDownLatch latch = new CountDownLatch(THREAD_NUM);
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_NUM);
+        for (int t = 0; t < THREAD_NUM; t++) {
+            final int thread = t;
+            executor.execute(() -> {
+                try {
+                    for (int i = 0; i < MESSAGES_PER_THREAD; i++) {
+                        PutMessageResult result = messageStore.putMessage(buildMessage(thread, i));
+                        if (result.getPutMessageStatus() != PutMessageStatus.PUT_OK) {
+                            failed.incrementAndGet();
+                        }
+                    }
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+        assertThat(latch.await(60, TimeUnit.SECONDS)).isTrue();
+        executor.shutdown();
+        assertThat(failed.get()).isEqualTo(0);
+
+        StoreTestUtil.waitCommitLogReput(messageStore);
+
+        long total = 0;
+        for (int queueId = 0; queueId < QUEUE_NUM; queueId++) {
+            long maxOffset = messageStore.getMaxOffsetInQueue(TOPIC, queueId);
+            total += maxOffset;
+            long lastPhyOffset = -1;
+            for (long offset = 0; offset < maxOffset; offset++) {
+                GetMessageResult result = messageStore.getMessage("GROUP", TOPIC, queueId, offset, 1, null);
+                assertThat(result.getStatus()).isEqualTo(GetMessageStatus.FOUND);
+                List<MessageExt> messages = new ArrayList<>();
+                for (ByteBuffer buffer : result.getMessageBufferList()) {
+                    messages.add(MessageDecoder.decode(buffer));
+                }
+                result.release();
+
+                assertThat(messages).hasSize(1);
+                MessageExt messageExt = messages.get(0);
+                assertThat(messageExt.getQueueId()).isEqualTo(queueId);
+                assertThat(messageExt.getQueueOffset()).isEqualTo(offset);
+                assertThat(messageExt.getCommitLogOffset()).isGreaterThan(lastPhyOffset);
+                assertThat(new String(messageExt.getBody())).startsWith("thread-");
+                lastPhyOffset = messageExt.getCommitLogOffset();
+            }
+        }
+        assertThat(total).isEqualTo(THREAD_NUM * MESSAGES_PER_THREAD);
+    }
+
+    private MessageExtBrokerInner buildMessage(int thread, int i) {
+        MessageExtBrokerInner msg = new MessageExtBrokerInner();
+        msg.setTopic(TOPIC);
+        msg.setTags("TAG1");
+        msg.setBody(("thread-" + thread + "-message-" + i).getBytes());
+        msg.setQueueId(i % QUEUE_NUM);
+        msg.setSysFlag(0);
+        msg.setBornTimestamp(System.currentTimeMillis());
+        msg.setBornHost(bornHost);
+        msg.setStoreHost(storeHost);
+        msg.setPropertiesString(MessageDecoder.messageProperties2String(msg.getProperties()));
+        return msg;
+    }
+}
@@ -26,6 +26,8 @@ import java.util.concurrent.atomic.LongAdder;
 
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
+
 public class StoreStatsServiceTest {
 
     @Test
@@ -105,4 +107,18 @@ public class StoreStatsServiceTest {
         System.out.println(storeStatsService.findPutMessageEntireTimePX(0.999));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void incAllocateMappedFileWait() {
+        final StoreStatsService storeStatsService = new StoreStatsService();
+        storeStatsService.incAllocateMappedFileWait(0);
+        storeStatsService.incAllocateMappedFileWait(30);
+        storeStatsService.incAllocateMappedFileWait(3000);
+        assertEquals(3030, storeStatsService.getAllocateMappedFileWaitTimeTotal());
+        assertEquals(3000, storeStatsService.getAllocateMappedFileWaitTimeMax());
+        LongAdder[] distribute = storeStatsService.getAllocateMappedFileWaitDistribute();
+        assertEquals(1, distribute[0].longValue());
+        assertEquals(1, distribute[3].longValue());
+        assertEquals(1, distribute[distribute.length - 1].longValue());
+    }
+
+}
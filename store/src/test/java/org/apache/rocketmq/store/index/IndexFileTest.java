@@ -70,4 +70,38 @@ public class IndexFileTest {
         File file = new File("200");
         UtilAll.deleteFile(file);
     }
+
+    @Test
+    public void testMightContain() throws Exception {
+        try {
+            IndexFile indexFile = new IndexFile("300", HASH_SLOT_NUM, INDEX_NUM, 0, 0, 8);
+            for (long i = 0; i < 100; i++) {
+                assertThat(indexFile.putKey(Long.toString(i), i, System.currentTimeMillis())).isTrue();
+            }
+
+            int falsePositive = 0;
+            for (long i = 0; i < 100; i++) {
+                assertThat(indexFile.mightContain(Long.toString(i))).isTrue();
+                if (indexFile.mightContain(Long.toString(i + 1000))) {
+                    falsePositive++;
+                }
+            }
+            assertThat(falsePositive).isLessThan(20);
+
+            // the summary is kept with the index file
+            indexFile.flush();
+            IndexFile loaded = new IndexFile("300", HASH_SLOT_NUM, INDEX_NUM, 0, 0);
+            loaded.load();
+            assertThat(loaded.hasBloomFilter()).isTrue();
+            for (long i = 0; i < 100; i++) {
+                assertThat(loaded.mightContain(Long.toString(i))).isTrue();
+            }
+            loaded.destroy(0);
+            assertThat(new File("300" + IndexBloomFilter.BLOOM_FILE_SUFFIX).exists()).isFalse();
+            indexFile.destroy(0);
+        } finally {
+            UtilAll.deleteFile(new File("300"));
+            UtilAll.deleteFile(new File("300" + IndexBloomFilter.BLOOM_FILE_SUFFIX));
+        }
+    }
 }
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.store.index;
+
+import java.io.File;
+import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.sysflag.MessageSysFlag;
+import org.apache.rocketmq.store.DefaultMessageStore;
+import org.apache.rocketmq.store.DispatchRequest;
+import org.apache.rocketmq.store.StoreCheckpoint;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class IndexServiceTest {
+    private static final String STORE_PATH = "target/unit_test_store/IndexServiceTest";
+    private static final String TOPIC = "FooBar";
+
+    private DefaultMessageStore messageStore;
+    private IndexService indexService;
+
+    @Before
+    public void init() {
+        MessageStoreConfig messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setStorePathRootDir(STORE_PATH);
+        messageStoreConfig.setMaxHashSlotNum(100);
+        messageStoreConfig.setMaxIndexNum(400);
+        messageStoreConfig.setIndexShardNum(4);
+        messageStoreConfig.setIndexBloomBitsPerKey(8);
+        messageStore = mock(DefaultMessageStore.class);
+        when(messageStore.getMessageStoreConfig()).thenReturn(messageStoreConfig);
+        when(messageStore.getStoreCheckpoint()).thenReturn(mock(StoreCheckpoint.class));
+        indexService = new IndexService(messageStore);
+    }
+
+    @Test
+    public void testBuildIndexByShards() {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 1000; i++) {
+            DispatchRequest request = new DispatchRequest(TOPIC, 0, i * 100L, 100, 0, now, i,
+                "key" + i, "uniq" + i, MessageSysFlag.TRANSACTION_NOT_TYPE, 0, null);
+            // every shard takes its own keys, as its dispatch lane does
+            for (int shard = 0; shard < indexService.getShardNum(); shard++) {
+                indexService.buildIndex(request, shard);
+            }
+        }
+
+        QueryOffsetResult result = indexService.queryOffset(TOPIC, "key500", 32, 0, Long.MAX_VALUE);
+        assertThat(result.getPhyOffsets()).containsExactly(50000L);
+        result = indexService.queryOffset(TOPIC, "uniq999", 32, 0, Long.MAX_VALUE);
+        assertThat(result.getPhyOffsets()).containsExactly(99900L);
+        assertThat(indexService.queryOffset(TOPIC, "key1000", 32, 0, Long.MAX_VALUE).getPhyOffsets()).isEmpty();
+        assertThat(indexService.getBloomNegativeTimes()).isGreaterThan(0);
+        assertThat(indexService.getBloomFalsePositiveRate()).isLessThan(1);
+
+        // dispatched again after restart
+        indexService.buildIndex(new DispatchRequest(TOPIC, 0, 50000L, 100, 0, now, 500,
+            "key500", "uniq500", MessageSysFlag.TRANSACTION_NOT_TYPE, 0, null));
+        assertThat(indexService.queryOffset(TOPIC, "key500", 32, 0, Long.MAX_VALUE).getPhyOffsets()).hasSize(1);
+
+        // the files of all the shards are loaded after restart
+        IndexService reloaded = new IndexService(messageStore);
+        assertThat(reloaded.load(true)).isTrue();
+        assertThat(reloaded.queryOffset(TOPIC, "key500", 32, 0, Long.MAX_VALUE).getPhyOffsets()).containsExactly(50000L);
+        assertThat(reloaded.queryOffset(TOPIC, "uniq999", 32, 0, Long.MAX_VALUE).getPhyOffsets()).containsExactly(99900L);
+        reloaded.destroy();
+    }
+
+    @After
+    public void destroy() {
+        indexService.destroy();
+        UtilAll.deleteFile(new File(STORE_PATH));
+    }
+}
@@ -21,6 +21,7 @@ import org.apache.rocketmq.common.BrokerConfig;
 import org.apache.rocketmq.common.UtilAll;
 import org.apache.rocketmq.common.message.MessageDecoder;
 import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.running.RunningStats;
 import org.apache.rocketmq.store.*;
 import org.apache.rocketmq.store.config.MessageStoreConfig;
 import org.apache.rocketmq.store.stats.BrokerStatsManager;
@@ -142,7 +143,11 @@ public class ScheduleMessageServiceTest {
         // timer run maybe delay, then consumer message again
         // and wait offsetTable
         TimeUnit.SECONDS.sleep(10);
-        scheduleMessageService.buildRunningStats(new HashMap<String, String>());
+        HashMap<String, String> stats = new HashMap<String, String>();
+        scheduleMessageService.buildRunningStats(stats);
+        assertThat(scheduleMessageService.getDeliverTimes(delayLevel)).isEqualTo(1);
+        assertThat(stats.get(RunningStats.scheduleMessageDeliverTimes.name() + "_" + delayLevel)).isEqualTo("1");
+        assertThat(stats).containsKey(RunningStats.scheduleMessageDeliverLag.name() + "_" + delayLevel);
 
         messageResult = getMessage(realQueueId, offset);
         // now,found the message
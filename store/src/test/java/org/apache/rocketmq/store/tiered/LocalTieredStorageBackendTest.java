@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.store.tiered;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LocalTieredStorageBackendTest {
+    private static final String STORE_PATH = "target/unit_test_store/LocalTieredStorageBackendTest";
+
+    private LocalTieredStorageBackend backend;
+
+    @Before
+    public void init() throws IOException {
+        MessageStoreConfig messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setStorePathTiered(STORE_PATH + File.separator + "tiered");
+        backend = new LocalTieredStorageBackend();
+        backend.init(messageStoreConfig);
+    }
+
+    @Test
+    public void testUploadReadAndDelete() throws IOException {
+        File file = new File(STORE_PATH + File.separator + "00000000000000001024");
+        byte[] data = "Once, there was a chance for me!".getBytes();
+        Files.write(file.toPath(), data);
+
+        String key = "consumequeue/TopicTest/0/00000000000000001024";
+        backend.upload(key, file);
+        assertThat(backend.list("consumequeue")).containsExactly(key);
+        assertThat(backend.list("commitlog")).isEmpty();
+        assertThat(backend.size(key)).isEqualTo(data.length);
+        assertThat(backend.lastModified(key)).isEqualTo(file.lastModified());
+
+        ByteBuffer byteBuffer = ByteBuffer.allocate(data.length - 6);
+        assertThat(backend.read(key, 6, byteBuffer)).isEqualTo(data.length - 6);
+        assertThat(new String(byteBuffer.array())).isEqualTo(new String(data, 6, data.length - 6));
+
+        backend.delete(key);
+        assertThat(backend.list("consumequeue")).isEmpty();
+    }
+
+    @Test
+    public void testReadWithChannelsEvicted() throws IOException {
+        backend.shutdown();
+        backend = new LocalTieredStorageBackend(2);
+        MessageStoreConfig messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setStorePathTiered(STORE_PATH + File.separator + "tiered");
+        backend.init(messageStoreConfig);
+
+        File file = new File(STORE_PATH + File.separator + "00000000000000000000");
+        byte[] data = "Once, there was a chance for me!".getBytes();
+        Files.write(file.toPath(), data);
+        for (int i = 0; i < 3; i++) {
+            backend.upload("commitlog/" + i, file);
+        }
+
+        // the least recently read one is closed beyond 2
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 3; i++) {
+                ByteBuffer byteBuffer = ByteBuffer.allocate(data.length);
+                assertThat(backend.read("commitlog/" + i, 0, byteBuffer)).isEqualTo(data.length);
+                assertThat(byteBuffer.array()).isEqualTo(data);
+                assertThat(backend.getOpenChannelNum()).isLessThanOrEqualTo(2);
+            }
+        }
+
+        // deleting closes the channel of the segment
+        backend.delete("commitlog/2");
+        assertThat(backend.getOpenChannelNum()).isEqualTo(1);
+    }
+
+    @After
+    public void destroy() {
+        backend.shutdown();
+        UtilAll.deleteFile(new File(STORE_PATH));
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.store.tiered;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.message.MessageDecoder;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.store.ConsumeQueue;
+import org.apache.rocketmq.store.DefaultMessageStore;
+import org.apache.rocketmq.store.GetMessageResult;
+import org.apache.rocketmq.store.GetMessageStatus;
+import org.apache.rocketmq.store.MessageExtBrokerInner;
+import org.apache.rocketmq.store.PutMessageResult;
+import org.apache.rocketmq.store.PutMessageStatus;
+import org.apache.rocketmq.store.config.FlushDiskType;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+import org.apache.rocketmq.store.stats.BrokerStatsManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TieredStoreServiceTest {
+    private static final String STORE_PATH = "target/unit_test_store/TieredStoreServiceTest";
+    private static final String TOPIC = "TieredTopic";
+    private static final String GROUP = "TieredGroup";
+    private static final int MSG_NUM = 95;
+    private static final int COMMIT_LOG_FILE_SIZE = 1024 * 8;
+
+    private MessageStoreConfig messageStoreConfig;
+    private DefaultMessageStore messageStore;
+    private TieredStoreService tieredStoreService;
+
+    @Before
+    public void init() throws Exception {
+        messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setStorePathRootDir(STORE_PATH);
+        messageStoreConfig.setStorePathCommitLog(STORE_PATH + File.separator + "commitlog");
+        messageStoreConfig.setMappedFileSizeCommitLog(COMMIT_LOG_FILE_SIZE);
+        messageStoreConfig.setMappedFileSizeConsumeQueue(ConsumeQueue.CQ_STORE_UNIT_SIZE * 10);
+        messageStoreConfig.setFlushDiskType(FlushDiskType.SYNC_FLUSH);
+        messageStoreConfig.setTieredStoreEnable(true);
+        // offloaded by the test only
+        messageStoreConfig.setTieredStoreOffloadInterval(Integer.MAX_VALUE);
+        messageStore = new DefaultMessageStore(messageStoreConfig, new BrokerStatsManager("TieredStoreTest", true),
+            null, new BrokerConfig());
+        assertThat(messageStore.load()).isTrue();
+        messageStore.start();
+        tieredStoreService = messageStore.getTieredStoreService();
+
+        for (int i = 0; i < MSG_NUM; i++) {
+            PutMessageResult result = messageStore.putMessage(buildMessage(i));
+            assertThat(result.getPutMessageStatus()).isEqualTo(PutMessageStatus.PUT_OK);
+        }
+        long deadline = System.currentTimeMillis() + 3000;
+        while (messageStore.dispatchBehindBytes() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        // one mapped file is flushed a time, true once there is nothing left
+        ConsumeQueue consumeQueue = messageStore.findConsumeQueue(TOPIC, 0);
+        while (!consumeQueue.flush(0)) {
+            Thread.sleep(1);
+        }
+    }
+
+    @After
+    public void destroy() {
+        messageStore.shutdown();
+        messageStore.destroy();
+        UtilAll.deleteFile(new File(STORE_PATH));
+    }
+
+    @Test
+    public void testOffload() throws Exception {
+        tieredStoreService.doOffload();
+
+        // all but the last commit log file are sealed
+        long lastFileOffset = messageStore.getCommitLog().getMappedFileQueue().getLastMappedFile().getFileFromOffset();
+        assertThat(tieredStoreService.getOffloadedCommitLogOffset()).isEqualTo(lastFileOffset);
+
+        LocalTieredStorageBackend backend = this.openBackend();
+        try {
+            assertThat(lastFileOffset).isGreaterThanOrEqualTo(3 * COMMIT_LOG_FILE_SIZE);
+            assertThat(backend.list("commitlog")).hasSize((int) (lastFileOffset / COMMIT_LOG_FILE_SIZE));
+            // the last consume queue file is not full
+            assertThat(backend.list("consumequeue/" + TOPIC + "/0"))
+                .hasSize(MSG_NUM / 10)
+                .contains("consumequeue/" + TOPIC + "/0/" + UtilAll.offset2FileName(0));
+        } finally {
+            backend.shutdown();
+        }
+    }
+
+    @Test
+    public void testGetMessageFromTier() throws Exception {
+        tieredStoreService.doOffload();
+        this.deleteLocalFiles();
+        ConsumeQueue consumeQueue = messageStore.findConsumeQueue(TOPIC, 0);
+        assertThat(consumeQueue.getMinOffsetInQueue()).isGreaterThan(0);
+
+        GetMessageResult result = messageStore.getMessage(GROUP, TOPIC, 0, 0, 8, null);
+        try {
+            assertThat(result.getStatus()).isEqualTo(GetMessageStatus.FOUND);
+            assertThat(result.getMessageCount()).isEqualTo(8);
+            assertThat(result.getNextBeginOffset()).isEqualTo(8);
+            for (int i = 0; i < 8; i++) {
+                ByteBuffer byteBuffer = result.getMessageBufferList().get(i);
+                MessageExt msg = MessageDecoder.decode(byteBuffer);
+                assertThat(msg.getQueueOffset()).isEqualTo(i);
+                assertThat(new String(msg.getBody())).isEqualTo(buildBody(i));
+            }
+        } finally {
+            result.release();
+        }
+    }
+
+    @Test
+    public void testDeleteExpiredSegments() throws Exception {
+        tieredStoreService.doOffload();
+        this.deleteLocalFiles();
+        long localMinOffset = messageStore.getCommitLog().getMinOffset();
+
+        // the segments still present locally are kept
+        messageStoreConfig.setTieredStoreFileReservedTime(0);
+        tieredStoreService.doOffload();
+
+        LocalTieredStorageBackend backend = this.openBackend();
+        try {
+            assertThat(backend.list("commitlog")).doesNotContain("commitlog/" + UtilAll.offset2FileName(0))
+                .contains("commitlog/" + UtilAll.offset2FileName(localMinOffset));
+        } finally {
+            backend.shutdown();
+        }
+        GetMessageResult result = messageStore.getMessage(GROUP, TOPIC, 0, 0, 8, null);
+        assertThat(result.getStatus()).isEqualTo(GetMessageStatus.OFFSET_TOO_SMALL);
+    }
+
+    /**
+     * Delete the first two commit log files and the consume queue files referring to them.
+     */
+    private void deleteLocalFiles() {
+        messageStore.getCommitLog().deleteExpiredFile(0, 0, 0, true, 2 * COMMIT_LOG_FILE_SIZE);
+        messageStore.findConsumeQueue(TOPIC, 0).deleteExpiredFile(messageStore.getCommitLog().getMinOffset());
+        assertThat(messageStore.getCommitLog().getMinOffset()).isEqualTo(2 * COMMIT_LOG_FILE_SIZE);
+    }
+
+    private LocalTieredStorageBackend openBackend() throws Exception {
+        LocalTieredStorageBackend backend = new LocalTieredStorageBackend();
+        backend.init(messageStoreConfig);
+        return backend;
+    }
+
+    private static String buildBody(int i) {
+        StringBuilder sb = new StringBuilder("body-").append(i).append('-');
+        while (sb.length() < 256) {
+            sb.append('x');
+        }
+        return sb.toString();
+    }
+
+    private MessageExtBrokerInner buildMessage(int i) {
+        MessageExtBrokerInner msg = new MessageExtBrokerInner();
+        msg.setTopic(TOPIC);
+        msg.setTags("TAG1");
+        msg.setKeys("Hello");
+        msg.setBody(buildBody(i).getBytes());
+        msg.setQueueId(0);
+        msg.setSysFlag(0);
+        msg.setBornTimestamp(System.currentTimeMillis());
+        msg.setBornHost(new InetSocketAddress("127.0.0.1", 8123));
+        msg.setStoreHost(new InetSocketAddress("127.0.0.1", 8123));
+        return msg;
+    }
+}
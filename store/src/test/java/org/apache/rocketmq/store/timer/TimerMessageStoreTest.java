@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.store.timer;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.UUID;
+import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.running.RunningStats;
+import org.apache.rocketmq.common.topic.TopicValidator;
+import org.apache.rocketmq.store.DefaultMessageStore;
+import org.apache.rocketmq.store.GetMessageResult;
+import org.apache.rocketmq.store.GetMessageStatus;
+import org.apache.rocketmq.store.MessageExtBrokerInner;
+import org.apache.rocketmq.store.PutMessageResult;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+import org.apache.rocketmq.store.stats.BrokerStatsManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TimerMessageStoreTest {
+    private static final String TOPIC = "FooBar";
+    private static final String GROUP = "GroupA";
+
+    private final String storePath = System.getProperty("java.io.tmpdir") + File.separator + "timer_test#" + UUID.randomUUID();
+    private DefaultMessageStore messageStore;
+
+    @Before
+    public void init() throws Exception {
+        messageStore = createMessageStore();
+    }
+
+    @After
+    public void destroy() {
+        messageStore.shutdown();
+        messageStore.destroy();
+        UtilAll.deleteFile(new File(storePath));
+    }
+
+    @Test
+    public void testDeliverAtTime() throws Exception {
+        long now = System.currentTimeMillis();
+        MessageExtBrokerInner msg = buildMessage();
+        msg.setDelayTimeMs(300);
+        assertThat(messageStore.putMessage(msg).isOk()).isTrue();
+        // later than the span of the wheel, goes round it again
+        msg = buildMessage();
+        msg.setDeliverTimeMs(now + 1500);
+        PutMessageResult result = messageStore.putMessage(msg);
+        assertThat(result.isOk()).isTrue();
+        assertThat(msg.getTopic()).isEqualTo(TopicValidator.RMQ_SYS_WHEEL_TIMER);
+
+        assertThat(getMessage(0).getStatus()).isNotEqualTo(GetMessageStatus.FOUND);
+        waitForMessage(1);
+        assertThat(System.currentTimeMillis() - now).isGreaterThanOrEqualTo(1500 - 100);
+        // counted after the put returns
+        Thread.sleep(100);
+
+        TimerMessageStore timerMessageStore = messageStore.getTimerMessageStore();
+        assertThat(timerMessageStore.getEnqueueTimes()).isEqualTo(2);
+        assertThat(timerMessageStore.getDeliverTimes()).isEqualTo(2);
+        assertThat(timerMessageStore.getEnqueueLag()).isEqualTo(0);
+        HashMap<String, String> stats = messageStore.getRuntimeInfo();
+        assertThat(stats).containsKeys(RunningStats.timerEnqueueLag.name(), RunningStats.timerDequeueLag.name());
+    }
+
+    @Test
+    public void testDeliverAfterRestart() throws Exception {
+        MessageExtBrokerInner msg = buildMessage();
+        msg.setDelayTimeMs(1200);
+        assertThat(messageStore.putMessage(msg).isOk()).isTrue();
+        Thread.sleep(300);
+        assertThat(messageStore.getTimerMessageStore().getEnqueueOffset()).isEqualTo(1);
+
+        messageStore.shutdown();
+        messageStore = createMessageStore();
+        assertThat(messageStore.getTimerMessageStore().getEnqueueOffset()).isEqualTo(1);
+        waitForMessage(0);
+    }
+
+    private DefaultMessageStore createMessageStore() throws Exception {
+        MessageStoreConfig messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setStorePathRootDir(storePath);
+        messageStoreConfig.setStorePathCommitLog(storePath + File.separator + "commitlog");
+        messageStoreConfig.setMappedFileSizeCommitLog(1024 * 1024);
+        messageStoreConfig.setMappedFileSizeConsumeQueue(1024 * 20);
+        messageStoreConfig.setMessageIndexEnable(false);
+        messageStoreConfig.setTimerWheelEnable(true);
+        messageStoreConfig.setTimerPrecisionMs(100);
+        messageStoreConfig.setTimerWheelSlotNum(10);
+        messageStoreConfig.setMappedFileSizeTimerLog(TimerLog.UNIT_SIZE * 64);
+
+        BrokerConfig brokerConfig = new BrokerConfig();
+        DefaultMessageStore store = new DefaultMessageStore(messageStoreConfig,
+            new BrokerStatsManager(brokerConfig.getBrokerClusterName(), false), null, brokerConfig);
+        assertThat(store.load()).isTrue();
+        store.start();
+        return store;
+    }
+
+    private void waitForMessage(long offset) throws InterruptedException {
+        for (int i = 0; i < 50; i++) {
+            GetMessageResult result = getMessage(offset);
+            result.release();
+            if (result.getStatus() == GetMessageStatus.FOUND) {
+                return;
+            }
+            Thread.sleep(100);
+        }
+        assertThat(getMessage(offset).getStatus()).isEqualTo(GetMessageStatus.FOUND);
+    }
+
+    private GetMessageResult getMessage(long offset) {
+        return messageStore.getMessage(GROUP, TOPIC, 0, offset, 1, null);
+    }
+
+    private MessageExtBrokerInner buildMessage() throws Exception {
+        MessageExtBrokerInner msg = new MessageExtBrokerInner();
+        msg.setTopic(TOPIC);
+        msg.setQueueId(0);
+        msg.setBody("timer message".getBytes());
+        msg.setBornTimestamp(System.currentTimeMillis());
+        msg.setBornHost(new InetSocketAddress(InetAddress.getLoopbackAddress(), 8123));
+        msg.setStoreHost(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        return msg;
+    }
+}